@@ -9,10 +9,12 @@ import java.util.Locale;
  * A collection of products,
  * used to record the products that are to be wished to be purchased.
  *
- * @version 2.2
+ * @version 2.3
  */
 public class Basket extends ArrayList<Product> {
     private int theOrderNum = 0; // Order number
+    private Priority thePriority = Priority.STANDARD;
+    private long theDeadline = 0;  // Promised ready for collection, ms since 1970, 0 not yet promised
 
     /**
      * Constructor for a basket which is
@@ -41,6 +43,44 @@ public class Basket extends ArrayList<Product> {
         return theOrderNum;
     }
 
+    /**
+     * Set how quickly the order has been promised
+     *
+     * @param aPriority The priority, not null
+     */
+    public void setPriority(Priority aPriority) {
+        thePriority = aPriority;
+    }
+
+    /**
+     * Returns how quickly the order has been promised
+     *
+     * @return the order's priority, STANDARD unless set
+     */
+    public Priority getPriority() {
+        return thePriority;
+    }
+
+    /**
+     * Set when the order is promised ready for collection.
+     * Left unset, order processing promises it when it is taken
+     * by the order's priority.
+     *
+     * @param aDeadline Time in milliseconds since 1970, 0 for none
+     */
+    public void setDeadline(long aDeadline) {
+        theDeadline = aDeadline;
+    }
+
+    /**
+     * Returns when the order is promised ready for collection
+     *
+     * @return time in milliseconds since 1970, 0 if not yet promised
+     */
+    public long getDeadline() {
+        return theDeadline;
+    }
+
     /**
      * Add a product to the Basket.
      * Product is appended to the end of the existing products
@@ -6,19 +6,31 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
 
 /**
  * Enhanced version of Basket with additional functionalities.
  */
 public class BetterBasket extends Basket {
-    private static int nextOrderNumber = 1; // Static counter for order numbers - this is for getDetails
+    // Numbers baskets made without an order number service, only unique in this JVM
+    private static final AtomicInteger theLocalNumbers = new AtomicInteger();
 
     /**
-     * Constructor initializes with next order number
+     * Constructor initializes with the next number local to this JVM
      */
     public BetterBasket() {
+        this(theLocalNumbers::incrementAndGet);
+    }
+
+    /**
+     * Constructor initializes with the next number from an order number service
+     *
+     * @param orderNumbers Gives out order numbers, 0 if none could be had
+     */
+    public BetterBasket(IntSupplier orderNumbers) {
         super();
-        setOrderNum(nextOrderNumber++); // Automatically set next order number
+        setOrderNum(orderNumbers.getAsInt()); // Automatically set next order number
     }
 
     /**
@@ -0,0 +1,36 @@
+package ci553.ministore.catalogue;
+
+/**
+ * The sizes a product picture can be asked for.
+ * Smaller sizes are scaled down copies of the full picture, made once on the
+ * server, so a client only receives and decodes the bytes it will show.
+ *
+ * @version 1.0
+ */
+public enum ImageSize {
+    /** Small preview for the order and stock screens */
+    THUMBNAIL(128),
+    /** Larger preview for the check stock screen */
+    PREVIEW(320),
+    /** The picture as stored */
+    FULL(0);
+
+    private final int theMaxDimension;  // Longest side in pixels, 0 for no limit
+
+    /**
+     * @param aMaxDimension Longest side in pixels, 0 for no limit
+     */
+    ImageSize(int aMaxDimension) {
+        theMaxDimension = aMaxDimension;
+    }
+
+    /**
+     * Returns the longest side, in pixels, of a picture at this size.
+     * Pictures already smaller than this are not enlarged.
+     *
+     * @return the longest side in pixels, 0 for the picture as stored
+     */
+    public int getMaxDimension() {
+        return theMaxDimension;
+    }
+}
@@ -0,0 +1,45 @@
+package ci553.ministore.catalogue;
+
+import java.io.Serializable;
+
+/**
+ * A run of consecutive numbers leased to one client by the stock list.
+ * No other client is given any number in the block, so the client can use
+ * them without asking again. Numbers the client does not use are lost.
+ *
+ * @version 1.0
+ */
+public class NumberBlock implements Serializable {
+    private static final long serialVersionUID = 1;
+    private final int theFirst;   // First number in the block
+    private final int theCount;   // How many numbers in the block
+
+    /**
+     * Construct a block of numbers
+     *
+     * @param aFirst First number in the block
+     * @param aCount How many numbers in the block
+     */
+    public NumberBlock(int aFirst, int aCount) {
+        theFirst = aFirst;
+        theCount = aCount;
+    }
+
+    /**
+     * Returns the first number in the block.
+     *
+     * @return the first number
+     */
+    public int getFirst() {
+        return theFirst;
+    }
+
+    /**
+     * Returns how many numbers are in the block.
+     *
+     * @return the number of numbers, may be fewer than were asked for
+     */
+    public int getCount() {
+        return theCount;
+    }
+}
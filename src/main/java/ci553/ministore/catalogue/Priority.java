@@ -0,0 +1,38 @@
+package ci553.ministore.catalogue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How quickly an order has been promised for collection.
+ * An order given no deadline of its own is promised for the time after it
+ * was taken that its priority allows.
+ *
+ * @version 1.0
+ */
+public enum Priority {
+    /** Click and collect, ready within minutes */
+    EXPRESS(15),
+    /** An ordinary order */
+    STANDARD(45),
+    /** A large order, for which a longer wait is expected */
+    BULK(240);
+
+    private final long thePromiseMillis;  // Time from taking the order to it being ready
+
+    /**
+     * @param minutes Time from taking the order to it being ready
+     */
+    Priority(long minutes) {
+        thePromiseMillis = TimeUnit.MINUTES.toMillis(minutes);
+    }
+
+    /**
+     * Returns how long after it is taken an order of this priority
+     * is promised to be ready for collection.
+     *
+     * @return the promised time in milliseconds
+     */
+    public long getPromiseMillis() {
+        return thePromiseMillis;
+    }
+}
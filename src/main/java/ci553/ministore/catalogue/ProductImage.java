@@ -0,0 +1,72 @@
+package ci553.ministore.catalogue;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The bytes of a product picture together with a version that identifies
+ * its content. The version is a hash of the bytes, so a client that already
+ * holds an image with the same version does not need the bytes again.
+ *
+ * @version 1.0
+ */
+public class ProductImage implements Serializable {
+    private static final long serialVersionUID = 1;
+    private final String theVersion;  // Hash of the image bytes
+    private final byte[] theData;     // The image bytes, shared and never changed
+
+    /**
+     * Construct a product image, working out its version from its content.
+     *
+     * @param aData The image bytes, must not be changed afterwards
+     */
+    public ProductImage(byte[] aData) {
+        this(aData, versionOf(aData));
+    }
+
+    /**
+     * Construct a product image whose version is already known.
+     *
+     * @param aData    The image bytes, must not be changed afterwards
+     * @param aVersion The version worked out by versionOf
+     */
+    public ProductImage(byte[] aData, String aVersion) {
+        theData = aData;
+        theVersion = aVersion;
+    }
+
+    /**
+     * Returns the version of the image, a hash of its content.
+     *
+     * @return the version
+     */
+    public String getVersion() {
+        return theVersion;
+    }
+
+    /**
+     * Returns the image bytes. The array is shared and must not be changed.
+     *
+     * @return the image bytes
+     */
+    public byte[] getData() {
+        return theData;
+    }
+
+    /**
+     * Works out the version of some image bytes.
+     *
+     * @param data The image bytes
+     * @return A SHA-256 hash of the bytes in hex
+     */
+    public static String versionOf(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
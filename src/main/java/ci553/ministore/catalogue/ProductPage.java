@@ -0,0 +1,56 @@
+package ci553.ministore.catalogue;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of the product list, in product number order.
+ * The token is passed back to ask for the page that follows,
+ * so the whole catalogue never has to be held or sent at once.
+ *
+ * @version 1.0
+ */
+public class ProductPage implements Serializable {
+    private static final long serialVersionUID = 1;
+    private final List<Product> theProducts;  // The products on this page
+    private final String theNextToken;        // Where the next page starts, null on the last page
+
+    /**
+     * Construct a page of products
+     *
+     * @param aProducts  The products on this page, in product number order
+     * @param aNextToken Token for the next page, or null if this is the last page
+     */
+    public ProductPage(List<Product> aProducts, String aNextToken) {
+        theProducts = aProducts;
+        theNextToken = aNextToken;
+    }
+
+    /**
+     * Returns the products on this page.
+     *
+     * @return the products, in product number order
+     */
+    public List<Product> getProducts() {
+        return theProducts;
+    }
+
+    /**
+     * Returns the token to ask for the page after this one.
+     * The token should be treated as opaque.
+     *
+     * @return the token, or null if this is the last page
+     */
+    public String getNextToken() {
+        return theNextToken;
+    }
+
+    /**
+     * Returns whether there are more products after this page.
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasMore() {
+        return theNextToken != null;
+    }
+}
@@ -0,0 +1,83 @@
+package ci553.ministore.catalogue;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of everything a client screen shows for one product:
+ * the product details and stock level, the path of its picture and the
+ * picture itself. Returned by a single call so that a product check needs
+ * only one database query and, for remote clients, one network round trip.
+ *
+ * @version 1.0
+ */
+public class ProductView implements Serializable {
+    private static final long serialVersionUID = 1;
+    private final Product theProduct;   // Product number, description, price, stock level
+    private final String thePicture;    // Path of the product image
+    private final byte[] theImage;      // Image data, may be null
+    private final String theImageVersion;  // Hash of the image data, may be null
+
+    /**
+     * Construct a product view
+     *
+     * @param aProduct The product details, quantity is the stock level
+     * @param aPicture Path of the product image
+     * @param anImage  The image data, or null if there is no image
+     */
+    public ProductView(Product aProduct, String aPicture, byte[] anImage) {
+        this(aProduct, aPicture, anImage, null);
+    }
+
+    /**
+     * Construct a product view that records the version of its image.
+     * The image data may be left out when the receiver already holds
+     * the image with this version.
+     *
+     * @param aProduct      The product details, quantity is the stock level
+     * @param aPicture      Path of the product image
+     * @param anImage       The image data, or null if there is no image or it was left out
+     * @param anImageVersion Version of the image, see ProductImage, or null if unknown
+     */
+    public ProductView(Product aProduct, String aPicture, byte[] anImage, String anImageVersion) {
+        theProduct = aProduct;
+        thePicture = aPicture;
+        theImage = anImage;
+        theImageVersion = anImageVersion;
+    }
+
+    /**
+     * Returns the product details, the quantity being the stock level.
+     *
+     * @return the product details
+     */
+    public Product getProduct() {
+        return theProduct;
+    }
+
+    /**
+     * Returns the path of the product image.
+     *
+     * @return the image path
+     */
+    public String getPicture() {
+        return thePicture;
+    }
+
+    /**
+     * Returns the product image data.
+     *
+     * @return the image bytes, or null if there is no image
+     */
+    public byte[] getImage() {
+        return theImage;
+    }
+
+    /**
+     * Returns the version of the product image.
+     *
+     * @return the image version, or null if unknown
+     */
+    public String getImageVersion() {
+        return theImageVersion;
+    }
+}
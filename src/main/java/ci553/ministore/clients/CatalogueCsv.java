@@ -0,0 +1,58 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.dbAccess.StockRW;
+import ci553.ministore.middle.StockException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Load the catalogue from, or save it to, a CSV file of products and stock levels.
+ * <pre>
+ *   CatalogueCsv import products.csv [linesPerCommit]
+ *   CatalogueCsv export products.csv
+ * </pre>
+ * The file starts with the line productNo,description,picture,price,stockLevel.
+ * Product numbers are four digits, such as 0042.
+ * Importing adds new products and updates the ones already in the stock list.
+ *
+ * @version 1.0
+ */
+public class CatalogueCsv {
+    private static final int DEFAULT_CHUNK = 1000;
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: CatalogueCsv import|export <file.csv> [linesPerCommit]");
+            System.exit(-1);
+        }
+        Path file = Path.of(args[1]);
+        long start = System.currentTimeMillis();
+        try {
+            StockRW stock = new StockRW();
+            if (args[0].equals("import")) {
+                int chunk = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK;
+                try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    long loaded = stock.importProducts(in, chunk,
+                            done -> System.out.printf("%d lines loaded%n", done));
+                    System.out.printf("Imported %d products from %s in %d ms%n",
+                            loaded, file, System.currentTimeMillis() - start);
+                }
+            } else {
+                try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    long written = stock.exportProducts(out);
+                    System.out.printf("Exported %d products to %s in %d ms%n",
+                            written, file, System.currentTimeMillis() - start);
+                }
+            }
+        } catch (StockException | IOException e) {
+            System.err.println("Failed: " + e.getMessage());
+            System.exit(-1);
+        }
+        System.exit(0);
+    }
+}
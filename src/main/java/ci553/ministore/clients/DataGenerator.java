@@ -0,0 +1,247 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.dbAccess.DBAccessFactory;
+import ci553.ministore.dbAccess.PooledConnection;
+import ci553.ministore.dbAccess.StockRW;
+import ci553.ministore.orders.Order;
+import ci553.ministore.orders.OrderIdService;
+import ci553.ministore.orders.OrderJournal;
+import ci553.ministore.util.PasswordUtil;
+
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fill the database with a large made up catalogue and staff list, then
+ * run a made up order history through order processing, for load testing.
+ * <pre>
+ *   DataGenerator [products=1000] [users=10] [orders=1000] [packers=2] [seed=1] [chunk=1000]
+ *                 [journal=directory]
+ * </pre>
+ * The same seed always gives the same products, stock levels and orders.
+ * Every product and stock level already in the database is replaced.
+ * Staff are named staff001, staff002, ... and each password is the same
+ * as the user name, staff added by an earlier run are replaced.
+ * Pictures are the stock pictures shipped with the shop, used in turn,
+ * as pictures are only read from the class path.
+ * Orders are only journaled when a journal directory is given, it should
+ * not be the one the shop server uses.
+ *
+ * @version 1.0
+ */
+public class DataGenerator {
+    private static final int MAX_PRODUCTS = 9999;    // productNo is Char(4)
+    private static final int DESCRIPTION_LENGTH = 40;
+    private static final int PICTURES = 8;
+    private static final String USER_PREFIX = "staff";
+
+    private static final String[] BRANDS = {
+            "Acme", "Zenith", "Nova", "Orion", "Apex", "Vertex", "Polar", "Summit", "Echo", "Pulse"
+    };
+    private static final String[] ADJECTIVES = {
+            "Compact", "Wireless", "Digital", "Portable", "Smart", "Classic", "Slim", "Deluxe",
+            "Mini", "Pro", "Rechargeable", "Silent", "Waterproof", "Retro", "Ultra", "Travel"
+    };
+    private static final String[] NOUNS = {
+            "Radio", "Toaster", "Watch", "Camera", "Kettle", "Speaker", "Headphones", "Lamp",
+            "USB drive", "Keyboard", "Mouse", "Blender", "Fan", "Heater", "Clock", "Charger",
+            "Monitor", "Tablet", "Printer", "Microwave", "Iron", "Hair dryer", "Projector", "Router"
+    };
+
+    private static final String SQL_DELETE_STOCK = "delete from StockTable";
+    private static final String SQL_DELETE_PRODUCTS = "delete from ProductTable";
+    private static final String SQL_INSERT_PRODUCT = "insert into ProductTable values (?, ?, ?, ?)";
+    private static final String SQL_INSERT_STOCK = "insert into StockTable values (?, ?)";
+    private static final String SQL_DELETE_USERS = "delete from Users where username like '" + USER_PREFIX + "%'";
+    private static final String SQL_INSERT_USER =
+            "insert into Users (username, password, email, salt) values (?, ?, ?, ?)";
+
+    public static void main(String[] args) {
+        Map<String, String> options = parse(args);
+        int products = Math.min(MAX_PRODUCTS, Integer.parseInt(options.getOrDefault("products", "1000")));
+        int users = Integer.parseInt(options.getOrDefault("users", "10"));
+        int orders = Integer.parseInt(options.getOrDefault("orders", "1000"));
+        int packers = Integer.parseInt(options.getOrDefault("packers", "2"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int chunk = Integer.parseInt(options.getOrDefault("chunk", "1000"));
+        String journal = options.get("journal");
+
+        try {
+            long start = System.currentTimeMillis();
+            List<Product> catalogue = generateProducts(products, seed);
+            try (PooledConnection con = DBAccessFactory.getConnectionPool().borrow()) {
+                storeProducts(con.getConnection(), catalogue, seed, chunk);
+                System.out.printf("%d products stored in %d ms%n",
+                        catalogue.size(), System.currentTimeMillis() - start);
+
+                start = System.currentTimeMillis();
+                storeUsers(con.getConnection(), users, seed);
+                System.out.printf("%d staff stored in %d ms%n", users, System.currentTimeMillis() - start);
+            }
+
+            start = System.currentTimeMillis();
+            int variants = new StockRW().generateImageVariants();
+            System.out.printf("%d scaled pictures stored in %d ms%n",
+                    variants, System.currentTimeMillis() - start);
+
+            if (orders > 0) {
+                OrderWorkload workload = new OrderWorkload(catalogue, seed);
+                OrderJournal orderJournal = journal == null ? null
+                        : new OrderJournal(Path.of(journal));
+                System.out.println(workload.run(
+                        new Order(OrderIdService.getShared(), orderJournal), orders, packers));
+                if (orderJournal != null) {
+                    orderJournal.close();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed: " + e.getMessage());
+            System.exit(-1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Makes up a catalogue.
+     *
+     * @param count Number of products
+     * @param seed  Seed for the random choices
+     * @return The products, numbered from 0001, quantity is the stock level
+     */
+    public static List<Product> generateProducts(int count, long seed) {
+        Random random = new Random(seed);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            String description = String.format("%s %s %s %d",
+                    BRANDS[random.nextInt(BRANDS.length)],
+                    ADJECTIVES[random.nextInt(ADJECTIVES.length)],
+                    NOUNS[random.nextInt(NOUNS.length)],
+                    100 + random.nextInt(900));
+            if (description.length() > DESCRIPTION_LENGTH) {
+                description = description.substring(0, DESCRIPTION_LENGTH);
+            }
+            // Mostly cheap products with a few expensive ones
+            double price = Math.round(Math.exp(1 + random.nextDouble() * 6) * 100) / 100.0 - 0.01;
+            int stock = random.nextInt(20) == 0 ? 0 : 1 + random.nextInt(200);
+            products.add(new Product(String.format("%04d", i), description, Math.max(0.99, price), stock));
+        }
+        return products;
+    }
+
+    /**
+     * Replaces every product and stock level with the ones given.
+     *
+     * @param con      Connection to the database
+     * @param products The products, quantity is the stock level
+     * @param seed     Seed for choosing the pictures
+     * @param chunk    Products stored in each transaction
+     * @throws SQLException If the products can not be stored, the current chunk is rolled back
+     */
+    private static void storeProducts(Connection con, List<Product> products, long seed, int chunk)
+            throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement();
+             PreparedStatement product = con.prepareStatement(SQL_INSERT_PRODUCT);
+             PreparedStatement stock = con.prepareStatement(SQL_INSERT_STOCK)) {
+            // Stock rows refer to the products, so are deleted first
+            stmt.executeUpdate(SQL_DELETE_STOCK);
+            stmt.executeUpdate(SQL_DELETE_PRODUCTS);
+            con.commit();
+
+            int firstPicture = (int) Math.floorMod(seed, (long) PICTURES);
+            int pending = 0;
+            for (int i = 0; i < products.size(); i++) {
+                Product pr = products.get(i);
+                product.setString(1, pr.getProductNum());
+                product.setString(2, pr.getDescription());
+                product.setString(3, String.format("ci553/ministore/images/pic%04d.png",
+                        1 + (firstPicture + i) % PICTURES));
+                product.setDouble(4, pr.getPrice());
+                product.addBatch();
+                stock.setString(1, pr.getProductNum());
+                stock.setInt(2, pr.getQuantity());
+                stock.addBatch();
+                if (++pending == chunk || i == products.size() - 1) {
+                    product.executeBatch();
+                    stock.executeBatch();
+                    con.commit();
+                    pending = 0;
+                    System.out.printf("%d products stored%n", i + 1);
+                }
+            }
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Replaces the generated staff.
+     *
+     * @param con   Connection to the database
+     * @param count Number of staff
+     * @param seed  Seed for the password salts
+     * @throws SQLException If the staff can not be stored, none are
+     * @throws GeneralSecurityException If a password can not be hashed
+     */
+    private static void storeUsers(Connection con, int count, long seed)
+            throws SQLException, GeneralSecurityException {
+        Random random = new Random(seed);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement();
+             PreparedStatement insert = con.prepareStatement(SQL_INSERT_USER)) {
+            stmt.executeUpdate(SQL_DELETE_USERS);
+            for (int i = 1; i <= count; i++) {
+                String username = String.format("%s%03d", USER_PREFIX, i);
+                byte[] saltBytes = new byte[16];
+                random.nextBytes(saltBytes);
+                String salt = Base64.getEncoder().encodeToString(saltBytes);
+                insert.setString(1, username);
+                insert.setString(2, PasswordUtil.hashPassword(username, salt));
+                insert.setString(3, username + "@example.com");
+                insert.setString(4, salt);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            con.commit();
+        } catch (SQLException | GeneralSecurityException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @param args Arguments of the form name=value
+     * @return The values by name
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Usage: DataGenerator [products=n] [users=n] [orders=n] " +
+                        "[packers=n] [seed=n] [chunk=n] [journal=directory]");
+                System.exit(-1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,29 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.dbAccess.StockRW;
+import ci553.ministore.middle.StockException;
+
+/**
+ * Make the scaled copies of every product picture and store them in the
+ * database, so that clients asking for a thumbnail or preview are served
+ * the stored copy. Run once after Setup, or after pictures are changed
+ * other than through the stock management screen.
+ *
+ * @version 1.0
+ */
+public class GenerateImageVariants {
+
+    public static void main(String[] args) {
+        System.out.println("Generate scaled copies of the product pictures");
+        try {
+            long start = System.currentTimeMillis();
+            int done = new StockRW().generateImageVariants();
+            System.out.printf("%d pictures processed in %d ms%n",
+                    done, System.currentTimeMillis() - start);
+        } catch (StockException e) {
+            System.err.println("Failed: " + e.getMessage());
+            System.exit(-1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,194 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderProcessing;
+import ci553.ministore.orders.IndexedOrder;
+import ci553.ministore.orders.Order;
+import ci553.ministore.orders.OrderIdService;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Measures how long order processing takes to move an order through each
+ * stage as the number of orders it holds grows.
+ * <pre>
+ *   OrderStoreBenchmark [store=both|indexed|concurrent] [sizes=10,100,1000,10000,100000,1000000]
+ *                       [cycles=20000]
+ * </pre>
+ * For each size the store is first filled with that many orders, a third
+ * waiting, a third being packed and a third waiting to be collected. Then
+ * each cycle takes a new order, packs the order that has waited longest,
+ * reports an order packed and has the oldest packed order collected, so
+ * the number held stays the same. The time per call and per cycle is
+ * printed for each size. No database or journal is used.
+ *
+ * @version 1.0
+ */
+public class OrderStoreBenchmark {
+    private static final int WARM_UP_SIZE = 1000;
+
+    private final Function<OrderIdService, OrderProcessing> theStore;  // Makes an empty store
+    private final int theCycles;
+
+    /**
+     * Times of one run, in nanoseconds.
+     */
+    static class Timing {
+        private long theNew, thePack, thePacked, theCollected;
+        private final long[] theCycleTimes;
+
+        Timing(int cycles) {
+            theCycleTimes = new long[cycles];
+        }
+
+        /**
+         * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+         * @return Time a cycle took at that percentile
+         */
+        long percentile(double fraction) {
+            long[] sorted = theCycleTimes.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, sorted.length * fraction)];
+        }
+    }
+
+    /**
+     * @param store  Makes an empty store numbering orders from the given service
+     * @param cycles Number of cycles timed at each size
+     */
+    public OrderStoreBenchmark(Function<OrderIdService, OrderProcessing> store, int cycles) {
+        theStore = store;
+        theCycles = cycles;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = parse(args);
+        String store = options.getOrDefault("store", "both");
+        int cycles = Integer.parseInt(options.getOrDefault("cycles", "20000"));
+        int[] sizes = Arrays.stream(options.getOrDefault("sizes", "10,100,1000,10000,100000,1000000")
+                .split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+        try {
+            if (!store.equals("concurrent")) {
+                report("indexed", new OrderStoreBenchmark(IndexedOrder::new, cycles), sizes);
+            }
+            if (!store.equals("indexed")) {
+                report("concurrent", new OrderStoreBenchmark(Order::new, cycles), sizes);
+            }
+        } catch (OrderException e) {
+            System.err.println("Failed: " + e.getMessage());
+            System.exit(-1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs the benchmark at each size and prints the times.
+     *
+     * @param name      Name of the store
+     * @param benchmark The benchmark
+     * @param sizes     Numbers of orders held
+     * @throws OrderException If the store fails
+     */
+    private static void report(String name, OrderStoreBenchmark benchmark, int[] sizes)
+            throws OrderException {
+        benchmark.run(WARM_UP_SIZE);
+        System.out.printf("%-10s %9s %10s %10s %10s %10s %12s %12s%n", "store", "held",
+                "new ns", "pack ns", "packed ns", "collect ns", "cycle p50 ns", "cycle p99 ns");
+        for (int size : sizes) {
+            Timing t = benchmark.run(size);
+            int n = t.theCycleTimes.length;
+            System.out.printf("%-10s %9d %10d %10d %10d %10d %12d %12d%n", name, size,
+                    t.theNew / n, t.thePack / n, t.thePacked / n, t.theCollected / n,
+                    t.percentile(0.5), t.percentile(0.99));
+        }
+    }
+
+    /**
+     * Fills a new store with orders and times cycles through it.
+     *
+     * @param held Number of orders held throughout
+     * @return The times taken
+     * @throws OrderException If the store fails
+     */
+    Timing run(int held) throws OrderException {
+        AtomicInteger highWater = new AtomicInteger(1);
+        OrderProcessing orders = theStore.apply(
+                new OrderIdService(n -> new NumberBlock(highWater.getAndAdd(n), n), 1000));
+        ArrayDeque<Integer> packed = new ArrayDeque<>();    // Waiting to be collected, oldest first
+
+        // Orders taken first reach the later stages, as they would in the shop
+        int third = Math.max(1, held / 3);
+        for (int i = 0; i < held; i++) {
+            orders.newOrder(basket(orders));
+        }
+        for (int i = 0; i < Math.min(held, 2 * third); i++) {
+            int orderNum = orders.getOrderToPack().getOrderNum();
+            if (i < third) {
+                orders.informOrderPacked(orderNum);
+                packed.add(orderNum);
+            }
+        }
+
+        Timing t = new Timing(theCycles);
+        for (int i = 0; i < theCycles; i++) {
+            Basket bought = basket(orders);
+            long start = System.nanoTime();
+            orders.newOrder(bought);
+            long taken = System.nanoTime();
+            Basket toPack = orders.getOrderToPack();
+            long packing = System.nanoTime();
+            orders.informOrderPacked(toPack.getOrderNum());
+            long done = System.nanoTime();
+            Integer oldest = packed.poll();
+            long collecting = System.nanoTime();
+            orders.informOrderCollected(oldest == null ? toPack.getOrderNum() : oldest);
+            long end = System.nanoTime();
+            if (oldest != null) {
+                packed.add(toPack.getOrderNum());
+            }
+
+            t.theNew += taken - start;
+            t.thePack += packing - taken;
+            t.thePacked += done - packing;
+            t.theCollected += end - collecting;
+            t.theCycleTimes[i] = (taken - start) + (done - taken) + (end - collecting);
+        }
+        return t;
+    }
+
+    /**
+     * @param orders Gives out the order number
+     * @return An empty basket with a new order number
+     */
+    private static Basket basket(OrderProcessing orders) throws OrderException {
+        Basket basket = new Basket();
+        basket.setOrderNum(orders.uniqueNumber());
+        return basket;
+    }
+
+    /**
+     * @param args Arguments of the form name=value
+     * @return The values by name
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Usage: OrderStoreBenchmark [store=both|indexed|concurrent] " +
+                        "[sizes=n,n,...] [cycles=n]");
+                System.exit(-1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
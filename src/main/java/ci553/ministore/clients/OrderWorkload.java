@@ -0,0 +1,167 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderProcessing;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A repeatable stream of customer orders for load testing order processing.
+ * Products are chosen with a Zipf distribution, so a few products appear in
+ * many orders as in a real shop, and the same seed always gives the same orders.
+ *
+ * @version 1.0
+ */
+public class OrderWorkload {
+    private static final int MAX_LINES = 6;        // Most lines in one order
+    private static final int MAX_QUANTITY = 3;     // Most of one product in one line
+    private static final double ZIPF_SKEW = 1.0;   // Larger means fewer products are popular
+
+    private final List<Product> theProducts;  // Products that can be ordered
+    private final double[] theCumulative;     // Chance of choosing each product or one before it
+    private final Random theRandom;
+
+    /**
+     * The outcome of running a workload.
+     */
+    public static class Result {
+        private final int theOrders;
+        private final long theNanos;
+
+        Result(int orders, long nanos) {
+            theOrders = orders;
+            theNanos = nanos;
+        }
+
+        /**
+         * @return Number of orders placed, packed and collected
+         */
+        public int getOrders() {
+            return theOrders;
+        }
+
+        /**
+         * @return Time taken in nanoseconds
+         */
+        public long getNanos() {
+            return theNanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = theNanos / 1e9;
+            return String.format("%d orders in %.3f s, %.0f orders/s",
+                    theOrders, seconds, theOrders / Math.max(seconds, 1e-9));
+        }
+    }
+
+    /**
+     * Create a workload over a catalogue.
+     *
+     * @param products The products that can be ordered, the first are the most popular
+     * @param seed     Seed for the random choices
+     */
+    public OrderWorkload(List<Product> products, long seed) {
+        if (products.isEmpty()) {
+            throw new IllegalArgumentException("No products to order");
+        }
+        theProducts = products;
+        theRandom = new Random(seed);
+        theCumulative = new double[products.size()];
+        double sum = 0;
+        for (int k = 0; k < theCumulative.length; k++) {
+            sum += 1.0 / Math.pow(k + 1, ZIPF_SKEW);
+            theCumulative[k] = sum;
+        }
+        for (int k = 0; k < theCumulative.length; k++) {
+            theCumulative[k] /= sum;
+        }
+    }
+
+    /**
+     * Makes the next order, with no order number yet.
+     *
+     * @return A basket of one or more different products
+     */
+    public synchronized Basket nextBasket() {
+        int lines = 1 + theRandom.nextInt(Math.min(MAX_LINES, theProducts.size()));
+        Set<Integer> chosen = new HashSet<>();
+        Basket basket = new Basket();
+        while (chosen.size() < lines) {
+            int k = pick();
+            if (chosen.add(k)) {
+                Product pr = theProducts.get(k);
+                basket.add(new Product(pr.getProductNum(), pr.getDescription(), pr.getPrice(),
+                        1 + theRandom.nextInt(MAX_QUANTITY)));
+            }
+        }
+        return basket;
+    }
+
+    /**
+     * Places a number of orders and has packers pack and hand over every one,
+     * as the cashier and packing clients would.
+     *
+     * @param orders  Where to place the orders
+     * @param count   Number of orders
+     * @param packers Number of packer threads
+     * @return How long it took
+     * @throws OrderException If order processing fails
+     * @throws InterruptedException If interrupted while waiting for the packers
+     */
+    public Result run(OrderProcessing orders, int count, int packers)
+            throws OrderException, InterruptedException {
+        AtomicInteger collected = new AtomicInteger();
+        AtomicReference<OrderException> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[packers];
+        long start = System.nanoTime();
+        for (int i = 0; i < packers; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    while (collected.get() < count && failure.get() == null) {
+                        Basket basket = orders.getOrderToPack();
+                        if (basket == null) {
+                            Thread.yield();  // Nothing waiting yet
+                        } else {
+                            orders.informOrderPacked(basket.getOrderNum());
+                            orders.informOrderCollected(basket.getOrderNum());
+                            collected.incrementAndGet();
+                        }
+                    }
+                } catch (OrderException e) {
+                    failure.set(e);
+                }
+            }, "Packer-" + i);
+            threads[i].start();
+        }
+        for (int i = 0; i < count && failure.get() == null; i++) {
+            Basket basket = nextBasket();
+            basket.setOrderNum(orders.uniqueNumber());
+            orders.newOrder(basket);
+        }
+        for (Thread t : threads) {
+            t.join(TimeUnit.MINUTES.toMillis(10));
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return new Result(collected.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * @return Position of a product chosen by popularity
+     */
+    private int pick() {
+        int k = Arrays.binarySearch(theCumulative, theRandom.nextDouble());
+        return Math.min(k >= 0 ? k : -k - 1, theCumulative.length - 1);
+    }
+}
@@ -2,6 +2,7 @@ package ci553.ministore.clients;
 
 import ci553.ministore.dbAccess.DBAccess;
 import ci553.ministore.dbAccess.DBAccessFactory;
+import ci553.ministore.dbAccess.SchemaMigrator;
 // import ci553.ministore.middle.StockException;
 
 import java.sql.*;
@@ -16,9 +17,17 @@ import java.util.ArrayList;
 public class Setup {
     private static String[] sqlStatements = {
 
-            // Existing SQL statements for ProductTable and StockTable
+            // Tables holding a key of another table are dropped first,
+            // tables other than these are created by SchemaMigrator
 
+            "drop table ImageVariantTable",
+            "drop table StockTable",
             "drop table ProductTable",
+            "drop table Sequences",
+            "drop table SchemaVersion",
+
+            // Existing SQL statements for ProductTable and StockTable
+
             "create table ProductTable (" +
                     "productNo      Char(4)," +
                     "description    Varchar(40)," +
@@ -40,7 +49,6 @@ public class Setup {
             "insert into ProductTable values " +
                     "('0007', '32Gb USB2 drive',   'ci553/ministore/images/pic0007.png', 6.99)",
 
-            "drop table StockTable",
             "create table StockTable (" +
                     "productNo      Char(4)," +
                     "stockLevel     Integer)",
@@ -142,6 +150,16 @@ public class Setup {
             }
         }
 
+        // Add the keys, indexes and later tables to the new tables
+        try {
+            int applied = SchemaMigrator.migrate(theCon);
+            System.out.printf("Schema migrated to version %d (%d migrations applied)%n",
+                    SchemaMigrator.getVersion(theCon), applied);
+        } catch (SQLException e) {
+            System.out.println("problems migrating schema of " +
+                    dbDriver.urlOfDatabase() + "\n" + e.getMessage());
+        }
+
         try {
             theCon.close();
         } catch (Exception e) {
@@ -11,6 +11,7 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import ci553.ministore.catalogue.Priority;
 import ci553.ministore.middle.MiddleFactory;
 import ci553.ministore.util.DialogUtils;
 import ci553.ministore.debug.DEBUG;
@@ -75,6 +76,10 @@ public class CashierController {
             message.textProperty().bindBidirectional(model.messageProperty());
             reply.textProperty().bind(model.replyProperty());
 
+            // Pictures are decoded in the background, show each one when it is ready
+            model.productImageProperty().addListener((observable, oldValue, newValue) ->
+                    stock_image.setImage(newValue));
+
             // Initialize state
             state = OrderState.ENTERING_PRODUCT;
 
@@ -88,10 +93,11 @@ public class CashierController {
                 }
             });
 
-            // Add shutdown hook to handle closing the screen without pressing "purchase"
+            // Give held stock back straight away if the screen is closed without
+            // purchasing, otherwise it stays held until the hold expires
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                if (state != OrderState.PURCHASING) {
-                    model.clearBasket(true);
+                if (!model.getBasket().isEmpty()) {
+                    model.clearBasket();
                 }
             }));
 
@@ -238,7 +244,7 @@ public class CashierController {
      * Clears the entire order and resets the state.
      */
     private void processClearOrder() {
-        model.clearBasket(true);
+        model.clearBasket();
         model.messageProperty().set("");
         model.replyProperty().set("");
         clearImage();
@@ -280,8 +286,8 @@ public class CashierController {
     }
 
     /**
-     * Completes the purchase and resets the state.
-     * Will not proceed if basket is empty.
+     * Asks for the priority of the order, then completes the purchase and resets the state.
+     * Will not proceed if basket is empty or the priority is not chosen.
      */
     private void processPurchase() {
         // Check if basket is empty
@@ -290,6 +296,12 @@ public class CashierController {
             return;
         }
 
+        Optional<Priority> priority = DialogUtils.showPriorityDialog(model.getPriority());
+        if (priority.isEmpty()) {
+            return;
+        }
+        model.setPriority(priority.get());
+
         // Complete the purchase
         model.purchase();
         model.messageProperty().set("");
@@ -331,7 +343,7 @@ public class CashierController {
     private void processMenu() {
         try {
             // Clear basket before loading new scene
-            model.clearBasket(true);
+            model.clearBasket();
 
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/ci553/ministore/fxml/ministore_start.fxml"));
             Parent root = loader.load();
@@ -2,17 +2,25 @@ package ci553.ministore.clients.cashierjavafx;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.image.Image;
 import ci553.ministore.middle.MiddleFactory;
+import ci553.ministore.middle.OrderException;
 import ci553.ministore.middle.StockException;
 import ci553.ministore.middle.StockReadWriter;
 
-import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import java.util.UUID;
 
 import ci553.ministore.catalogue.Basket;
 import ci553.ministore.catalogue.BetterBasket;
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.Priority;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.util.DecodedImageCache;
 import ci553.ministore.middle.OrderProcessing;
 
 /**
@@ -25,8 +33,16 @@ public class CashierModel {
     private final StockReadWriter stockReader;
     private final MiddleFactory middleFactory;
     private BetterBasket basket;
+    private String holdId;           // Identifies the stock held for this basket
+    private boolean stockTaken;      // The basket's stock is bought but its order not yet placed
     private int currentQuantity = 1;
-    private Image productImage;
+    private final ObjectProperty<Image> productImage = new SimpleObjectProperty<>();
+    private final DecodedImageCache images = DecodedImageCache.getShared();
+    private Object imageRequest;  // Identifies the picture being loaded
+
+    // Size of the picture on the place order screen
+    private static final double IMAGE_WIDTH = 103;
+    private static final double IMAGE_HEIGHT = 80;
 
     /**
      * Constructor for CashierModel.
@@ -39,7 +55,8 @@ public class CashierModel {
             this.middleFactory = mf; // Store middleware factory
             this.stockReader = mf.makeStockReadWriter();
             DEBUG.trace("CashierModelJavaFX: StockReader created successfully");
-            this.basket = new BetterBasket();
+            this.basket = new BetterBasket(this::nextOrderNumber);
+            this.holdId = UUID.randomUUID().toString();
         } catch (Exception e) {
             DEBUG.error("CashierModelJavaFX: Failed to create stock reader: %s", e.getMessage());
             throw new RuntimeException("Failed to create stock reader", e);
@@ -91,12 +108,40 @@ public class CashierModel {
         return basket;
     }
 
+    /**
+     * Sets how quickly the order being filled has been promised, it is
+     * packed ahead of orders due later. A new basket is STANDARD.
+     *
+     * @param priority The priority chosen for the order.
+     */
+    public void setPriority(Priority priority) {
+        basket.setPriority(priority);
+    }
+
+    /**
+     * Gets the priority of the order being filled.
+     *
+     * @return The priority of the order.
+     */
+    public Priority getPriority() {
+        return basket.getPriority();
+    }
+
     /**
      * Gets the product image.
      *
      * @return The product image.
      */
     public Image getProductImage() {
+        return productImage.get();
+    }
+
+    /**
+     * Gets the product image property, set when a picture finishes loading.
+     *
+     * @return The product image property.
+     */
+    public ObjectProperty<Image> productImageProperty() {
         return productImage;
     }
 
@@ -108,8 +153,10 @@ public class CashierModel {
      */
     public void doCheck(String productNum) {
         try {
-            if (stockReader.exists(productNum)) {
-                Product product = stockReader.getDetails(productNum);
+            // One call fetches the details, stock level and image together
+            Optional<ProductView> view = stockReader.getProductView(productNum, ImageSize.THUMBNAIL);
+            if (view.isPresent()) {
+                Product product = view.get().getProduct();
                 if (product.getQuantity() > 0) {
                     String formattedText = String.format("""
                             Product Number: %s
@@ -124,19 +171,14 @@ public class CashierModel {
                     reply.set(formattedText);
 
                     // Load product image
-                    byte[] imgBytes = stockReader.getImage(productNum);
-                    if (imgBytes != null) {
-                        productImage = new Image(new ByteArrayInputStream(imgBytes));
-                    } else {
-                        productImage = null;
-                    }
+                    showImage(view.get().getImage(), view.get().getImageVersion());
                 } else {
                     reply.set("Product: " + product.getDescription() + " is currently out of stock");
-                    productImage = null;
+                    clearImage();
                 }
             } else {
                 reply.set("Error: Unknown product number " + productNum);
-                productImage = null;
+                clearImage();
             }
         } catch (StockException e) {
             reply.set("System Error: " + e.getMessage());
@@ -145,25 +187,26 @@ public class CashierModel {
 
     /**
      * Adds the product to the order.
+     * The stock is held for this basket rather than taken, it is taken from
+     * the database in one transaction when the order is purchased.
      * Updates the reply property with the basket details or an error message.
      *
      * @param productNum The product number to add.
      */
     public void addToOrder(String productNum) {
+        if (basketBought()) {
+            return;
+        }
         try {
-            if (stockReader.exists(productNum)) {
-                Product product = stockReader.getDetails(productNum);
-                if (product.getQuantity() >= currentQuantity) {
-                    boolean stockBought = stockReader.buyStock(productNum, currentQuantity);
-
-                    if (stockBought) {
-                        product.setQuantity(currentQuantity);
-                        basket.add(product);
-                        reply.set(basket.getDetails());
-                        productImage = null; // Clear the product image after adding to order
-                    } else {
-                        reply.set("Failed to purchase " + product.getDescription());
-                    }
+            // One call finds the product and its details, the picture is usually cached
+            Optional<ProductView> view = stockReader.getProductView(productNum, ImageSize.THUMBNAIL);
+            if (view.isPresent()) {
+                Product product = view.get().getProduct();
+                if (holdStock(productNum, currentQuantity)) {
+                    product.setQuantity(currentQuantity);
+                    basket.add(product);
+                    reply.set(basket.getDetails());
+                    clearImage(); // Clear the product image after adding to order
                 } else {
                     reply.set("Product: " + product.getDescription() + " does not have enough stock");
                 }
@@ -177,14 +220,41 @@ public class CashierModel {
 
     /**
      * Completes the purchase and resets the basket.
+     * The stock held for the basket is taken in a single transaction. If the
+     * hold has expired or does not cover the whole basket the basket is bought
+     * as it stands, and if any line can no longer be supplied nothing is
+     * bought and the basket is kept.
+     * A failed commit ends the hold, so a fresh one is started for the basket.
+     * If the order can not be placed once the stock is taken, the basket is
+     * kept and trying again only places the order, the stock is not taken twice.
      * Updates the reply property with the order number or an error message.
      */
     public void purchase() {
         try {
+            if (!stockTaken && !stockReader.commitReservation(holdId, basket)) {
+                // The hold lapsed, missed lines or stock ran short, try the basket as it stands
+                holdId = UUID.randomUUID().toString();
+                boolean[] bought = stockReader.checkout(basket);
+                StringBuilder shortLines = new StringBuilder();
+                for (int i = 0; i < bought.length; i++) {
+                    if (!bought[i]) {
+                        Product product = basket.get(i);
+                        shortLines.append(String.format("%n%s %s",
+                                product.getProductNum(), product.getDescription()));
+                    }
+                }
+                if (shortLines.length() > 0) {
+                    reply.set("Purchase failed, not enough stock for:" + shortLines);
+                    return;
+                }
+            }
+            stockTaken = true;
+
             OrderProcessing orderProcessing = middleFactory.makeOrderProcessing();
-            // Get order number before creating new order
-            int orderNum = orderProcessing.uniqueNumber();
-            basket.setOrderNum(orderNum);
+            // The basket was numbered when started, unless order processing was unreachable
+            if (basket.getOrderNum() == 0) {
+                basket.setOrderNum(orderProcessing.uniqueNumber());
+            }
             orderProcessing.newOrder(basket);
 
             int completedOrderNum = basket.getOrderNum();
@@ -192,36 +262,103 @@ public class CashierModel {
                     completedOrderNum));
 
             // Create new basket for next order
-            basket = new BetterBasket();
-            productImage = null;
-        } catch (Exception e) {
-            DEBUG.error("CashierModelJavaFX::purchase\n%s", e.getMessage());
-            reply.set("Error processing order: " + e.getMessage());
+            basket = new BetterBasket(this::nextOrderNumber);
+            holdId = UUID.randomUUID().toString();
+            stockTaken = false;
+            clearImage();
+        } catch (StockException e) {
+            reply.set("System Error: " + e.getMessage());
+        } catch (OrderException e) {
+            DEBUG.trace("CashierModelJavaFX::purchase\n%s", e.getMessage());
+            reply.set("Order not placed, the stock is taken, purchase again to retry: " + e.getMessage());
         }
     }
 
     /**
-     * Adds stock back to the database for all products in the basket.
+     * Checks whether the basket's stock has been bought but its order not yet
+     * placed, when the basket can not be changed until the purchase completes.
+     * Updates the reply property if it has.
+     *
+     * @return true if the basket can not be changed.
      */
-    private void addStockBackToDatabase() {
-        for (Product product : basket) {
-            try {
-                stockReader.addStock(product.getProductNum(), product.getQuantity());
-            } catch (StockException e) {
-                DEBUG.error("Failed to add stock back to database: %s", e.getMessage());
+    private boolean basketBought() {
+        if (stockTaken) {
+            reply.set("The stock for this basket is taken, purchase again to place the order");
+        }
+        return stockTaken;
+    }
+
+    /**
+     * Holds stock for the basket. If the basket's hold has ended, for example
+     * it expired while the till was left, a fresh hold is started for the
+     * whole basket so the hold still covers every line when it is committed.
+     *
+     * @param productNum The product number to hold.
+     * @param quantity   The quantity to hold.
+     * @return true if held, false if there is not enough stock.
+     * @throws StockException If the stock can not be held.
+     */
+    private boolean holdStock(String productNum, int quantity) throws StockException {
+        try {
+            return stockReader.reserveStock(holdId, productNum, quantity);
+        } catch (StockException e) {
+            DEBUG.trace("CashierModelJavaFX: starting a fresh hold: %s", e.getMessage());
+            holdId = UUID.randomUUID().toString();
+            for (Product pr : basket) {
+                stockReader.reserveStock(holdId, pr.getProductNum(), pr.getQuantity());
             }
+            return stockReader.reserveStock(holdId, productNum, quantity);
         }
     }
 
     /**
-     * Clears the basket and optionally adds stock back to the database.
+     * Gets the order number for a new basket from order processing, so the
+     * number shown while the basket is filled is the one the order is given.
      *
-     * @param addStockBack Whether to add stock back to the database.
+     * @return The order number, or 0 if order processing can not be reached
      */
-    public void clearBasket(boolean addStockBack) {
-        if (addStockBack) {
-            addStockBackToDatabase();
+    private int nextOrderNumber() {
+        try {
+            return middleFactory.makeOrderProcessing().uniqueNumber();
+        } catch (Exception e) {
+            DEBUG.trace("CashierModelJavaFX: no order number yet %s", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Gives back stock held for the basket.
+     * Failures are only traced, an unreleased hold expires by itself.
+     *
+     * @param productNum The product number to give back.
+     * @param quantity   The quantity to give back.
+     */
+    private void releaseHeldStock(String productNum, int quantity) {
+        try {
+            stockReader.releaseStock(holdId, productNum, quantity);
+        } catch (StockException e) {
+            DEBUG.trace("CashierModelJavaFX: failed to release held stock: %s", e.getMessage());
         }
+    }
+
+    /**
+     * Clears the basket and gives back all the stock held for it, or the
+     * stock bought for it if its order could not be placed.
+     */
+    public void clearBasket() {
+        try {
+            if (stockTaken) {
+                for (Product pr : basket) {
+                    stockReader.addStock(pr.getProductNum(), pr.getQuantity());
+                }
+            } else {
+                stockReader.cancelReservation(holdId);
+            }
+        } catch (StockException e) {
+            DEBUG.trace("CashierModelJavaFX: failed to give back stock: %s", e.getMessage());
+        }
+        holdId = UUID.randomUUID().toString();
+        stockTaken = false;
         basket.clear();
     }
 
@@ -230,13 +367,9 @@ public class CashierModel {
      * Updates the reply property with the basket details.
      */
     public void removeLastItem() {
-        if (!basket.isEmpty()) {
+        if (!basket.isEmpty() && !basketBought()) {
             Product lastProduct = basket.get(basket.size() - 1);
-            try {
-                stockReader.addStock(lastProduct.getProductNum(), lastProduct.getQuantity());
-            } catch (StockException e) {
-                DEBUG.error("Failed to add stock back to database: %s", e.getMessage());
-            }
+            releaseHeldStock(lastProduct.getProductNum(), lastProduct.getQuantity());
             basket.removeLastItem();
             reply.set(basket.getDetails());
         }
@@ -250,12 +383,8 @@ public class CashierModel {
      */
     public void removeItemByProductNum(String productNum) {
         int quantity = basket.getProductQuantity(productNum);
-        if (quantity > 0) {
-            try {
-                stockReader.addStock(productNum, quantity);
-            } catch (StockException e) {
-                DEBUG.error("Failed to add stock back to database: %s", e.getMessage());
-            }
+        if (quantity > 0 && !basketBought()) {
+            releaseHeldStock(productNum, quantity);
             basket.removeByProductNum(productNum);
             reply.set(basket.getDetails());
         }
@@ -279,12 +408,40 @@ public class CashierModel {
      * @param quantity   The quantity to remove.
      */
     public void removeQuantityFromBasket(String productNum, int quantity) {
-        basket.removeQuantityByProductNum(productNum, quantity);
-        try {
-            stockReader.addStock(productNum, quantity);
-        } catch (StockException e) {
-            DEBUG.error("Failed to add stock back to database: %s", e.getMessage());
+        if (basketBought()) {
+            return;
         }
+        basket.removeQuantityByProductNum(productNum, quantity);
+        releaseHeldStock(productNum, quantity);
         reply.set(basket.getDetails());
     }
+
+    /**
+     * Shows a product picture, decoded at the size it is shown at.
+     * The picture is taken from the shared cache if it is there, otherwise it
+     * is decoded in the background and the image property set when it is ready.
+     *
+     * @param imgBytes The encoded picture, or null if there is none.
+     * @param version  The version of the picture, or null if not known.
+     */
+    private void showImage(byte[] imgBytes, String version) {
+        Object request = new Object();
+        imageRequest = request;
+        productImage.set(null);
+        if (imgBytes != null) {
+            images.load(imgBytes, version, IMAGE_WIDTH, IMAGE_HEIGHT, image -> {
+                if (imageRequest == request) {  // Not replaced while loading
+                    productImage.set(image);
+                }
+            });
+        }
+    }
+
+    /**
+     * Clears the product picture, including one still loading.
+     */
+    private void clearImage() {
+        imageRequest = null;
+        productImage.set(null);
+    }
 }
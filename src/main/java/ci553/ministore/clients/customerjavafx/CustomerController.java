@@ -53,6 +53,10 @@ public class CustomerController {
             check_stock_message.textProperty().bindBidirectional(model.messageProperty());
             check_stock_reply.textProperty().bind(model.replyProperty());
 
+            // Pictures are decoded in the background, show each one when it is ready
+            model.productImageProperty().addListener((observable, oldValue, newValue) ->
+                    check_stock_image.setImage(newValue));
+
             // Add event handler for Enter key press
             check_stock_message.setOnKeyPressed(this::handleKeyPress);
 
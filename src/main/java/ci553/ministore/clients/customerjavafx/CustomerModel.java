@@ -2,15 +2,20 @@ package ci553.ministore.clients.customerjavafx;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.image.Image;
 import ci553.ministore.middle.MiddleFactory;
 import ci553.ministore.middle.StockReader;
 import ci553.ministore.middle.StockException;
 
-import java.io.ByteArrayInputStream;
+import java.util.Optional;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.util.DecodedImageCache;
 
 /**
  * Model class for the customer interface.
@@ -19,7 +24,13 @@ import ci553.ministore.debug.DEBUG;
 public class CustomerModel {
     private final StringProperty message = new SimpleStringProperty();
     private final StringProperty reply = new SimpleStringProperty();
-    private Image productImage;
+    private final ObjectProperty<Image> productImage = new SimpleObjectProperty<>();
+    private final DecodedImageCache images = DecodedImageCache.getShared();
+    private Object imageRequest;  // Identifies the picture being loaded
+
+    // Size of the picture on the check stock screen
+    private static final double IMAGE_WIDTH = 150;
+    private static final double IMAGE_HEIGHT = 128;
     private final StockReader stockReader;
     private final MiddleFactory middleFactory;
 
@@ -109,6 +120,15 @@ public class CustomerModel {
      * @return The product image.
      */
     public Image getProductImage() {
+        return productImage.get();
+    }
+
+    /**
+     * Gets the product image property, set when a picture finishes loading.
+     *
+     * @return The product image property.
+     */
+    public ObjectProperty<Image> productImageProperty() {
         return productImage;
     }
 
@@ -120,8 +140,10 @@ public class CustomerModel {
      */
     public void doCheck(String productNum) {
         try {
-            if (stockReader.exists(productNum)) {
-                Product product = stockReader.getDetails(productNum);
+            // One call fetches the details, stock level and image together
+            Optional<ProductView> view = stockReader.getProductView(productNum, ImageSize.PREVIEW);
+            if (view.isPresent()) {
+                Product product = view.get().getProduct();
                 if (product.getQuantity() > 0) {
                     // Add a warning if stock is low
                     String stockWarning = product.getQuantity() < 5 ? "\nWarning: Low Stock!" : "";
@@ -141,23 +163,47 @@ public class CustomerModel {
                     reply.set(formattedText);
 
                     // Load product image
-                    byte[] imgBytes = stockReader.getImage(productNum);
-                    if (imgBytes != null) {
-                        productImage = new Image(new ByteArrayInputStream(imgBytes));
-                    } else {
-                        productImage = null;
-                    }
+                    showImage(view.get().getImage(), view.get().getImageVersion());
                 } else {
                     reply.set("Product: " + product.getDescription() + " is currently out of stock");
-                    productImage = null;
+                    clearImage();
                 }
             } else {
                 reply.set("Error: Unknown product number " + productNum);
-                productImage = null;
+                clearImage();
             }
         } catch (StockException e) {
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
+
+    /**
+     * Shows a product picture, decoded at the size it is shown at.
+     * The picture is taken from the shared cache if it is there, otherwise it
+     * is decoded in the background and the image property set when it is ready.
+     *
+     * @param imgBytes The encoded picture, or null if there is none.
+     * @param version  The version of the picture, or null if not known.
+     */
+    private void showImage(byte[] imgBytes, String version) {
+        Object request = new Object();
+        imageRequest = request;
+        productImage.set(null);
+        if (imgBytes != null) {
+            images.load(imgBytes, version, IMAGE_WIDTH, IMAGE_HEIGHT, image -> {
+                if (imageRequest == request) {  // Not replaced while loading
+                    productImage.set(image);
+                }
+            });
+        }
+    }
+
+    /**
+     * Clears the product picture, including one still loading.
+     */
+    private void clearImage() {
+        imageRequest = null;
+        productImage.set(null);
+    }
 }
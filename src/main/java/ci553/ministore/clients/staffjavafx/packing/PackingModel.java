@@ -9,6 +9,9 @@ import ci553.ministore.middle.OrderException;
 import ci553.ministore.catalogue.Basket;
 import ci553.ministore.debug.DEBUG;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -17,6 +20,16 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 @SuppressWarnings("unused")
 public class PackingModel {
+    // Longest a single wait for an order lasts, so a lost connection is noticed
+    private static final long ORDER_WAIT_MILLIS = 30_000;
+    // Wait before asking again after the order system fails, doubling each time it fails again
+    private static final long RETRY_MIN_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 30_000;
+    private static final AtomicInteger theStations = new AtomicInteger();
+
+    // Name this station is dealt orders under, unique to this packing screen
+    private final String station = stationName();
+
     private final StringProperty message = new SimpleStringProperty();
     private final StringProperty reply = new SimpleStringProperty();
     private final MiddleFactory middleFactory;
@@ -52,31 +65,49 @@ public class PackingModel {
 
     /**
      * Background thread method to check for new orders.
-     * Continuously checks for new orders and updates the message and reply
-     * properties.
+     * Once the packer is free, waits in the order processing system for
+     * the next order, so a new order is shown as soon as it is taken,
+     * and updates the message and reply properties.
+     * If the order processing system fails the packer is freed again and
+     * the thread waits a little longer after each failure before asking again.
      */
     private void checkForNewOrder() {
+        long retryMillis = RETRY_MIN_MILLIS;
         while (running) { // Use running flag to control the loop
             try {
-                boolean isFree = worker.claim();
-                if (isFree) {
-                    Basket newOrder = theOrder.getOrderToPack();
-                    if (newOrder != null) {
-                        theBasket.set(newOrder);
-                        message.set(String.format("Current Order: #%03d", newOrder.getOrderNum()));
-                        reply.set(newOrder.getDetails());
-                    } else {
-                        worker.free();
-                        message.set("Waiting for orders...");
-                        reply.set("");
+                worker.claim(); // Wait until the current order is packed
+                Basket newOrder = null;
+                try {
+                    newOrder = theOrder.getOrderToPack(station, ORDER_WAIT_MILLIS);
+                } finally {
+                    if (newOrder == null) {
+                        worker.free(); // No order handed out, still free to take one
                     }
                 }
-                Thread.sleep(2000); // Sleep for 2 seconds before checking again
+                retryMillis = RETRY_MIN_MILLIS;
+                if (newOrder != null) {
+                    theBasket.set(newOrder);
+                    message.set(String.format("Current Order: #%03d", newOrder.getOrderNum()));
+                    reply.set(newOrder.getDetails());
+                } else {
+                    message.set("Waiting for orders...");
+                    reply.set("");
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt(); // Restore interrupted status
                 break;
             } catch (Exception e) {
-                DEBUG.error("PackingModel::checkForNewOrder\n%s", e.getMessage());
+                DEBUG.trace("PackingModel::checkForNewOrder %s, trying again in %d ms",
+                        e.getMessage(), retryMillis);
+                message.set("Can not reach the order system, trying again...");
+                reply.set("");
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                retryMillis = Math.min(retryMillis * 2, RETRY_MAX_MILLIS);
             }
         }
     }
@@ -118,6 +149,19 @@ public class PackingModel {
         }
     }
 
+    /**
+     * @return A name for this packing station, unique across every client
+     */
+    private static String stationName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return String.format("%s/%d/%d", host, ProcessHandle.current().pid(), theStations.incrementAndGet());
+    }
+
     /**
      * Gets the message property for binding.
      *
@@ -144,12 +188,15 @@ public class PackingModel {
         private boolean held = false;
 
         /**
-         * Claims the worker if it is free.
+         * Claims the worker, waiting until it is free.
          *
-         * @return True if the worker was free and is now claimed, false otherwise.
+         * @throws InterruptedException If interrupted while waiting
          */
-        public synchronized boolean claim() {
-            return held ? false : (held = true);
+        public synchronized void claim() throws InterruptedException {
+            while (held) {
+                wait();
+            }
+            held = true;
         }
 
         /**
@@ -157,6 +204,7 @@ public class PackingModel {
          */
         public synchronized void free() {
             held = false;
+            notifyAll();
         }
     }
 }
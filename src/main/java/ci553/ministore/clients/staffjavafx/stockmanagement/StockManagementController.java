@@ -77,6 +77,10 @@ public class StockManagementController {
             stock_management_message.textProperty().bindBidirectional(model.messageProperty());
             stock_management_reply.textProperty().bind(model.replyProperty());
 
+            // Pictures are decoded in the background, show each one when it is ready
+            model.productImageProperty().addListener((observable, oldValue, newValue) ->
+                    stock_image.setImage(newValue));
+
             // Add event handler for Enter key press
             stock_management_message.setOnKeyPressed(this::handleKeyPress);
 
@@ -1,12 +1,18 @@
 package ci553.ministore.clients.staffjavafx.stockmanagement;
 
-import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.util.DecodedImageCache;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.image.Image;
 import ci553.ministore.middle.MiddleFactory;
+import ci553.ministore.middle.ProductNumberAllocator;
 import ci553.ministore.middle.StockException;
 import ci553.ministore.middle.StockReadWriter;
 
@@ -19,8 +25,15 @@ public class StockManagementModel {
     private final StringProperty reply = new SimpleStringProperty();
     private final MiddleFactory middleFactory;
     private final StockReadWriter stockReader;
+    private final ProductNumberAllocator productNumbers;  // Numbers for new products
     private int currentQuantity = 1;
-    private Image productImage;
+    private final ObjectProperty<Image> productImage = new SimpleObjectProperty<>();
+    private final DecodedImageCache images = DecodedImageCache.getShared();
+    private Object imageRequest;  // Identifies the picture being loaded
+
+    // Size of the picture on the stock management screen
+    private static final double IMAGE_WIDTH = 103;
+    private static final double IMAGE_HEIGHT = 80;
 
     /**
      * Constructor for StockManagementModel.
@@ -32,6 +45,7 @@ public class StockManagementModel {
         try {
             this.middleFactory = mlf; // Store middleware factory
             this.stockReader = mlf.makeStockReadWriter();
+            this.productNumbers = new ProductNumberAllocator(stockReader);
             DEBUG.trace("StockManagementModel: StockReader created successfully");
         } catch (Exception e) {
             DEBUG.error("StockManagementModel: Failed to create stock reader: %s", e.getMessage());
@@ -72,6 +86,15 @@ public class StockManagementModel {
      * @return The product image.
      */
     public Image getProductImage() {
+        return productImage.get();
+    }
+
+    /**
+     * Gets the product image property, set when a picture finishes loading.
+     *
+     * @return The product image property.
+     */
+    public ObjectProperty<Image> productImageProperty() {
         return productImage;
     }
 
@@ -92,8 +115,10 @@ public class StockManagementModel {
      */
     public void doCheck(String productNum) {
         try {
-            if (stockReader.exists(productNum)) {
-                Product product = stockReader.getDetails(productNum);
+            // One call fetches the details, stock level and image together
+            Optional<ProductView> view = stockReader.getProductView(productNum, ImageSize.THUMBNAIL);
+            if (view.isPresent()) {
+                Product product = view.get().getProduct();
                 if (product.getQuantity() > 0) {
                     // Add a warning if stock is low
                     String stockWarning = product.getQuantity() < 5 ? "\nWarning: Low Stock!" : "";
@@ -113,23 +138,18 @@ public class StockManagementModel {
                     reply.set(formattedText);
 
                     // Load product image
-                    byte[] imgBytes = stockReader.getImage(productNum);
-                    if (imgBytes != null) {
-                        productImage = new Image(new ByteArrayInputStream(imgBytes));
-                    } else {
-                        productImage = null;
-                    }
+                    showImage(view.get().getImage(), view.get().getImageVersion());
                 } else {
                     reply.set("Product: " + product.getDescription() + " is currently out of stock");
-                    productImage = null;
+                    clearImage();
                 }
             } else {
                 reply.set("Error: Unknown product number " + productNum);
-                productImage = null;
+                clearImage();
             }
         } catch (StockException e) {
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
 
@@ -166,18 +186,15 @@ public class StockManagementModel {
                 reply.set(formattedText);
 
                 // Update image display
-                byte[] imgBytes = stockReader.getImage(productNum);
-                if (imgBytes != null) {
-                    productImage = new Image(new ByteArrayInputStream(imgBytes));
-                }
+                showImage(stockReader.getImage(productNum, ImageSize.THUMBNAIL), null);
             } else {
                 reply.set("Error: Unknown product number " + productNum);
-                productImage = null;
+                clearImage();
             }
         } catch (StockException e) {
             DEBUG.error("StockManagementModel::doAdd\n%s", e.getMessage());
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
 
@@ -203,14 +220,11 @@ public class StockManagementModel {
             reply.set(formattedText);
 
             // Update image display
-            byte[] imgBytes = stockReader.getImage(productNum);
-            if (imgBytes != null) {
-                productImage = new Image(new ByteArrayInputStream(imgBytes));
-            }
+            showImage(stockReader.getImage(productNum, ImageSize.THUMBNAIL), null);
         } catch (StockException e) {
             DEBUG.error("StockManagementModel::doCorrectStock\n%s", e.getMessage());
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
 
@@ -247,31 +261,23 @@ public class StockManagementModel {
             reply.set(formattedText);
 
             // Update image display (if applicable)
-            productImage = null;
+            clearImage();
         } catch (StockException e) {
             DEBUG.error("StockManagementModel::doNewProduct\n%s", e.getMessage());
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
 
     /**
-     * Generates a new product number based on existing products.
+     * Generates a new product number from a block leased from the stock list,
+     * so no other stock management screen can be given the same number.
      *
      * @return The new product number.
-     * @throws StockException If an error occurs while generating the product
-     *                        number.
+     * @throws StockException If a new block of numbers can not be leased.
      */
     private String generateNewProductNumber() throws StockException {
-        // Generate a new product number based on existing products
-        int maxProductNum = 0;
-        for (Product product : stockReader.getProducts()) {
-            int productNum = Integer.parseInt(product.getProductNum());
-            if (productNum > maxProductNum) {
-                maxProductNum = productNum;
-            }
-        }
-        return String.format("%04d", maxProductNum + 1);
+        return productNumbers.next();
     }
 
     /**
@@ -290,14 +296,11 @@ public class StockManagementModel {
             reply.set(formattedText);
 
             // Update image display
-            byte[] imgBytes = stockReader.getImage(productNum);
-            if (imgBytes != null) {
-                productImage = new Image(new ByteArrayInputStream(imgBytes));
-            }
+            showImage(stockReader.getImage(productNum, ImageSize.THUMBNAIL), null);
         } catch (StockException e) {
             DEBUG.error("StockManagementModel::updateProductImage\n%s", e.getMessage());
             reply.set("System Error: " + e.getMessage());
-            productImage = null;
+            clearImage();
         }
     }
 
@@ -352,10 +355,39 @@ public class StockManagementModel {
         try {
             stockReader.deleteProduct(productNum);
             reply.set("Deleted product: " + productNum);
-            productImage = null;
+            clearImage();
         } catch (StockException e) {
             DEBUG.error("StockManagementModel::doDeleteProduct\n%s", e.getMessage());
             reply.set("System Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Shows a product picture, decoded at the size it is shown at.
+     * The picture is taken from the shared cache if it is there, otherwise it
+     * is decoded in the background and the image property set when it is ready.
+     *
+     * @param imgBytes The encoded picture, or null if there is none.
+     * @param version  The version of the picture, or null if not known.
+     */
+    private void showImage(byte[] imgBytes, String version) {
+        Object request = new Object();
+        imageRequest = request;
+        productImage.set(null);
+        if (imgBytes != null) {
+            images.load(imgBytes, version, IMAGE_WIDTH, IMAGE_HEIGHT, image -> {
+                if (imageRequest == request) {  // Not replaced while loading
+                    productImage.set(image);
+                }
+            });
+        }
+    }
+
+    /**
+     * Clears the product picture, including one still loading.
+     */
+    private void clearImage() {
+        imageRequest = null;
+        productImage.set(null);
+    }
 }
@@ -3,6 +3,8 @@ package ci553.ministore.clients.start;
 import ci553.ministore.clients.Setup;
 import ci553.ministore.dbAccess.DBAccess;
 import ci553.ministore.dbAccess.DBAccessFactory;
+import ci553.ministore.dbAccess.SchemaMigrator;
+import ci553.ministore.middle.StockException;
 import java.sql.*;
 
 /**
@@ -35,7 +37,7 @@ public class AutoSetup {
     /**
      * Initializes the setup process if automatic setup is enabled.
      * If the runAuto flag is true, it runs the Setup.main method to perform the
-     * setup.
+     * setup, otherwise the existing database is upgraded in place.
      */
     public static void initializeIfNeeded() {
         if (runAuto) {
@@ -43,6 +45,20 @@ public class AutoSetup {
             Setup.main(new String[0]); // Run the setup process
         } else {
             System.out.println("Automatic setup is disabled");
+            upgradeDatabase();
+        }
+    }
+
+    /**
+     * Brings the schema of the existing database up to date, keeping its data.
+     */
+    public static void upgradeDatabase() {
+        try {
+            int applied = SchemaMigrator.migrate();
+            System.out.printf("Database schema is at version %d (%d migrations applied)%n",
+                    SchemaMigrator.getLatestVersion(), applied);
+        } catch (StockException e) {
+            System.out.println("Could not upgrade database: " + e.getMessage());
         }
     }
 }
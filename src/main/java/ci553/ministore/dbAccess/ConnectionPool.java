@@ -0,0 +1,248 @@
+package ci553.ministore.dbAccess;
+
+import ci553.ministore.debug.DEBUG;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections shared by all the database access classes.
+ * Connections are created lazily up to the maximum size given by DBAccess and
+ * are handed out one operation at a time, so callers on different threads
+ * (tills, kiosks, stock screens) no longer queue behind a single connection.
+ * Usage statistics are kept so that the pool can be sized sensibly.
+ *
+ * @version 1.0
+ */
+public class ConnectionPool {
+    private final DBAccess theDBAccess;                // How to open a connection
+    private final int maxSize;                         // Upper bound on open connections
+    private final long maxWaitMillis;                  // How long borrow() will block
+    private final Semaphore permits;                   // One permit per connection slot
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;                   // No more connections are lent out
+
+    // Statistics
+    private final AtomicInteger open = new AtomicInteger();       // Physical connections open
+    private final AtomicInteger active = new AtomicInteger();     // Connections lent out
+    private final AtomicInteger peakActive = new AtomicInteger(); // Highest value of active
+    private final AtomicLong borrows = new AtomicLong();          // Successful borrows
+    private final AtomicLong timeouts = new AtomicLong();         // Borrows that gave up
+    private final AtomicLong totalWaitNanos = new AtomicLong();   // Time spent waiting
+    private final AtomicLong maxWaitNanos = new AtomicLong();     // Longest single wait
+
+    /**
+     * Create a pool for the given database.
+     * No connections are opened until they are first needed.
+     *
+     * @param dbAccess Database driver details, the driver must already be loaded
+     */
+    public ConnectionPool(DBAccess dbAccess) {
+        theDBAccess = dbAccess;
+        maxSize = Math.max(1, dbAccess.maxConnections());
+        maxWaitMillis = dbAccess.maxWaitMillis();
+        permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting if all connections are in use.
+     * The connection must be returned by calling close() on it, normally by
+     * using it in a try-with-resources statement.
+     *
+     * @return A connection in auto-commit mode
+     * @throws SQLException If the pool is closed, no connection became free in time or one could not be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTransientConnectionException(
+                        "No database connection free after " + maxWaitMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection");
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection con = takeIdle();
+            if (con == null) {
+                con = new PooledConnection(this, theDBAccess.openConnection());
+                open.incrementAndGet();
+                DEBUG.trace("ConnectionPool: opened connection %d of %d", open.get(), maxSize);
+            } else {
+                con.lend();
+            }
+            borrows.incrementAndGet();
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return con;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Take an idle connection that is still usable, discarding any that have died.
+     *
+     * @return An idle connection or null if there are none
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection con;
+        while ((con = idle.pollFirst()) != null) {
+            if (con.isUsable()) {
+                return con;
+            }
+            discard(con);
+        }
+        return null;
+    }
+
+    /**
+     * Return a connection to the pool, called from PooledConnection.close().
+     * Any transaction left open is rolled back and auto-commit restored.
+     * Once the pool is closed the connection is closed instead.
+     *
+     * @param con The connection being returned
+     */
+    void release(PooledConnection con) {
+        active.decrementAndGet();
+        try {
+            if (!closed && con.reset()) {
+                idle.offerFirst(con);   // Most recently used first, keeps its caches warm
+            } else {
+                discard(con);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close a connection and forget about it.
+     *
+     * @param con The connection to throw away
+     */
+    private void discard(PooledConnection con) {
+        open.decrementAndGet();
+        con.closePhysical();
+    }
+
+    /**
+     * Record how long a caller waited for a connection.
+     *
+     * @param nanos Time spent waiting
+     */
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Close all idle connections. Connections currently lent out are
+     * closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection con;
+        while ((con = idle.pollFirst()) != null) {
+            discard(con);
+        }
+    }
+
+    /**
+     * @return The maximum number of connections the pool will open
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of physical connections currently open
+     */
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    /**
+     * @return The number of connections currently lent out
+     */
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    /**
+     * @return The number of open connections waiting to be borrowed
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * @return The highest number of connections lent out at the same time
+     */
+    public int getPeakActiveConnections() {
+        return peakActive.get();
+    }
+
+    /**
+     * @return The number of successful borrows since the pool was created
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * @return The number of borrows that timed out waiting for a connection
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return The mean time a borrow waited for a free connection, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long n = borrows.get() + timeouts.get();
+        return n == 0 ? 0.0 : totalWaitNanos.get() / (n * 1_000_000.0);
+    }
+
+    /**
+     * @return The longest time a borrow waited for a free connection, in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return Fraction (0.0 .. 1.0) of the pool that is currently lent out
+     */
+    public double getUtilisation() {
+        return (double) active.get() / maxSize;
+    }
+
+    /**
+     * Returns a one line summary of the pool statistics.
+     *
+     * @return Pool statistics
+     */
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[max=%d open=%d active=%d idle=%d peak=%d " +
+                        "borrows=%d timeouts=%d avgWait=%.3fms maxWait=%.3fms util=%.0f%%]",
+                maxSize, getOpenConnections(), getActiveConnections(), getIdleConnections(),
+                getPeakActiveConnections(), getBorrowCount(), getTimeoutCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getUtilisation() * 100);
+    }
+}
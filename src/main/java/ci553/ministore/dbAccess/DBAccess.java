@@ -1,5 +1,9 @@
 package ci553.ministore.dbAccess;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
 /**
   * Implements generic management of a database.
   * @author  Mike Smith University of Brighton
@@ -11,6 +15,9 @@ package ci553.ministore.dbAccess;
  */
 public class DBAccess
 {
+  private static final int DEFAULT_MAX_CONNECTIONS = 8;
+  private static final long DEFAULT_MAX_WAIT_MS    = 5000;
+
   public void loadDriver() throws Exception
   {
     throw new RuntimeException("No driver");
@@ -30,4 +37,35 @@ public class DBAccess
   {
     return "";
   }
+
+  /**
+   * Open a new physical connection to the database.
+   * Normally only called by the connection pool.
+   * @return A new connection
+   * @throws SQLException if the connection can not be made
+   */
+  public Connection openConnection() throws SQLException
+  {
+    return DriverManager.getConnection( urlOfDatabase(), username(), password() );
+  }
+
+  /**
+   * Maximum number of connections the pool may hold open at once.
+   * Can be overridden with the system property ministore.db.pool.size
+   * @return Upper bound on the size of the connection pool
+   */
+  public int maxConnections()
+  {
+    return Integer.getInteger( "ministore.db.pool.size", DEFAULT_MAX_CONNECTIONS );
+  }
+
+  /**
+   * How long a caller waits for a free connection before giving up.
+   * Can be overridden with the system property ministore.db.pool.wait
+   * @return Maximum wait in milliseconds
+   */
+  public long maxWaitMillis()
+  {
+    return Long.getLong( "ministore.db.pool.wait", DEFAULT_MAX_WAIT_MS );
+  }
 }
@@ -24,6 +24,7 @@ public class DBAccessFactory {
     private static String theAction = "";
     private static String theDataBase = "";
     private static String theOS = "";
+    private static ConnectionPool thePool = null;
 
     public static void setAction(String name) {
         theAction = name;
@@ -69,6 +70,22 @@ public class DBAccessFactory {
         return new DBAccess(); // Unknown
     }
 
+    /**
+     * Return the connection pool shared by all database access objects.
+     * The pool is created, and the database driver loaded, on first use.
+     *
+     * @return The shared connection pool
+     * @throws Exception If the database driver can not be loaded
+     */
+    public static synchronized ConnectionPool getConnectionPool() throws Exception {
+        if (thePool == null) {
+            DBAccess dbDriver = (new DBAccessFactory()).getNewDBAccess();
+            dbDriver.loadDriver();
+            thePool = new ConnectionPool(dbDriver);
+        }
+        return thePool;
+    }
+
     /**
      * return as a string the contents of a file
      * stripping out newline and carriage returns from contents
@@ -0,0 +1,169 @@
+package ci553.ministore.dbAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection lent out by the ConnectionPool.
+ * Closing it returns the underlying JDBC connection to the pool rather than
+ * closing it, so it should be used in a try-with-resources statement and
+ * must not be used after it has been closed. Closing it again does nothing.
+ * <p>
+ * Each connection keeps a cache of parameterised PreparedStatements keyed by
+ * their SQL text, so a query shape is only parsed and planned once per
+ * connection. As a connection is only ever used by one thread at a time the
+ * cached statements need no further locking.
+ *
+ * @version 1.0
+ */
+public class PooledConnection implements AutoCloseable {
+    private final ConnectionPool thePool;  // Pool this connection belongs to
+    private final Connection theCon;       // The physical connection
+    private final Map<String, PreparedStatement> theStatements;  // SQL text -> statement
+    private final AtomicBoolean theReturned = new AtomicBoolean();  // Closed since last lent out
+
+    private static final int MAX_CACHED_STATEMENTS =
+            Integer.getInteger("ministore.db.statementCache", 64);
+
+    /**
+     * Wrap a physical connection.
+     *
+     * @param pool Pool the connection is returned to
+     * @param con  The physical connection
+     */
+    PooledConnection(ConnectionPool pool, Connection con) {
+        thePool = pool;
+        theCon = con;
+        // Least recently used order, the eldest statement is closed when the cache is full
+        theStatements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_CACHED_STATEMENTS) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the underlying JDBC connection.
+     * Do not close this directly, close the PooledConnection instead.
+     *
+     * @return The Connection object
+     */
+    public Connection getConnection() {
+        return theCon;
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, compiling it only the
+     * first time this connection sees that SQL text.
+     * The statement belongs to the cache: do not close it, but do close any
+     * ResultSet obtained from it. Parameters and any batch left over from the
+     * previous use are cleared.
+     *
+     * @param sql Parameterised SQL, use ? for every value
+     * @return A ready to use prepared statement
+     * @throws SQLException If the SQL can not be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = theStatements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = theCon.prepareStatement(sql);
+            theStatements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+            ps.clearBatch();
+        }
+        return ps;
+    }
+
+    /**
+     * @return Number of prepared statements cached on this connection
+     */
+    public int getCachedStatementCount() {
+        return theStatements.size();
+    }
+
+    /**
+     * Returns the connection to the pool, only the first time it is called
+     * after the connection was lent out.
+     */
+    @Override
+    public void close() {
+        if (theReturned.compareAndSet(false, true)) {
+            thePool.release(this);
+        }
+    }
+
+    /**
+     * Mark the connection as lent out again, called when it is borrowed.
+     */
+    void lend() {
+        theReturned.set(false);
+    }
+
+    /**
+     * @return true if the physical connection is still open
+     */
+    boolean isUsable() {
+        try {
+            return !theCon.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Put the connection back into its default state before it is reused.
+     * Rolls back anything left uncommitted and turns auto-commit back on.
+     *
+     * @return true if the connection can be reused
+     */
+    boolean reset() {
+        try {
+            if (theCon.isClosed()) {
+                return false;
+            }
+            if (!theCon.getAutoCommit()) {
+                theCon.rollback();
+                theCon.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Close the physical connection, ignoring any errors.
+     */
+    void closePhysical() {
+        theStatements.values().forEach(PooledConnection::closeQuietly);
+        theStatements.clear();
+        try {
+            theCon.close();
+        } catch (SQLException e) {
+            // Nothing useful can be done
+        }
+    }
+
+    /**
+     * Close a statement, ignoring any errors.
+     *
+     * @param ps Statement to close
+     */
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            // Nothing useful can be done
+        }
+    }
+}
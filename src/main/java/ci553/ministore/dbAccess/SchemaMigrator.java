@@ -0,0 +1,235 @@
+package ci553.ministore.dbAccess;
+
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.StockException;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date.
+ * The version of the schema is recorded in SchemaVersion, one row for each
+ * migration applied. Each migration not yet applied is run in order, in its
+ * own transaction, so a database is upgraded in place and keeps its data.
+ * A migration that fails is rolled back and leaves the database at the
+ * version before it.
+ * <p>
+ * Migrations are only ever added to the end of the list, a migration that
+ * has been released is never changed.
+ *
+ * @version 1.0
+ */
+public class SchemaMigrator {
+
+    /**
+     * One step in the history of the schema.
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final String table;          // Table created by the migration, null if none
+        final String create;         // SQL creating the table, skipped if it already exists
+        final String[] statements;
+
+        /**
+         * @param version     Version the schema is at once applied
+         * @param description What the migration does
+         * @param statements  SQL to run, in order
+         */
+        Migration(int version, String description, String... statements) {
+            this(version, description, null, null, statements);
+        }
+
+        private Migration(int version, String description, String table, String create, String[] statements) {
+            this.version = version;
+            this.description = description;
+            this.table = table;
+            this.create = create;
+            this.statements = statements;
+        }
+
+        /**
+         * A migration that creates a table which an older Setup may already have made.
+         *
+         * @param version     Version the schema is at once applied
+         * @param description What the migration does
+         * @param table       Name of the table
+         * @param create      SQL creating the table, only run if it does not exist
+         * @param statements  SQL to run afterwards either way, in order
+         * @return The migration
+         */
+        static Migration creating(int version, String description, String table, String create,
+                                  String... statements) {
+            return new Migration(version, description, table, create, statements);
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            // The tables as Setup has always created them
+            new Migration(1, "Product and stock tables"),
+
+            // Setup made this table without a key before migrations were added
+            Migration.creating(2, "Scaled picture table", "ImageVariantTable",
+                    "create table ImageVariantTable (" +
+                            "picture        Varchar(80) not null," +
+                            "variant        Varchar(12) not null," +
+                            "version        Char(64)," +
+                            "image          Blob(16M))",
+                    "alter table ImageVariantTable alter column picture not null",
+                    "alter table ImageVariantTable alter column variant not null",
+                    "alter table ImageVariantTable add constraint ImageVariantTable_PK " +
+                            "primary key (picture, variant)"),
+
+            // Lookups by product number and the product/stock join were table scans
+            new Migration(3, "Primary keys, foreign key and indexes for the stock tables",
+                    "alter table ProductTable alter column productNo not null",
+                    "alter table ProductTable add constraint ProductTable_PK primary key (productNo)",
+                    "alter table StockTable alter column productNo not null",
+                    "alter table StockTable add constraint StockTable_PK primary key (productNo)",
+                    "alter table StockTable add constraint StockTable_Product_FK " +
+                            "foreign key (productNo) references ProductTable (productNo)",
+                    "create index ProductTable_Picture on ProductTable (picture)"),
+
+            // Product numbers were found by reading the whole catalogue
+            new Migration(4, "Sequence table for product numbers",
+                    "create table Sequences (" +
+                            "name           Varchar(40) not null primary key," +
+                            "nextValue      Integer not null)",
+                    "insert into Sequences (name, nextValue) " +
+                            "select 'productNo', coalesce(max(cast(productNo as Integer)), 0) + 1 " +
+                            "from ProductTable"),
+
+            // Order numbers restarted from 1 each time the server started
+            new Migration(5, "Sequence for order numbers",
+                    "insert into Sequences (name, nextValue) values ('orderNo', 1)")
+    );
+
+    private static final String SQL_CREATE_VERSION_TABLE =
+            "create table SchemaVersion (" +
+            "version        Integer not null primary key," +
+            "description    Varchar(80)," +
+            "appliedAt      Timestamp default current_timestamp)";
+    private static final String SQL_CURRENT_VERSION =
+            "select max(version) from SchemaVersion";
+    private static final String SQL_RECORD_VERSION =
+            "insert into SchemaVersion (version, description) values (?, ?)";
+
+    /**
+     * Returns the version the schema will be at once every migration is applied.
+     *
+     * @return The latest version
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Returns the version the schema of a database is at.
+     *
+     * @param con Connection to the database
+     * @return The version, 0 if no migration has been applied
+     * @throws SQLException If the version can not be read
+     */
+    public static int getVersion(Connection con) throws SQLException {
+        if (!hasTable(con, "SchemaVersion")) {
+            return 0;
+        }
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL_CURRENT_VERSION)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies every migration the database does not have yet.
+     *
+     * @param con Connection to the database, its auto commit setting is restored afterwards
+     * @return The number of migrations applied
+     * @throws SQLException If a migration fails, it is rolled back
+     */
+    public static int migrate(Connection con) throws SQLException {
+        if (!hasTable(con, "SchemaVersion")) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(SQL_CREATE_VERSION_TABLE);
+            }
+        }
+        int current = getVersion(con);
+        int applied = 0;
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > current) {
+                    apply(con, migration);
+                    applied++;
+                }
+            }
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+        return applied;
+    }
+
+    /**
+     * Applies every migration the shared database does not have yet.
+     *
+     * @return The number of migrations applied
+     * @throws StockException If the database can not be reached or a migration fails
+     */
+    public static int migrate() throws StockException {
+        try (PooledConnection con = DBAccessFactory.getConnectionPool().borrow()) {
+            return migrate(con.getConnection());
+        } catch (SQLException e) {
+            throw new StockException("SQL migrate: " + e.getMessage());
+        } catch (Exception e) {
+            throw new StockException("Can not connect to database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one migration and records it, all in one transaction.
+     *
+     * @param con       Connection with auto commit off
+     * @param migration The migration
+     * @throws SQLException If any statement fails, the migration is rolled back
+     */
+    private static void apply(Connection con, Migration migration) throws SQLException {
+        DEBUG.trace("SchemaMigrator: applying %d %s", migration.version, migration.description);
+        try (Statement stmt = con.createStatement();
+             PreparedStatement record = con.prepareStatement(SQL_RECORD_VERSION)) {
+            if (migration.table != null && !hasTable(con, migration.table)) {
+                stmt.execute(migration.create);
+            }
+            for (String sql : migration.statements) {
+                stmt.execute(sql);
+            }
+            record.setInt(1, migration.version);
+            record.setString(2, migration.description);
+            record.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw new SQLException(String.format("Migration %d (%s) failed: %s",
+                    migration.version, migration.description, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * @param con   Connection to the database
+     * @param table Name of a table, as written unquoted in SQL
+     * @return true if the table exists
+     * @throws SQLException If the database can not be asked
+     */
+    private static boolean hasTable(Connection con, String table) throws SQLException {
+        DatabaseMetaData md = con.getMetaData();
+        // Derby keeps unquoted names in upper case
+        try (ResultSet rs = md.getTables(null, null, table.toUpperCase(), new String[] {"TABLE"})) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ci553.ministore.dbAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.StockException;
+
+/**
+ * Data Access Object for the named number sequences in the Sequences table.
+ * Each sequence records the next number that has never been handed out, so
+ * numbers stay unique across restarts and across every server sharing the
+ * database. Numbers are leased in blocks, a block no longer needed is not
+ * given back.
+ */
+public class SequenceDAO {
+    private static final String SQL_ADVANCE =
+            "update Sequences set nextValue = " +
+            "  (case when nextValue > ? then nextValue else ? end) + ? " +
+            "  where name = ?";
+    private static final String SQL_VALUE =
+            "select nextValue from Sequences where name = ?";
+
+    // Shared database connection pool
+    private ConnectionPool thePool = null;
+
+    /**
+     * Constructor that attaches to the shared connection pool.
+     *
+     * @throws StockException If there's an error loading the driver or connecting to the database
+     */
+    public SequenceDAO() throws StockException {
+        try {
+            thePool = DBAccessFactory.getConnectionPool();
+        } catch (SQLException e) {
+            throw new StockException("SQL problem:" + e.getMessage());
+        } catch (Exception e) {
+            throw new StockException("Can not load database driver.");
+        }
+    }
+
+    /**
+     * Leases a block of numbers from a sequence.
+     *
+     * @param name  Name of the sequence
+     * @param count How many numbers are wanted, at least 1
+     * @param floor Lowest number the block may start at
+     * @return The block, which no other caller will be given
+     * @throws StockException If the sequence does not exist or the database fails
+     */
+    public NumberBlock lease(String name, int count, int floor) throws StockException {
+        try (PooledConnection con = thePool.borrow()) {
+            return lease(con, name, count, floor);
+        } catch (SQLException e) {
+            throw new StockException("SQL lease: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Leases a block of numbers using a connection the caller already holds.
+     * The sequence row stays locked from the update until the commit, so
+     * concurrent leases are handed out one after another.
+     *
+     * @param con   The connection, left with auto-commit off
+     * @param name  Name of the sequence
+     * @param count How many numbers are wanted, at least 1
+     * @param floor Lowest number the block may start at
+     * @return The block
+     * @throws SQLException If the sequence does not exist or the database fails
+     */
+    static NumberBlock lease(PooledConnection con, String name, int count, int floor) throws SQLException {
+        int size = Math.max(1, count);
+        Connection c = con.getConnection();
+        c.setAutoCommit(false);
+        PreparedStatement ps = con.prepare(SQL_ADVANCE);
+        ps.setInt(1, floor);
+        ps.setInt(2, floor);
+        ps.setInt(3, size);
+        ps.setString(4, name);
+        if (ps.executeUpdate() != 1) {
+            c.rollback();
+            throw new SQLException("No sequence " + name);
+        }
+        ps = con.prepare(SQL_VALUE);
+        ps.setString(1, name);
+        int end;
+        try (ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            end = rs.getInt(1);
+        }
+        c.commit();
+        DEBUG.trace("SequenceDAO: leased %s %d to %d", name, end - size, end - 1);
+        return new NumberBlock(end - size, size);
+    }
+}
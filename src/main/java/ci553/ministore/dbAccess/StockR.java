@@ -1,45 +1,92 @@
 package ci553.ministore.dbAccess;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.debug.DEBUG;
 import ci553.ministore.middle.StockException;
 import ci553.ministore.middle.StockReader;
+import ci553.ministore.util.ImageScaler;
+import ci553.ministore.util.LruCache;
+import ci553.ministore.util.TextSearchIndex;
 
-import java.sql.*;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the StockReader interface for database operations.
  * Provides methods to read product information and images from the database.
- * Uses JDBC for database connectivity and handles connection lifecycle.
+ * Uses JDBC for database connectivity, borrowing a connection from the shared
+ * pool for each operation so that calls from different clients run in parallel.
  */
 public class StockR implements StockReader {
-    private Connection theCon = null;  // Database connection instance
-    private Statement theStmt = null;  // SQL statement instance
+    private ConnectionPool thePool = null;  // Shared database connection pool
+
+    // Parameterised SQL, each shape is prepared once per pooled connection
+    private static final String SQL_EXISTS =
+            "select price from ProductTable " +
+            "  where  ProductTable.productNo = ?";
+    private static final String SQL_DETAILS =
+            "select description, price, stockLevel " +
+            "  from ProductTable, StockTable " +
+            "  where  ProductTable.productNo = ? " +
+            "  and    StockTable.productNo   = ProductTable.productNo";
+    private static final String SQL_VIEW =
+            "select description, price, picture, stockLevel " +
+            "  from ProductTable, StockTable " +
+            "  where  ProductTable.productNo = ? " +
+            "  and    StockTable.productNo   = ProductTable.productNo";
+    private static final String SQL_PICTURE =
+            "select picture from ProductTable " +
+            "  where  ProductTable.productNo = ?";
+    private static final String SQL_VARIANT =
+            "select version, image from ImageVariantTable " +
+            "  where  picture = ? and variant = ?";
+    private static final String SQL_DESCRIPTIONS =
+            "select productNo, description from ProductTable";
+    private static final String SQL_SEARCH_DETAILS =
+            "select ProductTable.productNo, description, price, stockLevel " +
+            "  from ProductTable, StockTable " +
+            "  where  StockTable.productNo   = ProductTable.productNo " +
+            "  and    ProductTable.productNo in (%s)";
+
+    // Product descriptions for searching, shared by every StockR and built on
+    // first use. Kept current by StockRW as descriptions change.
+    private static TextSearchIndex theSearchIndex = null;
+    private static final int MAX_SEARCH_RESULTS = Integer.getInteger("ministore.search.maxResults", 50);
+
+    // Images are the largest thing served, so the bytes read for each picture
+    // are kept and the same array is handed to every caller. Shared by every StockR.
+    // Keyed by picture path, with the size appended for scaled copies.
+    private static final LruCache<String, ProductImage> theImages = new LruCache<>(
+            Long.getLong("ministore.imageCache.bytes", 32L * 1024 * 1024), 0,
+            image -> image.getData().length);
+    // Product number -> picture path, saves the query in getImage()
+    private static final LruCache<String, String> thePictures = new LruCache<>(
+            Integer.getInteger("ministore.imageCache.paths", 1000), 0);
+    // Counts pictures and images forgotten, so one read before a change is not cached after it
+    private static final AtomicLong theImageChanges = new AtomicLong();
 
     /**
-     * Constructor that initializes the database connection.
-     * Creates a new connection using DBAccess factory and configures auto-commit.
+     * Constructor that attaches to the shared connection pool.
+     * The pool loads the database driver the first time it is used.
      *
      * @throws StockException If database connection or driver loading fails
      */
     public StockR() throws StockException {
         try {
-            // Create database access instance
-            DBAccess dbDriver = (new DBAccessFactory()).getNewDBAccess();
-            dbDriver.loadDriver();
-
-            // Establish database connection with credentials
-            theCon = DriverManager.getConnection(
-                    dbDriver.urlOfDatabase(),
-                    dbDriver.username(),
-                    dbDriver.password());
-
-            // Create statement object and enable auto-commit
-            theStmt = theCon.createStatement();
-            theCon.setAutoCommit(true);
+            thePool = DBAccessFactory.getConnectionPool();
         } catch (SQLException e) {
             throw new StockException("SQL problem:" + e.getMessage());
         } catch (Exception e) {
@@ -48,39 +95,44 @@ public class StockR implements StockReader {
     }
 
     /**
-     * Gets the Statement object for executing SQL queries.
-     * @return The Statement object
+     * Borrows a connection from the pool for the duration of one operation.
+     * The caller must close it to return it to the pool.
+     * @return A pooled connection
+     * @throws SQLException If no connection could be obtained
      */
-    protected Statement getStatementObject() {
-        return theStmt;
+    protected PooledConnection borrowConnection() throws SQLException {
+        return thePool.borrow();
     }
 
     /**
-     * Gets the Connection object for database operations.
-     * @return The Connection object
+     * Checks if a product exists in the database.
+     * @param pNum Product number to check
+     * @return true if product exists, false otherwise
+     * @throws StockException If SQL query fails
      */
-    protected Connection getConnectionObject() {
-        return theCon;
+    public boolean exists(String pNum) throws StockException {
+        try (PooledConnection con = borrowConnection()) {
+            return exists(con, pNum);
+        } catch (SQLException e) {
+            throw new StockException("SQL exists: " + e.getMessage());
+        }
     }
 
     /**
-     * Checks if a product exists in the database.
+     * Checks if a product exists using a connection the caller already holds.
+     * @param con Connection to use
      * @param pNum Product number to check
      * @return true if product exists, false otherwise
-     * @throws StockException If SQL query fails
+     * @throws SQLException If SQL query fails
      */
-    public synchronized boolean exists(String pNum) throws StockException {
-        try {
-            // Query to check product existence by product number
-            ResultSet rs = getStatementObject().executeQuery(
-                    "select price from ProductTable " +
-                            "  where  ProductTable.productNo = '" + pNum + "'"
-            );
+    protected boolean exists(PooledConnection con, String pNum) throws SQLException {
+        // Query to check product existence by product number
+        PreparedStatement ps = con.prepare(SQL_EXISTS);
+        ps.setString(1, pNum);
+        try (ResultSet rs = ps.executeQuery()) {
             boolean res = rs.next();
             DEBUG.trace("DB StockR: exists(%s) -> %s", pNum, (res ? "T" : "F"));
             return res;
-        } catch (SQLException e) {
-            throw new StockException("SQL exists: " + e.getMessage());
         }
     }
 
@@ -90,18 +142,29 @@ public class StockR implements StockReader {
      * @return Product object containing product details
      * @throws StockException If SQL query fails
      */
-    public synchronized Product getDetails(String pNum) throws StockException {
-        try {
-            // Create default product object
-            Product dt = new Product("0", "", 0.00, 0);
+    public Product getDetails(String pNum) throws StockException {
+        try (PooledConnection con = borrowConnection()) {
+            return getDetails(con, pNum);
+        } catch (SQLException e) {
+            throw new StockException("SQL getDetails: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves product details using a connection the caller already holds.
+     * @param con Connection to use
+     * @param pNum Product number to retrieve details for
+     * @return Product object containing product details
+     * @throws SQLException If SQL query fails
+     */
+    protected Product getDetails(PooledConnection con, String pNum) throws SQLException {
+        // Create default product object
+        Product dt = new Product("0", "", 0.00, 0);
 
-            // Query to get product details from both ProductTable and StockTable
-            ResultSet rs = getStatementObject().executeQuery(
-                    "select description, price, stockLevel " +
-                            "  from ProductTable, StockTable " +
-                            "  where  ProductTable.productNo = '" + pNum + "' " +
-                            "  and    StockTable.productNo   = '" + pNum + "'"
-            );
+        // Query to get product details from both ProductTable and StockTable
+        PreparedStatement ps = con.prepare(SQL_DETAILS);
+        ps.setString(1, pNum);
+        try (ResultSet rs = ps.executeQuery()) {
 
             // Populate product object if result exists
             if (rs.next()) {
@@ -110,55 +173,355 @@ public class StockR implements StockReader {
                 dt.setPrice(rs.getDouble("price"));
                 dt.setQuantity(rs.getInt("stockLevel"));
             }
-            rs.close();
-            return dt;
-        } catch (SQLException e) {
-            throw new StockException("SQL getDetails: " + e.getMessage());
         }
+        return dt;
     }
 
     /**
-     * Retrieves product image as byte array from the database.
-     * Falls back to default image if specified image not found.
-     * @param pNum Product number to retrieve image for
+     * Retrieves a product image scaled to a given size.
+     * Queries ProductTable for the image path, unless it is cached.
+     * @param pNum Product number
+     * @param size Size wanted
      * @return byte array containing the image data
-     * @throws StockException If image retrieval fails
+     * @throws StockException If database query fails or the image can not be read
      */
-    public synchronized byte[] getImage(String pNum) throws StockException {
-        String imagePath = "default.png";  // Default image path
-        try {
+    public byte[] getImage(String pNum, ImageSize size) throws StockException {
+        return getProductImage(pNum, size).getData();
+    }
+
+    /**
+     * Gets the product image at a given size only if the caller does not already have it.
+     * @param pNum Product number
+     * @param size Size wanted
+     * @param knownVersion Version of the image the caller holds, or null
+     * @return The image, or empty if the caller's version is current
+     * @throws StockException If database query fails or the image can not be read
+     */
+    public Optional<ProductImage> getImageIfChanged(String pNum, ImageSize size, String knownVersion)
+            throws StockException {
+        ProductImage image = getProductImage(pNum, size);
+        if (image.getVersion().equals(knownVersion)) {
+            DEBUG.trace("DB StockR: getImageIfChanged(%s) -> not modified", pNum);
+            return Optional.empty();
+        }
+        return Optional.of(image);
+    }
+
+    /**
+     * Looks up the picture of a product and reads it.
+     * @param pNum Product number
+     * @param size Size wanted
+     * @return The image and its version
+     * @throws StockException If database query fails or the image can not be read
+     */
+    private ProductImage getProductImage(String pNum, ImageSize size) throws StockException {
+        String imagePath = thePictures.get(pNum);
+        if (imagePath == null) {
+            long changes = theImageChanges.get();
+            imagePath = "default.png";  // Default image path
             // Query to get image path from ProductTable
-            ResultSet rs = getStatementObject().executeQuery(
-                    "select picture from ProductTable " +
-                            "  where  ProductTable.productNo = '" + pNum + "'");
+            try (PooledConnection con = borrowConnection()) {
+                PreparedStatement ps = con.prepare(SQL_PICTURE);
+                ps.setString(1, pNum);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        imagePath = rs.getString("picture");
+                    }
+                }
+            } catch (SQLException e) {
+                DEBUG.error("getImage()\n%s\n", e.getMessage());
+                throw new StockException("SQL getImage: " + e.getMessage());
+            }
+            rememberPicture(pNum, imagePath, changes);
+        }
 
-            if (rs.next()) {
+        DEBUG.trace("DB StockR: getImage -> %s %s", imagePath, size);
+        return readImage(imagePath, size);
+    }
+
+    /**
+     * Retrieves the product details, stock level and image in one call.
+     * A single joined query replaces the three used by exists(),
+     * getDetails() and getImage().
+     * @param pNum Product number to look up
+     * @param size Size of image wanted
+     * @return The product view, or empty if the product does not exist
+     * @throws StockException If the query fails
+     */
+    public Optional<ProductView> getProductView(String pNum, ImageSize size) throws StockException {
+        long changes = theImageChanges.get();
+        Product product;
+        String imagePath;
+        try (PooledConnection con = borrowConnection()) {
+            PreparedStatement ps = con.prepare(SQL_VIEW);
+            ps.setString(1, pNum);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    DEBUG.trace("DB StockR: getProductView(%s) -> none", pNum);
+                    return Optional.empty();
+                }
+                product = new Product(pNum,
+                        rs.getString("description"),
+                        rs.getDouble("price"),
+                        rs.getInt("stockLevel"));
                 imagePath = rs.getString("picture");
             }
-            rs.close();
         } catch (SQLException e) {
-            DEBUG.error("getImage()\n%s\n", e.getMessage());
-            throw new StockException("SQL getImage: " + e.getMessage());
+            throw new StockException("SQL getProductView: " + e.getMessage());
         }
+        DEBUG.trace("DB StockR: getProductView(%s) -> %s", pNum, imagePath);
+        rememberPicture(pNum, imagePath, changes);
 
-        DEBUG.trace("DB StockR: getImage -> %s", imagePath);
+        // A missing picture should not stop the product being shown
+        try {
+            ProductImage image = readImage(imagePath, size);
+            return Optional.of(new ProductView(product, imagePath, image.getData(), image.getVersion()));
+        } catch (StockException e) {
+            DEBUG.trace("DB StockR: getProductView(%s) %s", pNum, e.getMessage());
+            return Optional.of(new ProductView(product, imagePath, null));
+        }
+    }
 
-        // Read image file from resources and convert to byte array
-        try (InputStream is = getClass().getResourceAsStream("/" + imagePath);
-             ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+    /**
+     * Reads an image at a given size from the image cache, or failing that
+     * from the stored scaled copies or the application resources.
+     * The bytes returned are shared with every other caller and must not be changed.
+     * @param imagePath Path of the image resource
+     * @param size Size wanted
+     * @return The image data and its version
+     * @throws StockException If the image can not be read
+     */
+    protected ProductImage readImage(String imagePath, ImageSize size) throws StockException {
+        String key = cacheKey(imagePath, size);
+        ProductImage image = theImages.get(key);
+        if (image != null) {
+            return image;
+        }
+        long changes = theImageChanges.get();
+        if (size == ImageSize.FULL) {
+            image = readResource(imagePath);
+        } else {
+            image = readVariant(imagePath, size);
+            if (image == null) {
+                // Not stored yet, scale it now and keep it in memory only
+                image = scaleImage(readImage(imagePath, ImageSize.FULL), size);
+            }
+        }
+        if (theImageChanges.get() == changes) {
+            theImages.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Caches the picture path of a product, unless a picture was forgotten
+     * while it was being read, as it may then already be out of date.
+     * @param pNum Product number
+     * @param imagePath Picture path read
+     * @param changes Count of changes before the read started
+     */
+    private static void rememberPicture(String pNum, String imagePath, long changes) {
+        if (theImageChanges.get() == changes) {
+            thePictures.put(pNum, imagePath);
+        } else {
+            DEBUG.trace("DB StockR: picture of %s changed while being read, not cached", pNum);
+        }
+    }
+
+    /**
+     * Reads an image from the application resources.
+     * @param imagePath Path of the image resource
+     * @return The image data and its version
+     * @throws StockException If the image can not be read
+     */
+    private ProductImage readResource(String imagePath) throws StockException {
+        // Read image file from resources straight into a byte array
+        try (InputStream is = getClass().getResourceAsStream("/" + imagePath)) {
             if (is == null) {
                 throw new IOException("Resource not found: " + imagePath);
             }
+            return new ProductImage(is.readAllBytes());
+        } catch (IOException e) {
+            throw new StockException("Error reading image file: " + imagePath + " (" + e.getMessage() + ")");
+        }
+    }
 
-            // Read image data in chunks
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                bos.write(buffer, 0, bytesRead);
+    /**
+     * Reads a stored scaled copy of an image.
+     * @param imagePath Path of the full size image
+     * @param size Size wanted
+     * @return The scaled image, or null if none has been stored
+     */
+    private ProductImage readVariant(String imagePath, ImageSize size) {
+        try (PooledConnection con = borrowConnection()) {
+            PreparedStatement ps = con.prepare(SQL_VARIANT);
+            ps.setString(1, imagePath);
+            ps.setString(2, size.name());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new ProductImage(rs.getBytes("image"), rs.getString("version"));
+                }
             }
-            return bos.toByteArray();
+        } catch (SQLException e) {
+            // Scaled copies are optional, for example in a database made before they existed
+            DEBUG.trace("DB StockR: readVariant(%s, %s) %s", imagePath, size, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Makes a scaled copy of an image.
+     * @param full The full size image
+     * @param size Size wanted
+     * @return The scaled image
+     * @throws StockException If the image can not be decoded or encoded
+     */
+    protected static ProductImage scaleImage(ProductImage full, ImageSize size) throws StockException {
+        try {
+            byte[] scaled = ImageScaler.scale(full.getData(), size.getMaxDimension());
+            return scaled == full.getData() ? full : new ProductImage(scaled);
         } catch (IOException e) {
-            throw new StockException("Error reading image file: " + imagePath + " (" + e.getMessage() + ")");
+            throw new StockException("Error scaling image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param imagePath Path of the full size image
+     * @param size Size of the image
+     * @return The image cache key for the image at that size
+     */
+    private static String cacheKey(String imagePath, ImageSize size) {
+        return size == ImageSize.FULL ? imagePath : imagePath + "#" + size.name();
+    }
+
+    /**
+     * Forgets the cached picture path of a product and the cached image at
+     * that path, so that a changed or replaced picture is read again.
+     * @param pNum Product number that changed
+     */
+    protected static void forgetImage(String pNum) {
+        theImageChanges.incrementAndGet();
+        String imagePath = thePictures.remove(pNum);
+        if (imagePath != null) {
+            forgetImagePath(imagePath);
+        }
+    }
+
+    /**
+     * Forgets the cached image at a path at every size,
+     * so that a replaced file is read again.
+     * @param imagePath Path of the image resource
+     */
+    protected static void forgetImagePath(String imagePath) {
+        theImageChanges.incrementAndGet();
+        for (ImageSize size : ImageSize.values()) {
+            theImages.remove(cacheKey(imagePath, size));
+        }
+    }
+
+    /**
+     * @return The cache of image bytes, for its statistics
+     */
+    public static LruCache<String, ProductImage> getImageCache() {
+        return theImages;
+    }
+
+    /**
+     * Finds products by their description using the in-memory search index.
+     * Only the stock levels of the products found are read from the database,
+     * in one query.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted, no more than ministore.search.maxResults
+     * @return The matching products, best match first
+     * @throws StockException If the index can not be built or the query fails
+     */
+    public List<Product> searchProducts(String query, int maxResults) throws StockException {
+        List<String> found = getSearchIndex().search(query, Math.min(maxResults, MAX_SEARCH_RESULTS));
+        DEBUG.trace("DB StockR: searchProducts(%s) -> %d", query, found.size());
+        if (found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Product> products = new HashMap<>();
+        String sql = String.format(SQL_SEARCH_DETAILS,
+                String.join(", ", Collections.nCopies(found.size(), "?")));
+        try (PooledConnection con = borrowConnection()) {
+            PreparedStatement ps = con.prepare(sql);
+            for (int i = 0; i < found.size(); i++) {
+                ps.setString(i + 1, found.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String pNum = rs.getString("productNo");
+                    products.put(pNum, new Product(pNum, rs.getString("description"),
+                            rs.getDouble("price"), rs.getInt("stockLevel")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StockException("SQL searchProducts: " + e.getMessage());
+        }
+        // Back into the order the index ranked them, a product deleted since is left out
+        List<Product> result = new ArrayList<>(found.size());
+        for (String pNum : found) {
+            Product product = products.get(pNum);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the search index, building it from the product table on first use.
+     *
+     * @return The shared search index
+     * @throws StockException If the product descriptions can not be read
+     */
+    protected TextSearchIndex getSearchIndex() throws StockException {
+        synchronized (StockR.class) {
+            if (theSearchIndex == null) {
+                TextSearchIndex index = new TextSearchIndex();
+                try (PooledConnection con = borrowConnection();
+                     ResultSet rs = con.prepare(SQL_DESCRIPTIONS).executeQuery()) {
+                    while (rs.next()) {
+                        index.put(rs.getString("productNo"), rs.getString("description"));
+                    }
+                } catch (SQLException e) {
+                    throw new StockException("SQL searchProducts: " + e.getMessage());
+                }
+                DEBUG.trace("DB StockR: search index built, %d products", index.size());
+                theSearchIndex = index;
+            }
+            return theSearchIndex;
+        }
+    }
+
+    /**
+     * Drops the search index so that it is built again on the next search,
+     * used after many products have changed at once.
+     */
+    protected static void forgetSearchIndex() {
+        synchronized (StockR.class) {
+            theSearchIndex = null;
+        }
+    }
+
+    /**
+     * Brings the search index up to date with a product's description,
+     * if the index has been built. Called once the change is in the database.
+     *
+     * @param pNum        Product number
+     * @param description The new description, or null if the product was deleted
+     */
+    protected static void updateSearchIndex(String pNum, String description) {
+        synchronized (StockR.class) {
+            if (theSearchIndex != null) {
+                if (description == null) {
+                    theSearchIndex.remove(pNum);
+                } else {
+                    theSearchIndex.put(pNum, description);
+                }
+            }
         }
     }
 }
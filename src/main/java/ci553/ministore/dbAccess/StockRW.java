@@ -1,32 +1,157 @@
 package ci553.ministore.dbAccess;
 
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductPage;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.StockChangeListener;
 import ci553.ministore.middle.StockException;
 import ci553.ministore.middle.StockReadWriter;
+import ci553.ministore.util.Csv;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.sql.ResultSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
 /**
  * Stock Read-Write implementation for database operations.
  * Extends StockR to provide write capabilities in addition to read operations.
  * Implements thread-safe database operations for stock management.
- * All public methods are synchronized to ensure thread safety.
+ * Each operation borrows its own pooled connection, so no method needs
+ * to be synchronized. An operation that changes both ProductTable and
+ * StockTable does so in one transaction, so a product is never left half
+ * added or deleted, and two callers adding the same product can not both
+ * succeed.
  */
 public class StockRW extends StockR implements StockReadWriter {
 
+    // Parameterised SQL, each shape is prepared once per pooled connection
+    private static final String SQL_BUY =
+            "update StockTable set stockLevel = stockLevel - ? " +
+            "  where productNo = ? and stockLevel >= ?";
+    private static final String SQL_ADD =
+            "update StockTable set stockLevel = stockLevel + ? " +
+            "  where productNo = ?";
+    private static final String SQL_INSERT_PRODUCT =
+            "insert into ProductTable values (?, ?, ?, ?)";
+    private static final String SQL_INSERT_STOCK =
+            "insert into StockTable values (?, ?)";
+    private static final String SQL_UPDATE_PRODUCT =
+            "update ProductTable set description = ?, price = ? " +
+            "  where productNo = ?";
+    private static final String SQL_SET_STOCK =
+            "update StockTable set stockLevel = ? " +
+            "  where productNo = ?";
+    private static final String SQL_ALL_PRODUCTS =
+            "SELECT ProductTable.productNo, ProductTable.description, ProductTable.price, StockTable.stockLevel " +
+            "FROM ProductTable " +
+            "JOIN StockTable ON ProductTable.productNo = StockTable.productNo";
+    private static final String SQL_PRODUCTS_PAGE =
+            "SELECT ProductTable.productNo, ProductTable.description, ProductTable.price, StockTable.stockLevel " +
+            "FROM ProductTable " +
+            "JOIN StockTable ON ProductTable.productNo = StockTable.productNo " +
+            "WHERE ProductTable.productNo > ? " +
+            "ORDER BY ProductTable.productNo " +
+            "FETCH FIRST ? ROWS ONLY";
+    private static final String SQL_IMPORT_PRODUCT =
+            "update ProductTable set description = ?, picture = ?, price = ? " +
+            "  where productNo = ?";
+    private static final String SQL_EXPORT =
+            "select ProductTable.productNo, description, picture, price, stockLevel " +
+            "  from ProductTable, StockTable " +
+            "  where StockTable.productNo = ProductTable.productNo " +
+            "  order by ProductTable.productNo";
+    private static final String SQL_MAX_PRODUCT_NO =
+            "select max(productNo) from ProductTable";
+    private static final String SQL_UPDATE_PICTURE =
+            "UPDATE ProductTable SET picture = ? WHERE productNo = ?";
+    private static final String SQL_DELETE_STOCK =
+            "DELETE FROM StockTable WHERE productNo = ?";
+    private static final String SQL_DELETE_PRODUCT =
+            "DELETE FROM ProductTable WHERE productNo = ?";
+    private static final String SQL_ALL_PICTURES =
+            "select distinct picture from ProductTable";
+    private static final String SQL_DELETE_VARIANTS =
+            "delete from ImageVariantTable where picture = ?";
+    private static final String SQL_INSERT_VARIANT =
+            "insert into ImageVariantTable values (?, ?, ?, ?)";
+
+    // Product numbers are Char(4)
+    private static final String PRODUCT_SEQUENCE = "productNo";
+    private static final int MAX_PRODUCT_NO = 9999;
+
+    // Holds expire when unused for this long, the sweeper looks for them this often
+    private static final long HOLD_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("ministore.stock.holdSeconds", 900));
+    private static final long SWEEP_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("ministore.stock.sweepSeconds", 30));
+
+    // Columns of a catalogue CSV file, in order
+    public static final String CSV_HEADER = "productNo,description,picture,price,stockLevel";
+    private static final String PLACEHOLDER_PICTURE = "ci553/ministore/images/placeholder.png";
+
+    // Largest page getProductsPage returns, bounds each query and RMI response
+    private static final int MAX_PAGE_SIZE = Integer.getInteger("ministore.stock.maxPageSize", 500);
+
+    private static StockReservations theReservations = null;  // Shared by every StockRW
+
+    // Told about every product changed through any StockRW
+    private static final List<StockChangeListener> theListeners = new CopyOnWriteArrayList<>();
+
     /**
      * Constructs a new StockRW instance.
-     * Initializes database connection through parent class.
+     * Attaches to the shared connection pool through parent class.
      * @throws StockException If database initialization fails
      */
     public StockRW() throws StockException {
         super();
     }
 
+    /**
+     * Registers a listener to be told about every product changed
+     * through any StockRW, for example to keep a cache up to date.
+     * @param listener The listener to add
+     */
+    public static void addChangeListener(StockChangeListener listener) {
+        theListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with addChangeListener.
+     * @param listener The listener to remove
+     */
+    public static void removeChangeListener(StockChangeListener listener) {
+        theListeners.remove(listener);
+    }
+
+    /**
+     * Forgets any cached image for a product and tells every listener
+     * that the product has changed.
+     * @param pNum Product number that changed
+     */
+    protected void fireProductChanged(String pNum) {
+        forgetImage(pNum);
+        for (StockChangeListener listener : theListeners) {
+            listener.productChanged(pNum);
+        }
+    }
+
     /**
      * Attempts to purchase stock by reducing the stock level.
      * Only succeeds if sufficient stock is available.
@@ -35,39 +160,149 @@ public class StockRW extends StockR implements StockReadWriter {
      * @return true if purchase successful, false if insufficient stock
      * @throws StockException If database operation fails
      */
-    public synchronized boolean buyStock(String pNum, int amount) throws StockException {
+    public boolean buyStock(String pNum, int amount) throws StockException {
         DEBUG.trace("DB StockRW: buyStock(%s,%d)", pNum, amount);
         int updates = 0;
-        try {
+        try (PooledConnection con = borrowConnection()) {
             // Update stock level only if sufficient stock exists
-            getStatementObject().executeUpdate(
-                    "update StockTable set stockLevel = stockLevel-" + amount +
-                            "       where productNo = '" + pNum + "' and " +
-                            "             stockLevel >= " + amount + "");
-            updates = 1;
+            PreparedStatement ps = con.prepare(SQL_BUY);
+            ps.setInt(1, amount);
+            ps.setString(2, pNum);
+            ps.setInt(3, amount);
+            updates = ps.executeUpdate();
         } catch (SQLException e) {
             throw new StockException("SQL buyStock: " + e.getMessage());
         }
-        DEBUG.trace("buyStock() updates -> %n", updates);
+        DEBUG.trace("buyStock() updates -> %d", updates);
+        if (updates > 0) {
+            fireProductChanged(pNum);
+        }
         return updates > 0;
     }
 
+    /**
+     * Buys every line of a basket in one transaction.
+     * The decrements are sent to the database as a single batch and committed
+     * once, so a basket costs one round trip however many lines it has.
+     * If any line has insufficient stock the transaction is rolled back and
+     * no stock is taken for any line.
+     * @param basket Basket to buy, one entry per line
+     * @return For each line, in basket order, true if there was enough stock
+     * @throws StockException If database operation fails
+     */
+    public boolean[] checkout(Basket basket) throws StockException {
+        DEBUG.trace("DB StockRW: checkout(%d lines)", basket.size());
+        boolean[] bought = new boolean[basket.size()];
+        if (basket.isEmpty()) {
+            return bought;
+        }
+        try (PooledConnection con = borrowConnection()) {
+            Connection c = con.getConnection();
+            c.setAutoCommit(false);
+            // Same guarded decrement as buyStock, one batch entry per line
+            PreparedStatement ps = con.prepare(SQL_BUY);
+            for (Product pr : basket) {
+                ps.setInt(1, pr.getQuantity());
+                ps.setString(2, pr.getProductNum());
+                ps.setInt(3, pr.getQuantity());
+                ps.addBatch();
+            }
+            int[] updates = ps.executeBatch();
+
+            boolean all = true;
+            for (int i = 0; i < bought.length; i++) {
+                bought[i] = updates[i] > 0 || updates[i] == PreparedStatement.SUCCESS_NO_INFO;
+                all &= bought[i];
+            }
+            if (all) {
+                c.commit();
+                basket.forEach(pr -> fireProductChanged(pr.getProductNum()));
+            } else {
+                c.rollback();
+            }
+            DEBUG.trace("checkout() %s", all ? "committed" : "rolled back");
+        } catch (SQLException e) {
+            // Returning the connection to the pool rolls back any partial work
+            throw new StockException("SQL checkout: " + e.getMessage());
+        }
+        return bought;
+    }
+
+    /**
+     * Gets the stock holds shared by every StockRW, creating them on first use.
+     * @return The stock reservations
+     * @throws StockException If the database can not be reached
+     */
+    private static synchronized StockReservations getReservations() throws StockException {
+        if (theReservations == null) {
+            theReservations = new StockReservations(new StockRW(), HOLD_MILLIS, SWEEP_MILLIS);
+        }
+        return theReservations;
+    }
+
+    /**
+     * Holds stock for a client without taking it from the database.
+     * @param holdId Identifies the client's hold
+     * @param pNum Product number to hold
+     * @param amount Quantity to hold
+     * @return true if held, false if not enough stock is available
+     * @throws StockException If database operation fails
+     */
+    public boolean reserveStock(String holdId, String pNum, int amount) throws StockException {
+        return getReservations().reserve(holdId, pNum, amount);
+    }
+
+    /**
+     * Gives back part of a client's hold.
+     * @param holdId Identifies the client's hold
+     * @param pNum Product number to give back
+     * @param amount Quantity to give back
+     * @throws StockException If database operation fails
+     */
+    public void releaseStock(String holdId, String pNum, int amount) throws StockException {
+        getReservations().release(holdId, pNum, amount);
+    }
+
+    /**
+     * Takes the stock held by a client from the database in one transaction.
+     * @param holdId Identifies the client's hold
+     * @param basket The basket being bought
+     * @return true if taken, false if the hold had expired, did not match
+     *         the basket or stock ran short
+     * @throws StockException If database operation fails
+     */
+    public boolean commitReservation(String holdId, Basket basket) throws StockException {
+        DEBUG.trace("DB StockRW: commitReservation(%s)", holdId);
+        return getReservations().commit(holdId, basket);
+    }
+
+    /**
+     * Gives back everything held by a client.
+     * @param holdId Identifies the client's hold
+     * @throws StockException If database operation fails
+     */
+    public void cancelReservation(String holdId) throws StockException {
+        getReservations().cancel(holdId);
+    }
+
     /**
      * Adds stock to an existing product.
      * @param pNum Product number to add stock to
      * @param amount Quantity to add
      * @throws StockException If database operation fails
      */
-    public synchronized void addStock(String pNum, int amount) throws StockException {
-        try {
+    public void addStock(String pNum, int amount) throws StockException {
+        try (PooledConnection con = borrowConnection()) {
             // Increment stock level by specified amount
-            getStatementObject().executeUpdate(
-                    "update StockTable set stockLevel = stockLevel + " + amount +
-                            "         where productNo = '" + pNum + "'");
+            PreparedStatement ps = con.prepare(SQL_ADD);
+            ps.setInt(1, amount);
+            ps.setString(2, pNum);
+            ps.executeUpdate();
             DEBUG.trace("DB StockRW: addStock(%s,%d)", pNum, amount);
         } catch (SQLException e) {
             throw new StockException("SQL addStock: " + e.getMessage());
         }
+        fireProductChanged(pNum);
     }
 
     /**
@@ -76,37 +311,49 @@ public class StockRW extends StockR implements StockReadWriter {
      * @param detail Product details to modify/create
      * @throws StockException If database operation fails
      */
-    public synchronized void modifyStock(Product detail) throws StockException {
+    public void modifyStock(Product detail) throws StockException {
         DEBUG.trace("DB StockRW: modifyStock(%s)", detail.getProductNum());
-        try {
-            if (!exists(detail.getProductNum())) {
-                // Insert new product into ProductTable with placeholder image
-                getStatementObject().executeUpdate(
-                        "insert into ProductTable values ('" +
-                                detail.getProductNum() + "', " +
-                                "'" + detail.getDescription() + "', " +
-                                "'ci553/ministore/images/placeholder.png', " +
-                                detail.getPrice() + ")");
-                // Insert initial stock level
-                getStatementObject().executeUpdate(
-                        "insert into StockTable values ('" +
-                                detail.getProductNum() + "', " +
-                                detail.getQuantity() + ")");
+        try (PooledConnection con = borrowConnection()) {
+            Connection c = con.getConnection();
+            c.setAutoCommit(false);
+            if (!exists(con, detail.getProductNum())) {
+                try {
+                    // Insert new product with placeholder image and initial stock level
+                    insertProduct(con, detail, "ci553/ministore/images/placeholder.png");
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    // Added by another caller since the check, update it instead
+                    c.rollback();
+                    updateProduct(con, detail);
+                }
             } else {
-                // Update existing product details
-                getStatementObject().executeUpdate(
-                        "update ProductTable " +
-                                "  set description = '" + detail.getDescription() + "' , " +
-                                "      price       = " + detail.getPrice() +
-                                "  where productNo = '" + detail.getProductNum() + "' ");
-                // Update stock level
-                getStatementObject().executeUpdate(
-                        "update StockTable set stockLevel = " + detail.getQuantity() +
-                                "  where productNo = '" + detail.getProductNum() + "'");
+                updateProduct(con, detail);
             }
+            c.commit();
         } catch (SQLException e) {
+            // Returning the connection to the pool rolls back any partial work
             throw new StockException("SQL modifyStock: " + e.getMessage());
         }
+        updateSearchIndex(detail.getProductNum(), detail.getDescription());
+        fireProductChanged(detail.getProductNum());
+    }
+
+    /**
+     * Updates the details and stock level of an existing product.
+     * @param con Connection to use
+     * @param detail Product details to write
+     * @throws SQLException If either update fails
+     */
+    private void updateProduct(PooledConnection con, Product detail) throws SQLException {
+        PreparedStatement ps = con.prepare(SQL_UPDATE_PRODUCT);
+        ps.setString(1, detail.getDescription());
+        ps.setDouble(2, detail.getPrice());
+        ps.setString(3, detail.getProductNum());
+        ps.executeUpdate();
+        // Update stock level
+        ps = con.prepare(SQL_SET_STOCK);
+        ps.setInt(1, detail.getQuantity());
+        ps.setString(2, detail.getProductNum());
+        ps.executeUpdate();
     }
 
     /**
@@ -116,7 +363,7 @@ public class StockRW extends StockR implements StockReadWriter {
      * @throws StockException If database operation fails
      */
     @Override
-    public synchronized void setStock(String productNum, int quantity) throws StockException {
+    public void setStock(String productNum, int quantity) throws StockException {
         try {
             // Get current product details
             Product product = getDetails(productNum);
@@ -134,44 +381,64 @@ public class StockRW extends StockR implements StockReadWriter {
      * @throws StockException If product already exists or database operation fails
      */
     @Override
-    public synchronized void addProduct(Product product) throws StockException {
+    public void addProduct(Product product) throws StockException {
         DEBUG.trace("DB StockRW: addProduct(%s)", product.getProductNum());
-        try {
-            if (!exists(product.getProductNum())) {
+        try (PooledConnection con = borrowConnection()) {
+            Connection c = con.getConnection();
+            c.setAutoCommit(false);
+            if (!exists(con, product.getProductNum())) {
                 // Insert new product with default image path
-                getStatementObject().executeUpdate(
-                        "insert into ProductTable values ('" +
-                                product.getProductNum() + "', " +
-                                "'" + product.getDescription() + "', " +
-                                "'ci553/ministore/images/Pic" + product.getProductNum() + ".png', " +
-                                "'" + product.getPrice() + "' " + ")");
-                // Insert initial stock level
-                getStatementObject().executeUpdate(
-                        "insert into StockTable values ('" +
-                                product.getProductNum() + "', " +
-                                "'" + product.getQuantity() + "' " + ")");
+                insertProduct(con, product,
+                        "ci553/ministore/images/Pic" + product.getProductNum() + ".png");
+                c.commit();
             } else {
                 throw new StockException("Product already exists: " + product.getProductNum());
             }
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Added by another caller since the check
+            throw new StockException("Product already exists: " + product.getProductNum());
         } catch (SQLException e) {
             throw new StockException("SQL addProduct: " + e.getMessage());
         }
+        updateSearchIndex(product.getProductNum(), product.getDescription());
+        fireProductChanged(product.getProductNum());
+    }
+
+    /**
+     * Inserts a product and its initial stock level.
+     * The caller commits both inserts together.
+     * @param con Connection to use
+     * @param product Product to insert
+     * @param picture Image path for the product
+     * @throws SQLException If either insert fails
+     */
+    private void insertProduct(PooledConnection con, Product product, String picture) throws SQLException {
+        PreparedStatement ps = con.prepare(SQL_INSERT_PRODUCT);
+        ps.setString(1, product.getProductNum());
+        ps.setString(2, product.getDescription());
+        ps.setString(3, picture);
+        ps.setDouble(4, product.getPrice());
+        ps.executeUpdate();
+
+        ps = con.prepare(SQL_INSERT_STOCK);
+        ps.setString(1, product.getProductNum());
+        ps.setInt(2, product.getQuantity());
+        ps.executeUpdate();
     }
 
     /**
      * Retrieves all products from the database.
+     * The whole catalogue is held in memory, for a large catalogue use
+     * getProductsPage or streamProducts instead.
      * @return List of all products
      * @throws StockException If database query fails
      */
     @Override
-    public synchronized List<Product> getProducts() throws StockException {
+    public List<Product> getProducts() throws StockException {
         List<Product> products = new ArrayList<>();
-        try {
-            // Join ProductTable and StockTable to get complete product information
-            ResultSet rs = getStatementObject().executeQuery(
-                    "SELECT ProductTable.productNo, ProductTable.description, ProductTable.price, StockTable.stockLevel " +
-                            "FROM ProductTable " +
-                            "JOIN StockTable ON ProductTable.productNo = StockTable.productNo");
+        // Join ProductTable and StockTable to get complete product information
+        try (PooledConnection con = borrowConnection();
+             ResultSet rs = con.prepare(SQL_ALL_PRODUCTS).executeQuery()) {
             // Create Product objects from result set
             while (rs.next()) {
                 String productNum = rs.getString("productNo");
@@ -180,29 +447,166 @@ public class StockRW extends StockR implements StockReadWriter {
                 int quantity = rs.getInt("stockLevel");
                 products.add(new Product(productNum, description, price, quantity));
             }
-            rs.close();
         } catch (SQLException e) {
             throw new StockException("SQL getProducts: " + e.getMessage());
         }
         return products;
     }
 
+    /**
+     * Retrieves one page of the products, in product number order.
+     * The page starts after the last product of the previous page, found
+     * through the primary key, so no earlier rows are read or skipped.
+     * @param afterToken Token from the previous page, or null for the first page
+     * @param pageSize Most products wanted, no more than ministore.stock.maxPageSize are returned
+     * @return The page and the token for the next one
+     * @throws StockException If database query fails
+     */
+    @Override
+    public ProductPage getProductsPage(String afterToken, int pageSize) throws StockException {
+        int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        List<Product> products = new ArrayList<>(size);
+        boolean more = false;
+        try (PooledConnection con = borrowConnection()) {
+            PreparedStatement ps = con.prepare(SQL_PRODUCTS_PAGE);
+            // The token is the last product number of the previous page
+            ps.setString(1, afterToken == null ? "" : afterToken);
+            ps.setInt(2, size + 1);  // One extra row shows whether there is a next page
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (products.size() == size) {
+                        more = true;
+                        break;
+                    }
+                    products.add(new Product(rs.getString("productNo"), rs.getString("description"),
+                            rs.getDouble("price"), rs.getInt("stockLevel")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StockException("SQL getProductsPage: " + e.getMessage());
+        }
+        String next = more ? products.get(products.size() - 1).getProductNum() : null;
+        return new ProductPage(products, next);
+    }
+
+    /**
+     * Leases a block of product numbers no other caller will be given.
+     * The block starts after both the last number leased and the highest
+     * product number in use, so products loaded by other means are never
+     * numbered again.
+     * @param count How many numbers are wanted
+     * @return The block, which may be smaller than asked for near the last number
+     * @throws StockException If database operation fails or no numbers are left
+     */
+    @Override
+    public NumberBlock leaseProductNumbers(int count) throws StockException {
+        DEBUG.trace("DB StockRW: leaseProductNumbers(%d)", count);
+        try (PooledConnection con = borrowConnection()) {
+            int floor = 1;
+            try (ResultSet rs = con.prepare(SQL_MAX_PRODUCT_NO).executeQuery()) {
+                if (rs.next() && rs.getString(1) != null) {
+                    floor = Integer.parseInt(rs.getString(1).trim()) + 1;
+                }
+            }
+            NumberBlock block = SequenceDAO.lease(con, PRODUCT_SEQUENCE, count, floor);
+            if (block.getFirst() > MAX_PRODUCT_NO) {
+                throw new StockException("No product numbers left");
+            }
+            int last = Math.min(block.getFirst() + block.getCount() - 1, MAX_PRODUCT_NO);
+            return new NumberBlock(block.getFirst(), last - block.getFirst() + 1);
+        } catch (SQLException | NumberFormatException e) {
+            throw new StockException("SQL leaseProductNumbers: " + e.getMessage());
+        }
+    }
+
     /**
      * Updates the image path for a product.
      * @param productNum Product number to update
      * @param imagePath New image path
      * @throws StockException If database operation fails
      */
-    public synchronized void updateProductImage(String productNum, String imagePath) throws StockException {
+    public void updateProductImage(String productNum, String imagePath) throws StockException {
         DEBUG.trace("DB StockRW: updateProductImage(%s, %s)", productNum, imagePath);
-        try {
+        try (PooledConnection con = borrowConnection()) {
             // Update image path in ProductTable
-            getStatementObject().executeUpdate(
-                    "UPDATE ProductTable SET picture = '" + imagePath +
-                            "' WHERE productNo = '" + productNum + "'");
+            PreparedStatement ps = con.prepare(SQL_UPDATE_PICTURE);
+            ps.setString(1, imagePath);
+            ps.setString(2, productNum);
+            ps.executeUpdate();
         } catch (SQLException e) {
             throw new StockException("SQL updateProductImage: " + e.getMessage());
         }
+        try {
+            // Also forgets the cached file, it may have been replaced in place
+            storeImageVariants(imagePath);
+        } catch (StockException e) {
+            // Scaled copies are made when first asked for instead
+            DEBUG.trace("DB StockRW: updateProductImage %s", e.getMessage());
+        }
+        fireProductChanged(productNum);
+    }
+
+    /**
+     * Makes and stores the scaled copies of every product picture,
+     * replacing any stored before.
+     * @return Number of pictures processed, pictures that can not be read are skipped
+     * @throws StockException If the pictures can not be listed
+     */
+    public int generateImageVariants() throws StockException {
+        List<String> pictures = new ArrayList<>();
+        try (PooledConnection con = borrowConnection();
+             ResultSet rs = con.prepare(SQL_ALL_PICTURES).executeQuery()) {
+            while (rs.next()) {
+                pictures.add(rs.getString("picture"));
+            }
+        } catch (SQLException e) {
+            throw new StockException("SQL generateImageVariants: " + e.getMessage());
+        }
+
+        int done = 0;
+        for (String picture : pictures) {
+            try {
+                storeImageVariants(picture);
+                done++;
+            } catch (StockException e) {
+                DEBUG.trace("DB StockRW: generateImageVariants skipped %s", e.getMessage());
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Makes the scaled copies of one picture and stores them,
+     * replacing any stored before, in a single transaction.
+     * @param imagePath Path of the full size picture
+     * @throws StockException If the picture can not be read or the copies stored
+     */
+    private void storeImageVariants(String imagePath) throws StockException {
+        forgetImagePath(imagePath);
+        ProductImage full = readImage(imagePath, ImageSize.FULL);
+        try (PooledConnection con = borrowConnection()) {
+            Connection c = con.getConnection();
+            c.setAutoCommit(false);
+            PreparedStatement ps = con.prepare(SQL_DELETE_VARIANTS);
+            ps.setString(1, imagePath);
+            ps.executeUpdate();
+            ps = con.prepare(SQL_INSERT_VARIANT);
+            for (ImageSize size : ImageSize.values()) {
+                if (size != ImageSize.FULL) {
+                    ProductImage scaled = scaleImage(full, size);
+                    ps.setString(1, imagePath);
+                    ps.setString(2, size.name());
+                    ps.setString(3, scaled.getVersion());
+                    ps.setBytes(4, scaled.getData());
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            c.commit();
+            DEBUG.trace("DB StockRW: stored scaled copies of %s", imagePath);
+        } catch (SQLException e) {
+            throw new StockException("SQL storeImageVariants: " + e.getMessage());
+        }
     }
 
     /**
@@ -212,17 +616,222 @@ public class StockRW extends StockR implements StockReadWriter {
      * @throws StockException If database operation fails
      */
     @Override
-    public synchronized void deleteProduct(String productNum) throws StockException {
+    public void deleteProduct(String productNum) throws StockException {
         DEBUG.trace("DB StockRW: deleteProduct(%s)", productNum);
-        try {
+        try (PooledConnection con = borrowConnection()) {
+            Connection c = con.getConnection();
+            c.setAutoCommit(false);
             // Delete from StockTable first due to foreign key constraint
-            getStatementObject().executeUpdate(
-                    "DELETE FROM StockTable WHERE productNo = '" + productNum + "'");
+            PreparedStatement ps = con.prepare(SQL_DELETE_STOCK);
+            ps.setString(1, productNum);
+            ps.executeUpdate();
             // Then delete from ProductTable
-            getStatementObject().executeUpdate(
-                    "DELETE FROM ProductTable WHERE productNo = '" + productNum + "'");
+            ps = con.prepare(SQL_DELETE_PRODUCT);
+            ps.setString(1, productNum);
+            ps.executeUpdate();
+            c.commit();
         } catch (SQLException e) {
+            // Returning the connection to the pool rolls back any partial work
             throw new StockException("SQL deleteProduct: " + e.getMessage());
         }
+        updateSearchIndex(productNum, null);
+        fireProductChanged(productNum);
+    }
+
+    /**
+     * Loads products and stock levels from a CSV file, as written by
+     * exportProducts. A product already in the stock list is updated,
+     * any other is added. Lines are written in batches, each chunk of
+     * lines in its own transaction. A line that is not valid or can not be
+     * written stops the import: the chunks before it stay loaded, its own
+     * chunk and every line after it are not loaded.
+     * @param in The CSV, starting with the CSV_HEADER line
+     * @param chunkSize Lines written per transaction
+     * @param progress Told the number of lines loaded after each chunk
+     * @return Number of lines loaded
+     * @throws StockException If a line is not valid or can not be written,
+     *                        chunks before it stay loaded
+     */
+    public long importProducts(BufferedReader in, int chunkSize, LongConsumer progress) throws StockException {
+        long lineNo = 1;
+        long loaded = 0;
+        try (PooledConnection con = borrowConnection()) {
+            String header = in.readLine();
+            if (header == null || !header.trim().equalsIgnoreCase(CSV_HEADER)) {
+                throw new StockException("CSV: first line must be " + CSV_HEADER);
+            }
+            con.getConnection().setAutoCommit(false);
+            // Product number -> line, a product listed twice in a chunk is written once
+            Map<String, String[]> chunk = new LinkedHashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = parseCsvLine(line, lineNo);
+                chunk.put(fields[0], fields);
+                if (chunk.size() >= chunkSize) {
+                    loaded += writeChunk(con, chunk);
+                    progress.accept(loaded);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                loaded += writeChunk(con, chunk);
+                progress.accept(loaded);
+            }
+        } catch (SQLException e) {
+            throw new StockException("SQL importProducts near line " + lineNo + ": " + e.getMessage());
+        } catch (IOException e) {
+            throw new StockException("CSV read failed: " + e.getMessage());
+        } finally {
+            if (loaded > 0) {
+                forgetSearchIndex();
+            }
+        }
+        DEBUG.trace("DB StockRW: importProducts loaded %d", loaded);
+        return loaded;
+    }
+
+    /**
+     * Writes every product and stock level in the stock list to a CSV file,
+     * in product number order, straight from the query so that the
+     * catalogue is never held in memory.
+     * @param out Where to write the CSV, starting with the CSV_HEADER line
+     * @return Number of products written
+     * @throws StockException If the query or the write fails
+     */
+    public long exportProducts(Writer out) throws StockException {
+        long written = 0;
+        try (PooledConnection con = borrowConnection()) {
+            PreparedStatement ps = con.prepare(SQL_EXPORT);
+            ps.setFetchSize(1000);
+            out.write(CSV_HEADER);
+            out.write(System.lineSeparator());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.write(Csv.format(
+                            rs.getString("productNo").trim(),
+                            rs.getString("description"),
+                            rs.getString("picture"),
+                            String.format(Locale.ROOT, "%.2f", rs.getDouble("price")),
+                            Integer.toString(rs.getInt("stockLevel"))));
+                    out.write(System.lineSeparator());
+                    written++;
+                }
+            }
+            out.flush();
+        } catch (SQLException e) {
+            throw new StockException("SQL exportProducts: " + e.getMessage());
+        } catch (IOException e) {
+            throw new StockException("CSV write failed: " + e.getMessage());
+        }
+        return written;
+    }
+
+    /**
+     * Splits and checks one line of a catalogue CSV file.
+     * @param line The line
+     * @param lineNo Its line number, for the error message
+     * @return The product number, description, picture, price and stock level
+     * @throws StockException If the line is not valid
+     */
+    private static String[] parseCsvLine(String line, long lineNo) throws StockException {
+        try {
+            List<String> fields = Csv.parse(line);
+            if (fields.size() != 5) {
+                throw new IllegalArgumentException("expected 5 fields, found " + fields.size());
+            }
+            String pNum = fields.get(0).trim();
+            // New product numbers carry on from the highest, so they must all be four digits
+            if (!pNum.matches("[0-9]{4}")) {
+                throw new IllegalArgumentException("product number must be 4 digits");
+            }
+            if (fields.get(1).length() > 40) {
+                throw new IllegalArgumentException("description longer than 40 characters");
+            }
+            String picture = fields.get(2).isBlank() ? PLACEHOLDER_PICTURE : fields.get(2).trim();
+            Double.parseDouble(fields.get(3).trim());
+            Integer.parseInt(fields.get(4).trim());
+            return new String[] {pNum, fields.get(1), picture, fields.get(3).trim(), fields.get(4).trim()};
+        } catch (NumberFormatException e) {
+            throw new StockException("CSV line " + lineNo + ": price and stock level must be numbers");
+        } catch (IllegalArgumentException e) {
+            throw new StockException("CSV line " + lineNo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes one chunk of imported lines in a single transaction and empties it.
+     * Each table is updated in one batch, then the rows that were not there
+     * are inserted in a second batch.
+     * @param con Connection with auto commit off
+     * @param chunk Product number -> checked line
+     * @return Number of lines written
+     * @throws SQLException If a batch fails, the chunk is rolled back
+     */
+    private int writeChunk(PooledConnection con, Map<String, String[]> chunk) throws SQLException {
+        List<String[]> rows = new ArrayList<>(chunk.values());
+        try {
+            PreparedStatement ps = con.prepare(SQL_IMPORT_PRODUCT);
+            for (String[] row : rows) {
+                ps.setString(1, row[1]);
+                ps.setString(2, row[2]);
+                ps.setDouble(3, Double.parseDouble(row[3]));
+                ps.setString(4, row[0]);
+                ps.addBatch();
+            }
+            boolean[] present = updated(ps.executeBatch());
+
+            ps = con.prepare(SQL_INSERT_PRODUCT);
+            for (int i = 0; i < rows.size(); i++) {
+                if (!present[i]) {
+                    String[] row = rows.get(i);
+                    ps.setString(1, row[0]);
+                    ps.setString(2, row[1]);
+                    ps.setString(3, row[2]);
+                    ps.setDouble(4, Double.parseDouble(row[3]));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+
+            ps = con.prepare(SQL_SET_STOCK);
+            for (String[] row : rows) {
+                ps.setInt(1, Integer.parseInt(row[4]));
+                ps.setString(2, row[0]);
+                ps.addBatch();
+            }
+            present = updated(ps.executeBatch());
+
+            ps = con.prepare(SQL_INSERT_STOCK);
+            for (int i = 0; i < rows.size(); i++) {
+                if (!present[i]) {
+                    ps.setString(1, rows.get(i)[0]);
+                    ps.setInt(2, Integer.parseInt(rows.get(i)[4]));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+            con.getConnection().commit();
+        } catch (SQLException e) {
+            con.getConnection().rollback();
+            throw e;
+        }
+        chunk.clear();
+        rows.forEach(row -> fireProductChanged(row[0]));
+        return rows.size();
+    }
+
+    /**
+     * @param counts Update counts from a batch
+     * @return For each entry, true if it changed a row
+     */
+    private static boolean[] updated(int[] counts) {
+        boolean[] changed = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            changed[i] = counts[i] > 0 || counts[i] == PreparedStatement.SUCCESS_NO_INFO;
+        }
+        return changed;
     }
 }
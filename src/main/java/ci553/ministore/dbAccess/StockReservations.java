@@ -0,0 +1,290 @@
+package ci553.ministore.dbAccess;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.StockException;
+import ci553.ministore.middle.StockReadWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds placed on stock by clients that have not yet paid.
+ * A hold sets stock aside for one basket without touching StockTable, so
+ * scanning, removing and cancelling items cost no database writes. The
+ * stock is only taken from StockTable when the hold is committed, all of
+ * its lines in one batched transaction.
+ * <p>
+ * Each hold expires if it is not used for a while, a background sweeper
+ * gives the stock of expired holds back, so a till that crashes or is
+ * closed without paying can not leak stock. The id of a hold that has
+ * ended is remembered for a while, so it is not quietly started again
+ * holding only the lines added since, and a hold is only committed for
+ * the exact basket it was placed for.
+ * <p>
+ * Holds are kept in memory on the server. The stock available to a new hold
+ * is the level in StockTable less everything already held for that product.
+ *
+ * @version 1.0
+ */
+public class StockReservations {
+    private final StockReadWriter theStock;          // Used to read levels and commit holds
+    private final long theTtlMillis;                 // How long an unused hold lives
+    private final Map<String, Hold> theHolds = new ConcurrentHashMap<>();        // Hold id -> hold
+    private final Map<String, Integer> theReserved = new ConcurrentHashMap<>();  // Product -> total held
+    private final Map<String, Long> theEnded = new ConcurrentHashMap<>();        // Hold id -> time ended
+    private final ScheduledExecutorService theSweeper;
+
+    // Ended hold ids are remembered for this many hold lifetimes
+    private static final int ENDED_TTLS = 4;
+
+    /**
+     * The lines of one client's hold.
+     * Guarded by its own monitor, only the owning client and the sweeper use it.
+     */
+    private static class Hold {
+        final Map<String, Integer> lines = new HashMap<>();  // Product number -> quantity
+        long expiresAt;                                      // Time the hold lapses
+        boolean closed = false;                              // Committed, cancelled or expired
+    }
+
+    /**
+     * Create the reservations for a stock list.
+     *
+     * @param stock       Stock list the holds are placed against
+     * @param ttlMillis   Time an unused hold lives before it expires
+     * @param sweepMillis Time between sweeps for expired holds, 0 for no sweeper
+     */
+    public StockReservations(StockReadWriter stock, long ttlMillis, long sweepMillis) {
+        theStock = stock;
+        theTtlMillis = ttlMillis;
+        if (sweepMillis > 0) {
+            theSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "StockReservations-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            theSweeper.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()),
+                    sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            theSweeper = null;
+        }
+    }
+
+    /**
+     * Hold stock for a client. The hold is created on first use and its
+     * expiry is pushed back every time it is used.
+     *
+     * @param holdId Identifies the client's hold, for example one per basket
+     * @param pNum   Product number
+     * @param amount Quantity to hold
+     * @return true if the stock was held, false if not enough is available
+     * @throws StockException If the stock level can not be read, or the hold
+     *                        has been committed, cancelled or has expired
+     */
+    public boolean reserve(String holdId, String pNum, int amount) throws StockException {
+        while (true) {
+            if (theEnded.containsKey(holdId)) {
+                throw new StockException("Hold " + holdId + " has ended");
+            }
+            Hold hold = theHolds.computeIfAbsent(holdId, k -> new Hold());
+            synchronized (hold) {
+                if (hold.closed) {
+                    continue;       // Lost a race with the sweeper or a commit
+                }
+                hold.expiresAt = System.currentTimeMillis() + theTtlMillis;
+                int level = theStock.getDetails(pNum).getQuantity();
+                boolean[] held = {false};
+                theReserved.compute(pNum, (k, reserved) -> {
+                    int already = reserved == null ? 0 : reserved;
+                    if (level - already >= amount) {
+                        held[0] = true;
+                        return already + amount;
+                    }
+                    return reserved;
+                });
+                if (held[0]) {
+                    hold.lines.merge(pNum, amount, Integer::sum);
+                }
+                DEBUG.trace("StockReservations: reserve(%s,%s,%d) -> %b", holdId, pNum, amount, held[0]);
+                return held[0];
+            }
+        }
+    }
+
+    /**
+     * Give back part of a hold, for example when an item is taken out of a basket.
+     *
+     * @param holdId The client's hold
+     * @param pNum   Product number
+     * @param amount Quantity to give back, limited to the quantity held
+     */
+    public void release(String holdId, String pNum, int amount) {
+        Hold hold = theHolds.get(holdId);
+        if (hold == null) {
+            return;
+        }
+        synchronized (hold) {
+            if (hold.closed) {
+                return;
+            }
+            hold.expiresAt = System.currentTimeMillis() + theTtlMillis;
+            int held = hold.lines.getOrDefault(pNum, 0);
+            int given = Math.min(held, amount);
+            if (given <= 0) {
+                return;
+            }
+            if (held == given) {
+                hold.lines.remove(pNum);
+            } else {
+                hold.lines.put(pNum, held - given);
+            }
+            unreserve(pNum, given);
+        }
+    }
+
+    /**
+     * Take the held stock from the stock list and end the hold.
+     * Every line is decremented in one batched transaction. Nothing is taken
+     * unless the hold is for exactly the products and quantities in the basket.
+     *
+     * @param holdId The client's hold
+     * @param bought The basket being bought
+     * @return true if the stock was taken, false if there was no hold, it
+     *         had expired, did not match the basket, or the stock list no
+     *         longer had enough stock
+     * @throws StockException If the database update fails
+     */
+    public boolean commit(String holdId, Basket bought) throws StockException {
+        Map<String, Integer> lines = close(holdId);
+        if (lines == null || lines.isEmpty()) {
+            return false;
+        }
+        try {
+            Map<String, Integer> wanted = new HashMap<>();
+            for (Product pr : bought) {
+                wanted.merge(pr.getProductNum(), pr.getQuantity(), Integer::sum);
+            }
+            if (!lines.equals(wanted)) {
+                DEBUG.trace("StockReservations: hold %s does not match the basket", holdId);
+                return false;
+            }
+            Basket basket = new Basket();
+            lines.forEach((pNum, qty) -> basket.add(new Product(pNum, "", 0.00, qty)));
+            boolean[] taken = theStock.checkout(basket);
+            for (boolean b : taken) {
+                if (!b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            // Taken or not, the stock is no longer held
+            lines.forEach(this::unreserve);
+        }
+    }
+
+    /**
+     * Give back everything held and end the hold.
+     *
+     * @param holdId The client's hold
+     */
+    public void cancel(String holdId) {
+        Map<String, Integer> lines = close(holdId);
+        if (lines != null) {
+            lines.forEach(this::unreserve);
+        }
+    }
+
+    /**
+     * Give back the stock of every hold that expired before the given time.
+     *
+     * @param now Current time in milliseconds
+     * @return Number of holds that expired
+     */
+    int sweep(long now) {
+        int expired = 0;
+        for (Map.Entry<String, Hold> entry : theHolds.entrySet()) {
+            Hold hold = entry.getValue();
+            Map<String, Integer> lines = null;
+            synchronized (hold) {
+                if (!hold.closed && hold.expiresAt < now) {
+                    theEnded.put(entry.getKey(), now);
+                    hold.closed = true;
+                    lines = hold.lines;
+                }
+            }
+            if (lines != null) {
+                theHolds.remove(entry.getKey(), hold);
+                lines.forEach(this::unreserve);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            DEBUG.trace("StockReservations: %d holds expired", expired);
+        }
+        theEnded.values().removeIf(ended -> ended < now - ENDED_TTLS * theTtlMillis);
+        return expired;
+    }
+
+    /**
+     * @param pNum Product number
+     * @return Total quantity held for the product across all clients
+     */
+    public int getReserved(String pNum) {
+        return theReserved.getOrDefault(pNum, 0);
+    }
+
+    /**
+     * @return Number of open holds
+     */
+    public int getHoldCount() {
+        return theHolds.size();
+    }
+
+    /**
+     * Stop the background sweeper.
+     */
+    public void shutdown() {
+        if (theSweeper != null) {
+            theSweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Mark a hold as finished and remove it.
+     *
+     * @param holdId The client's hold
+     * @return The lines that were held, or null if there was no open hold
+     */
+    private Map<String, Integer> close(String holdId) {
+        Hold hold = theHolds.get(holdId);
+        if (hold == null) {
+            return null;
+        }
+        synchronized (hold) {
+            if (hold.closed) {
+                return null;
+            }
+            theEnded.put(holdId, System.currentTimeMillis());
+            hold.closed = true;
+        }
+        theHolds.remove(holdId, hold);
+        return hold.lines;
+    }
+
+    /**
+     * Reduce the total held for a product.
+     *
+     * @param pNum   Product number
+     * @param amount Quantity no longer held
+     */
+    private void unreserve(String pNum, int amount) {
+        theReserved.computeIfPresent(pNum, (k, reserved) -> reserved > amount ? reserved - amount : null);
+    }
+}
@@ -2,8 +2,6 @@ package ci553.ministore.dbAccess;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -17,29 +15,18 @@ import ci553.ministore.util.PasswordUtil;
  * Uses prepared statements to prevent SQL injection and secure password hashing.
  */
 public class UserDAO {
-    // Database connection instance
-    private Connection theCon = null;
+    // Shared database connection pool
+    private ConnectionPool thePool = null;
 
     /**
-     * Constructor that initializes the database connection.
-     * Creates a new database connection using the DBAccess factory.
+     * Constructor that attaches to the shared connection pool.
+     * The pool loads the database driver the first time it is used.
      *
      * @throws StockException If there's an error loading the driver or connecting to the database
      */
     public UserDAO() throws StockException {
         try {
-            // Create new database access instance
-            DBAccess dbDriver = (new DBAccessFactory()).getNewDBAccess();
-            dbDriver.loadDriver();
-
-            // Establish database connection with credentials
-            theCon = DriverManager.getConnection(
-                    dbDriver.urlOfDatabase(),
-                    dbDriver.username(),
-                    dbDriver.password());
-
-            // Enable auto-commit for immediate transaction processing
-            theCon.setAutoCommit(true);
+            thePool = DBAccessFactory.getConnectionPool();
         } catch (SQLException e) {
             throw new StockException("SQL problem:" + e.getMessage());
         } catch (Exception e) {
@@ -63,8 +50,9 @@ public class UserDAO {
         // SQL query to fetch password hash and salt for the given username
         String sql = "SELECT password, salt FROM Users WHERE username = ?";
 
-        try (PreparedStatement stmt = theCon.prepareStatement(sql)) {
-            // Bind username parameter to prevent SQL injection
+        try (PooledConnection con = thePool.borrow()) {
+            // Cached per connection, bind username parameter to prevent SQL injection
+            PreparedStatement stmt = con.prepare(sql);
             stmt.setString(1, username);
 
             try (ResultSet rs = stmt.executeQuery()) {
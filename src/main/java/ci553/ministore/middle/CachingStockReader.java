@@ -0,0 +1,240 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.util.LruCache;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache in front of a StockReader.
+ * Product details and whether a product exists are kept per product number,
+ * so repeated checks of the same products are answered without a database
+ * query. Entries are dropped when the least recently used entry has to make
+ * room, when they are older than a time to live, and straight away when the
+ * stock list reports that the product has changed.
+ * <p>
+ * Products are mutable, so callers are always given their own copy.
+ * Images are not cached here and are always read from the wrapped reader;
+ * a product view whose details are cached is made up from the cached
+ * details and an image read on its own.
+ *
+ * @version 1.0
+ */
+public class CachingStockReader implements StockReader, StockChangeListener {
+    private final StockReader theStock;                   // The reader being cached
+    private final LruCache<String, Cached> theCache;      // Product number -> details, UNKNOWN if none
+    private final AtomicLong theChanges = new AtomicLong();  // Counts invalidations
+
+    // Marks a product number known not to exist
+    private static final Cached UNKNOWN = new Cached(new Product("0", "", 0.00, 0), null);
+
+    private static final int MAX_ENTRIES = Integer.getInteger("ministore.cache.size", 1000);
+    private static final long TTL_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("ministore.cache.ttlSeconds", 30));
+
+    /**
+     * What is cached for a product: its details and, once a product view
+     * has been read, the path of its picture.
+     */
+    private static class Cached {
+        final Product product;
+        final String picture;   // Null until read with a product view
+
+        Cached(Product product, String picture) {
+            this.product = product;
+            this.picture = picture;
+        }
+    }
+
+    /**
+     * Wrap a stock reader with a cache sized from the system properties.
+     *
+     * @param stock The reader to cache
+     */
+    public CachingStockReader(StockReader stock) {
+        this(stock, MAX_ENTRIES, TTL_MILLIS);
+    }
+
+    /**
+     * Wrap a stock reader.
+     *
+     * @param stock      The reader to cache
+     * @param maxEntries Maximum number of products cached
+     * @param ttlMillis  Time a cached product stays valid
+     */
+    public CachingStockReader(StockReader stock, int maxEntries, long ttlMillis) {
+        theStock = stock;
+        theCache = new LruCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * Checks if a product exists, using the cache where possible.
+     *
+     * @param pNum The product number to check
+     * @return true if the product exists, false otherwise
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public boolean exists(String pNum) throws StockException {
+        return lookup(pNum) != UNKNOWN;
+    }
+
+    /**
+     * Retrieves product details, using the cache where possible.
+     *
+     * @param pNum The product number to retrieve details for
+     * @return A copy of the product details
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public Product getDetails(String pNum) throws StockException {
+        return copy(lookup(pNum).product);
+    }
+
+    /**
+     * Retrieves the product image, always from the wrapped reader.
+     *
+     * @param pNum The product number
+     * @param size The size wanted
+     * @return byte array containing the image data
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public byte[] getImage(String pNum, ImageSize size) throws StockException {
+        return theStock.getImage(pNum, size);
+    }
+
+    /**
+     * Retrieves the product image if changed, always from the wrapped reader.
+     *
+     * @param pNum         The product number
+     * @param size         The size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image, or empty if the caller's version is current
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public Optional<ProductImage> getImageIfChanged(String pNum, ImageSize size, String knownVersion)
+            throws StockException {
+        return theStock.getImageIfChanged(pNum, size, knownVersion);
+    }
+
+    /**
+     * Retrieves the product view. If the details and picture of the product
+     * are cached, only the image is read from the wrapped reader; otherwise
+     * the whole view is read and its details cached.
+     *
+     * @param pNum The product number to look up
+     * @param size The size of image wanted
+     * @return The product view, or empty if the product does not exist
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public Optional<ProductView> getProductView(String pNum, ImageSize size) throws StockException {
+        Cached cached = theCache.get(pNum);
+        if (cached == UNKNOWN) {
+            return Optional.empty();
+        }
+        if (cached != null && cached.picture != null) {
+            Product product = copy(cached.product);
+            // A missing picture should not stop the product being shown
+            try {
+                Optional<ProductImage> image = theStock.getImageIfChanged(pNum, size, null);
+                if (image.isPresent()) {
+                    return Optional.of(new ProductView(product, cached.picture,
+                            image.get().getData(), image.get().getVersion()));
+                }
+            } catch (StockException e) {
+                DEBUG.trace("CachingStockReader: getProductView(%s) %s", pNum, e.getMessage());
+            }
+            return Optional.of(new ProductView(product, cached.picture, null));
+        }
+
+        long changes = theChanges.get();
+        Optional<ProductView> view = theStock.getProductView(pNum, size);
+        store(pNum, view.map(v -> new Cached(copy(v.getProduct()), v.getPicture())).orElse(UNKNOWN), changes);
+        return view;
+    }
+
+    /**
+     * Finds products by their description, always from the wrapped reader.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products, best match first
+     * @throws StockException if there is an error accessing the database
+     */
+    @Override
+    public List<Product> searchProducts(String query, int maxResults) throws StockException {
+        return theStock.searchProducts(query, maxResults);
+    }
+
+    /**
+     * Discards the cached details of a changed product.
+     *
+     * @param pNum The product number that changed
+     */
+    @Override
+    public void productChanged(String pNum) {
+        theChanges.incrementAndGet();
+        theCache.remove(pNum);
+    }
+
+    /**
+     * @return The cache holding the product details, for its statistics
+     */
+    public LruCache<String, ?> getCache() {
+        return theCache;
+    }
+
+    /**
+     * Gets a product from the cache, reading it from the wrapped reader on a miss.
+     *
+     * @param pNum The product number
+     * @return The cached product, or UNKNOWN if it does not exist
+     * @throws StockException if there is an error accessing the database
+     */
+    private Cached lookup(String pNum) throws StockException {
+        Cached cached = theCache.get(pNum);
+        if (cached == null) {
+            long changes = theChanges.get();
+            // One query, a product that does not exist comes back numbered "0"
+            Product product = theStock.getDetails(pNum);
+            cached = pNum.equals(product.getProductNum()) ? new Cached(copy(product), null) : UNKNOWN;
+            store(pNum, cached, changes);
+        }
+        return cached;
+    }
+
+    /**
+     * Caches a product read from the wrapped reader, unless a change was
+     * reported while it was being read, as it may then already be out of date.
+     *
+     * @param pNum    The product number
+     * @param cached  The product read
+     * @param changes The change count before the read started
+     */
+    private void store(String pNum, Cached cached, long changes) {
+        if (theChanges.get() == changes) {
+            theCache.put(pNum, cached);
+        } else {
+            DEBUG.trace("CachingStockReader: %s changed while being read, not cached", pNum);
+        }
+    }
+
+    /**
+     * @param product A product
+     * @return A copy that the caller is free to change
+     */
+    private static Product copy(Product product) {
+        return new Product(product.getProductNum(), product.getDescription(),
+                product.getPrice(), product.getQuantity());
+    }
+}
@@ -0,0 +1,78 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.Priority;
+
+import java.io.Serializable;
+
+/**
+ * How many orders of one priority were ready for collection by the time promised.
+ */
+public class DeadlineStats implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    private final Priority thePriority;
+    private final long thePacked;
+    private final long theLate;
+    private final long theLateMillis;
+
+    /**
+     * @param priority   The priority
+     * @param packed     Orders of that priority reported packed
+     * @param late       Of those, the orders packed after their deadline
+     * @param lateMillis Total time the late orders were late by
+     */
+    public DeadlineStats(Priority priority, long packed, long late, long lateMillis) {
+        thePriority = priority;
+        thePacked = packed;
+        theLate = late;
+        theLateMillis = lateMillis;
+    }
+
+    /**
+     * @return The priority
+     */
+    public Priority getPriority() {
+        return thePriority;
+    }
+
+    /**
+     * @return Orders reported packed
+     */
+    public long getPacked() {
+        return thePacked;
+    }
+
+    /**
+     * @return Orders packed by their deadline
+     */
+    public long getMet() {
+        return thePacked - theLate;
+    }
+
+    /**
+     * @return Orders packed after their deadline
+     */
+    public long getLate() {
+        return theLate;
+    }
+
+    /**
+     * @return Fraction of orders packed by their deadline, 1 if none packed
+     */
+    public double getMetRate() {
+        return thePacked == 0 ? 1 : (double) getMet() / thePacked;
+    }
+
+    /**
+     * @return Mean time the late orders were late by, in milliseconds, 0 if none late
+     */
+    public double getMeanLateMillis() {
+        return theLate == 0 ? 0 : (double) theLateMillis / theLate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d packed, %d met, %d late by %.0f ms on average, %.1f%% met",
+                thePriority, thePacked, getMet(), theLate, getMeanLateMillis(), 100 * getMetRate());
+    }
+}
@@ -2,11 +2,13 @@ package ci553.ministore.middle;
 
 import ci553.ministore.catalogue.Basket;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.remote.R_OrderListener;
 import ci553.ministore.remote.RemoteOrder_I;
 
 import java.rmi.Naming;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 // There can only be 1 ResultSet opened per statement
 // so no simultaneous use of the statement object
@@ -23,6 +25,8 @@ public class F_Order implements OrderProcessing
 {
   private RemoteOrder_I aR_Order    = null;
   private String        theOrderURL = null;
+  // Listeners in this client and the callbacks exported for them
+  private final Map<OrderListener, R_OrderListener> theCallbacks = new ConcurrentHashMap<>();
 
   public F_Order(String url)
   {
@@ -97,6 +101,91 @@ public class F_Order implements OrderProcessing
     }
   }
 
+  /**
+   * Returns an order to pick from the warehouse, waiting for one
+   * to arrive if there is none.
+   * Not synchronized, so the packer can report an order packed
+   * while another call is waiting.
+   * @param timeoutMillis Longest time to wait
+   * @return An order to pick, or null if none arrived in time
+   */
+
+  public Basket getOrderToPack( long timeoutMillis )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getOrderToPack(%d)", timeoutMillis );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.getOrderToPack( timeoutMillis );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns an order for a packing station to pick, waiting for
+   * one to arrive if there is none. Not synchronized, as above.
+   * @param station       Name of the packing station
+   * @param timeoutMillis Longest time to wait
+   * @return An order to pick, or null if none arrived in time
+   */
+
+  public Basket getOrderToPack( String station, long timeoutMillis )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getOrderToPack(%s, %d)", station, timeoutMillis );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.getOrderToPack( station, timeoutMillis );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns what each packing station has done
+   */
+
+  public List<StationStats> getStationStats()
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getStationStats()" );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.getStationStats();
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns how many orders of each priority were packed by their deadline
+   */
+
+  public List<DeadlineStats> getDeadlineStats()
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getDeadlineStats()" );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.getDeadlineStats();
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
   /**
    * Informs the order processing system that the order has been
    * picked and the products are now on the conveyor belt to
@@ -156,4 +245,75 @@ public class F_Order implements OrderProcessing
       throw new OrderException( "Net: " + e.getMessage() );
     }
   }
+
+  /**
+   * Returns the orders that reached or left each stage since the
+   * version of an earlier delta, so only changes cross the network
+   */
+
+  public synchronized OrderStateDelta getOrderStateSince( long version )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getOrderStateSince(%d)", version );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.getOrderStateSince( version );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Tells a listener in this client of every order change from now on,
+   * through a callback exported for the server to call
+   * @return The state of all orders just before the first change told
+   */
+
+  public Map<String, List<Integer> > addOrderListener( OrderListener listener )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:addOrderListener()" );
+    R_OrderListener callback = null;
+    try
+    {
+      if ( aR_Order == null ) connect();
+      callback = new R_OrderListener( listener,
+                                      dropped -> theCallbacks.remove( listener, dropped ) );
+      R_OrderListener old = theCallbacks.put( listener, callback );
+      if ( old != null ) old.unexport();
+      return aR_Order.addOrderListener( callback );
+    } catch ( Exception e )
+    {
+      if ( callback != null && theCallbacks.remove( listener, callback ) ) callback.unexport();
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Stops telling a listener in this client of order changes
+   */
+
+  public void removeOrderListener( OrderListener listener )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:removeOrderListener()" );
+    R_OrderListener callback = theCallbacks.remove( listener );
+    if ( callback == null ) return;
+    try
+    {
+      if ( aR_Order == null ) connect();
+      aR_Order.removeOrderListener( callback );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    } finally
+    {
+      callback.unexport();
+    }
+  }
 }
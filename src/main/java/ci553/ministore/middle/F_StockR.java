@@ -1,16 +1,24 @@
 package ci553.ministore.middle;
 
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.debug.DEBUG;
 import ci553.ministore.remote.RemoteStockR_I;
+import ci553.ministore.util.LruCache;
 
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Facade for remote read access to the stock list.
  * Implements the StockReader interface and provides RMI connectivity to the remote stock system.
  * Handles connection management, remote method invocation, and error recovery.
+ * Images are kept in a client side store and only fetched again when the
+ * remote stock system reports that their content has changed.
  *
  * @version 2.0
  */
@@ -18,6 +26,11 @@ public class F_StockR implements StockReader {
     private RemoteStockR_I aR_StockR = null;  // Remote object reference
     private String theStockURL = null;        // RMI URL for the remote service
 
+    // Images already fetched by this client, by product number and size, shared by every facade
+    private static final LruCache<String, ProductImage> theImages = new LruCache<>(
+            Long.getLong("ministore.clientImageCache.bytes", 16L * 1024 * 1024), 0,
+            image -> image.getData().length);
+
     /**
      * Constructs a new F_StockR instance with specified RMI URL.
      * @param url The RMI URL for the remote stock service
@@ -79,20 +92,106 @@ public class F_StockR implements StockReader {
     }
 
     /**
-     * Retrieves product image from the remote stock system.
+     * Retrieves a product image, reusing the copy in the client image store
+     * when the remote stock system reports that it has not changed.
      * Automatically reconnects if connection is lost.
-     * @param number Product number to retrieve image for
+     * @param number Product number
+     * @param size Size wanted
      * @return byte array containing the image data
      * @throws StockException if remote operation fails
      */
-    public synchronized byte[] getImage(String number) throws StockException {
+    public synchronized byte[] getImage(String number, ImageSize size) throws StockException {
         DEBUG.trace("F_StockR:getImage()");
+        String key = storeKey(number, size);
+        ProductImage known = theImages.get(key);
+        Optional<ProductImage> changed = getImageIfChanged(number, size, known == null ? null : known.getVersion());
+        if (changed.isPresent()) {
+            theImages.put(key, changed.get());
+            return changed.get().getData();
+        }
+        return known.getData();
+    }
+
+    /**
+     * Retrieves a product image only if the caller does not already hold it.
+     * Automatically reconnects if connection is lost.
+     * @param number Product number
+     * @param size Size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image, or empty if the caller's version is current
+     * @throws StockException if remote operation fails
+     */
+    public synchronized Optional<ProductImage> getImageIfChanged(String number, ImageSize size, String knownVersion)
+            throws StockException {
+        DEBUG.trace("F_StockR:getImageIfChanged()");
+        try {
+            if (aR_StockR == null) connect();  // Reconnect if needed
+            return Optional.ofNullable(aR_StockR.getImageIfChanged(number, size, knownVersion));
+        } catch (RemoteException e) {
+            aR_StockR = null;  // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the product details, stock level and image from the remote
+     * stock system in a single round trip. The image bytes are only sent if
+     * they differ from the copy in the client image store.
+     * Automatically reconnects if connection is lost.
+     * @param number Product number to look up
+     * @param size Size of image wanted
+     * @return The product view, or empty if the product does not exist
+     * @throws StockException if remote operation fails
+     */
+    public synchronized Optional<ProductView> getProductView(String number, ImageSize size) throws StockException {
+        DEBUG.trace("F_StockR:getProductView()");
+        String key = storeKey(number, size);
+        ProductImage known = theImages.get(key);
+        ProductView view;
         try {
             if (aR_StockR == null) connect();  // Reconnect if needed
-            return aR_StockR.getImage(number);  // Forward to remote object
+            view = aR_StockR.getProductView(number, size, known == null ? null : known.getVersion());
         } catch (RemoteException e) {
             aR_StockR = null;  // Reset connection on failure
             throw new StockException("Net: " + e.getMessage());
         }
+        if (view == null || view.getImageVersion() == null) {
+            return Optional.ofNullable(view);
+        }
+        if (view.getImage() != null) {
+            theImages.put(key, new ProductImage(view.getImage(), view.getImageVersion()));
+            return Optional.of(view);
+        }
+        // Not sent, the image in the store is current
+        return Optional.of(new ProductView(view.getProduct(), view.getPicture(),
+                known.getData(), known.getVersion()));
+    }
+
+    /**
+     * Finds products by their description on the remote stock system.
+     * Automatically reconnects if connection is lost.
+     * @param query Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products, best match first
+     * @throws StockException if remote operation fails
+     */
+    public synchronized List<Product> searchProducts(String query, int maxResults) throws StockException {
+        DEBUG.trace("F_StockR:searchProducts()");
+        try {
+            if (aR_StockR == null) connect();  // Reconnect if needed
+            return aR_StockR.searchProducts(query, maxResults);
+        } catch (RemoteException e) {
+            aR_StockR = null;  // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param number Product number
+     * @param size Size of the image
+     * @return The client image store key for the product's image at that size
+     */
+    private static String storeKey(String number, ImageSize size) {
+        return number + "#" + size.name();
     }
 }
@@ -1,6 +1,9 @@
 package ci553.ministore.middle;
 
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductPage;
 import ci553.ministore.debug.DEBUG;
 import ci553.ministore.remote.RemoteStockRW_I;
 
@@ -71,6 +74,106 @@ public class F_StockRW extends F_StockR implements StockReadWriter {
         }
     }
 
+    /**
+     * Buys every line of a basket in a single transaction.
+     * The whole basket is sent in one remote call.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param basket Basket to buy
+     * @return For each line, in basket order, true if there was enough stock
+     * @throws StockException if remote operation fails
+     */
+    public synchronized boolean[] checkout(Basket basket) throws StockException {
+        DEBUG.trace("F_StockRW:checkout()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            return aR_StockRW.checkout(basket);   // Forward to remote object
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Holds stock for a client that has not yet paid.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param holdId Identifies the client's hold
+     * @param number Product number to hold
+     * @param amount Quantity to hold
+     * @return true if held, false if not enough stock is available
+     * @throws StockException if remote operation fails
+     */
+    public synchronized boolean reserveStock(String holdId, String number, int amount) throws StockException {
+        DEBUG.trace("F_StockRW:reserveStock()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            return aR_StockRW.reserveStock(holdId, number, amount);  // Forward to remote object
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives back part of a client's hold.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param holdId The client's hold
+     * @param number Product number to give back
+     * @param amount Quantity to give back
+     * @throws StockException if remote operation fails
+     */
+    public synchronized void releaseStock(String holdId, String number, int amount) throws StockException {
+        DEBUG.trace("F_StockRW:releaseStock()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            aR_StockRW.releaseStock(holdId, number, amount);  // Forward to remote object
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes everything in a client's hold from the stock in one transaction.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param holdId The client's hold
+     * @param basket The basket being bought
+     * @return true if taken, false if the hold had expired, did not match
+     *         the basket or stock ran short
+     * @throws StockException if remote operation fails
+     */
+    public synchronized boolean commitReservation(String holdId, Basket basket) throws StockException {
+        DEBUG.trace("F_StockRW:commitReservation()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            return aR_StockRW.commitReservation(holdId, basket);  // Forward to remote object
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives back everything in a client's hold.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param holdId The client's hold
+     * @throws StockException if remote operation fails
+     */
+    public synchronized void cancelReservation(String holdId) throws StockException {
+        DEBUG.trace("F_StockRW:cancelReservation()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            aR_StockRW.cancelReservation(holdId);  // Forward to remote object
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
     /**
      * Adds stock to an existing product.
      * Thread-safe and handles reconnection if needed.
@@ -167,6 +270,47 @@ public class F_StockRW extends F_StockR implements StockReadWriter {
         }
     }
 
+    /**
+     * Retrieves one page of the products.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param afterToken Token from the previous page, or null for the first page
+     * @param pageSize   Most products wanted
+     * @return The page and the token for the next one
+     * @throws StockException if remote operation fails
+     */
+    @Override
+    public synchronized ProductPage getProductsPage(String afterToken, int pageSize) throws StockException {
+        DEBUG.trace("F_StockRW:getProductsPage()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            return aR_StockRW.getProductsPage(afterToken, pageSize);
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Leases a block of new product numbers.
+     * Thread-safe and handles reconnection if needed.
+     *
+     * @param count How many numbers are wanted
+     * @return The block, which may be smaller than asked for
+     * @throws StockException if remote operation fails
+     */
+    @Override
+    public synchronized NumberBlock leaseProductNumbers(int count) throws StockException {
+        DEBUG.trace("F_StockRW:leaseProductNumbers()");
+        try {
+            if (aR_StockRW == null) connect();    // Ensure connection exists
+            return aR_StockRW.leaseProductNumbers(count);
+        } catch (RemoteException e) {
+            aR_StockRW = null;         // Reset connection on failure
+            throw new StockException("Net: " + e.getMessage());
+        }
+    }
+
     /**
      * Updates the image path for a product.
      * Thread-safe and handles reconnection if needed.
@@ -7,7 +7,7 @@ package ci553.ministore.middle;
 
 import ci553.ministore.dbAccess.StockR;
 import ci553.ministore.dbAccess.StockRW;
-import ci553.ministore.orders.Order;
+import ci553.ministore.orders.OrderStore;
 
 
 /**
@@ -19,19 +19,25 @@ import ci553.ministore.orders.Order;
 
 public class LocalMiddleFactory implements MiddleFactory
 {
-  private static StockR  aStockR  = null;
+  private static CachingStockReader aStockR = null;
   private static StockRW aStockRW = null;
-  private static Order   aOrder   = null;
+  private static OrderProcessing aOrder = null;
 
   /**
    * Return an object to access the database for read only access.
-   * All users share this same object.
+   * All users share this same object, which is safe as each
+   * operation borrows its own pooled database connection.
+   * Product details are cached, the cache is told about every
+   * change made through a StockRW.
    */
 
-  public StockReader makeStockReader() throws StockException
+  public synchronized StockReader makeStockReader() throws StockException
   {
     if ( aStockR == null )
-      aStockR = new StockR();
+    {
+      aStockR = new CachingStockReader( new StockR() );
+      StockRW.addChangeListener( aStockR );
+    }
     return aStockR;
   }
 
@@ -40,7 +46,7 @@ public class LocalMiddleFactory implements MiddleFactory
    * All users share this same object.
    */
 
-  public StockReadWriter makeStockReadWriter() throws StockException
+  public synchronized StockReadWriter makeStockReadWriter() throws StockException
   {
     if ( aStockRW == null )
       aStockRW = new StockRW();
@@ -49,13 +55,14 @@ public class LocalMiddleFactory implements MiddleFactory
 
   /**
    * Return an object to access the order processing system.
-   * All users share this same object.
+   * All users share this same object, which is the store
+   * chosen by ministore.order.store.
    */
 
-  public OrderProcessing makeOrderProcessing() throws OrderException
+  public synchronized OrderProcessing makeOrderProcessing() throws OrderException
   {
     if ( aOrder == null )
-      aOrder = new Order();
+      aOrder = OrderStore.create();
     return aOrder;
   }
 }
@@ -0,0 +1,60 @@
+package ci553.ministore.middle;
+
+import java.io.Serializable;
+
+/**
+ * One order moving from one stage of order processing to another.
+ * Stages are named as the keys of OrderProcessing.getOrderState, an order
+ * just taken has no stage before and a collected order has no stage after.
+ */
+
+public class OrderChange implements Serializable
+{
+  private static final long serialVersionUID = 1;
+
+  private final int    theOrderNum;
+  private final String theFrom;    // Stage before, null for a new order
+  private final String theTo;      // Stage after, null once collected
+
+  /**
+   * @param orderNum The order
+   * @param from     Stage before, null for a new order
+   * @param to       Stage after, null once collected
+   */
+  public OrderChange( int orderNum, String from, String to )
+  {
+    theOrderNum = orderNum;
+    theFrom     = from;
+    theTo       = to;
+  }
+
+  /**
+   * @return The order number
+   */
+  public int getOrderNum()
+  {
+    return theOrderNum;
+  }
+
+  /**
+   * @return Stage the order was in, null for a new order
+   */
+  public String getFrom()
+  {
+    return theFrom;
+  }
+
+  /**
+   * @return Stage the order is now in, null once collected
+   */
+  public String getTo()
+  {
+    return theTo;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format( "#%d %s -> %s", theOrderNum, theFrom, theTo );
+  }
+}
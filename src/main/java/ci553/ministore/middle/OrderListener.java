@@ -0,0 +1,24 @@
+package ci553.ministore.middle;
+
+import java.util.List;
+
+/**
+ * Told as orders move through order processing, instead of asking for the
+ * state of every order again and again.
+ * Changes are delivered in the order they were made, from a thread of the
+ * order processing system's own, so a listener may take its time. A listener
+ * that falls too far behind, or fails, is removed and should register again.
+ */
+
+public interface OrderListener
+{
+  // Called with the changes made since the last call, oldest first.
+  //  Throwing removes the listener
+  public void ordersChanged( List<OrderChange> changes )
+         throws OrderException;
+
+  // Called once the listener has been removed for falling behind
+  //  or failing, changes since the last ordersChanged call are lost
+  public void dropped()
+         throws OrderException;
+}
@@ -23,6 +23,23 @@ public interface OrderProcessing
   public Basket getOrderToPack()                   // Packer
          throws OrderException;
 
+  // Waits up to timeoutMillis for an order to arrive,
+  //  null if none arrived or the caller was interrupted
+  public Basket getOrderToPack(long timeoutMillis) // Packer
+         throws OrderException;
+
+  // As above for a named packing station, which is dealt orders
+  //  of its own and takes other stations' orders when it runs out
+  public Basket getOrderToPack(String station, long timeoutMillis) // Packer
+         throws OrderException;
+
+  public List<StationStats> getStationStats()      // Display
+         throws OrderException;
+
+  // How many orders of each priority were packed by their deadline
+  public List<DeadlineStats> getDeadlineStats()    // Display
+         throws OrderException;
+
   public boolean informOrderPacked(int orderNum)   // Packer
          throws OrderException;
 
@@ -33,4 +50,17 @@ public interface OrderProcessing
   // not being used in this version
   public Map<String,List<Integer>> getOrderState() // Display
          throws OrderException;
+
+  // Orders that reached or left each stage since the version of an
+  //  earlier delta, 0 for none, or every order if that is too old
+  public OrderStateDelta getOrderStateSince(long version) // Display
+         throws OrderException;
+
+  // Tells the listener of every change from now on,
+  //  returns the state of all orders as it was just before
+  public Map<String,List<Integer>> addOrderListener(OrderListener listener) // Display
+         throws OrderException;
+
+  public void removeOrderListener(OrderListener listener) // Display
+         throws OrderException;
 }
@@ -0,0 +1,258 @@
+package ci553.ministore.middle;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The orders that reached or left each stage between two versions of the
+ * order processing system, so a display can keep up by asking only for
+ * what changed since it last asked.
+ * <P>
+ * An order that has moved on since is removed from the stage it was in and
+ * added to the stage it is in now; an order taken and collected in between
+ * is only removed from the stage it was collected from. An order is in one
+ * stage at a time, so applying a change a copy already shows leaves it as
+ * it is. If the version asked about is too old to tell, the delta is full
+ * and holds every order, as getOrderState would.
+ * Order numbers are held as sorted arrays and sent as the gaps between them,
+ * so a delta of a few orders is a few bytes.
+ */
+public class OrderStateDelta implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    /** Stages reported, named as the keys of OrderProcessing.getOrderState */
+    public static final List<String> STATES = List.of("Waiting", "BeingPacked", "ToBeCollected");
+
+    private final long theSince;
+    private final long theVersion;
+    private final boolean theFull;
+    private transient int[][] theAdded;    // By stage, sorted
+    private transient int[][] theRemoved;  // By stage, sorted, empty if full
+
+    /**
+     * @param since   Version the changes are from
+     * @param version Version the changes are up to
+     * @param full    true if the added orders are every order, not changes
+     * @param added   Orders reaching each stage of STATES
+     * @param removed Orders leaving each stage of STATES
+     */
+    public OrderStateDelta(long since, long version, boolean full, int[][] added, int[][] removed) {
+        theSince = since;
+        theVersion = version;
+        theFull = full;
+        theAdded = sorted(added);
+        theRemoved = sorted(removed);
+    }
+
+    /**
+     * Makes a delta holding every order.
+     *
+     * @param version Version of the orders
+     * @param state   The orders in each stage, as getOrderState
+     * @return A full delta
+     */
+    public static OrderStateDelta full(long version, Map<String, List<Integer>> state) {
+        int[][] added = new int[STATES.size()][];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = state.getOrDefault(STATES.get(i), List.of()).stream()
+                    .mapToInt(Integer::intValue).toArray();
+        }
+        return new OrderStateDelta(0, version, true, added, new int[STATES.size()][0]);
+    }
+
+    /**
+     * @return Version the changes are from, 0 if full
+     */
+    public long getSince() {
+        return theSince;
+    }
+
+    /**
+     * @return Version the changes are up to, to ask from next time
+     */
+    public long getVersion() {
+        return theVersion;
+    }
+
+    /**
+     * @return true if every order is held, to replace what the caller had
+     */
+    public boolean isFull() {
+        return theFull;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return !theFull && Arrays.stream(theAdded).allMatch(a -> a.length == 0)
+                && Arrays.stream(theRemoved).allMatch(a -> a.length == 0);
+    }
+
+    /**
+     * @param state A stage named in STATES
+     * @return Orders that reached the stage, in ascending order
+     */
+    public int[] getAdded(String state) {
+        return theAdded[index(state)].clone();
+    }
+
+    /**
+     * @param state A stage named in STATES
+     * @return Orders that left the stage, in ascending order
+     */
+    public int[] getRemoved(String state) {
+        return theRemoved[index(state)].clone();
+    }
+
+    /**
+     * Brings a copy of the orders in each stage up to date.
+     * An order removed or added is first taken out of every stage, so a copy
+     * that already shows some of the changes is brought up to date as well.
+     *
+     * @param state The orders in each stage at getSince, as getOrderState
+     * @return The orders in each stage at getVersion, each list in ascending order
+     */
+    public Map<String, List<Integer>> applyTo(Map<String, List<Integer>> state) {
+        Set<Integer> changed = new HashSet<>();
+        for (int i = 0; i < STATES.size(); i++) {
+            Arrays.stream(theRemoved[i]).forEach(changed::add);
+            Arrays.stream(theAdded[i]).forEach(changed::add);
+        }
+        Map<String, List<Integer>> res = new HashMap<>();
+        for (int i = 0; i < STATES.size(); i++) {
+            String name = STATES.get(i);
+            TreeSet<Integer> orderNums = new TreeSet<>();
+            if (!theFull) {
+                orderNums.addAll(state.getOrDefault(name, List.of()));
+                orderNums.removeAll(changed);
+            }
+            for (int orderNum : theAdded[i]) {
+                orderNums.add(orderNum);
+            }
+            res.put(name, new ArrayList<>(orderNums));
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%s %d -> %d", theFull ? "Full" : "Delta",
+                theSince, theVersion));
+        for (int i = 0; i < STATES.size(); i++) {
+            sb.append(String.format(", %s +%d -%d", STATES.get(i), theAdded[i].length, theRemoved[i].length));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param state A stage
+     * @return Its position in STATES
+     */
+    private static int index(String state) {
+        int i = STATES.indexOf(state);
+        if (i < 0) {
+            throw new IllegalArgumentException("Unknown order stage " + state);
+        }
+        return i;
+    }
+
+    /**
+     * @param byStage Order numbers for each stage
+     * @return Sorted copies, an empty array where none are given
+     */
+    private static int[][] sorted(int[][] byStage) {
+        int[][] res = new int[STATES.size()][];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = byStage[i] == null ? new int[0] : byStage[i].clone();
+            Arrays.sort(res[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Writes the order numbers compactly after the other fields.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < STATES.size(); i++) {
+            writeOrderNums(out, theAdded[i]);
+            writeOrderNums(out, theRemoved[i]);
+        }
+    }
+
+    /**
+     * Reads the order numbers written by writeObject.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        theAdded = new int[STATES.size()][];
+        theRemoved = new int[STATES.size()][];
+        for (int i = 0; i < STATES.size(); i++) {
+            theAdded[i] = readOrderNums(in);
+            theRemoved[i] = readOrderNums(in);
+        }
+    }
+
+    /**
+     * Writes sorted order numbers as their count and the gaps between them,
+     * seven bits to a byte.
+     */
+    private static void writeOrderNums(ObjectOutputStream out, int[] orderNums) throws IOException {
+        writeVarint(out, orderNums.length);
+        int last = 0;
+        for (int orderNum : orderNums) {
+            writeVarint(out, orderNum - last);
+            last = orderNum;
+        }
+    }
+
+    /**
+     * Reads order numbers written by writeOrderNums.
+     */
+    private static int[] readOrderNums(ObjectInputStream in) throws IOException {
+        int[] orderNums = new int[readVarint(in)];
+        int last = 0;
+        for (int i = 0; i < orderNums.length; i++) {
+            last += readVarint(in);
+            orderNums[i] = last;
+        }
+        return orderNums;
+    }
+
+    /**
+     * Writes a number seven bits to a byte, low bits first, the top bit set on all but the last.
+     */
+    private static void writeVarint(ObjectOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a number written by writeVarint.
+     */
+    private static int readVarint(ObjectInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Order number too long");
+    }
+}
@@ -0,0 +1,58 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.debug.DEBUG;
+
+/**
+ * Hands out new product numbers from blocks leased from the stock list.
+ * A new block is only asked for when the current one is used up, so most
+ * numbers are given without going to the database, and two clients can
+ * never be given the same number. Numbers left in a block when the client
+ * stops are not used.
+ *
+ * @version 1.0
+ */
+public class ProductNumberAllocator {
+    private static final int BLOCK_SIZE = Integer.getInteger("ministore.stock.productNumberBlock", 10);
+
+    private final StockReadWriter theStock;  // Where blocks are leased from
+    private final int theBlockSize;          // Numbers asked for in each lease
+    private int theNext = 0;                 // Next number to hand out
+    private int theEnd = 0;                  // One past the last number in the block
+
+    /**
+     * Create an allocator leasing blocks of the size in the system properties.
+     *
+     * @param stock Where blocks are leased from
+     */
+    public ProductNumberAllocator(StockReadWriter stock) {
+        this(stock, BLOCK_SIZE);
+    }
+
+    /**
+     * Create an allocator.
+     *
+     * @param stock     Where blocks are leased from
+     * @param blockSize Numbers asked for in each lease
+     */
+    public ProductNumberAllocator(StockReadWriter stock, int blockSize) {
+        theStock = stock;
+        theBlockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Gets a product number no other client has been given.
+     *
+     * @return The number, as four digits
+     * @throws StockException if a new block is needed and can not be leased
+     */
+    public synchronized String next() throws StockException {
+        if (theNext >= theEnd) {
+            NumberBlock block = theStock.leaseProductNumbers(theBlockSize);
+            DEBUG.trace("ProductNumberAllocator: leased %d from %d", block.getCount(), block.getFirst());
+            theNext = block.getFirst();
+            theEnd = block.getFirst() + block.getCount();
+        }
+        return String.format("%04d", theNext++);
+    }
+}
@@ -0,0 +1,94 @@
+package ci553.ministore.middle;
+
+import java.io.Serializable;
+
+/**
+ * How much work one packing station has done.
+ */
+public class StationStats implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    private final String theStation;
+    private final int theQueued;
+    private final long theTaken;
+    private final long theStolen;
+    private final long thePacked;
+    private final long thePackNanos;
+    private final long theActiveNanos;
+
+    /**
+     * @param station    Name the station gave
+     * @param queued     Orders waiting in the station's own queue
+     * @param taken      Orders taken from its own queue or the shared orders
+     * @param stolen     Orders taken from another station's queue
+     * @param packed     Orders it has reported packed
+     * @param packNanos  Total time from taking to packing those orders
+     * @param activeNanos Time since the station first asked for an order
+     */
+    public StationStats(String station, int queued, long taken, long stolen,
+                        long packed, long packNanos, long activeNanos) {
+        theStation = station;
+        theQueued = queued;
+        theTaken = taken;
+        theStolen = stolen;
+        thePacked = packed;
+        thePackNanos = packNanos;
+        theActiveNanos = activeNanos;
+    }
+
+    /**
+     * @return Name the station gave
+     */
+    public String getStation() {
+        return theStation;
+    }
+
+    /**
+     * @return Orders waiting in the station's own queue
+     */
+    public int getQueued() {
+        return theQueued;
+    }
+
+    /**
+     * @return Orders taken from its own queue or the shared orders
+     */
+    public long getTaken() {
+        return theTaken;
+    }
+
+    /**
+     * @return Orders taken from another station's queue
+     */
+    public long getStolen() {
+        return theStolen;
+    }
+
+    /**
+     * @return Orders reported packed
+     */
+    public long getPacked() {
+        return thePacked;
+    }
+
+    /**
+     * @return Mean time from taking an order to packing it, in milliseconds, 0 if none packed
+     */
+    public double getMeanPackMillis() {
+        return thePacked == 0 ? 0 : thePackNanos / 1e6 / thePacked;
+    }
+
+    /**
+     * @return Orders packed per hour since the station first asked for an order
+     */
+    public double getPackedPerHour() {
+        return theActiveNanos <= 0 ? 0 : thePacked * 3600e9 / theActiveNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d queued, %d taken, %d stolen, %d packed, %.1f ms each, %.0f/hour",
+                theStation, theQueued, theTaken, theStolen, thePacked,
+                getMeanPackMillis(), getPackedPerHour());
+    }
+}
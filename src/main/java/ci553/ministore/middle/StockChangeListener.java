@@ -0,0 +1,16 @@
+package ci553.ministore.middle;
+
+/**
+ * Told whenever the stock list changes a product, so that anything holding
+ * a copy of the product's details, such as a cache, can discard it.
+ */
+public interface StockChangeListener {
+
+    /**
+     * Called after a product's details, stock level or image have changed,
+     * or after the product has been added or deleted.
+     *
+     * @param pNum The product number that changed
+     */
+    void productChanged(String pNum);
+}
@@ -1,8 +1,16 @@
 package ci553.ministore.middle;
 
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductPage;
 
 /**
  * Interface for read/write access to the stock list.
@@ -23,6 +31,61 @@ public interface StockReadWriter extends StockReader {
      */
     boolean buyStock(String pNum, int amount) throws StockException;
 
+    /**
+     * Customer buys a whole basket.
+     * Every line is decremented in a single transaction: either all of the
+     * lines are bought or, if any line has insufficient stock, none are.
+     *
+     * @param basket The basket, one entry per line
+     * @return For each line, in basket order, true if there was enough stock
+     * @throws ci553.ministore.middle.StockException if issue
+     */
+    boolean[] checkout(Basket basket) throws StockException;
+
+    /**
+     * Holds stock for a client that has not yet paid.
+     * The stock is set aside but not taken until the hold is committed,
+     * a hold that is not used for a while expires and its stock is given back.
+     *
+     * @param holdId Identifies the client's hold, for example one per basket
+     * @param pNum   Product number
+     * @param amount Quantity to hold
+     * @return true if held, false if not enough stock is available
+     * @throws ci553.ministore.middle.StockException if issue
+     */
+    boolean reserveStock(String holdId, String pNum, int amount) throws StockException;
+
+    /**
+     * Gives back part of a client's hold.
+     *
+     * @param holdId The client's hold
+     * @param pNum   Product number
+     * @param amount Quantity to give back
+     * @throws ci553.ministore.middle.StockException if issue
+     */
+    void releaseStock(String holdId, String pNum, int amount) throws StockException;
+
+    /**
+     * Takes everything in a client's hold from the stock list,
+     * all lines in a single transaction, and ends the hold.
+     * Nothing is taken unless the hold is for exactly the basket bought.
+     *
+     * @param holdId The client's hold
+     * @param basket The basket being bought
+     * @return true if the stock was taken, false if the hold had expired,
+     *         did not match the basket or there was no longer enough stock
+     * @throws ci553.ministore.middle.StockException if issue
+     */
+    boolean commitReservation(String holdId, Basket basket) throws StockException;
+
+    /**
+     * Gives back everything in a client's hold and ends the hold.
+     *
+     * @param holdId The client's hold
+     * @throws ci553.ministore.middle.StockException if issue
+     */
+    void cancelReservation(String holdId) throws StockException;
+
     /**
      * Adds stock (Restocks) to store.
      *
@@ -58,6 +121,62 @@ public interface StockReadWriter extends StockReader {
      */
     List<Product> getProducts() throws StockException;
 
+    /**
+     * Retrieves one page of the products, in product number order.
+     * Each page continues from where the last one ended, so pages stay
+     * correct when products are added or removed between calls.
+     *
+     * @param afterToken Token from the previous page, or null for the first page
+     * @param pageSize   Most products wanted, the stock list may return fewer
+     * @return The page and the token for the next one
+     * @throws ci553.ministore.middle.StockException if an error occurs while retrieving the products
+     */
+    ProductPage getProductsPage(String afterToken, int pageSize) throws StockException;
+
+    /**
+     * Leases a block of new product numbers that no other client will be given.
+     *
+     * @param count How many numbers are wanted
+     * @return The block, which may be smaller than asked for
+     * @throws ci553.ministore.middle.StockException if no numbers are left or the stock list can not be reached
+     */
+    NumberBlock leaseProductNumbers(int count) throws StockException;
+
+    /**
+     * Streams all products in product number order, fetching one page at a
+     * time as the stream is read, so only one page is held in memory.
+     * A StockException while fetching a page is thrown wrapped in an
+     * UncheckedStockException.
+     *
+     * @param pageSize Products fetched per page
+     * @return A sequential stream of the products
+     */
+    default Stream<Product> streamProducts(int pageSize) {
+        Spliterator<Product> pages = new Spliterators.AbstractSpliterator<>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private ProductPage page = null;  // Page being read, null before the first
+            private int next = 0;             // Position of the next product on the page
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Product> action) {
+                while (page == null || next >= page.getProducts().size()) {
+                    if (page != null && !page.hasMore()) {
+                        return false;
+                    }
+                    try {
+                        page = getProductsPage(page == null ? null : page.getNextToken(), pageSize);
+                    } catch (StockException e) {
+                        throw new UncheckedStockException(e);
+                    }
+                    next = 0;
+                }
+                action.accept(page.getProducts().get(next++));
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+
     /**
      * Adds a new product to the stock.
      *
@@ -1,6 +1,12 @@
 package ci553.ministore.middle;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
+
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Interface for reading product information from the stock database.
@@ -29,12 +35,73 @@ public interface StockReader {
     Product getDetails(String pNum) throws StockException;
 
     /**
-     * Retrieves the product image as a byte array.
+     * Retrieves the product image as a byte array, at the size it is stored.
      * Implementation should handle image loading from the database or file system.
      *
      * @param pNum The product number to retrieve the image for
      * @return byte array containing the image data
      * @throws StockException if the image cannot be found or loaded
      */
-    byte[] getImage(String pNum) throws StockException;
+    default byte[] getImage(String pNum) throws StockException {
+        return getImage(pNum, ImageSize.FULL);
+    }
+
+    /**
+     * Retrieves the product image scaled down to a given size, so that a
+     * client only receives and decodes the bytes it is going to show.
+     *
+     * @param pNum The product number to retrieve the image for
+     * @param size The size wanted
+     * @return byte array containing the image data
+     * @throws StockException if the image cannot be found or loaded
+     */
+    byte[] getImage(String pNum, ImageSize size) throws StockException;
+
+    /**
+     * Retrieves the product image only if it differs from the one the caller
+     * already holds, so an unchanged image is not sent again.
+     *
+     * @param pNum         The product number
+     * @param size         The size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image and its version, or empty if the caller's version is current
+     * @throws StockException if there is an error accessing the database or reading the image
+     */
+    Optional<ProductImage> getImageIfChanged(String pNum, ImageSize size, String knownVersion)
+            throws StockException;
+
+    /**
+     * Retrieves the product details, stock level and full size image in one call.
+     *
+     * @param pNum The product number to look up
+     * @return The product view, or empty if the product does not exist
+     * @throws StockException if there is an error accessing the database
+     */
+    default Optional<ProductView> getProductView(String pNum) throws StockException {
+        return getProductView(pNum, ImageSize.FULL);
+    }
+
+    /**
+     * Retrieves the product details, stock level and image in one call.
+     * Replaces the sequence exists(), getDetails(), getImage() used when
+     * a product is checked, needing only one query and one round trip.
+     *
+     * @param pNum The product number to look up
+     * @param size The size of image wanted
+     * @return The product view, or empty if the product does not exist
+     * @throws StockException if there is an error accessing the database
+     */
+    Optional<ProductView> getProductView(String pNum, ImageSize size) throws StockException;
+
+    /**
+     * Finds products by their description.
+     * Words of the query may be partly typed or misspelt, the products
+     * whose descriptions match best are returned first.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products with their stock levels, best match first
+     * @throws StockException if there is an error accessing the database
+     */
+    List<Product> searchProducts(String query, int maxResults) throws StockException;
 }
@@ -0,0 +1,28 @@
+package ci553.ministore.middle;
+
+/**
+ * Wraps a StockException where only an unchecked exception can be thrown,
+ * for example while a stream of products is being read.
+ *
+ * @version 1.0
+ */
+public class UncheckedStockException extends RuntimeException {
+    private static final long serialVersionUID = 1;
+
+    /**
+     * @param cause The stock exception being wrapped
+     */
+    public UncheckedStockException(StockException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * Returns the wrapped stock exception.
+     *
+     * @return the stock exception
+     */
+    @Override
+    public synchronized StockException getCause() {
+        return (StockException) super.getCause();
+    }
+}
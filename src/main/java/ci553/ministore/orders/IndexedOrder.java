@@ -0,0 +1,392 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.DeadlineStats;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderListener;
+import ci553.ministore.middle.OrderProcessing;
+import ci553.ministore.middle.OrderStateDelta;
+import ci553.ministore.middle.StationStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The order processing system, holding the orders indexed so that finding
+ * an order and moving it on are done in constant time, and taking a new
+ * order and finding the next to pack in logarithmic time, however many
+ * orders are held.<BR>
+ * The orders in each stage are kept in a map from order number to order
+ * that remembers the order they arrived in, so the stage is both a list in
+ * arrival order and an index by order number. Waiting orders are also kept
+ * in a heap by when they are due, so as in Order they are promised by their
+ * priority and packed earliest deadline first.
+ * <P>
+ * Behaves the same as Order, except that every change is made holding
+ * one lock on all the orders, and each list of order numbers in
+ * getOrderState is in the order the orders reached that stage.
+ *
+ * @version 1.0
+ */
+
+public class IndexedOrder implements OrderProcessing
+{
+  // Orders in each stage, oldest first
+  private final LinkedHashMap<Integer, Basket> waiting       = new LinkedHashMap<>();
+  private final LinkedHashMap<Integer, Basket> beingPacked   = new LinkedHashMap<>();
+  private final LinkedHashMap<Integer, Basket> toBeCollected = new LinkedHashMap<>();
+  // Waiting orders, due soonest first, then the oldest
+  private final PriorityQueue<Due>             byDue         = new PriorityQueue<>(
+          Comparator.comparingLong( (Due d) -> d.due ).thenComparingLong( d -> d.seq ) );
+  private long                                 theSeq;        // Arrival order
+
+  private final OrderIdService theIds;       // Gives out the order numbers
+  private final OrderJournal   theJournal;   // Keeps the orders over a restart, or null
+  private final OrderNotifier  theNotifier = new OrderNotifier();
+  private final OrderDeadlines theDeadlines = new OrderDeadlines();
+  private final OrderChangeLog theChangeLog = new OrderChangeLog();
+
+  /**
+   * A waiting order and when it is due
+   */
+  private static class Due
+  {
+    private final Basket basket;
+    private final long   due;      // Packed by, earliest first
+    private final long   seq;      // Arrival order
+
+    public Due( Basket aBasket, long aDue, long aSeq )
+    {
+      basket = aBasket;
+      due    = aDue;
+      seq    = aSeq;
+    }
+  }
+
+  /**
+   * Order processing numbering its orders from the given service, not journaled
+   * @param ids Gives out the order numbers
+   */
+  public IndexedOrder( OrderIdService ids )
+  {
+    theIds     = ids;
+    theJournal = null;
+  }
+
+  /**
+   * Order processing numbering its orders from the given service and
+   * starting with the orders recovered from a journal
+   * @param ids     Gives out the order numbers
+   * @param journal Keeps the orders over a restart, or null for none
+   * @throws OrderException If the journaled orders can not be recovered
+   */
+  public IndexedOrder( OrderIdService ids, OrderJournal journal )
+         throws OrderException
+  {
+    theIds     = ids;
+    theJournal = journal;
+    if ( journal != null )
+    {
+      try
+      {
+        long now = System.currentTimeMillis();
+        for ( OrderJournal.Entry entry : journal.recover() )
+        {
+          Basket basket = entry.getBasket();
+          stage( entry.getState() ).put( basket.getOrderNum(), basket );
+          if ( entry.getState() == Order.State.Waiting )
+            byDue.add( new Due( basket, theDeadlines.due( basket, now ), ++theSeq ) );
+        }
+      } catch ( IOException e )
+      {
+        throw OrderJournal.failed( e );
+      }
+    }
+  }
+
+  /**
+   * Generates a unique order number,
+   *   unique across restarts and across servers sharing the database
+   * @return A unique order number
+   */
+  public int uniqueNumber()
+         throws OrderException
+  {
+    return theIds.next();
+  }
+
+  /**
+   * Add a new order to the order processing system, promising it
+   *  by its priority if it has no deadline
+   * @param bought A new order that is to be processed
+   * @throws OrderException If an order with the same number is already held
+   */
+  public void newOrder( Basket bought )
+         throws OrderException
+  {
+    int orderNum = bought.getOrderNum();
+    long ticket = 0;
+    long now = System.currentTimeMillis();
+    theDeadlines.promise( bought, now );
+    synchronized ( this )
+    {
+      if ( holds( orderNum ) )
+        throw new OrderException( "Order " + orderNum + " already held" );
+      ticket = OrderJournal.append( theJournal, bought );
+      waiting.put( orderNum, bought );
+      byDue.add( new Due( bought, theDeadlines.due( bought, now ), ++theSeq ) );
+      DEBUG.trace( "IndexedOrder: new order #%d, %d waiting", orderNum, waiting.size() );
+      theNotifier.publish( orderNum, null, "Waiting" );
+      theChangeLog.record( orderNum, null, Order.State.Waiting );
+      notifyAll();                                 // Wake waiting packers
+    }
+    durable( ticket );
+  }
+
+  /**
+   * Returns the order due soonest, to pack from the warehouse.
+   * @return An order to pack or null if no order
+   */
+  public Basket getOrderToPack()
+         throws OrderException
+  {
+    return getOrderToPack( 0 );
+  }
+
+  /**
+   * Returns the order due soonest, waiting for
+   * a new order if there is none.
+   * @param timeoutMillis Longest time to wait, 0 not to wait
+   * @return An order to pack or null if none arrived in time,
+   *          or the caller was interrupted
+   */
+  public Basket getOrderToPack( long timeoutMillis )
+         throws OrderException
+  {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeoutMillis );
+    Basket found = null;
+    long ticket = 0;
+    synchronized ( this )
+    {
+      while ( waiting.isEmpty() && Order.awaitOrder( this, deadline ) )
+        ;                                          // Woken, look again
+      Due next = byDue.peek();
+      if ( next != null )
+      {
+        found = next.basket;
+        int orderNum = found.getOrderNum();
+        ticket = OrderJournal.append( theJournal, orderNum, Order.State.BeingPacked );
+        byDue.poll();
+        waiting.remove( orderNum );
+        beingPacked.put( orderNum, found );
+        theNotifier.publish( orderNum, "Waiting", "BeingPacked" );
+        theChangeLog.record( orderNum, Order.State.Waiting, Order.State.BeingPacked );
+        DEBUG.trace( "IndexedOrder: packing #%d", orderNum );
+      }
+    }
+    durable( ticket );
+    return found;
+  }
+
+  /**
+   * Returns the order due soonest, as all stations
+   * share one queue here
+   * @param station       Name of the packing station, not used
+   * @param timeoutMillis Longest time to wait, 0 not to wait
+   * @return An order to pack or null if none arrived in time
+   */
+  public Basket getOrderToPack( String station, long timeoutMillis )
+         throws OrderException
+  {
+    return getOrderToPack( timeoutMillis );
+  }
+
+  /**
+   * Packing stations are not told apart here
+   * @return An empty list
+   */
+  public List<StationStats> getStationStats()
+  {
+    return List.of();
+  }
+
+  /**
+   * Returns how many orders of each priority were packed by their deadline
+   * @return One entry for each priority
+   */
+  public List<DeadlineStats> getDeadlineStats()
+  {
+    return theDeadlines.getStats();
+  }
+
+  /**
+   * Informs the order processing system that the order has been
+   * packed and the products are now being delivered to the
+   * collection desk
+   * @param  orderNum The order that has been packed
+   * @return true Order in system, false no such order
+   */
+  public boolean informOrderPacked( int orderNum )
+         throws OrderException
+  {
+    return move( orderNum, beingPacked, toBeCollected, Order.State.BeingPacked,
+                 Order.State.ToBeCollected );
+  }
+
+  /**
+   * Informs the order processing system that the order has been
+   * collected by the customer
+   * @return true If order is in the system, otherwise false
+   */
+  public boolean informOrderCollected( int orderNum )
+         throws OrderException
+  {
+    return move( orderNum, toBeCollected, null, Order.State.ToBeCollected, null );
+  }
+
+  /**
+   * Returns information about all the orders (there order number)
+   * in the order processing system, as described for Order
+   * @return a Map with the keys: "Waiting", "BeingPacked", "ToBeCollected"
+   */
+  public synchronized Map<String, List<Integer> > getOrderState()
+         throws OrderException
+  {
+    return orderState();
+  }
+
+  /**
+   * Returns the orders that reached or left each stage since a version
+   *  given by an earlier call, or every order if that is too long ago
+   * @param version Version given by the last delta, 0 for none
+   * @return The changes, and the version they are up to
+   */
+  public synchronized OrderStateDelta getOrderStateSince( long version )
+  {
+    return theChangeLog.since( version, this::orderState );
+  }
+
+  /**
+   * @return Every order held by stage, as getOrderState. Called holding the lock
+   */
+  private Map<String, List<Integer> > orderState()
+  {
+    Map < String, List<Integer> > res = new HashMap<>();
+
+    res.put( "Waiting",       new ArrayList<>( waiting.keySet() ) );
+    res.put( "BeingPacked",   new ArrayList<>( beingPacked.keySet() ) );
+    res.put( "ToBeCollected", new ArrayList<>( toBeCollected.keySet() ) );
+
+    return res;
+  }
+
+  /**
+   * Tells a listener of every change to an order from now on
+   * @param listener The listener
+   * @return The state of all orders, as getOrderState, just before the first change told
+   */
+  public synchronized Map<String, List<Integer> > addOrderListener( OrderListener listener )
+         throws OrderException
+  {
+    theNotifier.add( listener );
+    return getOrderState();
+  }
+
+  /**
+   * Stops telling a listener of changes
+   * @param listener The listener
+   */
+  public void removeOrderListener( OrderListener listener )
+  {
+    theNotifier.remove( listener );
+  }
+
+  /**
+   * Moves an order from one stage to the next
+   * @param orderNum The order
+   * @param from     The stage it must be in
+   * @param to       The stage it moves to, null once collected
+   * @param was      The stage it must be in, for the listeners
+   * @param state    The stage it moves to, for the journal and listeners
+   * @return true if the order was in the stage
+   * @throws OrderException If the change can not be journaled
+   */
+  private boolean move( int orderNum, Map<Integer, Basket> from, Map<Integer, Basket> to,
+                        Order.State was, Order.State state )
+          throws OrderException
+  {
+    long ticket = 0;
+    synchronized ( this )
+    {
+      Basket basket = from.get( orderNum );
+      if ( basket == null ) return false;
+      ticket = OrderJournal.append( theJournal, orderNum, state );
+      from.remove( orderNum );
+      if ( to != null ) to.put( orderNum, basket );
+      if ( state == Order.State.ToBeCollected )
+        theDeadlines.packed( basket, System.currentTimeMillis() );
+      theNotifier.publish( orderNum, was.name(), state == null ? null : state.name() );
+      theChangeLog.record( orderNum, was, state );
+      DEBUG.trace( "IndexedOrder: #%d now %s", orderNum, state == null ? "collected" : state );
+    }
+    durable( ticket );
+    return true;
+  }
+
+  /**
+   * @param orderNum An order number
+   * @return true if an order with the number is held in any stage
+   */
+  private boolean holds( int orderNum )
+  {
+    return waiting.containsKey( orderNum ) || beingPacked.containsKey( orderNum ) ||
+           toBeCollected.containsKey( orderNum );
+  }
+
+  /**
+   * @param state A stage
+   * @return The orders in the stage
+   */
+  private LinkedHashMap<Integer, Basket> stage( Order.State state )
+  {
+    switch ( state )
+    {
+      case Waiting:     return waiting;
+      case BeingPacked: return beingPacked;
+      default:          return toBeCollected;
+    }
+  }
+
+  /**
+   * Waits, without holding the lock, until a change is on disk
+   * @param ticket Returned when the change was journaled, 0 if it was not
+   * @throws OrderException If the change could not be written
+   */
+  private void durable( long ticket )
+          throws OrderException
+  {
+    OrderJournal.durable( theJournal, ticket, this, this::live );
+  }
+
+  /**
+   * @return Every order held and its stage, called holding the lock
+   */
+  private Collection<OrderJournal.Entry> live()
+  {
+    List<OrderJournal.Entry> live =
+            new ArrayList<>( waiting.size() + beingPacked.size() + toBeCollected.size() );
+    for ( Order.State state : Order.State.values() )
+      for ( Basket basket : stage( state ).values() )
+        live.add( new OrderJournal.Entry( basket, state ) );
+    return live;
+  }
+}
@@ -1,14 +1,25 @@
 package ci553.ministore.orders;
 
 import ci553.ministore.catalogue.Basket;
-import ci553.ministore.catalogue.Product;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.DeadlineStats;
 import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderListener;
 import ci553.ministore.middle.OrderProcessing;
+import ci553.ministore.middle.OrderStateDelta;
+import ci553.ministore.middle.StationStats;
 
-import java.util.stream.Collectors;
-
-import java.util.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The order processing system.<BR>
@@ -18,102 +29,262 @@ import java.util.*;
  * <BR><B>Waiting to be processed<BR>
  * Currently being packed<BR>
  * Waiting to be collected<BR></B>
+ * <P>
+ * Each order holds its own stage and is moved on by compare and set, so
+ * of two callers moving the same order on only one succeeds. Changes share
+ * the read side of a read-write lock, so tills taking orders and packers
+ * moving different orders on never wait for one another. A journal
+ * snapshot and a new listener take the write side, to see every order with
+ * no change half made, and hold up changes while they do. Displays asking
+ * what changed take no lock.
+ * Waiting orders are dealt out to the packing stations by a PackingDispatcher,
+ * and packed earliest deadline first as promised by OrderDeadlines.
  * @author  Mike Smith University of Brighton
- * @version 3.0
+ * @version 4.0
  */
 
 public class Order implements OrderProcessing
 {
-  private enum State {Waiting, BeingPacked, ToBeCollected };
+  enum State {Waiting, BeingPacked, ToBeCollected };
+
   /**
-   * Wraps a Basket and it state into a folder
+   * The steps in the life of an order. Between each stage is a moving
+   * step, held while the change is journaled and told to listeners, so
+   * changes to one order are journaled and told in the order they are made.
    */
-  private class Folder
+  private enum Step
   {
-    private State  stateIs;       // Order state
-    private Basket basket;        // For this basket
+    Waiting       ( State.Waiting       ),
+    Taking        ( State.Waiting       ),
+    BeingPacked   ( State.BeingPacked   ),
+    Packing       ( State.BeingPacked   ),
+    ToBeCollected ( State.ToBeCollected ),
+    Collecting    ( State.ToBeCollected ),
+    Collected     ( null                );
+
+    private final State shown;     // Stage reported while at this step
 
-    public Folder( Basket anOrder )
+    Step( State aShown )
     {
-      stateIs = State.Waiting;
-      basket  = anOrder;
+      shown = aShown;
     }
+  }
+
+  /**
+   * Wraps a Basket and its step into a folder
+   */
+  private static class Folder
+  {
+    private final Basket                basket;   // For this basket
+    private final AtomicReference<Step> step;     // Order step
+    private volatile String             packer;   // Station packing it, or null
+    private volatile long               takenAt;  // System.nanoTime() when taken to pack
+
+    public Folder( Basket anOrder, Step aStep )
+    {
+      basket = anOrder;
+      step   = new AtomicReference<>( aStep );
+    }
+
+    public Step getStep()                     { return step.get(); }
+
+    public Basket getBasket()                 { return basket; }
+
+    public boolean move( Step from, Step to ) { return step.compareAndSet( from, to ); }
+
+    public void newStep( Step newStep )       { step.set( newStep ); }
+
+    public void takenBy( String station )
+    {
+      packer  = station;
+      takenAt = System.nanoTime();
+    }
+  }
 
-    public State getState()                { return this.stateIs; }
+  // Active orders in the Catshop system, by order number
+  private final ConcurrentHashMap<Integer, Folder> folders = new ConcurrentHashMap<>();
+  // Orders waiting to be packed, dealt out to the packing stations
+  private final PackingDispatcher<Folder>          waiting = new PackingDispatcher<>();
 
-    public Basket getBasket()              { return this.basket; }
+  // Changes share the read lock, snapshots and new listeners need every change finished
+  private final ReentrantReadWriteLock theChanges = new ReentrantReadWriteLock();
+  private final Object             theArrivals  = new Object();         // Idle packers wait on this
+  private final AtomicInteger      theIdle      = new AtomicInteger();  // Packers waiting
+  private final OrderIdService     theIds;       // Gives out the order numbers
+  private final OrderJournal       theJournal;   // Keeps the orders over a restart, or null
+  private final OrderNotifier      theNotifier = new OrderNotifier();
+  private final OrderDeadlines     theDeadlines = new OrderDeadlines();
+  private final OrderChangeLog     theChangeLog = new OrderChangeLog();
 
-    public void newState( State newState ) { stateIs = newState; }
+  /**
+   * Order processing numbering its orders from the database and
+   * journaled as set by the system properties
+   * @throws OrderException If the journaled orders can not be recovered
+   */
+  public Order()
+         throws OrderException
+  {
+    this( OrderIdService.getShared(), OrderJournal.fromProperties() );
   }
 
-  // Active orders in the Catshop system
-  private final ArrayList<Folder>  folders = new ArrayList<>();
-  private static int theNextNumber = 1;          // Start at order 1
+  /**
+   * Order processing numbering its orders from the given service, not journaled
+   * @param ids Gives out the order numbers
+   */
+  public Order( OrderIdService ids )
+  {
+    theIds     = ids;
+    theJournal = null;
+  }
 
   /**
-   * Used to generate debug information
-   * @param  basket an instance of a basket
-   * @return Description of contents
+   * Order processing numbering its orders from the given service and
+   * starting with the orders recovered from a journal
+   * @param ids     Gives out the order numbers
+   * @param journal Keeps the orders over a restart, or null for none
+   * @throws OrderException If the journaled orders can not be recovered
    */
-  private String asString( Basket basket )
+  public Order( OrderIdService ids, OrderJournal journal )
+         throws OrderException
   {
-    StringBuilder sb = new StringBuilder(1024);
-    Formatter     fr = new Formatter(sb);
-    fr.format( "#%d (", basket.getOrderNum() );
-    for ( Product pr: basket )
+    theIds     = ids;
+    theJournal = journal;
+    if ( journal != null )
     {
-       fr.format( "%-15.15s: %3d ", pr.getDescription(), pr.getQuantity() );
+      try
+      {
+        long now = System.currentTimeMillis();
+        for ( OrderJournal.Entry entry : journal.recover() )
+        {
+          Basket basket = entry.getBasket();
+          Folder folder = new Folder( basket, stepOf( entry.getState() ) );
+          folders.put( basket.getOrderNum(), folder );
+          theDeadlines.promise( basket, now );       // Journaled before deadlines were kept
+          if ( entry.getState() == State.Waiting )
+            waiting.offer( folder, theDeadlines.due( basket, now ) );
+        }
+      } catch ( IOException e )
+      {
+        throw OrderJournal.failed( e );
+      }
     }
-    fr.format( ")" );
-    fr.close();
-    return sb.toString();
   }
 
   /**
-   * Generates a unique order number
-   *   would be good to recycle numbers after 999
+   * Generates a unique order number,
+   *   unique across restarts and across servers sharing the database
    * @return A unique order number
    */
-  public synchronized int uniqueNumber()
+  public int uniqueNumber()
          throws OrderException
   {
-    return theNextNumber++;
+    return theIds.next();
   }
 
   /**
-   * Add a new order to the order processing system
+   * Add a new order to the order processing system, promising it
+   *  by its priority if it has no deadline
    * @param bought A new order that is to be processed
+   * @throws OrderException If an order with the same number is already held
    */
-  public synchronized void newOrder( Basket bought )
+  public void newOrder( Basket bought )
          throws OrderException
   {
-    DEBUG.trace( "DEBUG: New order" );
-    folders.add( new Folder( bought ) );
-    for ( Folder bws : folders )
+    int orderNum = bought.getOrderNum();
+    long now = System.currentTimeMillis();
+    theDeadlines.promise( bought, now );
+    Folder folder = new Folder( bought, Step.Waiting );
+    long ticket;
+    theChanges.readLock().lock();
+    try
     {
-       DEBUG.trace( "Order: " + asString( bws.getBasket() ) );
+      if ( folders.putIfAbsent( orderNum, folder ) != null )
+        throw new OrderException( "Order " + orderNum + " already held" );
+      try
+      {
+        ticket = OrderJournal.append( theJournal, bought );
+      } catch ( OrderException e )
+      {
+        folders.remove( orderNum, folder );
+        throw e;
+      }
+      theNotifier.publish( orderNum, null, "Waiting" );
+      theChangeLog.record( orderNum, null, State.Waiting );
+      waiting.offer( folder, theDeadlines.due( bought, now ) );
+    } finally {
+      theChanges.readLock().unlock();
+    }
+    DEBUG.trace( "Order: #%d, %d orders held", orderNum, folders.size() );
+    if ( theIdle.get() > 0 )                       // Wake waiting packers
+    {
+      synchronized ( theArrivals )
+      {
+        theArrivals.notifyAll();
+      }
     }
+    durable( ticket );
   }
 
   /**
    * Returns an order to pack from the warehouse.
    * @return An order to pack or null if no order
    */
-  public synchronized Basket getOrderToPack()
+  public Basket getOrderToPack()
          throws OrderException
   {
-    DEBUG.trace( "DEBUG: Get order to pack" );
-    Basket foundWaiting = null;
-    for ( Folder bws : folders )
+    return getOrderToPack( 0 );
+  }
+
+  /**
+   * Returns an order to pack, for a caller that is not a packing
+   * station, waiting for a new order if there is none.
+   * @param timeoutMillis Longest time to wait, 0 not to wait
+   * @return An order to pack or null if none arrived in time,
+   *          or the caller was interrupted
+   */
+  public Basket getOrderToPack( long timeoutMillis )
+         throws OrderException
+  {
+    return getOrderToPack( null, timeoutMillis );
+  }
+
+  /**
+   * Returns an order for a packing station to pack, waiting for
+   * a new order if there is none. Each station is dealt orders
+   * of its own and takes from other stations when it runs out.
+   * @param station       Name of the packing station, null for none
+   * @param timeoutMillis Longest time to wait, 0 not to wait
+   * @return An order to pack or null if none arrived in time,
+   *          or the caller was interrupted
+   */
+  public Basket getOrderToPack( String station, long timeoutMillis )
+         throws OrderException
+  {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeoutMillis );
+    Basket found;
+    do
     {
-      if ( bws.getState() == State.Waiting )
-      {
-        foundWaiting = bws.getBasket();
-        bws.newState( State.BeingPacked );
-        break;
-      }
-    }
-    return foundWaiting;
+      found = takeWaiting( station );
+    } while ( found == null && awaitArrival( deadline ) );
+    return found;
+  }
+
+  /**
+   * Returns what each packing station has done
+   * @return One entry for each station that has asked for an order
+   */
+  public List<StationStats> getStationStats()
+  {
+    return waiting.getStats();
+  }
+
+  /**
+   * Returns how many orders of each priority were packed by their deadline
+   * @return One entry for each priority
+   */
+  public List<DeadlineStats> getDeadlineStats()
+  {
+    return theDeadlines.getStats();
   }
 
   /**
@@ -123,20 +294,16 @@ public class Order implements OrderProcessing
    * @param  orderNum The order that has been packed
    * @return true Order in system, false no such order
    */
-  public synchronized boolean informOrderPacked( int orderNum )
+  public boolean informOrderPacked( int orderNum )
          throws OrderException
   {
     DEBUG.trace( "DEBUG: Order packed [%d]", orderNum );
-    for ( int i=0; i < folders.size(); i++)
-    {
-      if ( folders.get(i).getBasket().getOrderNum() == orderNum &&
-           folders.get(i).getState()                == State.BeingPacked )
-      {
-        folders.get(i).newState( State.ToBeCollected );
-        return true;
-      }
-    }
-    return false;
+    Folder folder = folders.get( orderNum );
+    if ( folder == null ||
+         !move( folder, Step.BeingPacked, Step.Packing, Step.ToBeCollected ) ) return false;
+    waiting.packed( folder.packer, System.nanoTime() - folder.takenAt );
+    theDeadlines.packed( folder.getBasket(), System.currentTimeMillis() );
+    return true;
   }
 
   /**
@@ -144,20 +311,13 @@ public class Order implements OrderProcessing
    * collected by the customer
    * @return true If order is in the system, otherwise false
    */
-  public synchronized boolean informOrderCollected( int orderNum )
+  public boolean informOrderCollected( int orderNum )
          throws OrderException
   {
     DEBUG.trace( "DEBUG: Order collected [%d]", orderNum );
-    for ( int i=0; i < folders.size(); i++)
-    {
-      if ( folders.get(i).getBasket().getOrderNum() == orderNum &&
-           folders.get(i).getState()                == State.ToBeCollected )
-      {
-        folders.remove(i);
-        return true;
-      }
-    }
-    return false;
+    Folder folder = folders.get( orderNum );
+    return folder != null &&
+           move( folder, Step.ToBeCollected, Step.Collecting, Step.Collected );
   }
 
   /**
@@ -171,32 +331,245 @@ public class Order implements OrderProcessing
    * Associated with each key is a List&lt;Integer&gt; of order numbers.
    * Note: Each order number will be unique number.
    * </PRE>
+   * Each list is in order number order. An order being moved on
+   * while the lists are made is shown in the stage it is leaving.
    * @return a Map with the keys: "Waiting", "BeingPacked", "ToBeCollected"
    */
-  public synchronized Map<String, List<Integer> > getOrderState()
+  public Map<String, List<Integer> > getOrderState()
          throws OrderException
   {
     DEBUG.trace( "DEBUG: get state of order system" );
+    return orderState();
+  }
+
+  /**
+   * @return Every order held by stage, as getOrderState
+   */
+  private Map<String, List<Integer> > orderState()
+  {
     Map < String, List<Integer> > res = new HashMap<>();
+    for ( State state : State.values() )
+      res.put( state.name(), new ArrayList<>() );
 
-    res.put( "Waiting",       orderNums(State.Waiting) );
-    res.put( "BeingPacked",   orderNums(State.BeingPacked) );
-    res.put( "ToBeCollected", orderNums(State.ToBeCollected) );
+    for ( Folder folder : folders.values() )
+    {
+      State shown = folder.getStep().shown;
+      if ( shown != null ) res.get( shown.name() ).add( folder.getBasket().getOrderNum() );
+    }
+    for ( List<Integer> orderNums : res.values() )
+      Collections.sort( orderNums );
 
     return res;
   }
 
+  /**
+   * Returns the orders that reached or left each stage since a version
+   *  given by an earlier call, or every order if that is too long ago
+   * @param version Version given by the last delta, 0 for none
+   * @return The changes, and the version they are up to
+   */
+  public OrderStateDelta getOrderStateSince( long version )
+         throws OrderException
+  {
+    return theChangeLog.since( version, this::orderState );  // Takes no lock
+  }
+
+  /**
+   * Tells a listener of every change to an order from now on
+   * @param listener The listener
+   * @return The state of all orders, as getOrderState, just before the first change told
+   */
+  public Map<String, List<Integer> > addOrderListener( OrderListener listener )
+         throws OrderException
+  {
+    theChanges.writeLock().lock();                 // No change half told
+    try
+    {
+      theNotifier.add( listener );
+      return getOrderState();
+    } finally {
+      theChanges.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stops telling a listener of changes
+   * @param listener The listener
+   */
+  public void removeOrderListener( OrderListener listener )
+  {
+    theNotifier.remove( listener );
+  }
+
+  /**
+   * Moves an order on to being packed by a station
+   * @param station The packing station, or null for none
+   * @return The order, or null if none is waiting
+   * @throws OrderException If the change can not be journaled
+   */
+  private Basket takeWaiting( String station )
+          throws OrderException
+  {
+    Folder folder = null;
+    long ticket;
+    theChanges.readLock().lock();
+    try
+    {
+      do
+      {
+        folder = waiting.poll( station );
+        if ( folder == null ) return null;
+      } while ( !folder.move( Step.Waiting, Step.Taking ) );
+      folder.takenBy( station );
+      ticket = moved( folder, Step.Waiting, Step.BeingPacked );
+    } catch ( OrderException e )
+    {
+      waiting.offer( folder,                       // Not taken after all
+                     theDeadlines.due( folder.getBasket(), System.currentTimeMillis() ) );
+      throw e;
+    } finally {
+      theChanges.readLock().unlock();
+    }
+    DEBUG.trace( "Order: packing #%d", folder.getBasket().getOrderNum() );
+    durable( ticket );
+    return folder.getBasket();
+  }
+
+  /**
+   * Waits for a new order to arrive
+   * @param deadline System.nanoTime() by which to give up
+   * @return false if the deadline has passed or the caller was interrupted
+   */
+  private boolean awaitArrival( long deadline )
+  {
+    synchronized ( theArrivals )
+    {
+      theIdle.incrementAndGet();                   // Seen by newOrder before
+      try                                          //  or after it queues an order
+      {
+        return !waiting.isEmpty() || awaitOrder( theArrivals, deadline );
+      } finally {
+        theIdle.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Moves an order on one stage, if it is at the stage expected
+   * @param folder The order
+   * @param from   The stage it must be at
+   * @param moving The moving step between the stages
+   * @param to     The stage it moves to
+   * @return true if the order was moved, false if it was not at the stage
+   * @throws OrderException If the change can not be journaled, the order is not moved
+   */
+  private boolean move( Folder folder, Step from, Step moving, Step to )
+          throws OrderException
+  {
+    long ticket;
+    theChanges.readLock().lock();
+    try
+    {
+      if ( !folder.move( from, moving ) ) return false;
+      ticket = moved( folder, from, to );
+    } finally {
+      theChanges.readLock().unlock();
+    }
+    durable( ticket );
+    return true;
+  }
+
+  /**
+   * Journals and tells listeners of a change to an order that has been
+   * claimed by setting its moving step, then completes the change
+   * @param folder The order, at its moving step
+   * @param from   The stage it was at
+   * @param to     The stage it moves to
+   * @return Ticket to wait on, 0 if not journaled
+   * @throws OrderException If the change can not be journaled, the order is put back
+   */
+  private long moved( Folder folder, Step from, Step to )
+          throws OrderException
+  {
+    int orderNum = folder.getBasket().getOrderNum();
+    State next = to.shown;
+    long ticket;
+    try
+    {
+      ticket = OrderJournal.append( theJournal, orderNum, next );
+    } catch ( OrderException e )
+    {
+      folder.newStep( from );
+      throw e;
+    }
+    theNotifier.publish( orderNum, from.shown.name(), next == null ? null : next.name() );
+    long version = theChangeLog.next();            // Numbered while no one else can move it
+    if ( to == Step.Collected ) folders.remove( orderNum, folder );
+    folder.newStep( to );
+    theChangeLog.publish( version, orderNum, from.shown, next );  // Once shown at its new stage
+    return ticket;
+  }
+
+  /**
+   * @param state A stage
+   * @return The step of an order resting at the stage
+   */
+  private static Step stepOf( State state )
+  {
+    switch ( state )
+    {
+      case Waiting:     return Step.Waiting;
+      case BeingPacked: return Step.BeingPacked;
+      default:          return Step.ToBeCollected;
+    }
+  }
+
+  /**
+   * Waits on a store's lock until it is notified of a new order,
+   *   called holding the lock
+   * @param lock     The order store's lock
+   * @param deadline System.nanoTime() by which to give up
+   * @return false if the deadline has passed or the caller was interrupted,
+   *          the interrupt is kept for the caller to see
+   */
+  static boolean awaitOrder( Object lock, long deadline )
+  {
+    long left = deadline - System.nanoTime();
+    if ( left <= 0 ) return false;
+    try
+    {
+      TimeUnit.NANOSECONDS.timedWait( lock, left );
+      return true;
+    } catch ( InterruptedException e )
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Waits, without holding the read lock, until a change is on disk
+   * @param ticket Returned when the change was journaled, 0 if it was not
+   * @throws OrderException If the change could not be written
+   */
+  private void durable( long ticket )
+          throws OrderException
+  {
+    OrderJournal.durable( theJournal, ticket, theChanges.writeLock(), this::live );
+  }
 
   /**
-   * Return the list of order numbers in selected state
-   * @param inState The state to find order numbers in
-   * @return A list of order numbers
+   * @return Every order held and its stage, waiting orders oldest first,
+   *          called holding the write lock so no order is moving
    */
-  private List<Integer> orderNums( State inState )
+  private List<OrderJournal.Entry> live()
   {
-    return folders.stream()
-            .filter( folder -> folder.getState() == inState )
-            .map( folder -> folder.getBasket().getOrderNum() )
-            .collect( Collectors.toList() );
+    List<OrderJournal.Entry> live = new ArrayList<>( folders.size() );
+    for ( Folder f : waiting.waiting() )
+      live.add( new OrderJournal.Entry( f.getBasket(), State.Waiting ) );
+    for ( Folder f : folders.values() )
+      if ( f.getStep() != Step.Waiting )
+        live.add( new OrderJournal.Entry( f.getBasket(), f.getStep().shown ) );
+    return live;
   }
 }
@@ -0,0 +1,232 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.middle.OrderStateDelta;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Numbers every change to the orders held with a version, one higher each
+ * change, and remembers the latest changes so a display can be told only
+ * what changed since the version it last saw.<BR>
+ * The changes are kept in a ring of primitive arrays, so recording one
+ * makes no garbage. Set by the system property:
+ * <PRE>
+ * ministore.order.changeLogSize  Number of latest changes remembered (default 16384)
+ * </PRE>
+ * A display further behind than that is sent every order again. Versions
+ * start from the time the log was made, in microseconds, so a version from
+ * before a restart is never taken for one after it.
+ * <P>
+ * Nothing is locked. A change is packed into one long, and each slot's
+ * version is written after its change, and cleared before it, so a reader
+ * that finds the version it wants on both sides of reading the change knows
+ * the change is whole. A display is told the changes up to the first one
+ * numbered but not yet published, the rest the next time it asks.
+ *
+ * @version 1.0
+ */
+
+class OrderChangeLog
+{
+  private static final int  SIZE    = Integer.getInteger( "ministore.order.changeLogSize", 16_384 );
+  private static final byte NONE    = -1;            // Not in any stage
+  private static final long WRITING = -1;            // Version of a slot being written
+
+  private final AtomicLongArray theVersions;         // Version of the change in each slot
+  private final AtomicLongArray theChanges;          // Order number, stage from and to
+  private final AtomicLong      theVersion =
+          new AtomicLong( TimeUnit.MILLISECONDS.toMicros( System.currentTimeMillis() ) );
+  private final AtomicLong      thePublished =       // Every change up to this is published
+          new AtomicLong( theVersion.get() );
+
+  /**
+   * Change log remembering as many changes as set by the system property
+   */
+  OrderChangeLog()
+  {
+    this( SIZE );
+  }
+
+  /**
+   * @param size Number of latest changes remembered
+   */
+  OrderChangeLog( int size )
+  {
+    theVersions = new AtomicLongArray( size );
+    theChanges  = new AtomicLongArray( size );
+  }
+
+  /**
+   * Records a change to an order, numbering and publishing it at once
+   * @param orderNum The order
+   * @param from     The stage it was in, null if new
+   * @param to       The stage it is now in, null once collected
+   * @return Version of the orders after the change
+   */
+  long record( int orderNum, Order.State from, Order.State to )
+  {
+    long version = next();
+    publish( version, orderNum, from, to );
+    return version;
+  }
+
+  /**
+   * Numbers the next change. Changes to one order must be numbered in the
+   *   order they are made, each is published once shown by the order
+   * @return Version of the orders after the change
+   */
+  long next()
+  {
+    return theVersion.incrementAndGet();
+  }
+
+  /**
+   * Publishes a change numbered by next, may be called at the same time
+   *   as any other method
+   * @param version  Given by next
+   * @param orderNum The order
+   * @param from     The stage it was in, null if new
+   * @param to       The stage it is now in, null once collected
+   */
+  void publish( long version, int orderNum, Order.State from, Order.State to )
+  {
+    int slot = slot( version );
+    theVersions.set( slot, WRITING );
+    theChanges.setRelease( slot, ( (long) orderNum << 16 ) | ( ( code( from ) & 0xFF ) << 8 )
+                                                            | ( code( to ) & 0xFF ) );
+    theVersions.setRelease( slot, version );
+  }
+
+  /**
+   * @return Version of the orders after the latest change numbered
+   */
+  long getVersion()
+  {
+    return theVersion.get();
+  }
+
+  /**
+   * Returns what changed since a version, up to the first change not yet
+   *   published. May be called at the same time as any other method
+   * @param version Version last seen, 0 for none
+   * @param state   Gives the orders in each stage now, for a full delta
+   * @return The changes, or every order if the version is too old or
+   *          from before a restart
+   */
+  OrderStateDelta since( long version, Supplier<Map<String, List<Integer>>> state )
+  {
+    long now = theVersion.get();
+    if ( version < 0 || version > now || version < now - theVersions.length() )
+      return full( state );
+
+    // First stage each order was in, the last it reached and the last it left
+    Map<Integer, byte[]> moved = new HashMap<>();
+    long upTo = version;
+    for ( long v = version + 1; v <= now; v++ )
+    {
+      int  slot = slot( v );
+      long was  = theVersions.getAcquire( slot );
+      if ( was != v )
+      {
+        if ( was > v ) return full( state );       // Written over, too far behind
+        break;                                     // Not published yet
+      }
+      long change = theChanges.getAcquire( slot );
+      if ( theVersions.getAcquire( slot ) != v ) return full( state );
+      int  orderNum = (int) ( change >>> 16 );
+      byte from     = (byte) ( change >>> 8 );
+      byte to       = (byte) change;
+      byte[] fromTo = moved.get( orderNum );
+      if ( fromTo == null )
+        moved.put( orderNum, new byte[] { from, to, from } );
+      else
+      {
+        fromTo[ 1 ] = to;
+        fromTo[ 2 ] = from;
+      }
+      upTo = v;
+    }
+
+    int   stages    = OrderStateDelta.STATES.size();
+    int[] addedN    = new int[ stages ];
+    int[] removedN  = new int[ stages ];
+    for ( byte[] fromTo : moved.values() )
+    {
+      if ( left( fromTo ) != NONE ) removedN[ left( fromTo ) ]++;
+      if ( fromTo[ 1 ] != NONE )    addedN[ fromTo[ 1 ] ]++;
+    }
+    int[][] added   = new int[ stages ][];
+    int[][] removed = new int[ stages ][];
+    for ( int i = 0; i < stages; i++ )
+    {
+      added[ i ]   = new int[ addedN[ i ] ];
+      removed[ i ] = new int[ removedN[ i ] ];
+    }
+    for ( Map.Entry<Integer, byte[]> e : moved.entrySet() )
+    {
+      byte[] fromTo = e.getValue();
+      byte   left   = left( fromTo );
+      if ( left != NONE )        removed[ left ][ --removedN[ left ] ] = e.getKey();
+      if ( fromTo[ 1 ] != NONE ) added[ fromTo[ 1 ] ][ --addedN[ fromTo[ 1 ] ] ] = e.getKey();
+    }
+    return new OrderStateDelta( version, upTo, false, added, removed );
+  }
+
+  /**
+   * Every order, at a version that every change up to has been published,
+   *   so the orders given show at least those changes. Changes after it
+   *   may show as well, and are sent again with the next delta
+   * @param state Gives the orders in each stage now
+   * @return A full delta
+   */
+  private OrderStateDelta full( Supplier<Map<String, List<Integer>>> state )
+  {
+    long v = thePublished.get();
+    long now = theVersion.get();
+    while ( v < now )
+    {
+      long was = theVersions.getAcquire( slot( v + 1 ) );
+      if ( was <= v ) break;                       // Not published yet
+      v++;                                         // Published, or written over since
+    }
+    thePublished.accumulateAndGet( v, Math::max );
+    return OrderStateDelta.full( v, state.get() );
+  }
+
+  /**
+   * Orders only move forward, so an order has left the first stage it was
+   *   in. An order that came and went is removed from the stage it was
+   *   collected from, in case a full delta already showed it there
+   * @param fromTo First stage an order was in, the last it reached and the last it left
+   * @return The stage to remove the order from, NONE if it was in none
+   */
+  private static byte left( byte[] fromTo )
+  {
+    if ( fromTo[ 0 ] != NONE ) return fromTo[ 0 ];
+    return fromTo[ 1 ] == NONE ? fromTo[ 2 ] : NONE;
+  }
+
+  /**
+   * @param version A version
+   * @return The slot its change is kept in
+   */
+  private int slot( long version )
+  {
+    return (int) ( version % theVersions.length() );
+  }
+
+  /**
+   * @param state A stage, or null
+   * @return Its position in OrderStateDelta.STATES, NONE for null
+   */
+  private static byte code( Order.State state )
+  {
+    return state == null ? NONE : (byte) OrderStateDelta.STATES.indexOf( state.name() );
+  }
+}
@@ -0,0 +1,108 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.middle.DeadlineStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Promises orders for collection and counts how many are ready in time.<BR>
+ * An order taken without a deadline is promised by its priority. Orders
+ * are packed earliest deadline first, but an order is never put behind
+ * others for longer than the longest wait, so an order promised far ahead
+ * is still packed while express orders keep arriving.
+ * Set by the system property:
+ * <PRE>
+ * ministore.order.maxWaitMinutes  Longest an order waits behind orders
+ *                                 due sooner (default 60)
+ * </PRE>
+ *
+ * @version 1.0
+ */
+
+class OrderDeadlines
+{
+  private static final long MAX_WAIT = TimeUnit.MINUTES.toMillis(
+          Long.getLong( "ministore.order.maxWaitMinutes", 60 ) );
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private final long            theMaxWait;
+  private final AtomicLongArray thePacked     = new AtomicLongArray( PRIORITIES.length );
+  private final AtomicLongArray theLate       = new AtomicLongArray( PRIORITIES.length );
+  private final AtomicLongArray theLateMillis = new AtomicLongArray( PRIORITIES.length );
+
+  /**
+   * Deadlines with the longest wait set by the system property
+   */
+  OrderDeadlines()
+  {
+    this( MAX_WAIT );
+  }
+
+  /**
+   * @param maxWaitMillis Longest an order waits behind orders due sooner
+   */
+  OrderDeadlines( long maxWaitMillis )
+  {
+    theMaxWait = maxWaitMillis;
+  }
+
+  /**
+   * Promises an order by its priority, unless it already has a deadline
+   * @param basket The order
+   * @param now    System.currentTimeMillis()
+   */
+  void promise( Basket basket, long now )
+  {
+    if ( basket.getDeadline() == 0 )
+      basket.setDeadline( now + basket.getPriority().getPromiseMillis() );
+  }
+
+  /**
+   * Returns when an order taken now should be packed by, for putting
+   *   waiting orders in turn: its deadline, but no later than the longest wait
+   * @param basket A promised order
+   * @param now    System.currentTimeMillis()
+   * @return Time in milliseconds since 1970
+   */
+  long due( Basket basket, long now )
+  {
+    return Math.min( basket.getDeadline(), now + theMaxWait );
+  }
+
+  /**
+   * Records an order being packed, by its deadline or late
+   * @param basket The order
+   * @param now    System.currentTimeMillis()
+   */
+  void packed( Basket basket, long now )
+  {
+    int p = basket.getPriority().ordinal();
+    thePacked.incrementAndGet( p );
+    long late = now - basket.getDeadline();
+    if ( basket.getDeadline() != 0 && late > 0 )
+    {
+      theLate.incrementAndGet( p );
+      theLateMillis.addAndGet( p, late );
+    }
+  }
+
+  /**
+   * @return How many orders of each priority were packed in time
+   */
+  List<DeadlineStats> getStats()
+  {
+    List<DeadlineStats> stats = new ArrayList<>( PRIORITIES.length );
+    for ( Priority priority : PRIORITIES )
+    {
+      int p = priority.ordinal();
+      stats.add( new DeadlineStats( priority, thePacked.get( p ), theLate.get( p ),
+                                    theLateMillis.get( p ) ) );
+    }
+    return stats;
+  }
+}
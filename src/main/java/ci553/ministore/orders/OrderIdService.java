@@ -0,0 +1,134 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.dbAccess.SequenceDAO;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.StockException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out order numbers that are unique across restarts and across every
+ * server sharing the database.
+ * Numbers are leased from the database in blocks, which records the highest
+ * number ever leased. Within a block numbers are handed out without locking,
+ * only the thread that finds the block used up goes back to the database.
+ * Numbers left in a block when the server stops are never used, so order
+ * numbers always increase on one server but may have gaps.
+ *
+ * @version 1.0
+ */
+public class OrderIdService
+{
+  private static final String ORDER_SEQUENCE = "orderNo";
+  private static final int BLOCK_SIZE = Integer.getInteger( "ministore.order.idBlock", 100 );
+
+  /**
+   * Where blocks of order numbers come from
+   */
+  public interface BlockSource
+  {
+    /**
+     * @param count How many numbers are wanted
+     * @return A block no other caller has been given
+     * @throws OrderException If no block can be leased
+     */
+    NumberBlock lease( int count ) throws OrderException;
+  }
+
+  /**
+   * The block being handed out, next runs past end once it is used up
+   */
+  private static class Block
+  {
+    private final int end;                    // One past the last number
+    private final AtomicInteger next;         // Next number to hand out
+
+    Block( int first, int end )
+    {
+      this.end  = end;
+      this.next = new AtomicInteger( first );
+    }
+  }
+
+  private static OrderIdService theShared = null;   // Backed by the database
+
+  private final BlockSource theSource;
+  private final int         theBlockSize;
+  private final AtomicReference<Block> theBlock = new AtomicReference<>( new Block( 0, 0 ) );
+
+  /**
+   * Create a service
+   * @param source    Where blocks are leased from
+   * @param blockSize Numbers asked for in each lease
+   */
+  public OrderIdService( BlockSource source, int blockSize )
+  {
+    theSource    = source;
+    theBlockSize = Math.max( 1, blockSize );
+  }
+
+  /**
+   * Returns the service shared by every order processing system in this JVM,
+   * leasing from the order number sequence in the database
+   * @return The shared service
+   */
+  public static synchronized OrderIdService getShared()
+  {
+    if ( theShared == null )
+    {
+      theShared = new OrderIdService( OrderIdService::leaseFromDatabase, BLOCK_SIZE );
+    }
+    return theShared;
+  }
+
+  /**
+   * Gets an order number no other order has been given
+   * @return The order number
+   * @throws OrderException If a new block is needed and can not be leased
+   */
+  public int next() throws OrderException
+  {
+    while ( true )
+    {
+      Block block = theBlock.get();
+      int number = block.next.getAndIncrement();
+      if ( number < block.end ) return number;
+      refill( block );
+    }
+  }
+
+  /**
+   * Replaces a used up block, unless another thread already has
+   * @param used The block found to be used up
+   * @throws OrderException If no block can be leased
+   */
+  private synchronized void refill( Block used ) throws OrderException
+  {
+    if ( theBlock.get() == used )
+    {
+      NumberBlock leased = theSource.lease( theBlockSize );
+      theBlock.set( new Block( leased.getFirst(), leased.getFirst() + leased.getCount() ) );
+    }
+  }
+
+  /**
+   * Leases a block from the order number sequence in the database
+   * @param count How many numbers are wanted
+   * @return The block
+   * @throws OrderException If the database can not be reached
+   */
+  private static NumberBlock leaseFromDatabase( int count ) throws OrderException
+  {
+    try
+    {
+      return new SequenceDAO().lease( ORDER_SEQUENCE, count, 1 );
+    } catch ( StockException e )
+    {
+      DEBUG.trace( "OrderIdService: %s", e.getMessage() );
+      throw new OrderException( "Order numbers: " + e.getMessage() );
+    }
+  }
+}
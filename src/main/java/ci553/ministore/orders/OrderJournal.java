@@ -0,0 +1,843 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.BetterBasket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.OrderException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A write ahead journal of the orders held in memory by Order, so that
+ * orders waiting, being packed or waiting to be collected survive a restart.
+ * <P>
+ * Every change to an order is appended to the journal before the caller
+ * is answered. Changes are gathered in memory and written and forced to
+ * disk in groups: the first caller to wait writes everything appended so
+ * far, and callers arriving meanwhile wait for the next group, so one
+ * disk force serves many orders.
+ * <P>
+ * Once enough changes have been appended the live orders are written to a
+ * snapshot and the journal is started again empty. On start up the snapshot
+ * is read and the journal replayed over it. Each snapshot and journal holds
+ * a generation number, a journal from before the latest snapshot is ignored,
+ * and a change only partly written when the server stopped is dropped.
+ * <P>
+ * Set by the system properties:
+ * <PRE>
+ * ministore.order.journal          Keep a journal (default false)
+ * ministore.order.journalDir       Directory of the journal (default orderjournal)
+ * ministore.order.journalSync      Force each group of changes to disk (default true)
+ * ministore.order.snapshotRecords  Changes between snapshots (default 50000)
+ * </PRE>
+ * Each caller waits for its change to be written, so with the journal on
+ * orders are taken no faster than one group per disk force, however many
+ * tills are taking them.
+ *
+ * @version 1.0
+ */
+public class OrderJournal
+{
+  private static final int  LOG_MAGIC      = 0x4f4a4e4c;     // "OJNL"
+  private static final int  SNAPSHOT_MAGIC = 0x4f534e50;     // "OSNP"
+  private static final int  LOG_HEADER     = 4 + 8;          // Magic and generation
+  private static final int  RECORD_HEADER  = 4 + 4;          // Length and checksum
+
+  // Kinds of change, the stage an order moves to
+  private static final byte NEW        = 1;
+  private static final byte PACKING    = 2;
+  private static final byte PACKED     = 3;
+  private static final byte COLLECTED  = 4;
+
+  // Flags written with each order, older journals only ever set BETTER
+  private static final byte BETTER     = 1;     // A BetterBasket
+  private static final byte PROMISED   = 2;     // Followed by priority and deadline
+
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private static final String LOG_FILE      = "orders.log";
+  private static final String SNAPSHOT_FILE = "orders.snapshot";
+
+  private static final boolean ENABLED =
+          Boolean.parseBoolean( System.getProperty( "ministore.order.journal", "false" ) );
+  private static final String  DIRECTORY =
+          System.getProperty( "ministore.order.journalDir", "orderjournal" );
+  private static final boolean SYNC =
+          Boolean.parseBoolean( System.getProperty( "ministore.order.journalSync", "true" ) );
+  private static final int     SNAPSHOT_RECORDS =
+          Integer.getInteger( "ministore.order.snapshotRecords", 50_000 );
+
+  /**
+   * An order as recovered from the journal
+   */
+  static class Entry
+  {
+    private final Basket      basket;
+    private final Order.State state;
+
+    Entry( Basket basket, Order.State state )
+    {
+      this.basket = basket;
+      this.state  = state;
+    }
+
+    Basket      getBasket() { return basket; }
+
+    Order.State getState()  { return state; }
+  }
+
+  private final Path    theDir;
+  private final boolean theSync;              // Force each group to disk
+  private final int     theSnapshotRecords;   // Changes between snapshots
+
+  private final ReentrantLock theLock    = new ReentrantLock();
+  // Callers wait for their group to be written, alternate groups on alternate conditions
+  private final Condition[]   theFlushed = { theLock.newCondition(), theLock.newCondition() };
+
+  private final ByteArrayOutputStream thePending = new ByteArrayOutputStream( 64 * 1024 );
+  private final DataOutputStream      thePendingOut = new DataOutputStream( thePending );
+  private final DataOutputStream      theRecord;   // Builds one change before it is framed
+  private final ByteArrayOutputStream theRecordBytes = new ByteArrayOutputStream( 256 );
+  private final CRC32                 theCrc = new CRC32();
+
+  private FileChannel theLog       = null;
+  private long        theGeneration = 0;
+  private long        theAppended  = 0;     // Changes appended
+  private long        theDurable   = 0;     // Changes on disk
+  private long        theTaken     = 0;     // Changes in groups being or already written
+  private long        theGroup     = 0;     // Groups started
+  private long        theSinceSnapshot = 0; // Changes in the current journal
+  private boolean     theFlushing  = false; // A caller is writing a group
+  private IOException theFailure   = null;  // Set once a write fails, the journal is then unusable
+
+  /**
+   * Create a journal kept in a directory
+   * @param dir             Directory for the journal and snapshot, created if missing
+   * @param sync            Force each group of changes to disk before answering
+   * @param snapshotRecords Changes appended between snapshots
+   */
+  public OrderJournal( Path dir, boolean sync, int snapshotRecords )
+  {
+    theDir             = dir;
+    theSync            = sync;
+    theSnapshotRecords = Math.max( 1, snapshotRecords );
+    theRecord          = new DataOutputStream( theRecordBytes );
+  }
+
+  /**
+   * Create a journal kept in a directory, forced to disk and
+   * snapshotted as set by the system properties
+   * @param dir Directory for the journal and snapshot, created if missing
+   */
+  public OrderJournal( Path dir )
+  {
+    this( dir, SYNC, SNAPSHOT_RECORDS );
+  }
+
+  /**
+   * Create the journal set by the system properties
+   * @return The journal, or null if journaling is turned off
+   */
+  public static OrderJournal fromProperties()
+  {
+    if ( !ENABLED ) return null;
+    return new OrderJournal( Path.of( DIRECTORY ) );
+  }
+
+  /**
+   * Reads the snapshot and replays the journal, then opens the journal
+   * for appending. Must be called once before anything is appended.
+   * @return The live orders in the order they were placed
+   * @throws IOException If the snapshot can not be read or the journal opened
+   */
+  List<Entry> recover() throws IOException
+  {
+    long start = System.nanoTime();
+    Files.createDirectories( theDir );
+    Map<Integer, Entry> orders = new LinkedHashMap<>();
+    Map<ByteBuffer, String> strings = new HashMap<>();
+    Path snapshot = theDir.resolve( SNAPSHOT_FILE );
+    if ( Files.exists( snapshot ) )
+    {
+      theGeneration = readSnapshot( snapshot, orders, strings );
+    }
+
+    Path log = theDir.resolve( LOG_FILE );
+    long end = LOG_HEADER;
+    int  replayed = 0;
+    boolean current = false;
+    if ( Files.exists( log ) && Files.size( log ) >= LOG_HEADER )
+    {
+      ByteBuffer in = read( log );
+      current = in.getInt() == LOG_MAGIC && in.getLong() == theGeneration;
+      while ( current && in.remaining() >= RECORD_HEADER )
+      {
+        int length = in.getInt();
+        int crc    = in.getInt();
+        if ( length <= 0 || length > in.remaining() ) break;   // Partly written change
+        ByteBuffer record = in.slice( in.position(), length );
+        theCrc.reset();
+        theCrc.update( record.duplicate() );
+        if ( (int) theCrc.getValue() != crc ) break;
+        try
+        {
+          apply( record, orders, strings );
+        } catch ( BufferUnderflowException e )
+        {
+          throw new IOException( "Order journal change cut short at " + in.position() );
+        }
+        in.position( in.position() + length );
+        end += RECORD_HEADER + length;
+        replayed++;
+      }
+    }
+
+    if ( current )
+    {
+      theLog = FileChannel.open( log, StandardOpenOption.WRITE );
+      if ( theLog.size() > end )
+      {
+        DEBUG.trace( "OrderJournal: dropping %d bytes after the last whole change", theLog.size() - end );
+        theLog.truncate( end );
+      }
+      theLog.position( end );
+    } else {
+      startLog();                                     // None yet, or from before the snapshot
+    }
+    theSinceSnapshot = replayed;
+    DEBUG.trace( "OrderJournal: recovered %d orders, replayed %d changes in %d ms",
+                 orders.size(), replayed, (System.nanoTime() - start) / 1_000_000 );
+    return new ArrayList<>( orders.values() );
+  }
+
+  /**
+   * Appends a new order
+   * @param basket The order
+   * @return Ticket to wait on with awaitDurable
+   * @throws IOException If the journal has failed
+   */
+  long logNew( Basket basket ) throws IOException
+  {
+    theLock.lock();
+    try
+    {
+      check();
+      theRecord.writeByte( NEW );
+      writeBasket( theRecord, basket );
+      return frame();
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Appends an order moving to a new stage
+   * @param orderNum The order
+   * @param state    The stage it has moved to, or null once collected
+   * @return Ticket to wait on with awaitDurable
+   * @throws IOException If the journal has failed
+   */
+  long logState( int orderNum, Order.State state ) throws IOException
+  {
+    theLock.lock();
+    try
+    {
+      check();
+      theRecord.writeByte( kindOf( state ) );
+      theRecord.writeInt( orderNum );
+      return frame();
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a change is on disk, writing the waiting group if no other
+   *   caller is already doing so. A caller is only woken once its own group
+   *   is written, and one caller of the next group is woken to write it,
+   *   so each waiting caller is woken once rather than once per group
+   * @param ticket Returned when the change was appended
+   * @throws IOException If the change could not be written
+   */
+  void awaitDurable( long ticket ) throws IOException
+  {
+    theLock.lock();
+    try
+    {
+      while ( theDurable < ticket )
+      {
+        check();
+        if ( theFlushing )
+        {
+          long group = ticket <= theTaken ? theGroup : theGroup + 1;
+          flushed( group ).awaitUninterruptibly();
+          continue;
+        }
+        theFlushing = true;
+        theGroup++;
+        ByteBuffer group = ByteBuffer.wrap( thePending.toByteArray() );
+        thePending.reset();
+        theTaken = theAppended;
+        theLock.unlock();
+        IOException failure = null;
+        try
+        {
+          write( group );
+        } catch ( IOException e )
+        {
+          failure = e;
+        } finally {
+          theLock.lock();
+          theFlushing = false;
+          if ( failure == null ) theDurable = theTaken; else theFailure = failure;
+          flushed( theGroup ).signalAll();
+          if ( failure != null )
+            flushed( theGroup + 1 ).signalAll();       // All fail
+          else if ( theAppended > theDurable )
+            flushed( theGroup + 1 ).signal();          // One writes the next group
+        }
+      }
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a change is on disk, then takes a snapshot if the journal
+   * has grown long enough. Called without holding the order store's lock,
+   * so other orders can be taken meanwhile and share the same disk write.
+   * @param ticket Returned when the change was appended, 0 if none
+   * @param lock   The order store's lock, held while the snapshot is taken
+   * @param live   Gives the live orders, called holding the lock
+   * @throws IOException If the change or snapshot could not be written
+   */
+  void commit( long ticket, Object lock, Supplier<Collection<Entry>> live ) throws IOException
+  {
+    if ( ticket == 0 ) return;
+    awaitDurable( ticket );
+    if ( needsSnapshot() )
+    {
+      synchronized ( lock )
+      {
+        if ( needsSnapshot() ) snapshot( live.get() );
+      }
+    }
+  }
+
+  /**
+   * As commit above, for an order store whose changes are kept out while
+   * the snapshot is taken by holding a Lock rather than its monitor
+   * @param ticket Returned when the change was appended, 0 if none
+   * @param lock   Held while the snapshot is taken, no change can be in progress
+   * @param live   Gives the live orders, called holding the lock
+   * @throws IOException If the change or snapshot could not be written
+   */
+  void commit( long ticket, Lock lock, Supplier<Collection<Entry>> live ) throws IOException
+  {
+    if ( ticket == 0 ) return;
+    awaitDurable( ticket );
+    if ( needsSnapshot() )
+    {
+      lock.lock();
+      try
+      {
+        if ( needsSnapshot() ) snapshot( live.get() );
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return true once enough changes have been appended to be worth a snapshot
+   */
+  boolean needsSnapshot()
+  {
+    theLock.lock();
+    try
+    {
+      return theSinceSnapshot >= theSnapshotRecords && theFailure == null;
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Writes the live orders to a new snapshot and starts the journal again.
+   * The caller must stop changes being appended until this returns.
+   * @param live The live orders
+   * @throws IOException If the snapshot can not be written, the old one is kept
+   */
+  void snapshot( Collection<Entry> live ) throws IOException
+  {
+    long start = System.nanoTime();
+    theLock.lock();
+    try
+    {
+      check();
+      while ( theFlushing ) flushed( theGroup ).awaitUninterruptibly();
+      write( ByteBuffer.wrap( thePending.toByteArray() ) );
+      thePending.reset();
+      theDurable = theAppended;
+      theTaken   = theAppended;
+      flushed( theGroup ).signalAll();
+      flushed( theGroup + 1 ).signalAll();
+
+      long next = theGeneration + 1;
+      Path tmp = theDir.resolve( SNAPSHOT_FILE + ".tmp" );
+      try ( FileChannel ch = FileChannel.open( tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream( Channels.newOutputStream( ch ), 64 * 1024 ) ) )
+      {
+        out.writeInt( SNAPSHOT_MAGIC );
+        out.writeLong( next );
+        out.writeInt( live.size() );
+        for ( Entry e : live )
+        {
+          out.writeByte( kindOf( e.getState() ) );
+          writeBasket( out, e.getBasket() );
+        }
+        out.flush();
+        ch.force( true );
+      }
+      Files.move( tmp, theDir.resolve( SNAPSHOT_FILE ),
+                  StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      syncDirectory();
+      theGeneration = next;
+      theLog.close();
+      startLog();
+      theSinceSnapshot = 0;
+      DEBUG.trace( "OrderJournal: snapshot of %d orders in %d ms",
+                   live.size(), (System.nanoTime() - start) / 1_000_000 );
+    } catch ( IOException e )
+    {
+      theFailure = e;
+      throw e;
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Writes any changes still in memory and closes the journal
+   * @throws IOException If the changes can not be written
+   */
+  public void close() throws IOException
+  {
+    awaitDurable( theAppended );
+    theLock.lock();
+    try
+    {
+      if ( theLog != null ) theLog.close();
+    } finally {
+      theLock.unlock();
+    }
+  }
+
+  /**
+   * Appends a new order to a journal, called holding the order store's
+   *   lock so changes are journaled in the order they are made and no
+   *   snapshot is taken while the change is half made
+   * @param journal The journal, or null if orders are not journaled
+   * @param basket  The order
+   * @return Ticket to wait on with durable, 0 if not journaled
+   * @throws OrderException If the journal has failed, the order must not be taken
+   */
+  static long append( OrderJournal journal, Basket basket )
+          throws OrderException
+  {
+    if ( journal == null ) return 0;
+    try
+    {
+      return journal.logNew( basket );
+    } catch ( IOException e )
+    {
+      throw failed( e );
+    }
+  }
+
+  /**
+   * Appends an order moving to a new stage, called holding the order
+   *   store's lock as append above
+   * @param journal  The journal, or null if orders are not journaled
+   * @param orderNum The order
+   * @param state    The stage it has moved to, or null once collected
+   * @return Ticket to wait on with durable, 0 if not journaled
+   * @throws OrderException If the journal has failed, the order must not be moved
+   */
+  static long append( OrderJournal journal, int orderNum, Order.State state )
+          throws OrderException
+  {
+    if ( journal == null ) return 0;
+    try
+    {
+      return journal.logState( orderNum, state );
+    } catch ( IOException e )
+    {
+      throw failed( e );
+    }
+  }
+
+  /**
+   * Waits, without holding the order store's monitor, until a change is
+   *   on disk, then snapshots if due, as commit
+   * @param journal The journal, or null if orders are not journaled
+   * @param ticket  Returned by append, 0 if nothing was journaled
+   * @param lock    The order store's monitor, held while a snapshot is taken
+   * @param live    Gives the live orders, called holding the monitor
+   * @throws OrderException If the change could not be written
+   */
+  static void durable( OrderJournal journal, long ticket, Object lock,
+                       Supplier<Collection<Entry>> live )
+          throws OrderException
+  {
+    if ( journal == null ) return;
+    try
+    {
+      journal.commit( ticket, lock, live );
+    } catch ( IOException e )
+    {
+      throw failed( e );
+    }
+  }
+
+  /**
+   * Waits, without holding the order store's lock, until a change is on
+   *   disk, then snapshots if due, as commit
+   * @param journal The journal, or null if orders are not journaled
+   * @param ticket  Returned by append, 0 if nothing was journaled
+   * @param lock    Held while a snapshot is taken, no change can be in progress
+   * @param live    Gives the live orders, called holding the lock
+   * @throws OrderException If the change could not be written
+   */
+  static void durable( OrderJournal journal, long ticket, Lock lock,
+                       Supplier<Collection<Entry>> live )
+          throws OrderException
+  {
+    if ( journal == null ) return;
+    try
+    {
+      journal.commit( ticket, lock, live );
+    } catch ( IOException e )
+    {
+      throw failed( e );
+    }
+  }
+
+  /**
+   * Turns a journal failure into the exception order processing reports
+   * @param e The failure
+   * @return The exception to throw
+   */
+  static OrderException failed( IOException e )
+  {
+    DEBUG.trace( "OrderJournal: %s", e.getMessage() );
+    return new OrderException( "Journal: " + e.getMessage() );
+  }
+
+  /**
+   * @param group A group of changes, by number
+   * @return The condition its callers wait on
+   */
+  private Condition flushed( long group )
+  {
+    return theFlushed[ (int) ( group & 1 ) ];
+  }
+
+  /**
+   * Frames the change built in theRecord and adds it to the pending group
+   * @return Ticket for the change
+   */
+  private long frame() throws IOException
+  {
+    theRecord.flush();
+    byte[] data = theRecordBytes.toByteArray();
+    theRecordBytes.reset();
+    theCrc.reset();
+    theCrc.update( data );
+    thePendingOut.writeInt( data.length );
+    thePendingOut.writeInt( (int) theCrc.getValue() );
+    thePendingOut.write( data );
+    theSinceSnapshot++;
+    return ++theAppended;
+  }
+
+  /**
+   * Writes a group of changes to the end of the journal
+   * @param group The framed changes
+   * @throws IOException If they can not be written
+   */
+  private void write( ByteBuffer group ) throws IOException
+  {
+    while ( group.hasRemaining() ) theLog.write( group );
+    if ( theSync ) theLog.force( false );
+  }
+
+  /**
+   * Starts a new empty journal for the current generation, replacing
+   * the old one in a single step
+   */
+  private void startLog() throws IOException
+  {
+    Path tmp = theDir.resolve( LOG_FILE + ".tmp" );
+    ByteBuffer header = ByteBuffer.allocate( LOG_HEADER );
+    header.putInt( LOG_MAGIC ).putLong( theGeneration ).flip();
+    try ( FileChannel ch = FileChannel.open( tmp, StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+    {
+      while ( header.hasRemaining() ) ch.write( header );
+      ch.force( true );
+    }
+    Path log = theDir.resolve( LOG_FILE );
+    Files.move( tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    syncDirectory();
+    theLog = FileChannel.open( log, StandardOpenOption.WRITE );
+    theLog.position( LOG_HEADER );
+  }
+
+  /**
+   * Reads a snapshot into the orders
+   * @param snapshot The snapshot file
+   * @param orders   Where to put the orders, by order number
+   * @param strings  Strings already read, so each is only held once
+   * @return Generation of the snapshot
+   */
+  private long readSnapshot( Path snapshot, Map<Integer, Entry> orders,
+                             Map<ByteBuffer, String> strings ) throws IOException
+  {
+    try
+    {
+      ByteBuffer in = read( snapshot );
+      if ( in.getInt() != SNAPSHOT_MAGIC )
+        throw new IOException( "Not an order snapshot " + snapshot );
+      long generation = in.getLong();
+      int  count      = in.getInt();
+      for ( int i = 0; i < count; i++ )
+      {
+        Order.State state = stateOf( in.get() );
+        Basket basket = readBasket( in, strings );
+        orders.put( basket.getOrderNum(), new Entry( basket, state ) );
+      }
+      return generation;
+    } catch ( BufferUnderflowException e )
+    {
+      throw new IOException( "Order snapshot cut short " + snapshot );
+    }
+  }
+
+  /**
+   * Reads a whole file into memory in one go, which is much quicker to
+   *   read a large journal from than a stream. The file is not mapped, as
+   *   on some platforms a mapped file can not be truncated or replaced
+   *   until the mapping is dropped, which Java can not do on request
+   * @param file The file
+   * @return The contents, positioned at the start
+   * @throws IOException If the file can not be read
+   */
+  private static ByteBuffer read( Path file ) throws IOException
+  {
+    try ( FileChannel ch = FileChannel.open( file, StandardOpenOption.READ ) )
+    {
+      if ( ch.size() > Integer.MAX_VALUE )
+        throw new IOException( "Order journal file too large " + file );
+      ByteBuffer in = ByteBuffer.allocate( (int) ch.size() );
+      while ( in.hasRemaining() && ch.read( in ) >= 0 )
+        ;                                          // Read until full or the end
+      return in.flip();
+    }
+  }
+
+  /**
+   * Replays one change
+   * @param in      The change
+   * @param orders  The orders to change, by order number
+   * @param strings Strings already read, so each is only held once
+   */
+  private static void apply( ByteBuffer in, Map<Integer, Entry> orders,
+                             Map<ByteBuffer, String> strings ) throws IOException
+  {
+    byte kind = in.get();
+    if ( kind == NEW )
+    {
+      Basket basket = readBasket( in, strings );
+      orders.put( basket.getOrderNum(), new Entry( basket, Order.State.Waiting ) );
+      return;
+    }
+    int orderNum = in.getInt();
+    Entry entry = orders.get( orderNum );
+    if ( entry == null ) return;
+    if ( kind == COLLECTED )
+      orders.remove( orderNum );
+    else
+      orders.put( orderNum, new Entry( entry.getBasket(), stateOf( kind ) ) );
+  }
+
+  /**
+   * @param state Stage of an order, null once collected
+   * @return The kind of change that moves an order to the stage
+   */
+  private static byte kindOf( Order.State state )
+  {
+    if ( state == null ) return COLLECTED;
+    switch ( state )
+    {
+      case Waiting:     return NEW;
+      case BeingPacked: return PACKING;
+      default:          return PACKED;
+    }
+  }
+
+  /**
+   * @param kind A kind of change
+   * @return The stage the change moves an order to
+   * @throws IOException If the kind is not known
+   */
+  private static Order.State stateOf( byte kind ) throws IOException
+  {
+    switch ( kind )
+    {
+      case NEW:     return Order.State.Waiting;
+      case PACKING: return Order.State.BeingPacked;
+      case PACKED:  return Order.State.ToBeCollected;
+      default:      throw new IOException( "Unknown order stage " + kind );
+    }
+  }
+
+  /**
+   * Writes an order and its products
+   * @param out    Where to write
+   * @param basket The order
+   */
+  private static void writeBasket( DataOutputStream out, Basket basket ) throws IOException
+  {
+    out.writeInt( basket.getOrderNum() );
+    out.writeByte( ( basket instanceof BetterBasket ? BETTER : 0 ) | PROMISED );
+    out.writeByte( basket.getPriority().ordinal() );
+    out.writeLong( basket.getDeadline() );
+    out.writeInt( basket.size() );
+    for ( Product pr : basket )
+    {
+      writeString( out, pr.getProductNum() );
+      writeString( out, pr.getDescription() );
+      out.writeDouble( pr.getPrice() );
+      out.writeInt( pr.getQuantity() );
+    }
+  }
+
+  /**
+   * Reads an order written by writeBasket
+   * @param in      Where to read
+   * @param strings Strings already read, so each is only held once
+   * @return The order, a BetterBasket if it was one when written
+   */
+  private static Basket readBasket( ByteBuffer in, Map<ByteBuffer, String> strings )
+          throws IOException
+  {
+    int orderNum = in.getInt();
+    byte flags = in.get();
+    Basket basket = ( flags & BETTER ) != 0 ? new BetterBasket( () -> orderNum ) : new Basket();
+    basket.setOrderNum( orderNum );
+    if ( ( flags & PROMISED ) != 0 )
+    {
+      int priority = in.get();
+      if ( priority < 0 || priority >= PRIORITIES.length )
+        throw new IOException( "Unknown order priority " + priority );
+      basket.setPriority( PRIORITIES[ priority ] );
+      basket.setDeadline( in.getLong() );
+    }
+    int lines = in.getInt();
+    for ( int i = 0; i < lines; i++ )
+    {
+      basket.add( new Product( readString( in, strings ), readString( in, strings ),
+                               in.getDouble(), in.getInt() ) );
+    }
+    return basket;
+  }
+
+  /**
+   * Writes a string as its length and UTF-8 bytes
+   * @param out Where to write
+   * @param str The string, null is written as empty
+   */
+  private static void writeString( DataOutputStream out, String str ) throws IOException
+  {
+    byte[] bytes = ( str == null ? "" : str ).getBytes( StandardCharsets.UTF_8 );
+    out.writeShort( bytes.length );
+    out.write( bytes );
+  }
+
+  /**
+   * Reads a string written by writeString. The same few product numbers
+   *   and descriptions appear in most orders, so each is only decoded and
+   *   held once, which keeps recovery quick and the orders small
+   * @param in      Where to read
+   * @param strings Strings already read, by their bytes
+   * @return The string
+   */
+  private static String readString( ByteBuffer in, Map<ByteBuffer, String> strings )
+  {
+    int length = Short.toUnsignedInt( in.getShort() );
+    ByteBuffer bytes = in.slice( in.position(), length );
+    in.position( in.position() + length );
+    String str = strings.get( bytes );
+    if ( str == null )
+    {
+      byte[] data = new byte[ length ];
+      bytes.duplicate().get( data );
+      str = new String( data, StandardCharsets.UTF_8 );
+      strings.put( bytes, str );
+    }
+    return str;
+  }
+
+  /**
+   * @throws IOException If the journal can not be used
+   */
+  private void check() throws IOException
+  {
+    if ( theFailure != null )
+      throw new IOException( "Journal failed earlier: " + theFailure.getMessage(), theFailure );
+    if ( theLog == null )
+      throw new IOException( "Journal not recovered" );
+  }
+
+  /**
+   * Forces a rename in the journal directory to disk, where the platform allows
+   */
+  private void syncDirectory()
+  {
+    try ( FileChannel dir = FileChannel.open( theDir, StandardOpenOption.READ ) )
+    {
+      dir.force( true );
+    } catch ( IOException e )
+    {
+      // Not every platform can open a directory
+    }
+  }
+}
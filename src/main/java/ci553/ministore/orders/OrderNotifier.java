@@ -0,0 +1,189 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.OrderChange;
+import ci553.ministore.middle.OrderListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes order changes on to the listeners of an order processing system.<BR>
+ * Each listener has a bounded queue of changes and a thread of its own
+ * delivering them, so a listener that is slow, or far away over RMI,
+ * never holds up taking or packing orders or the other listeners.
+ * A listener whose queue fills is removed and told it was dropped.
+ * <P>
+ * Set by the system properties:
+ * <PRE>
+ * ministore.order.listenerQueue  Changes held for one listener (default 1000)
+ * ministore.order.listenerBatch  Most changes passed in one call (default 100)
+ * </PRE>
+ *
+ * @version 1.0
+ */
+
+public class OrderNotifier
+{
+  private static final int QUEUE = Integer.getInteger( "ministore.order.listenerQueue", 1000 );
+  private static final int BATCH = Integer.getInteger( "ministore.order.listenerBatch", 100 );
+
+  // Markers put on a queue to end its delivery thread
+  private static final OrderChange DROPPED = new OrderChange( 0, null, null );
+  private static final OrderChange REMOVED = new OrderChange( 0, null, null );
+
+  private static final AtomicInteger theThreads = new AtomicInteger();
+
+  private final List<Subscriber> theSubscribers = new CopyOnWriteArrayList<>();
+  private final int theQueueSize;
+
+  /**
+   * A listener, its queue of changes and the thread delivering them
+   */
+  private class Subscriber implements Runnable
+  {
+    private final OrderListener              listener;
+    private final BlockingQueue<OrderChange> queue;
+
+    public Subscriber( OrderListener aListener )
+    {
+      listener = aListener;
+      queue    = new ArrayBlockingQueue<>( theQueueSize + 1 );   // Room for an end marker
+    }
+
+    /**
+     * Queues a change, dropping the listener if it has fallen too far behind
+     * @param change The change
+     */
+    public void offer( OrderChange change )
+    {
+      if ( queue.remainingCapacity() <= 1 || !queue.offer( change ) )
+      {
+        DEBUG.trace( "OrderNotifier: listener %s fell behind, dropped", listener );
+        end( DROPPED );
+      }
+    }
+
+    /**
+     * Stops delivery, any changes not yet delivered are discarded
+     * @param marker DROPPED to tell the listener, REMOVED not to
+     */
+    public void end( OrderChange marker )
+    {
+      if ( theSubscribers.remove( this ) )
+      {
+        do                                         // Changes still being offered
+          queue.clear();                           //  may refill the queue
+        while ( !queue.offer( marker ) );
+      }
+    }
+
+    /**
+     * Delivers changes until the listener is removed
+     */
+    public void run()
+    {
+      List<OrderChange> batch = new ArrayList<>( BATCH );
+      try
+      {
+        while ( true )
+        {
+          batch.add( queue.take() );
+          queue.drainTo( batch, BATCH - 1 );
+          int end = markerAt( batch );
+          if ( end < batch.size() )                // Removed, changes before are discarded
+          {
+            if ( batch.get( end ) == DROPPED ) listener.dropped();
+            return;
+          }
+          listener.ordersChanged( batch );
+          batch = new ArrayList<>( BATCH );
+        }
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+      } catch ( Exception e )
+      {
+        DEBUG.trace( "OrderNotifier: listener %s failed, dropped: %s", listener, e.getMessage() );
+        if ( theSubscribers.remove( this ) )
+        {
+          try
+          {
+            listener.dropped();
+          } catch ( Exception ignored )
+          {
+            // Has already failed, nothing more to tell it
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Notifier sized from the system properties
+   */
+  public OrderNotifier()
+  {
+    this( QUEUE );
+  }
+
+  /**
+   * @param queueSize Changes held for one listener before it is dropped
+   */
+  public OrderNotifier( int queueSize )
+  {
+    theQueueSize = queueSize;
+  }
+
+  /**
+   * Starts passing changes to a listener
+   * @param listener The listener
+   */
+  public void add( OrderListener listener )
+  {
+    Subscriber sub = new Subscriber( listener );
+    theSubscribers.add( sub );
+    Thread delivery = new Thread( sub, "OrderListener-" + theThreads.incrementAndGet() );
+    delivery.setDaemon( true );
+    delivery.start();
+  }
+
+  /**
+   * Stops passing changes to a listener, changes not yet delivered are discarded
+   * @param listener The listener
+   */
+  public void remove( OrderListener listener )
+  {
+    for ( Subscriber sub : theSubscribers )
+      if ( sub.listener.equals( listener ) ) sub.end( REMOVED );
+  }
+
+  /**
+   * Passes a change to every listener. Safe to call from many threads,
+   *   changes published one after another reach each listener in that order
+   * @param orderNum The order
+   * @param from     Stage before, null for a new order
+   * @param to       Stage after, null once collected
+   */
+  public void publish( int orderNum, String from, String to )
+  {
+    if ( theSubscribers.isEmpty() ) return;
+    OrderChange change = new OrderChange( orderNum, from, to );
+    for ( Subscriber sub : theSubscribers ) sub.offer( change );
+  }
+
+  /**
+   * @param batch Changes taken from a queue
+   * @return Position of the end marker, or the size of the batch if none
+   */
+  private static int markerAt( List<OrderChange> batch )
+  {
+    for ( int i = 0; i < batch.size(); i++ )
+      if ( batch.get( i ) == DROPPED || batch.get( i ) == REMOVED ) return i;
+    return batch.size();
+  }
+}
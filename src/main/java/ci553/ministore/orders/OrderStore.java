@@ -0,0 +1,44 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderProcessing;
+
+/**
+ * Chooses which order processing system the server holds its orders in.<BR>
+ * Set by the system property ministore.order.store:
+ * <PRE>
+ * concurrent  Order, orders are moved on one at a time without a lock on them all (default)
+ * indexed     IndexedOrder, every change is made holding one lock
+ * </PRE>
+ * Either way the orders are numbered from the database and journaled
+ * as set by the system properties.
+ *
+ * @version 1.0
+ */
+
+public class OrderStore
+{
+  private static final String STORE =
+          System.getProperty( "ministore.order.store", "concurrent" );
+
+  private OrderStore() {}
+
+  /**
+   * Create the order processing system chosen by the system properties
+   * @return The order processing system
+   * @throws OrderException If the store is not known or its journaled orders can not be recovered
+   */
+  public static OrderProcessing create()
+         throws OrderException
+  {
+    switch ( STORE )
+    {
+      case "concurrent":
+        return new Order( OrderIdService.getShared(), OrderJournal.fromProperties() );
+      case "indexed":
+        return new IndexedOrder( OrderIdService.getShared(), OrderJournal.fromProperties() );
+      default:
+        throw new OrderException( "Unknown order store: " + STORE );
+    }
+  }
+}
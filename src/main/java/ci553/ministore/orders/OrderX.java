@@ -4,8 +4,12 @@ package ci553.ministore.orders;
 import ci553.ministore.catalogue.Basket;
 import ci553.ministore.catalogue.Product;
 import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.DeadlineStats;
 import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderListener;
 import ci553.ministore.middle.OrderProcessing;
+import ci553.ministore.middle.OrderStateDelta;
+import ci553.ministore.middle.StationStats;
 
 // import java.util.stream.Collectors;
 
@@ -14,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <BR>
@@ -40,7 +45,8 @@ import java.util.Formatter;
  */
 
 public class OrderX implements OrderProcessing {
-    private static int theNextNumber = 1; // Start at 1
+    private final OrderIdService theIds; // Gives out the order numbers
+    private final OrderNotifier theNotifier = new OrderNotifier();
     // Orders entered but waiting to be processed (picked)
     private ArrayList<Basket> theWaitingTray = new ArrayList<Basket>();
 
@@ -50,6 +56,22 @@ public class OrderX implements OrderProcessing {
     // Orders waiting to be collected by the customer
     private ArrayList<Basket> theToBeCollectedTray = new ArrayList<Basket>();
 
+    /**
+     * Order processing numbering its orders from the database
+     */
+    public OrderX() {
+        this(OrderIdService.getShared());
+    }
+
+    /**
+     * Order processing numbering its orders from the given service
+     *
+     * @param ids Gives out the order numbers
+     */
+    public OrderX(OrderIdService ids) {
+        theIds = ids;
+    }
+
     /**
      * Used to generate debug information
      * 
@@ -69,13 +91,14 @@ public class OrderX implements OrderProcessing {
     }
 
     /**
-     * Generates a unique order number
-     * would be good to recycle numbers after 999
+     * Generates a unique order number,
+     * unique across restarts and across servers sharing the database
      * 
      * @return A unique order number
+     * @throws OrderException If no order number can be had
      */
-    public synchronized int uniqueNumber() {
-        return theNextNumber++;
+    public int uniqueNumber() throws OrderException {
+        return theIds.next();
     }
 
     /**
@@ -88,6 +111,8 @@ public class OrderX implements OrderProcessing {
         // You need to modify and fill in the correct code
         DEBUG.trace("DEBUG: New order");
         theWaitingTray.add(bought);
+        theNotifier.publish(bought.getOrderNum(), null, "Waiting");
+        notifyAll(); // Wake waiting packers
         for (Basket bl : theWaitingTray) {
             DEBUG.trace("Order: " + asString(bl));
         }
@@ -102,16 +127,62 @@ public class OrderX implements OrderProcessing {
 
     public synchronized Basket getOrderToPack()
             throws OrderException {
-        // You need to modify and fill in the correct code
+        return getOrderToPack(0);
+    }
+
+    /**
+     * Returns an order to pick from the warehouse, waiting for a new
+     * order if there is none.
+     *
+     * @param timeoutMillis Longest time to wait, 0 not to wait
+     * @return An order to pick, or null if none arrived in time
+     */
+    public synchronized Basket getOrderToPack(long timeoutMillis)
+            throws OrderException {
         DEBUG.trace("DEBUG: Get order to pack");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (theWaitingTray.isEmpty() && Order.awaitOrder(this, deadline)) {
+            // Woken by a new order or the deadline, look again
+        }
         if (theWaitingTray.size() > 0) {
             Basket process = theWaitingTray.remove(0);
             theBeingPickedTray.add(process);
+            theNotifier.publish(process.getOrderNum(), "Waiting", "BeingPicked");
             return process;
         }
         return null;
     }
 
+    /**
+     * Returns an order to pick, as all stations share one tray here
+     *
+     * @param station       Name of the packing station, not used
+     * @param timeoutMillis Longest time to wait, 0 not to wait
+     * @return An order to pick, or null if none arrived in time
+     */
+    public Basket getOrderToPack(String station, long timeoutMillis)
+            throws OrderException {
+        return getOrderToPack(timeoutMillis);
+    }
+
+    /**
+     * Packing stations are not told apart here
+     *
+     * @return An empty list
+     */
+    public List<StationStats> getStationStats() {
+        return List.of();
+    }
+
+    /**
+     * Deadlines are not kept here
+     *
+     * @return An empty list
+     */
+    public List<DeadlineStats> getDeadlineStats() {
+        return List.of();
+    }
+
     /**
      * Informs the order processing system that the order has been
      * picked and the products are now being delivered to the
@@ -129,6 +200,7 @@ public class OrderX implements OrderProcessing {
             if (theBeingPickedTray.get(i).getOrderNum() == orderNum) {
                 Basket picked = theBeingPickedTray.remove(i);
                 theToBeCollectedTray.add(picked);
+                theNotifier.publish(orderNum, "BeingPicked", "ToBeCollected");
                 return true;
             }
         }
@@ -149,6 +221,7 @@ public class OrderX implements OrderProcessing {
         for (int i = 0; i < theToBeCollectedTray.size(); i++) {
             if (theToBeCollectedTray.get(i).getOrderNum() == orderNum) {
                 theToBeCollectedTray.remove(i);
+                theNotifier.publish(orderNum, "ToBeCollected", null);
                 return true;
             }
         }
@@ -182,6 +255,42 @@ public class OrderX implements OrderProcessing {
         return res;
     }
 
+    /**
+     * Versions are not kept here, so every order is returned each time,
+     * with orders being picked shown as being packed
+     *
+     * @param version Not used
+     * @return A full delta of every order
+     */
+    public synchronized OrderStateDelta getOrderStateSince(long version) {
+        Map<String, List<Integer>> res = new HashMap<>();
+        res.put("Waiting", orderNos(theWaitingTray));
+        res.put("BeingPacked", orderNos(theBeingPickedTray));
+        res.put("ToBeCollected", orderNos(theToBeCollectedTray));
+        return OrderStateDelta.full(0, res);
+    }
+
+    /**
+     * Tells a listener of every change to an order from now on
+     *
+     * @param listener The listener
+     * @return The state of all orders, as getOrderState, just before the first change told
+     */
+    public synchronized Map<String, List<Integer>> addOrderListener(OrderListener listener)
+            throws OrderException {
+        theNotifier.add(listener);
+        return getOrderState();
+    }
+
+    /**
+     * Stops telling a listener of changes
+     *
+     * @param listener The listener
+     */
+    public void removeOrderListener(OrderListener listener) {
+        theNotifier.remove(listener);
+    }
+
     private List<Integer> orderNos(ArrayList<Basket> queue) {
         List<Integer> res = new ArrayList<Integer>();
         for (Basket sb : queue) {
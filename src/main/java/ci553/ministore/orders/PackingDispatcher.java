@@ -0,0 +1,356 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.StationStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands waiting orders out to packing stations.<BR>
+ * Each station that asks for orders by name gets its own queue, and new
+ * orders are dealt to the stations in turn, so stations mostly take from
+ * their own queue and do not contend for one list. Each queue is a heap
+ * giving the order due soonest first, oldest first among orders due
+ * together. A station takes from its own queue, and only looks at the
+ * others once its own is empty or the order at its head is already past
+ * due: then it steals from the station whose head is due soonest, if that
+ * is due sooner than its own. Each station publishes when the order at the
+ * head of its queue is due, so looking at the others locks none of their
+ * queues, only the queue stolen from.
+ * <P>
+ * Orders taken before any station has asked, and the queue of a station
+ * that has not asked for an order for a while, are shared: any station
+ * takes a shared order before its own if the shared one is due sooner,
+ * so no order is left behind a station that has gone.
+ * Set by the system property:
+ * <PRE>
+ * ministore.order.stationTimeoutSeconds  Time after its last request
+ *                                        a station is thought gone (default 60)
+ * </PRE>
+ *
+ * @param <T> The orders handed out
+ * @version 1.0
+ */
+
+class PackingDispatcher<T>
+{
+  private static final long STATION_TIMEOUT = TimeUnit.SECONDS.toNanos(
+          Long.getLong( "ministore.order.stationTimeoutSeconds", 60 ) );
+
+  /**
+   * An order, when it is due and when it arrived
+   */
+  private static class Queued<T>
+  {
+    private final T    item;
+    private final long due;      // Packed by, earliest first
+    private final long seq;      // Arrival order
+
+    public Queued( T anItem, long aDue, long aSeq )
+    {
+      item = anItem;
+      due  = aDue;
+      seq  = aSeq;
+    }
+  }
+
+  // Order due soonest first, then the oldest
+  private final Comparator<Queued<T>> theUrgency =
+          Comparator.comparingLong( (Queued<T> q) -> q.due ).thenComparingLong( q -> q.seq );
+
+  /**
+   * A packing station, its queue and what it has done
+   */
+  private class Station
+  {
+    private final String                          name;
+    private final PriorityBlockingQueue<Queued<T>> queue  = new PriorityBlockingQueue<>( 16, theUrgency );
+    private final AtomicInteger                    queued = new AtomicInteger();
+    private volatile long headDue = Long.MAX_VALUE;  // When the head is due, only a hint
+    private final AtomicLong taken     = new AtomicLong();
+    private final AtomicLong stolen    = new AtomicLong();
+    private final AtomicLong packed    = new AtomicLong();
+    private final AtomicLong packNanos = new AtomicLong();
+    private final long          since;
+    private volatile long       lastSeen;
+
+    public Station( String aName, long now )
+    {
+      name     = aName;
+      since    = now;
+      lastSeen = now;
+    }
+
+    public boolean isLive( long now ) { return now - lastSeen < theTimeout; }
+
+    /**
+     * @param q An order for the station
+     */
+    public void add( Queued<T> q )
+    {
+      queue.add( q );
+      queued.incrementAndGet();
+      publish();
+    }
+
+    /**
+     * @return The order due soonest in the queue, or null if none
+     */
+    public Queued<T> poll()
+    {
+      Queued<T> q = queue.poll();
+      if ( q != null )
+      {
+        queued.decrementAndGet();
+        publish();
+      }
+      return q;
+    }
+
+    /**
+     * Publishes when the head of the queue is due, for stations looking
+     *   to steal. Changes at the same time may leave it out of date
+     */
+    private void publish()
+    {
+      Queued<T> head = queue.peek();
+      headDue = head == null ? Long.MAX_VALUE : head.due;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Station> theStations = new ConcurrentHashMap<>();
+  private final PriorityBlockingQueue<Queued<T>>   theShared   = new PriorityBlockingQueue<>( 64, theUrgency );
+  private final AtomicInteger theSharedCount = new AtomicInteger();  // Shared orders, mostly none
+  private volatile List<Station> theLive = List.of();      // Stations dealt new orders
+  private final AtomicLong    theSeq    = new AtomicLong();
+  private final AtomicInteger theTurn   = new AtomicInteger();
+  private final AtomicInteger theQueued = new AtomicInteger();  // In every queue
+  private final long          theTimeout;
+
+  /**
+   * Dispatcher timing out stations as set by the system property
+   */
+  PackingDispatcher()
+  {
+    this( STATION_TIMEOUT );
+  }
+
+  /**
+   * @param timeoutNanos Time after its last request a station is thought gone
+   */
+  PackingDispatcher( long timeoutNanos )
+  {
+    theTimeout = timeoutNanos;
+  }
+
+  /**
+   * Adds a waiting order, to the queue of the next station in turn
+   * @param item The order
+   * @param due  When it should be packed by, orders due soonest are taken first
+   */
+  void offer( T item, long due )
+  {
+    Queued<T> q = new Queued<>( item, due, theSeq.incrementAndGet() );
+    Station to = nextStation();
+    if ( to == null ) share( q );
+    else              to.add( q );
+    theQueued.incrementAndGet();
+  }
+
+  /**
+   * Takes the order due soonest for a station: from its own queue, or the
+   * shared orders if due sooner, or when its own queue is empty or its head
+   * already past due, stolen from the station whose head is due soonest
+   * @param name The station, null for a caller that is not a station
+   * @return The order, or null if none could be had
+   */
+  T poll( String name )
+  {
+    long now = System.nanoTime();
+    Station me = name == null ? null : station( name, now );
+    Queued<T> own = me == null ? null : me.queue.peek();
+    Queued<T> q   = null;
+    boolean stolen = false;
+    if ( theSharedCount.get() > 0 )                // Only lock the shared orders if there are any
+    {
+      Queued<T> shared = theShared.peek();
+      if ( shared != null && ( own == null || theUrgency.compare( shared, own ) < 0 ) )
+      {
+        q = theShared.poll();
+        if ( q != null ) theSharedCount.decrementAndGet();
+      }
+    }
+    if ( q == null && ( own == null || own.due <= System.currentTimeMillis() ) )
+    {
+      q = steal( me, own == null ? Long.MAX_VALUE : own.due );
+      stolen = q != null;
+    }
+    if ( q == null && me != null ) q = me.poll();
+    if ( q != null && me != null )
+    {
+      if ( stolen ) me.stolen.incrementAndGet();
+      else          me.taken.incrementAndGet();
+    }
+    if ( q == null ) return null;
+    theQueued.decrementAndGet();
+    return q.item;
+  }
+
+  /**
+   * @return true if no order is waiting
+   */
+  boolean isEmpty()
+  {
+    return theQueued.get() <= 0;
+  }
+
+  /**
+   * Records an order a station took being packed
+   * @param name  The station, null if not taken by a station
+   * @param nanos Time from taking to packing
+   */
+  void packed( String name, long nanos )
+  {
+    Station station = name == null ? null : theStations.get( name );
+    if ( station == null ) return;
+    station.packed.incrementAndGet();
+    station.packNanos.addAndGet( nanos );
+  }
+
+  /**
+   * @return Every waiting order, oldest first. Only a true picture
+   *          when no order is being added or taken
+   */
+  List<T> waiting()
+  {
+    List<Queued<T>> all = new ArrayList<>( theShared );
+    for ( Station station : theStations.values() ) all.addAll( station.queue );
+    all.sort( Comparator.comparingLong( q -> q.seq ) );
+    List<T> items = new ArrayList<>( all.size() );
+    for ( Queued<T> q : all ) items.add( q.item );
+    return items;
+  }
+
+  /**
+   * @return What each station that has asked for an order has done
+   */
+  List<StationStats> getStats()
+  {
+    long now = System.nanoTime();
+    List<StationStats> stats = new ArrayList<>();
+    for ( Station s : theStations.values() )
+      stats.add( new StationStats( s.name, s.queued.get(), s.taken.get(), s.stolen.get(),
+                                   s.packed.get(), s.packNanos.get(), now - s.since ) );
+    stats.sort( Comparator.comparing( StationStats::getStation ) );
+    return stats;
+  }
+
+  /**
+   * Finds a station, recording that it has asked for an order
+   * @param name The station
+   * @param now  System.nanoTime()
+   * @return The station
+   */
+  private Station station( String name, long now )
+  {
+    Station station = theStations.get( name );
+    if ( station == null )
+      station = theStations.computeIfAbsent( name, n -> new Station( n, now ) );
+    boolean wasLive = station.isLive( now ) && theLive.contains( station );
+    station.lastSeen = now;
+    if ( !wasLive ) relist( now );
+    return station;
+  }
+
+  /**
+   * @return The station to deal the next order to, or null if none is live
+   */
+  private Station nextStation()
+  {
+    long now = System.nanoTime();
+    List<Station> live = theLive;
+    for ( int tries = 0; tries < live.size(); tries++ )
+    {
+      Station to = live.get( Math.floorMod( theTurn.getAndIncrement(), live.size() ) );
+      if ( to.isLive( now ) ) return to;
+      live = relist( now );
+      if ( live.isEmpty() ) return null;
+    }
+    return null;
+  }
+
+  /**
+   * Adds an order that any station may take
+   * @param q The order
+   */
+  private void share( Queued<T> q )
+  {
+    theShared.add( q );
+    theSharedCount.incrementAndGet();
+  }
+
+  /**
+   * Remakes the list of live stations, sharing the queues of stations gone
+   * @param now System.nanoTime()
+   * @return The live stations
+   */
+  private synchronized List<Station> relist( long now )
+  {
+    List<Station> live = new ArrayList<>();
+    for ( Station station : theStations.values() )
+    {
+      if ( station.isLive( now ) )
+      {
+        live.add( station );
+      } else {
+        Queued<T> q;
+        while ( ( q = station.poll() ) != null ) share( q );
+      }
+    }
+    live.sort( Comparator.comparing( s -> s.name ) );
+    if ( live.size() != theLive.size() )
+      DEBUG.trace( "PackingDispatcher: %d packing stations", live.size() );
+    theLive = List.copyOf( live );
+    return theLive;
+  }
+
+  /**
+   * Takes the order due soonest from another station, going by the due
+   *   time each station publishes. If none is published, as can happen
+   *   while orders are added and taken, from the station with most waiting
+   * @param thief  The station stealing, null for a caller that is not a station
+   * @param before Only steal an order due before this
+   * @return The order, or null if there is none to steal
+   */
+  private Queued<T> steal( Station thief, long before )
+  {
+    while ( true )
+    {
+      Station victim = null;
+      long    due    = before;
+      Station busiest = null;
+      for ( Station s : theStations.values() )
+      {
+        if ( s == thief || s.queued.get() <= 0 ) continue;
+        long head = s.headDue;
+        if ( head < due )
+        {
+          due    = head;
+          victim = s;
+        }
+        if ( busiest == null || s.queued.get() > busiest.queued.get() ) busiest = s;
+      }
+      if ( victim == null && before == Long.MAX_VALUE ) victim = busiest;
+      if ( victim == null ) return null;
+      Queued<T> q = victim.poll();
+      if ( q != null ) return q;
+    }
+  }
+}
@@ -1,13 +1,20 @@
 package ci553.ministore.remote;
 
 import ci553.ministore.catalogue.Basket;
+import ci553.ministore.middle.OrderChange;
+import ci553.ministore.middle.DeadlineStats;
 import ci553.ministore.middle.OrderException;
-import ci553.ministore.orders.Order;
+import ci553.ministore.middle.OrderListener;
+import ci553.ministore.middle.OrderProcessing;
+import ci553.ministore.middle.OrderStateDelta;
+import ci553.ministore.middle.StationStats;
+import ci553.ministore.orders.OrderStore;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The order processing handling.
@@ -21,12 +28,14 @@ public class      R_Order
        implements RemoteOrder_I
 {
   private static final long serialVersionUID = 1;
-  private Order aOrder = null;
+  private OrderProcessing aOrder = null;   // Store chosen by ministore.order.store
+  // Client callbacks and the listeners passing changes to them
+  private final Map<RemoteOrderListener_I, Callback> theCallbacks = new ConcurrentHashMap<>();
 
   public R_Order( String url )
          throws RemoteException, OrderException
   {
-    aOrder = new Order();
+    aOrder = OrderStore.create();
   }
 
   public void newOrder( Basket bought )
@@ -48,6 +57,30 @@ public class      R_Order
       return aOrder.getOrderToPack();
   }
 
+  public Basket getOrderToPack( long timeoutMillis )
+         throws RemoteException, OrderException
+  {
+      return aOrder.getOrderToPack( timeoutMillis );
+  }
+
+  public Basket getOrderToPack( String station, long timeoutMillis )
+         throws RemoteException, OrderException
+  {
+      return aOrder.getOrderToPack( station, timeoutMillis );
+  }
+
+  public List<StationStats> getStationStats()
+         throws RemoteException, OrderException
+  {
+    return aOrder.getStationStats();
+  }
+
+  public List<DeadlineStats> getDeadlineStats()
+         throws RemoteException, OrderException
+  {
+    return aOrder.getDeadlineStats();
+  }
+
   public boolean informOrderPacked( int orderNum )
          throws RemoteException, OrderException
   {
@@ -67,4 +100,64 @@ public class      R_Order
     return aOrder.getOrderState();
   }
 
+  public OrderStateDelta getOrderStateSince( long version )
+          throws RemoteException, OrderException
+  {
+    return aOrder.getOrderStateSince( version );
+  }
+
+  /**
+   * Passes order changes on to a client's callback
+   */
+  private class Callback implements OrderListener
+  {
+    private final RemoteOrderListener_I client;
+
+    public Callback( RemoteOrderListener_I aClient )
+    {
+      client = aClient;
+    }
+
+    public void ordersChanged( List<OrderChange> changes )
+           throws OrderException
+    {
+      try
+      {
+        client.ordersChanged( changes );
+      } catch ( RemoteException e )
+      {
+        throw new OrderException( "Net: " + e.getMessage() );
+      }
+    }
+
+    public void dropped()
+           throws OrderException
+    {
+      theCallbacks.remove( client, this );
+      try
+      {
+        client.dropped();
+      } catch ( RemoteException e )
+      {
+        throw new OrderException( "Net: " + e.getMessage() );
+      }
+    }
+  }
+
+  public Map<String, List<Integer>> addOrderListener( RemoteOrderListener_I listener )
+          throws RemoteException, OrderException
+  {
+    Callback callback = new Callback( listener );
+    Callback old = theCallbacks.put( listener, callback );
+    if ( old != null ) aOrder.removeOrderListener( old );
+    return aOrder.addOrderListener( callback );
+  }
+
+  public void removeOrderListener( RemoteOrderListener_I listener )
+          throws RemoteException, OrderException
+  {
+    Callback callback = theCallbacks.remove( listener );
+    if ( callback != null ) aOrder.removeOrderListener( callback );
+  }
+
 }
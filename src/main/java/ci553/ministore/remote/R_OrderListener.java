@@ -0,0 +1,76 @@
+package ci553.ministore.remote;
+
+import ci553.ministore.debug.DEBUG;
+import ci553.ministore.middle.OrderChange;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderListener;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Exported by a client so the server can pass order changes to a listener
+ * in the client. Changes are handed straight to the listener, the server
+ * delivers them from a thread of its own for each listener.
+ */
+public class R_OrderListener extends UnicastRemoteObject implements RemoteOrderListener_I {
+    private static final long serialVersionUID = 1;
+    private final transient OrderListener theListener;
+    private final transient Consumer<R_OrderListener> theOnDropped;  // Forgets this callback
+
+    /**
+     * Exports a callback for a listener, telling the client when the server drops it.
+     *
+     * @param listener  The listener in this client
+     * @param onDropped Given this callback once the server has dropped it
+     * @throws RemoteException If the callback can not be exported
+     */
+    public R_OrderListener(OrderListener listener, Consumer<R_OrderListener> onDropped)
+            throws RemoteException {
+        theListener = listener;
+        theOnDropped = onDropped;
+    }
+
+    /**
+     * Passes changes to the listener.
+     *
+     * @param changes One or more changes, oldest first
+     * @throws RemoteException If the listener can not take them
+     */
+    public void ordersChanged(List<OrderChange> changes) throws RemoteException {
+        try {
+            theListener.ordersChanged(changes);
+        } catch (OrderException e) {
+            throw new RemoteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tells the listener it was dropped and stops taking calls.
+     *
+     * @throws RemoteException If the listener can not be told
+     */
+    public void dropped() throws RemoteException {
+        unexport();
+        theOnDropped.accept(this);
+        try {
+            theListener.dropped();
+        } catch (OrderException e) {
+            throw new RemoteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops taking calls from the server.
+     */
+    public void unexport() {
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            DEBUG.trace("R_OrderListener: already unexported");
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package ci553.ministore.remote;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.dbAccess.StockR;
+import ci553.ministore.dbAccess.StockRW;
+import ci553.ministore.middle.CachingStockReader;
 import ci553.ministore.middle.StockException;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
 
 /**
  * Remote implementation of the StockReader interface.
@@ -14,22 +20,26 @@ import java.rmi.server.UnicastRemoteObject;
  *
  * This class handles the RMI setup and delegates the method calls to the
  * StockR instance which interacts with the database.
+ * Methods are not synchronized: the StockR instance borrows a pooled
+ * connection per call, so requests from different clients run in parallel.
  * 
  */
 public class R_StockR extends UnicastRemoteObject implements RemoteStockR_I {
     private static final long serialVersionUID = 1;
-    private StockR aStockR = null;  // Local StockR instance for database operations
+    private CachingStockReader aStockR = null;  // Cached local StockR instance for database operations
 
     /**
      * Constructs a new R_StockR instance.
-     * Initializes the local StockR instance.
+     * Initializes the local StockR instance behind a product cache,
+     * the cache is told about every change made through a StockRW.
      *
      * @param url The database URL (not used in this implementation)
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error initializing the StockR instance
      */
     public R_StockR(String url) throws RemoteException, StockException {
-        aStockR = new StockR();  // Initialize local StockR instance
+        aStockR = new CachingStockReader(new StockR());  // Initialize local StockR instance
+        StockRW.addChangeListener(aStockR);
     }
 
     /**
@@ -41,7 +51,7 @@ public class R_StockR extends UnicastRemoteObject implements RemoteStockR_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized boolean exists(String pNum) throws RemoteException, StockException {
+    public boolean exists(String pNum) throws RemoteException, StockException {
         return aStockR.exists(pNum);  // Delegate to local StockR instance
     }
 
@@ -54,7 +64,7 @@ public class R_StockR extends UnicastRemoteObject implements RemoteStockR_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized Product getDetails(String pNum) throws RemoteException, StockException {
+    public Product getDetails(String pNum) throws RemoteException, StockException {
         return aStockR.getDetails(pNum);  // Delegate to local StockR instance
     }
 
@@ -67,7 +77,60 @@ public class R_StockR extends UnicastRemoteObject implements RemoteStockR_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized byte[] getImage(String pNum) throws RemoteException, StockException {
+    public byte[] getImage(String pNum) throws RemoteException, StockException {
         return aStockR.getImage(pNum);  // Delegate to local StockR instance
     }
+
+    /**
+     * Retrieves the product image only if the caller does not already hold it.
+     * Delegates the call to the local StockR instance.
+     *
+     * @param pNum The product number
+     * @param size The size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image, or null if the caller's version is current
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public ProductImage getImageIfChanged(String pNum, ImageSize size, String knownVersion)
+            throws RemoteException, StockException {
+        return aStockR.getImageIfChanged(pNum, size, knownVersion).orElse(null);  // Optional is not serializable
+    }
+
+    /**
+     * Retrieves the product details, stock level and image in one call.
+     * The image data is left out if the caller already holds that version.
+     * Delegates the call to the local StockR instance.
+     *
+     * @param pNum The product number to look up
+     * @param size The size of image wanted
+     * @param knownImageVersion Version of the image the caller holds, or null if none
+     * @return The product view, or null if the product does not exist
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public ProductView getProductView(String pNum, ImageSize size, String knownImageVersion)
+            throws RemoteException, StockException {
+        ProductView view = aStockR.getProductView(pNum, size).orElse(null);  // Optional is not serializable
+        if (view != null && view.getImageVersion() != null
+                && view.getImageVersion().equals(knownImageVersion)) {
+            // The caller already has this image, do not send it again
+            view = new ProductView(view.getProduct(), view.getPicture(), null, view.getImageVersion());
+        }
+        return view;
+    }
+
+    /**
+     * Finds products by their description.
+     * Delegates the call to the local StockR instance.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products, best match first
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public List<Product> searchProducts(String query, int maxResults) throws RemoteException, StockException {
+        return aStockR.searchProducts(query, maxResults);
+    }
 }
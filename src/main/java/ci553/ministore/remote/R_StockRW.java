@@ -1,6 +1,12 @@
 package ci553.ministore.remote;
 
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductPage;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.dbAccess.StockRW;
 import ci553.ministore.middle.StockException;
 
@@ -15,6 +21,8 @@ import java.util.List;
  *
  * This class handles the RMI setup and delegates the method calls to the
  * StockRW instance which interacts with the database.
+ * Methods are not synchronized: the StockRW instance borrows a pooled
+ * connection per call, so requests from different clients run in parallel.
  *
  */
 public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
@@ -42,7 +50,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized boolean exists(String pNum) throws RemoteException, StockException {
+    public boolean exists(String pNum) throws RemoteException, StockException {
         return aStockRW.exists(pNum);  // Delegate to local StockRW instance
     }
 
@@ -55,7 +63,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized Product getDetails(String pNum) throws RemoteException, StockException {
+    public Product getDetails(String pNum) throws RemoteException, StockException {
         return aStockRW.getDetails(pNum);  // Delegate to local StockRW instance
     }
 
@@ -68,10 +76,63 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized byte[] getImage(String pNum) throws RemoteException, StockException {
+    public byte[] getImage(String pNum) throws RemoteException, StockException {
         return aStockRW.getImage(pNum);  // Delegate to local StockRW instance
     }
 
+    /**
+     * Retrieves the product image only if the caller does not already hold it.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param pNum The product number
+     * @param size The size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image, or null if the caller's version is current
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public ProductImage getImageIfChanged(String pNum, ImageSize size, String knownVersion)
+            throws RemoteException, StockException {
+        return aStockRW.getImageIfChanged(pNum, size, knownVersion).orElse(null);  // Optional is not serializable
+    }
+
+    /**
+     * Retrieves the product details, stock level and image in one call.
+     * The image data is left out if the caller already holds that version.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param pNum The product number to look up
+     * @param size The size of image wanted
+     * @param knownImageVersion Version of the image the caller holds, or null if none
+     * @return The product view, or null if the product does not exist
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public ProductView getProductView(String pNum, ImageSize size, String knownImageVersion)
+            throws RemoteException, StockException {
+        ProductView view = aStockRW.getProductView(pNum, size).orElse(null);  // Optional is not serializable
+        if (view != null && view.getImageVersion() != null
+                && view.getImageVersion().equals(knownImageVersion)) {
+            // The caller already has this image, do not send it again
+            view = new ProductView(view.getProduct(), view.getPicture(), null, view.getImageVersion());
+        }
+        return view;
+    }
+
+    /**
+     * Finds products by their description.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products, best match first
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public List<Product> searchProducts(String query, int maxResults) throws RemoteException, StockException {
+        return aStockRW.searchProducts(query, maxResults);
+    }
+
     /**
      * Buys stock by decrementing available quantity.
      * Delegates the call to the local StockRW instance.
@@ -82,10 +143,79 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized boolean buyStock(String pNum, int amount) throws RemoteException, StockException {
+    public boolean buyStock(String pNum, int amount) throws RemoteException, StockException {
         return aStockRW.buyStock(pNum, amount);  // Delegate to local StockRW instance
     }
 
+    /**
+     * Buys every line of a basket in a single transaction.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param basket The basket to buy
+     * @return For each line, in basket order, true if there was enough stock
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public boolean[] checkout(Basket basket) throws RemoteException, StockException {
+        return aStockRW.checkout(basket);  // Delegate to local StockRW instance
+    }
+
+    /**
+     * Holds stock for a client that has not yet paid.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param holdId Identifies the client's hold
+     * @param pNum The product number to hold
+     * @param amount The quantity to hold
+     * @return true if held, false if not enough stock is available
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public boolean reserveStock(String holdId, String pNum, int amount) throws RemoteException, StockException {
+        return aStockRW.reserveStock(holdId, pNum, amount);  // Delegate to local StockRW instance
+    }
+
+    /**
+     * Gives back part of a client's hold.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param holdId The client's hold
+     * @param pNum The product number to give back
+     * @param amount The quantity to give back
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public void releaseStock(String holdId, String pNum, int amount) throws RemoteException, StockException {
+        aStockRW.releaseStock(holdId, pNum, amount);  // Delegate to local StockRW instance
+    }
+
+    /**
+     * Takes everything in a client's hold from the stock in one transaction.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param holdId The client's hold
+     * @param basket The basket being bought
+     * @return true if taken, false if the hold had expired, did not match
+     *         the basket or stock ran short
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public boolean commitReservation(String holdId, Basket basket) throws RemoteException, StockException {
+        return aStockRW.commitReservation(holdId, basket);  // Delegate to local StockRW instance
+    }
+
+    /**
+     * Gives back everything in a client's hold.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param holdId The client's hold
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    public void cancelReservation(String holdId) throws RemoteException, StockException {
+        aStockRW.cancelReservation(holdId);  // Delegate to local StockRW instance
+    }
+
     /**
      * Adds stock to an existing product.
      * Delegates the call to the local StockRW instance.
@@ -95,7 +225,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized void addStock(String pNum, int amount) throws RemoteException, StockException {
+    public void addStock(String pNum, int amount) throws RemoteException, StockException {
         aStockRW.addStock(pNum, amount);  // Delegate to local StockRW instance
     }
 
@@ -107,7 +237,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws RemoteException If there is an RMI error
      * @throws StockException If there is an error accessing the database
      */
-    public synchronized void modifyStock(Product product) throws RemoteException, StockException {
+    public void modifyStock(Product product) throws RemoteException, StockException {
         aStockRW.modifyStock(product);  // Delegate to local StockRW instance
     }
 
@@ -121,7 +251,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws StockException If there is an error accessing the database
      */
     @Override
-    public synchronized void setStock(String productNum, int quantity) throws RemoteException, StockException {
+    public void setStock(String productNum, int quantity) throws RemoteException, StockException {
         aStockRW.setStock(productNum, quantity);  // Delegate to local StockRW instance
     }
 
@@ -134,7 +264,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws StockException If the product already exists or there is an error accessing the database
      */
     @Override
-    public synchronized void addProduct(Product product) throws RemoteException, StockException {
+    public void addProduct(Product product) throws RemoteException, StockException {
         aStockRW.addProduct(product);  // Delegate to local StockRW instance
     }
 
@@ -147,10 +277,39 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws StockException If there is an error accessing the database
      */
     @Override
-    public synchronized List<Product> getProducts() throws RemoteException, StockException {
+    public List<Product> getProducts() throws RemoteException, StockException {
         return aStockRW.getProducts();  // Delegate to local StockRW instance
     }
 
+    /**
+     * Retrieves one page of the products.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param afterToken Token from the previous page, or null for the first page
+     * @param pageSize   Most products wanted
+     * @return The page and the token for the next one
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    @Override
+    public ProductPage getProductsPage(String afterToken, int pageSize) throws RemoteException, StockException {
+        return aStockRW.getProductsPage(afterToken, pageSize);
+    }
+
+    /**
+     * Leases a block of new product numbers.
+     * Delegates the call to the local StockRW instance.
+     *
+     * @param count How many numbers are wanted
+     * @return The block, which may be smaller than asked for
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the database
+     */
+    @Override
+    public NumberBlock leaseProductNumbers(int count) throws RemoteException, StockException {
+        return aStockRW.leaseProductNumbers(count);
+    }
+
     /**
      * Updates the image path for a product.
      * Delegates the call to the local StockRW instance.
@@ -161,7 +320,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws StockException If there is an error accessing the database
      */
     @Override
-    public synchronized void updateProductImage(String productNum, String imagePath) throws RemoteException, StockException {
+    public void updateProductImage(String productNum, String imagePath) throws RemoteException, StockException {
         aStockRW.updateProductImage(productNum, imagePath);  // Delegate to local StockRW instance
     }
 
@@ -174,7 +333,7 @@ public class R_StockRW extends UnicastRemoteObject implements RemoteStockRW_I {
      * @throws StockException If there is an error accessing the database
      */
     @Override
-    public synchronized void deleteProduct(String productNum) throws RemoteException, StockException {
+    public void deleteProduct(String productNum) throws RemoteException, StockException {
         aStockRW.deleteProduct(productNum);  // Delegate to local StockRW instance
     }
 }
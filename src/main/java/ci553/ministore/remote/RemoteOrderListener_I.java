@@ -0,0 +1,29 @@
+package ci553.ministore.remote;
+
+import ci553.ministore.middle.OrderChange;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Defines the RMI interface a client exports to be told of order changes.
+ * The server calls back on it, so the client must be reachable from the server.
+ */
+public interface RemoteOrderListener_I extends Remote {
+
+    /**
+     * Called with the changes made since the last call.
+     *
+     * @param changes One or more changes, oldest first
+     * @throws RemoteException If there is an RMI error, the listener is removed
+     */
+    void ordersChanged(List<OrderChange> changes) throws RemoteException;
+
+    /**
+     * Called once the listener has been removed for falling behind or failing.
+     *
+     * @throws RemoteException If there is an RMI error
+     */
+    void dropped() throws RemoteException;
+}
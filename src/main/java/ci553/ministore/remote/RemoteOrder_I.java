@@ -1,7 +1,10 @@
 package ci553.ministore.remote;
 
 import ci553.ministore.catalogue.Basket;
+import ci553.ministore.middle.DeadlineStats;
 import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderStateDelta;
+import ci553.ministore.middle.StationStats;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
@@ -46,6 +49,49 @@ public interface RemoteOrder_I extends Remote {
      */
     Basket getOrderToPack() throws RemoteException, OrderException;
 
+    /**
+     * Retrieves the next order to be packed, waiting for one to arrive
+     * if there is none.
+     *
+     * @param timeoutMillis Longest time to wait
+     * @return The Basket object representing the order to be packed,
+     *         or null if none arrived in time
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the order
+     */
+    Basket getOrderToPack(long timeoutMillis) throws RemoteException, OrderException;
+
+    /**
+     * Retrieves the next order for a packing station to pack, waiting for
+     * one to arrive if there is none.
+     *
+     * @param station       Name of the packing station
+     * @param timeoutMillis Longest time to wait
+     * @return The Basket object representing the order to be packed,
+     *         or null if none arrived in time
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the order
+     */
+    Basket getOrderToPack(String station, long timeoutMillis) throws RemoteException, OrderException;
+
+    /**
+     * Retrieves what each packing station has done.
+     *
+     * @return One entry for each station that has asked for an order
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the figures
+     */
+    List<StationStats> getStationStats() throws RemoteException, OrderException;
+
+    /**
+     * Retrieves how many orders of each priority were packed by their deadline.
+     *
+     * @return One entry for each priority
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the figures
+     */
+    List<DeadlineStats> getDeadlineStats() throws RemoteException, OrderException;
+
     /**
      * Informs the system that an order has been packed.
      *
@@ -75,4 +121,34 @@ public interface RemoteOrder_I extends Remote {
      * @throws OrderException  If there is an error retrieving the order state
      */
     Map<String, List<Integer>> getOrderState() throws RemoteException, OrderException;
+
+    /**
+     * Retrieves the orders that reached or left each stage since a version.
+     *
+     * @param version The version of the last delta retrieved, 0 for none
+     * @return The changes, or every order if the version is too old
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the order state
+     */
+    OrderStateDelta getOrderStateSince(long version) throws RemoteException, OrderException;
+
+    /**
+     * Tells a listener exported by the client of every order change from now on.
+     *
+     * @param listener The client's callback
+     * @return The state of all orders, as getOrderState, just before the first change told
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error retrieving the order state
+     */
+    Map<String, List<Integer>> addOrderListener(RemoteOrderListener_I listener)
+            throws RemoteException, OrderException;
+
+    /**
+     * Stops telling a listener of order changes.
+     *
+     * @param listener The client's callback
+     * @throws RemoteException If there is an RMI error
+     * @throws OrderException  If there is an error removing the listener
+     */
+    void removeOrderListener(RemoteOrderListener_I listener) throws RemoteException, OrderException;
 }
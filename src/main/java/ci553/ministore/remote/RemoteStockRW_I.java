@@ -1,6 +1,9 @@
 package ci553.ministore.remote;
 
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductPage;
 import ci553.ministore.middle.StockException;
 
 import java.rmi.Remote;
@@ -31,6 +34,61 @@ public interface RemoteStockRW_I extends RemoteStockR_I, Remote {
      */
     boolean buyStock(String number, int amount) throws RemoteException, StockException;
 
+    /**
+     * Buys every line of a basket in a single transaction.
+     * Either all of the lines are bought or none are.
+     *
+     * @param basket The basket to buy
+     * @return For each line, in basket order, true if there was enough stock
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    boolean[] checkout(Basket basket) throws RemoteException, StockException;
+
+    /**
+     * Holds stock for a client that has not yet paid.
+     *
+     * @param holdId Identifies the client's hold
+     * @param number The product number to hold
+     * @param amount The quantity to hold
+     * @return true if held, false if not enough stock is available
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    boolean reserveStock(String holdId, String number, int amount) throws RemoteException, StockException;
+
+    /**
+     * Gives back part of a client's hold.
+     *
+     * @param holdId The client's hold
+     * @param number The product number to give back
+     * @param amount The quantity to give back
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    void releaseStock(String holdId, String number, int amount) throws RemoteException, StockException;
+
+    /**
+     * Takes everything in a client's hold from the stock in one transaction.
+     *
+     * @param holdId The client's hold
+     * @param basket The basket being bought
+     * @return true if taken, false if the hold had expired, did not match
+     *         the basket or stock ran short
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    boolean commitReservation(String holdId, Basket basket) throws RemoteException, StockException;
+
+    /**
+     * Gives back everything in a client's hold.
+     *
+     * @param holdId The client's hold
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    void cancelReservation(String holdId) throws RemoteException, StockException;
+
     /**
      * Adds stock to an existing product.
      *
@@ -79,6 +137,27 @@ public interface RemoteStockRW_I extends RemoteStockR_I, Remote {
      */
     List<Product> getProducts() throws RemoteException, StockException;
 
+    /**
+     * Retrieves one page of the products, in product number order.
+     *
+     * @param afterToken Token from the previous page, or null for the first page
+     * @param pageSize   Most products wanted
+     * @return The page and the token for the next one
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    ProductPage getProductsPage(String afterToken, int pageSize) throws RemoteException, StockException;
+
+    /**
+     * Leases a block of new product numbers that no other client will be given.
+     *
+     * @param count How many numbers are wanted
+     * @return The block, which may be smaller than asked for
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    NumberBlock leaseProductNumbers(int count) throws RemoteException, StockException;
+
     /**
      * Updates the image path for a product.
      *
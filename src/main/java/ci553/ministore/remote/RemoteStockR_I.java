@@ -1,10 +1,14 @@
 package ci553.ministore.remote;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.middle.StockException;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * Defines the RMI interface for read access to the stock object.
@@ -48,4 +52,42 @@ public interface RemoteStockR_I extends Remote {
      * @throws StockException If there is an error accessing the stock
      */
     byte[] getImage(String number) throws RemoteException, StockException;
+
+    /**
+     * Retrieves the product image only if the caller does not already hold it.
+     *
+     * @param number       The product number
+     * @param size         The size wanted
+     * @param knownVersion Version of the image the caller holds, or null if none
+     * @return The image, or null if the caller's version is current
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    ProductImage getImageIfChanged(String number, ImageSize size, String knownVersion)
+            throws RemoteException, StockException;
+
+    /**
+     * Retrieves the product details, stock level and image in one call.
+     * The image data is left out if the caller already holds that version.
+     *
+     * @param number            The product number to look up
+     * @param size              The size of image wanted
+     * @param knownImageVersion Version of the image the caller holds, or null if none
+     * @return The product view, or null if the product does not exist
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    ProductView getProductView(String number, ImageSize size, String knownImageVersion)
+            throws RemoteException, StockException;
+
+    /**
+     * Finds products by their description.
+     *
+     * @param query      Words to look for in the descriptions
+     * @param maxResults Most products wanted
+     * @return The matching products, best match first
+     * @throws RemoteException If there is an RMI error
+     * @throws StockException If there is an error accessing the stock
+     */
+    List<Product> searchProducts(String query, int maxResults) throws RemoteException, StockException;
 }
@@ -0,0 +1,72 @@
+package ci553.ministore.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility class for reading and writing lines of comma separated values.
+ * A field holding a comma or a quote is written in quotes, with any quote
+ * in it doubled, as spreadsheets do. Fields may not span lines.
+ */
+public class Csv {
+
+    /**
+     * Splits one line into its fields.
+     *
+     * @param line The line, without its line ending
+     * @return The fields, unquoted
+     * @throws IllegalArgumentException If a quoted field is not closed
+     */
+    public static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');  // A doubled quote stands for one quote
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Quoted field not closed");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Joins fields into one line, quoting the fields that need it.
+     *
+     * @param fields The fields
+     * @return The line, without a line ending
+     */
+    public static String format(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0) {
+                line.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(field);
+            }
+        }
+        return line.toString();
+    }
+}
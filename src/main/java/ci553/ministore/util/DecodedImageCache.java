@@ -0,0 +1,182 @@
+package ci553.ministore.util;
+
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.debug.DEBUG;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A cache of product pictures decoded for display, shared by the client models.
+ * Pictures are decoded at the size they are shown at, on a background thread,
+ * and the result is handed back on the JavaFX application thread.
+ * <p>
+ * Entries are keyed by the version of the picture and the display size, so a
+ * changed picture is never shown from an old entry. The cache is limited to a
+ * number of bytes of decoded pixels and the least recently used pictures are
+ * dropped first. Each picture is only softly held, so the garbage collector
+ * may also drop it when memory is short, it is then decoded again when next shown.
+ *
+ * @version 1.0
+ */
+public class DecodedImageCache {
+    private static final long MAX_BYTES =
+            Long.getLong("ministore.decodedImageCache.bytes", 16L * 1024 * 1024);
+
+    private static final DecodedImageCache theShared = new DecodedImageCache(
+            MAX_BYTES, DecodedImageCache::decode, newDecoder(), Platform::runLater);
+
+    /**
+     * Decodes a picture at a display size.
+     */
+    public interface Decoder {
+        /**
+         * @param data   The encoded picture
+         * @param width  Width of the box it is shown in
+         * @param height Height of the box it is shown in
+         * @return The decoded picture, or null if it can not be decoded
+         */
+        Image decode(byte[] data, double width, double height);
+    }
+
+    private final LruCache<String, SoftReference<Image>> theImages;  // Version and size -> picture
+    private final Decoder theDecoder;     // Turns bytes into a picture
+    private final Executor theWorker;     // Where pictures are decoded
+    private final Executor theDelivery;   // Where decoded pictures are handed back
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes Maximum bytes of decoded pixels held
+     * @param decoder  Turns bytes into a picture
+     * @param worker   Runs the decoding
+     * @param delivery Runs the callbacks with the decoded pictures
+     */
+    public DecodedImageCache(long maxBytes, Decoder decoder, Executor worker, Executor delivery) {
+        theImages = new LruCache<>(maxBytes, 0, DecodedImageCache::weigh);
+        theDecoder = decoder;
+        theWorker = worker;
+        theDelivery = delivery;
+    }
+
+    /**
+     * Returns the cache shared by every client model in this JVM.
+     *
+     * @return The shared cache
+     */
+    public static DecodedImageCache getShared() {
+        return theShared;
+    }
+
+    /**
+     * Gets a picture decoded at a display size.
+     * If the picture is cached the callback runs straight away on the calling
+     * thread, otherwise the picture is decoded in the background and the
+     * callback runs later on the delivery thread.
+     *
+     * @param data     The encoded picture
+     * @param version  Version of the picture, or null to work it out from the data
+     * @param width    Width of the box it is shown in
+     * @param height   Height of the box it is shown in
+     * @param onLoaded Given the picture, or null if it could not be decoded
+     */
+    public void load(byte[] data, String version, double width, double height, Consumer<Image> onLoaded) {
+        String key = String.format("%s@%.0fx%.0f",
+                version != null ? version : ProductImage.versionOf(data), width, height);
+        Image image = lookup(key);
+        if (image != null) {
+            onLoaded.accept(image);
+            return;
+        }
+        theWorker.execute(() -> {
+            Image decoded = null;
+            try {
+                decoded = theDecoder.decode(data, width, height);
+                if (decoded != null && !decoded.isError()) {
+                    theImages.put(key, new SoftReference<>(decoded));
+                } else {
+                    decoded = null;
+                }
+            } catch (RuntimeException e) {
+                DEBUG.trace("DecodedImageCache: decode failed %s", e.getMessage());
+            }
+            Image result = decoded;
+            try {
+                theDelivery.execute(() -> onLoaded.accept(result));
+            } catch (RuntimeException e) {
+                // No JavaFX application thread to hand the picture to
+                DEBUG.trace("DecodedImageCache: could not deliver %s", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear() {
+        theImages.clear();
+    }
+
+    /**
+     * @return The underlying cache, for its statistics
+     */
+    public LruCache<String, SoftReference<Image>> getCache() {
+        return theImages;
+    }
+
+    /**
+     * Gets a cached picture, dropping the entry if it has been collected.
+     *
+     * @param key Version and display size
+     * @return The picture, or null if not held
+     */
+    private Image lookup(String key) {
+        SoftReference<Image> ref = theImages.get(key);
+        if (ref == null) {
+            return null;
+        }
+        Image image = ref.get();
+        if (image == null) {
+            theImages.remove(key);
+        }
+        return image;
+    }
+
+    /**
+     * Decodes a picture scaled to fit a box, keeping its aspect ratio.
+     *
+     * @param data   The encoded picture
+     * @param width  Width of the box
+     * @param height Height of the box
+     * @return The decoded picture
+     */
+    private static Image decode(byte[] data, double width, double height) {
+        return new Image(new ByteArrayInputStream(data), width, height, true, true);
+    }
+
+    /**
+     * @param ref A cached picture
+     * @return Bytes of pixels held by the picture, 4 per pixel
+     */
+    private static long weigh(SoftReference<Image> ref) {
+        Image image = ref.get();
+        return image == null ? 0 : (long) (image.getWidth() * image.getHeight() * 4);
+    }
+
+    /**
+     * @return A small pool of daemon threads for decoding
+     */
+    private static ExecutorService newDecoder() {
+        return Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "ImageDecoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
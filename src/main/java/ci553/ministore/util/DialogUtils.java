@@ -4,12 +4,14 @@ import javafx.geometry.Insets;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.GridPane;
 import javafx.util.Pair;
+import ci553.ministore.catalogue.Priority;
 import ci553.ministore.catalogue.Product;
 import ci553.ministore.clients.cashierjavafx.CashierModel;
 
@@ -105,6 +107,20 @@ public final class DialogUtils {
         return Optional.empty();
     }
 
+    /**
+     * Shows a dialog to choose how quickly an order is wanted.
+     *
+     * @param current The priority shown to start with
+     * @return An Optional containing the chosen priority, or empty if cancelled
+     */
+    public static Optional<Priority> showPriorityDialog(Priority current) {
+        ChoiceDialog<Priority> dialog = new ChoiceDialog<>(current, Priority.values());
+        dialog.setTitle("Priority");
+        dialog.setHeaderText("Choose how quickly the order is wanted:");
+        dialog.setContentText("Priority:");
+        return dialog.showAndWait();
+    }
+
     /**
      * Shows a dialog to remove an item from the order.
      *
@@ -0,0 +1,77 @@
+package ci553.ministore.util;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Utility class for making scaled down copies of product pictures.
+ * Scaling keeps the aspect ratio and the result is always a PNG.
+ */
+public class ImageScaler {
+
+    /**
+     * Scales an image so that its longest side is no more than a given size.
+     * An image that already fits is returned unchanged.
+     *
+     * @param data          The encoded image, PNG or any format ImageIO can read
+     * @param maxDimension  Longest side of the result in pixels
+     * @return The encoded PNG of the scaled image, or data if it already fits
+     * @throws IOException If the image can not be decoded or encoded
+     */
+    public static byte[] scale(byte[] data, int maxDimension) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(data));
+        if (source == null) {
+            throw new IOException("Not a readable image");
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int longest = Math.max(width, height);
+        if (longest <= maxDimension) {
+            return data;  // Never enlarge
+        }
+
+        int scaledWidth = Math.max(1, Math.round((float) width * maxDimension / longest));
+        int scaledHeight = Math.max(1, Math.round((float) height * maxDimension / longest));
+        // Halve repeatedly before the last step, a single large step drops
+        // most of the source pixels and leaves the result jagged
+        BufferedImage scaled = source;
+        while (width / 2 >= scaledWidth && height / 2 >= scaledHeight) {
+            width /= 2;
+            height /= 2;
+            scaled = resize(scaled, width, height);
+        }
+        if (width != scaledWidth || height != scaledHeight) {
+            scaled = resize(scaled, scaledWidth, scaledHeight);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "png", bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Draws an image at a new size.
+     *
+     * @param source The image
+     * @param width  New width in pixels
+     * @param height New height in pixels
+     * @return The resized image
+     */
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+}
@@ -0,0 +1,187 @@
+package ci553.ministore.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, thread-safe cache that evicts the least recently used entry
+ * when full and treats entries older than a time to live as missing.
+ * The limit is on the total weight of the entries, by default every entry
+ * weighs 1 so the limit is a number of entries, but a weigher can be given
+ * to limit the cache by, for example, the number of bytes it holds.
+ * Keeps hit, miss and eviction counts so that its effectiveness can be checked.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;      // Size limit
+    private final long ttlMillis;      // Age at which an entry is stale, 0 for never
+    private final ToLongFunction<V> weigher;  // Weight of one value
+    private final Map<K, Entry<V>> entries;
+    private long weight = 0;           // Total weight of the entries held
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * A cached value and the time it was stored.
+     */
+    private static class Entry<V> {
+        final V value;
+        final long storedAt;
+        final long weight;
+
+        Entry(V value, long storedAt, long weight) {
+            this.value = value;
+            this.storedAt = storedAt;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries Maximum number of entries held
+     * @param ttlMillis  Time an entry stays valid, 0 to keep entries until evicted
+     */
+    public LruCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, value -> 1);
+    }
+
+    /**
+     * Creates an empty cache limited by the total weight of its values.
+     *
+     * @param maxWeight Maximum total weight held
+     * @param ttlMillis Time an entry stays valid, 0 to keep entries until evicted
+     * @param weigher   Gives the weight of a value
+     */
+    public LruCache(long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+        // Access order, so the first entry is the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Looks up a value, counting a hit or a miss.
+     *
+     * @param key The key
+     * @return The cached value, or null if absent or stale
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && ttlMillis > 0
+                && System.currentTimeMillis() - entry.storedAt > ttlMillis) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a value, evicting least recently used entries until the cache
+     * is back within its limit. A value heavier than the whole limit is not stored.
+     *
+     * @param key   The key
+     * @param value The value, must not be null
+     */
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        remove(key);
+        if (w > maxWeight) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis(), w));
+        weight += w;
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes one entry.
+     *
+     * @param key The key
+     * @return The value removed, or null if there was none
+     */
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        weight -= entry.weight;
+        return entry.value;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return Number of entries held, including any that have gone stale
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total weight of the entries held
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return Number of lookups that found a value
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return Number of lookups that found nothing
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return Number of entries evicted to keep within the size limit
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of lookups that were hits, 0 if there have been none
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return A one line summary of the cache statistics
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("LruCache[size=%d weight=%d/%d hits=%d misses=%d ratio=%.2f evictions=%d]",
+                entries.size(), weight, maxWeight, hits, misses, getHitRatio(), evictions);
+    }
+}
@@ -0,0 +1,410 @@
+package ci553.ministore.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory full text index of short texts, such as product descriptions.
+ * Each text is split into lower case words, and every word is added to
+ * <ul>
+ *   <li>a prefix trie, so a partly typed word finds every word it starts, and</li>
+ *   <li>an inverted index from trigrams to the distinct words holding them, so a
+ *       misspelt word still finds words sharing most of its three letter groups.</li>
+ * </ul>
+ * A search scores every text against each word of the query and returns the
+ * best scoring ids. Searches may run in parallel, changes wait for them.
+ * <p>
+ * Texts and words are numbered internally and the lists of numbers are plain
+ * int arrays, so a search touching tens of thousands of texts still takes
+ * well under a millisecond. A removed text is only marked as gone, the lists
+ * are rebuilt once more texts are gone than are held.
+ *
+ * @version 1.0
+ */
+public class TextSearchIndex {
+    private static final float EXACT = 1.0f;       // Score of a query word matching a whole word
+    private static final float PREFIX = 0.8f;      // Score of a query word starting a word
+    private static final float FUZZY = 0.6f;       // Most a misspelt word can score
+    private static final float MIN_SIMILARITY = 0.4f;  // Share of trigrams a misspelt word must have
+    private static final int MIN_FUZZY_LENGTH = 3;  // Shorter query words are only matched as prefixes
+    private static final int MIN_COMPACT = 1024;    // Fewest removed texts worth rebuilding for
+
+    /**
+     * A growing list of text or word numbers.
+     * A text's words are added one after another, so a number already at the
+     * end of the list is not added again.
+     */
+    private static class Postings {
+        int[] docs = new int[2];
+        int size = 0;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    /**
+     * A node of the prefix trie, holding the texts with a word starting with
+     * the node's prefix and the texts with a word that is exactly the prefix.
+     */
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>(4);
+        final Postings withPrefix = new Postings();
+        final Postings withWord = new Postings();
+        int grams = 0;  // Number of trigrams of the word ending here, 0 if none does
+    }
+
+    private Node theRoot = new Node();
+    private Map<String, Postings> theTrigrams = new HashMap<>();     // Trigram -> words
+    private List<Node> theVocabulary = new ArrayList<>();            // Word number -> its trie node
+    private final Map<String, Integer> theDocs = new HashMap<>();    // Id -> text number
+    private final List<String> theIds = new ArrayList<>();           // Text number -> id, null once removed
+    private final List<List<String>> theWords = new ArrayList<>();   // Text number -> its words
+    private int theRemoved = 0;                                      // Text numbers no longer in use
+    private final ReadWriteLock theLock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a text to the index, replacing any text already held for the id.
+     *
+     * @param id   Identifies the text, for example a product number
+     * @param text The text to index
+     */
+    public void put(String id, String text) {
+        List<String> words = words(text);
+        theLock.writeLock().lock();
+        try {
+            removeLocked(id);
+            add(id, words);
+            if (theRemoved > MIN_COMPACT && theRemoved > theDocs.size()) {
+                compact();
+            }
+        } finally {
+            theLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a text from the index.
+     *
+     * @param id Identifies the text
+     */
+    public void remove(String id) {
+        theLock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            theLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of texts in the index.
+     *
+     * @return the number of texts
+     */
+    public int size() {
+        theLock.readLock().lock();
+        try {
+            return theDocs.size();
+        } finally {
+            theLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the texts that best match a query.
+     * Each word of the query scores a text by its best matching word: a whole
+     * word scores most, then a word it starts. A query word that starts too
+     * few words to fill the results, as when it is misspelt, also scores texts
+     * with a word sharing most of its trigrams. A text's score is the sum over
+     * the query words.
+     *
+     * @param query      Words to look for, the last may be partly typed
+     * @param maxResults Most ids wanted
+     * @return Ids of the matching texts, best first, ties in id order
+     */
+    public List<String> search(String query, int maxResults) {
+        List<String> words = words(query);
+        if (words.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        theLock.readLock().lock();
+        try {
+            int docs = theIds.size();
+            float[] total = new float[docs];      // Score of each text so far
+            float[] best = new float[docs];       // Score of each text for the current word
+            IntList matched = new IntList();      // Texts with a score
+            IntList wordMatched = new IntList();  // Texts with a score for the current word
+            for (String word : new LinkedHashSet<>(words)) {
+                scorePrefix(word, best, wordMatched);
+                if (wordMatched.size < maxResults && word.length() >= MIN_FUZZY_LENGTH) {
+                    scoreFuzzy(word, best, wordMatched);
+                }
+                for (int i = 0; i < wordMatched.size; i++) {
+                    int doc = wordMatched.items[i];
+                    if (total[doc] == 0) {
+                        matched.add(doc);
+                    }
+                    total[doc] += best[doc];
+                    best[doc] = 0;
+                }
+                wordMatched.size = 0;
+            }
+            return best(total, matched, maxResults);
+        } finally {
+            theLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores the texts with a word that is, or starts with, a query word.
+     *
+     * @param word    The query word
+     * @param best    Score of each text for this word
+     * @param matched Texts given a score for this word
+     */
+    private void scorePrefix(String word, float[] best, IntList matched) {
+        Node node = theRoot;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.children.get(word.charAt(i));
+        }
+        if (node == null) {
+            return;
+        }
+        Postings exact = node.withWord;
+        for (int i = 0; i < exact.size; i++) {
+            score(exact.docs[i], EXACT, best, matched);
+        }
+        Postings prefix = node.withPrefix;
+        for (int i = 0; i < prefix.size; i++) {
+            score(prefix.docs[i], PREFIX, best, matched);
+        }
+    }
+
+    /**
+     * Scores the texts with a word sharing most of a query word's trigrams.
+     * The trigrams lead to the distinct words of the index, far fewer than
+     * the texts, and each similar word leads to the texts holding it.
+     *
+     * @param word    The query word
+     * @param best    Score of each text for this word
+     * @param matched Texts given a score for this word
+     */
+    private void scoreFuzzy(String word, float[] best, IntList matched) {
+        LinkedHashSet<String> grams = trigrams(word);
+        short[] shared = new short[theVocabulary.size()];
+        IntList counted = new IntList();
+        for (String gram : grams) {
+            Postings words = theTrigrams.get(gram);
+            if (words != null) {
+                for (int i = 0; i < words.size; i++) {
+                    if (shared[words.docs[i]]++ == 0) {
+                        counted.add(words.docs[i]);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < counted.size; i++) {
+            Node node = theVocabulary.get(counted.items[i]);
+            // Shared trigrams as a share of the longer word's, so neither may have many extra
+            float similarity = (float) shared[counted.items[i]] / Math.max(grams.size(), node.grams);
+            if (similarity >= MIN_SIMILARITY) {
+                for (int j = 0; j < node.withWord.size; j++) {
+                    score(node.withWord.docs[j], FUZZY * similarity, best, matched);
+                }
+            }
+        }
+    }
+
+    /**
+     * Raises a text's score for the current word, if it is still held.
+     *
+     * @param doc     Text number
+     * @param score   Score for this match
+     * @param best    Score of each text for this word
+     * @param matched Texts given a score for this word
+     */
+    private void score(int doc, float score, float[] best, IntList matched) {
+        if (theIds.get(doc) == null) {
+            return;   // Removed
+        }
+        if (best[doc] == 0) {
+            matched.add(doc);
+        }
+        if (score > best[doc]) {
+            best[doc] = score;
+        }
+    }
+
+    /**
+     * Picks the best scoring texts.
+     *
+     * @param total      Score of each text
+     * @param matched    Texts with a score
+     * @param maxResults Most ids wanted
+     * @return The best ids, best first, ties in id order
+     */
+    private List<String> best(float[] total, IntList matched, int maxResults) {
+        // Best texts so far in order, a new text is only inserted if it beats the worst
+        int[] top = new int[Math.min(maxResults, matched.size)];
+        int held = 0;
+        for (int i = 0; i < matched.size; i++) {
+            int doc = matched.items[i];
+            if (held == top.length && !better(doc, top[held - 1], total)) {
+                continue;
+            }
+            int at = held == top.length ? held - 1 : held++;
+            while (at > 0 && better(doc, top[at - 1], total)) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = doc;
+        }
+        List<String> result = new ArrayList<>(held);
+        for (int i = 0; i < held; i++) {
+            result.add(theIds.get(top[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @param a     Text number
+     * @param b     Text number
+     * @param total Score of each text
+     * @return true if a ranks before b
+     */
+    private boolean better(int a, int b, float[] total) {
+        if (total[a] != total[b]) {
+            return total[a] > total[b];
+        }
+        return theIds.get(a).compareTo(theIds.get(b)) < 0;
+    }
+
+    /**
+     * Adds a text under a new text number, the caller holds the write lock.
+     *
+     * @param id    Identifies the text
+     * @param words Its words
+     */
+    private void add(String id, List<String> words) {
+        int doc = theIds.size();
+        theIds.add(id);
+        theWords.add(words);
+        theDocs.put(id, doc);
+        for (String word : words) {
+            Node node = theRoot;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), c -> new Node());
+                node.withPrefix.add(doc);
+            }
+            node.withWord.add(doc);
+            if (node.grams == 0) {
+                // A word not seen before
+                LinkedHashSet<String> grams = trigrams(word);
+                node.grams = grams.size();
+                int number = theVocabulary.size();
+                theVocabulary.add(node);
+                for (String gram : grams) {
+                    theTrigrams.computeIfAbsent(gram, g -> new Postings()).add(number);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a text as removed, the caller holds the write lock.
+     *
+     * @param id Identifies the text
+     */
+    private void removeLocked(String id) {
+        Integer doc = theDocs.remove(id);
+        if (doc != null) {
+            theIds.set(doc, null);
+            theWords.set(doc, null);
+            theRemoved++;
+        }
+    }
+
+    /**
+     * Rebuilds the trie and trigram lists from the texts still held,
+     * the caller holds the write lock.
+     */
+    private void compact() {
+        List<String> ids = new ArrayList<>(theIds);
+        List<List<String>> words = new ArrayList<>(theWords);
+        theRoot = new Node();
+        theTrigrams = new HashMap<>();
+        theVocabulary = new ArrayList<>();
+        theDocs.clear();
+        theIds.clear();
+        theWords.clear();
+        theRemoved = 0;
+        for (int doc = 0; doc < ids.size(); doc++) {
+            if (ids.get(doc) != null) {
+                add(ids.get(doc), words.get(doc));
+            }
+        }
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     *
+     * @param text The text
+     * @return Its words, in order
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the trigrams of a word, padded so that its start and end count.
+     *
+     * @param word The word
+     * @return Its distinct trigrams
+     */
+    private static LinkedHashSet<String> trigrams(String word) {
+        String padded = "  " + word + " ";
+        LinkedHashSet<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * A growing list of ints, used for the texts touched by a search.
+     */
+    private static class IntList {
+        int[] items = new int[16];
+        int size = 0;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+}
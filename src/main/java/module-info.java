@@ -17,6 +17,9 @@ module ci553.ministore {
     // Requires Java RMI for remote method invocation
     requires java.rmi;
 
+    // Requires Java desktop for ImageIO, used to scale product pictures
+    requires java.desktop;
+
     // Requires Apache Derby modules in correct order for database operations
     requires org.apache.derby.commons;
     requires org.apache.derby.engine;
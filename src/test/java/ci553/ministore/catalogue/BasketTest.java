@@ -31,6 +31,17 @@ public class BasketTest {
         assertTrue(basket2.getOrderNum() > basket1.getOrderNum());
     }
 
+    @Test
+    @DisplayName("Should take its order number from the given service")
+    void testOrderNumberFromService() {
+        // Act
+        BetterBasket numbered = new BetterBasket(() -> 1234);
+
+        // Assert
+        assertEquals(1234, numbered.getOrderNum());
+        assertTrue(numbered.getDetails().startsWith("Order number: 1234"));
+    }
+
     @Test
     @DisplayName("Should add product to basket")
     void testAddProduct() {
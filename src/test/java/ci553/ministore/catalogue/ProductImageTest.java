@@ -0,0 +1,29 @@
+package ci553.ministore.catalogue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Product Image Tests")
+public class ProductImageTest {
+
+    @Test
+    @DisplayName("Should give the same version to the same content")
+    void testSameContent() {
+        ProductImage first = new ProductImage(new byte[] {1, 2, 3});
+        ProductImage second = new ProductImage(new byte[] {1, 2, 3});
+
+        assertEquals(first.getVersion(), second.getVersion());
+        assertEquals(64, first.getVersion().length(), "Version should be a SHA-256 hash in hex");
+    }
+
+    @Test
+    @DisplayName("Should give a new version to changed content")
+    void testChangedContent() {
+        ProductImage first = new ProductImage(new byte[] {1, 2, 3});
+        ProductImage changed = new ProductImage(new byte[] {1, 2, 4});
+
+        assertNotEquals(first.getVersion(), changed.getVersion());
+    }
+}
@@ -0,0 +1,51 @@
+package ci553.ministore.clients;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.orders.Order;
+import ci553.ministore.orders.OrderFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderWorkloadTest {
+
+    private final List<Product> catalogue = DataGenerator.generateProducts(50, 7);
+
+    @Test
+    void testSameSeedGivesSameOrders() {
+        OrderWorkload a = new OrderWorkload(catalogue, 42);
+        OrderWorkload b = new OrderWorkload(catalogue, 42);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(a.nextBasket().getDetails(), b.nextBasket().getDetails());
+        }
+        assertEquals(DataGenerator.generateProducts(50, 7).get(10).getDescription(),
+                catalogue.get(10).getDescription());
+    }
+
+    @Test
+    void testBasketsHoldDifferentProducts() {
+        OrderWorkload workload = new OrderWorkload(catalogue, 1);
+        for (int i = 0; i < 100; i++) {
+            Basket basket = workload.nextBasket();
+            Set<String> seen = new HashSet<>();
+            assertFalse(basket.isEmpty());
+            for (Product pr : basket) {
+                assertTrue(seen.add(pr.getProductNum()));
+                assertTrue(pr.getQuantity() >= 1 && pr.getQuantity() <= 3);
+            }
+        }
+    }
+
+    @Test
+    void testRunCollectsEveryOrder() throws Exception {
+        Order order = new Order(OrderFixtures.ids(50));
+        OrderWorkload.Result result = new OrderWorkload(catalogue, 3).run(order, 200, 2);
+        assertEquals(200, result.getOrders());
+        order.getOrderState().values().forEach(list -> assertTrue(list.isEmpty()));
+    }
+}
@@ -1,10 +1,17 @@
 package ci553.ministore.clients.cashierjavafx;
 
 import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.Priority;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.middle.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -38,8 +45,8 @@ public class CashierModelTest {
     void testDoCheck_WhenProductExists() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 5);
-        when(stockReadWriterMock.exists("001")).thenReturn(true);
-        when(stockReadWriterMock.getDetails("001")).thenReturn(product);
+        when(stockReadWriterMock.getProductView("001", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
 
         // Act
         cashierModel.doCheck("001");
@@ -52,7 +59,7 @@ public class CashierModelTest {
     @Test
     void testDoCheck_WhenProductDoesNotExist() throws StockException {
         // Arrange
-        when(stockReadWriterMock.exists("001")).thenReturn(false);
+        when(stockReadWriterMock.getProductView("001", ImageSize.THUMBNAIL)).thenReturn(Optional.empty());
 
         // Act
         cashierModel.doCheck("001");
@@ -65,8 +72,8 @@ public class CashierModelTest {
     void testDoCheck_WhenProductOutOfStock() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 0);
-        when(stockReadWriterMock.exists("001")).thenReturn(true);
-        when(stockReadWriterMock.getDetails("001")).thenReturn(product);
+        when(stockReadWriterMock.getProductView("001", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
 
         // Act
         cashierModel.doCheck("001");
@@ -80,32 +87,181 @@ public class CashierModelTest {
     void testAddToOrder_WhenProductExistsAndInStock() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 5);
-        when(stockReadWriterMock.exists("001")).thenReturn(true);
-        when(stockReadWriterMock.getDetails("001")).thenReturn(product);
-        when(stockReadWriterMock.buyStock("001", 1)).thenReturn(true);
+        when(stockReadWriterMock.getProductView("001", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
+        when(stockReadWriterMock.reserveStock(anyString(), eq("001"), eq(1))).thenReturn(true);
 
         // Act
         cashierModel.addToOrder("001");
 
         // Assert
         assertFalse(cashierModel.getBasket().isEmpty());
-        verify(stockReadWriterMock).buyStock("001", 1);
+        verify(stockReadWriterMock).reserveStock(anyString(), eq("001"), eq(1));
+        verify(stockReadWriterMock, never()).buyStock(anyString(), anyInt());
+        verify(stockReadWriterMock, never()).exists(anyString());
+    }
+
+    @Test
+    void testAddToOrder_WhenStockCannotBeHeld() throws StockException {
+        // Arrange
+        when(stockReadWriterMock.getProductView("001", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(new Product("001", "Test Product", 10.0, 1), "pic001.png", null)));
+        when(stockReadWriterMock.reserveStock(anyString(), eq("001"), eq(1))).thenReturn(false);
+
+        // Act
+        cashierModel.addToOrder("001");
+
+        // Assert
+        assertTrue(cashierModel.getBasket().isEmpty());
+        assertEquals("Product: Test Product does not have enough stock",
+            cashierModel.replyProperty().get());
     }
 
     @Test
-    void testPurchase_WhenBasketHasItems() throws OrderException {
+    void testPurchase_WhenBasketHasItems() throws OrderException, StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 1);
         cashierModel.getBasket().add(product);
+        when(stockReadWriterMock.commitReservation(anyString(), any(Basket.class))).thenReturn(true);
 
         // Act
         cashierModel.purchase();
 
         // Assert
+        verify(stockReadWriterMock).commitReservation(anyString(), any(Basket.class));
+        verify(stockReadWriterMock, never()).checkout(any(Basket.class));
         verify(orderProcessingMock).newOrder(any(Basket.class));
         assertTrue(cashierModel.getBasket().isEmpty());
     }
 
+    @Test
+    void testPurchase_RetriesOrderWithoutTakingStockAgain() throws OrderException, StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 1));
+        when(stockReadWriterMock.commitReservation(anyString(), any(Basket.class))).thenReturn(false);
+        when(stockReadWriterMock.checkout(any(Basket.class))).thenReturn(new boolean[] {true});
+        doThrow(new OrderException("Net: connection refused"))
+            .doNothing()
+            .when(orderProcessingMock).newOrder(any(Basket.class));
+
+        // Act
+        cashierModel.purchase();
+        boolean keptAfterFailure = !cashierModel.getBasket().isEmpty();
+        cashierModel.removeLastItem();
+        cashierModel.purchase();
+
+        // Assert
+        assertTrue(keptAfterFailure, "Basket kept while the order is not placed");
+        verify(stockReadWriterMock).commitReservation(anyString(), any(Basket.class));
+        verify(stockReadWriterMock).checkout(any(Basket.class));
+        verify(stockReadWriterMock, never()).releaseStock(anyString(), anyString(), anyInt());
+        verify(orderProcessingMock, times(2)).newOrder(any(Basket.class));
+        assertTrue(cashierModel.getBasket().isEmpty());
+        assertTrue(cashierModel.replyProperty().get().startsWith("Purchase completed"));
+    }
+
+    @Test
+    void testClearBasket_GivesBackStockOfUnplacedOrder() throws OrderException, StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 2));
+        when(stockReadWriterMock.commitReservation(anyString(), any(Basket.class))).thenReturn(true);
+        doThrow(new OrderException("Journal: disk full")).when(orderProcessingMock).newOrder(any(Basket.class));
+        cashierModel.purchase();
+
+        // Act
+        cashierModel.clearBasket();
+
+        // Assert
+        verify(stockReadWriterMock).addStock("001", 2);
+        verify(stockReadWriterMock, never()).cancelReservation(anyString());
+        assertTrue(cashierModel.getBasket().isEmpty());
+    }
+
+    @Test
+    void testPurchase_WithChosenPriority() throws OrderException, StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 1));
+        when(stockReadWriterMock.commitReservation(anyString(), any(Basket.class))).thenReturn(true);
+
+        // Act
+        cashierModel.setPriority(Priority.EXPRESS);
+        cashierModel.purchase();
+
+        // Assert
+        verify(orderProcessingMock).newOrder(argThat(b -> b.getPriority() == Priority.EXPRESS));
+        assertEquals(Priority.STANDARD, cashierModel.getPriority(), "Next order starts as standard");
+    }
+
+    @Test
+    void testPurchase_KeepsNumberShownWhileFilling() throws OrderException, StockException {
+        // Arrange
+        when(orderProcessingMock.uniqueNumber()).thenReturn(41, 42);
+        CashierModel model = new CashierModel(middleFactoryMock);
+        model.getBasket().add(new Product("001", "Test Product", 10.0, 1));
+        when(stockReadWriterMock.commitReservation(anyString(), any(Basket.class))).thenReturn(true);
+
+        // Act
+        model.purchase();
+
+        // Assert
+        assertEquals("Purchase completed. Order Number: 041", model.replyProperty().get());
+        assertEquals(42, model.getBasket().getOrderNum());
+    }
+
+    @Test
+    void testPurchase_WhenLineOutOfStock() throws OrderException, StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 1));
+        cashierModel.getBasket().add(new Product("002", "Other Product", 5.0, 3));
+        when(stockReadWriterMock.checkout(any(Basket.class))).thenReturn(new boolean[] {true, false});
+
+        // Act
+        cashierModel.purchase();
+
+        // Assert
+        verify(orderProcessingMock, never()).newOrder(any(Basket.class));
+        assertEquals(2, cashierModel.getBasket().size());
+        assertTrue(cashierModel.replyProperty().get().contains("002 Other Product"));
+        assertFalse(cashierModel.replyProperty().get().contains("001"));
+    }
+
+    @Test
+    void testPurchase_FreshHoldAfterFailedCommit() throws OrderException, StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 1));
+        when(stockReadWriterMock.checkout(any(Basket.class))).thenReturn(new boolean[] {false});
+        cashierModel.purchase();
+        when(stockReadWriterMock.getProductView("002", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(new Product("002", "Other Product", 5.0, 3), "pic002.png", null)));
+        when(stockReadWriterMock.reserveStock(anyString(), eq("002"), eq(1))).thenReturn(true);
+
+        // Act
+        cashierModel.addToOrder("002");
+
+        // Assert
+        ArgumentCaptor<String> holds = ArgumentCaptor.forClass(String.class);
+        verify(stockReadWriterMock).commitReservation(holds.capture(), any(Basket.class));
+        verify(stockReadWriterMock).reserveStock(argThat(id -> !id.equals(holds.getValue())), eq("002"), eq(1));
+    }
+
+    @Test
+    void testAddToOrder_RenewsEndedHoldForWholeBasket() throws StockException {
+        // Arrange
+        cashierModel.getBasket().add(new Product("001", "Test Product", 10.0, 2));
+        when(stockReadWriterMock.getProductView("002", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(new Product("002", "Other Product", 5.0, 3), "pic002.png", null)));
+        when(stockReadWriterMock.reserveStock(anyString(), eq("002"), eq(1)))
+            .thenThrow(new StockException("Hold ended"))
+            .thenReturn(true);
+
+        // Act
+        cashierModel.addToOrder("002");
+
+        // Assert
+        verify(stockReadWriterMock).reserveStock(anyString(), eq("001"), eq(2));
+        assertEquals(2, cashierModel.getBasket().size());
+    }
+
     @Test
     void testClearBasket() throws StockException {
         // Arrange
@@ -113,11 +269,12 @@ public class CashierModelTest {
         cashierModel.getBasket().add(product);
 
         // Act
-        cashierModel.clearBasket(true);
+        cashierModel.clearBasket();
 
         // Assert
         assertTrue(cashierModel.getBasket().isEmpty());
-        verify(stockReadWriterMock).addStock("001", 1);
+        verify(stockReadWriterMock).cancelReservation(anyString());
+        verify(stockReadWriterMock, never()).addStock(anyString(), anyInt());
     }
 
     @Test
@@ -131,6 +288,7 @@ public class CashierModelTest {
 
         // Assert
         assertEquals(1, cashierModel.getProductQuantityInBasket("001"));
-        verify(stockReadWriterMock).addStock("001", 1);
+        verify(stockReadWriterMock).releaseStock(anyString(), eq("001"), eq(1));
+        verify(stockReadWriterMock, never()).addStock(anyString(), anyInt());
     }
 }
@@ -1,12 +1,17 @@
 package ci553.ministore.clients.customerjavafx;
 
+import ci553.ministore.catalogue.ImageSize;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.middle.MiddleFactory;
 import ci553.ministore.middle.StockReader;
 import ci553.ministore.middle.StockException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -35,9 +40,8 @@ class CustomerModelTest {
     void testDoCheck_WhenProductExistsAndInStock() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 10);
-        when(stockReaderMock.exists("001")).thenReturn(true);
-        when(stockReaderMock.getDetails("001")).thenReturn(product);
-        when(stockReaderMock.getImage("001")).thenReturn(new byte[0]);
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
 
         // Act
         customerModel.doCheck("001");
@@ -58,8 +62,8 @@ class CustomerModelTest {
     void testDoCheck_WhenProductHasLowStock() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 3);
-        when(stockReaderMock.exists("001")).thenReturn(true);
-        when(stockReaderMock.getDetails("001")).thenReturn(product);
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
 
         // Act
         customerModel.doCheck("001");
@@ -73,8 +77,8 @@ class CustomerModelTest {
     void testDoCheck_WhenProductOutOfStock() throws StockException {
         // Arrange
         Product product = new Product("001", "Test Product", 10.0, 0);
-        when(stockReaderMock.exists("001")).thenReturn(true);
-        when(stockReaderMock.getDetails("001")).thenReturn(product);
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW))
+            .thenReturn(Optional.of(new ProductView(product, "pic001.png", new byte[0])));
 
         // Act
         customerModel.doCheck("001");
@@ -88,7 +92,7 @@ class CustomerModelTest {
     @DisplayName("Should display error message when product does not exist")
     void testDoCheck_WhenProductDoesNotExist() throws StockException {
         // Arrange
-        when(stockReaderMock.exists("001")).thenReturn(false);
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW)).thenReturn(Optional.empty());
 
         // Act
         customerModel.doCheck("001");
@@ -102,7 +106,7 @@ class CustomerModelTest {
     @DisplayName("Should handle StockException gracefully")
     void testDoCheck_WhenStockExceptionOccurs() throws StockException {
         // Arrange
-        when(stockReaderMock.exists("001"))
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW))
             .thenThrow(new StockException("Database error"));
 
         // Act
@@ -117,7 +121,7 @@ class CustomerModelTest {
     @DisplayName("Should clear product image when product does not exist")
     void testDoCheck_ImageClearedWhenProductNotFound() throws StockException {
         // Arrange
-        when(stockReaderMock.exists("001")).thenReturn(false);
+        when(stockReaderMock.getProductView("001", ImageSize.PREVIEW)).thenReturn(Optional.empty());
 
         // Act
         customerModel.doCheck("001");
@@ -0,0 +1,65 @@
+package ci553.ministore.clients.staffjavafx.packing;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.middle.MiddleFactory;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderProcessing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Packing Model Tests")
+class PackingModelTest {
+
+    private MiddleFactory middleFactoryMock;
+    private OrderProcessing orderMock;
+    private PackingModel packingModel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        middleFactoryMock = mock(MiddleFactory.class);
+        orderMock = mock(OrderProcessing.class);
+        when(middleFactoryMock.makeOrderProcessing()).thenReturn(orderMock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (packingModel != null) {
+            packingModel.cleanup();
+        }
+    }
+
+    @Test
+    @DisplayName("Should free the packer and try again after the order system fails")
+    void testRetryAfterFailure() throws Exception {
+        // Arrange
+        Basket basket = new Basket();
+        basket.setOrderNum(7);
+        when(orderMock.getOrderToPack(anyString(), anyLong()))
+            .thenThrow(new OrderException("Net: connection refused"))
+            .thenReturn(basket)
+            .thenAnswer(inv -> {
+                Thread.sleep(60_000); // Waits for the next order until cleaned up
+                return null;
+            });
+
+        // Act
+        packingModel = new PackingModel(middleFactoryMock);
+
+        // Assert
+        long giveUp = System.currentTimeMillis() + 10_000;
+        while (!packingModel.messageProperty().get().contains("#007")
+                && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(20);
+        }
+        assertEquals("Current Order: #007", packingModel.messageProperty().get());
+
+        packingModel.doPack();
+        verify(orderMock).informOrderPacked(7);
+        verify(orderMock, timeout(5_000).times(3)).getOrderToPack(anyString(), anyLong());
+    }
+}
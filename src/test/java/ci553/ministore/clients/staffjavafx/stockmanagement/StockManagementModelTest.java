@@ -1,12 +1,15 @@
 package ci553.ministore.clients.staffjavafx.stockmanagement;
 
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.NumberBlock;
 import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductView;
 import ci553.ministore.middle.*;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
-import java.util.Arrays;
+import java.util.Optional;
 
 @DisplayName("Stock Management Model Tests")
 class StockManagementModelTest {
@@ -34,9 +37,8 @@ class StockManagementModelTest {
     @DisplayName("Should check product details successfully")
     void testDoCheck_ProductExists() throws StockException {
         // Arrange
-        when(stockReaderMock.exists("001")).thenReturn(true);
-        when(stockReaderMock.getDetails("001")).thenReturn(testProduct);
-        when(stockReaderMock.getImage("001")).thenReturn(new byte[0]);
+        when(stockReaderMock.getProductView("001", ImageSize.THUMBNAIL))
+            .thenReturn(Optional.of(new ProductView(testProduct, "pic001.png", new byte[0])));
 
         // Act
         model.doCheck("001");
@@ -89,8 +91,7 @@ class StockManagementModelTest {
     @DisplayName("Should create new product successfully")
     void testDoNewProduct_Success() throws StockException {
         // Arrange
-        when(stockReaderMock.getProducts())
-            .thenReturn(Arrays.asList(new Product("001", "Existing Product", 5.0, 1)));
+        when(stockReaderMock.leaseProductNumbers(anyInt())).thenReturn(new NumberBlock(2, 10));
 
         // Act
         model.doNewProduct("New Product", 15.0, 5);
@@ -98,6 +99,7 @@ class StockManagementModelTest {
         // Assert
         verify(stockReaderMock).modifyStock(any(Product.class));
         assertTrue(model.replyProperty().get().contains("Added new product"));
+        assertTrue(model.replyProperty().get().contains("Product Number: 0002"));
     }
 
     @Test
@@ -118,7 +120,7 @@ class StockManagementModelTest {
     @DisplayName("Should handle StockException gracefully")
     void testHandleStockException() throws StockException {
         // Arrange
-        when(stockReaderMock.exists("001"))
+        when(stockReaderMock.getProductView("001", ImageSize.THUMBNAIL))
             .thenThrow(new StockException("Database error"));
 
         // Act
@@ -0,0 +1,178 @@
+package ci553.ministore.dbAccess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Connection Pool Tests")
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+    private int opened;
+
+    @BeforeEach
+    void setUp() {
+        opened = 0;
+        // Database access that hands out mock connections
+        DBAccess dbAccess = new DBAccess() {
+            @Override
+            public Connection openConnection() throws SQLException {
+                opened++;
+                Connection con = mock(Connection.class);
+                when(con.getAutoCommit()).thenReturn(true);
+                return con;
+            }
+
+            @Override
+            public int maxConnections() {
+                return 2;
+            }
+
+            @Override
+            public long maxWaitMillis() {
+                return 50;
+            }
+        };
+        pool = new ConnectionPool(dbAccess);
+    }
+
+    @Test
+    @DisplayName("Should reuse a returned connection")
+    void testReuse() throws SQLException {
+        // Act
+        Connection first;
+        try (PooledConnection con = pool.borrow()) {
+            first = con.getConnection();
+        }
+        Connection second;
+        try (PooledConnection con = pool.borrow()) {
+            second = con.getConnection();
+        }
+
+        // Assert
+        assertSame(first, second);
+        assertEquals(1, opened);
+        assertEquals(2, pool.getBorrowCount());
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    @DisplayName("Should time out when every connection is lent out")
+    void testBoundedSize() throws SQLException {
+        // Arrange
+        PooledConnection a = pool.borrow();
+        PooledConnection b = pool.borrow();
+
+        // Act & Assert
+        assertThrows(SQLTransientConnectionException.class, () -> pool.borrow());
+        assertEquals(1, pool.getTimeoutCount());
+        assertEquals(2, pool.getPeakActiveConnections());
+        assertEquals(1.0, pool.getUtilisation());
+
+        a.close();
+        b.close();
+        assertEquals(0.0, pool.getUtilisation());
+    }
+
+    @Test
+    @DisplayName("Should return a connection closed twice only once")
+    void testCloseTwice() throws SQLException {
+        // Arrange
+        PooledConnection con = pool.borrow();
+        con.close();
+
+        // Act
+        con.close();
+
+        // Assert
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+        PooledConnection a = pool.borrow();
+        PooledConnection b = pool.borrow();
+        assertNotSame(a, b, "Not lent to two callers");
+        assertThrows(SQLTransientConnectionException.class, () -> pool.borrow());
+        a.close();
+        b.close();
+    }
+
+    @Test
+    @DisplayName("Should close a connection returned after the pool is closed")
+    void testReleaseAfterClose() throws SQLException {
+        // Arrange
+        PooledConnection con = pool.borrow();
+        pool.close();
+
+        // Act
+        con.close();
+
+        // Assert
+        verify(con.getConnection()).close();
+        assertEquals(0, pool.getIdleConnections());
+        assertEquals(0, pool.getOpenConnections());
+        assertThrows(SQLException.class, () -> pool.borrow());
+    }
+
+    @Test
+    @DisplayName("Should roll back an unfinished transaction when a connection is returned")
+    void testResetOnRelease() throws SQLException {
+        // Arrange
+        PooledConnection con = pool.borrow();
+        Connection raw = con.getConnection();
+        when(raw.getAutoCommit()).thenReturn(false);
+
+        // Act
+        con.close();
+
+        // Assert
+        verify(raw).rollback();
+        verify(raw).setAutoCommit(true);
+    }
+
+    @Test
+    @DisplayName("Should replace a connection that has been closed")
+    void testDiscardClosed() throws SQLException {
+        // Arrange
+        PooledConnection con = pool.borrow();
+        when(con.getConnection().isClosed()).thenReturn(true);
+        con.close();
+
+        // Act
+        try (PooledConnection fresh = pool.borrow()) {
+            assertNotNull(fresh.getConnection());
+        }
+
+        // Assert
+        assertEquals(2, opened);
+        assertEquals(1, pool.getOpenConnections());
+    }
+
+    @Test
+    @DisplayName("Should prepare each SQL shape once per connection")
+    void testStatementCache() throws SQLException {
+        // Arrange
+        String sql = "select price from ProductTable where productNo = ?";
+        try (PooledConnection con = pool.borrow()) {
+            Connection raw = con.getConnection();
+            when(raw.prepareStatement(sql)).thenAnswer(inv -> mock(PreparedStatement.class));
+
+            // Act
+            PreparedStatement first = con.prepare(sql);
+            PreparedStatement second = con.prepare(sql);
+
+            // Assert
+            assertSame(first, second);
+            verify(raw, times(1)).prepareStatement(sql);
+            verify(second).clearParameters();
+            assertEquals(1, con.getCachedStatementCount());
+        }
+    }
+}
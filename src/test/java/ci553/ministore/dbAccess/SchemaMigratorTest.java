@@ -0,0 +1,121 @@
+package ci553.ministore.dbAccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Schema Migrator Tests")
+class SchemaMigratorTest {
+
+    private static int databases = 0;
+    private Connection con;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // A fresh in-memory database with the tables as the old Setup made them
+        con = DriverManager.getConnection("jdbc:derby:memory:migrate" + (++databases) + ";create=true");
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("create table ProductTable (productNo Char(4), description Varchar(40), " +
+                    "picture Varchar(80), price Float)");
+            stmt.execute("create table StockTable (productNo Char(4), stockLevel Integer)");
+            stmt.execute("insert into ProductTable values ('0001', 'Toaster', 'pic0001.png', 19.99)");
+            stmt.execute("insert into StockTable values ('0001', 33)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        con.close();
+    }
+
+    @Test
+    @DisplayName("Should upgrade an existing database and keep its data")
+    void testUpgradeInPlace() throws SQLException {
+        assertEquals(0, SchemaMigrator.getVersion(con));
+
+        int applied = SchemaMigrator.migrate(con);
+
+        assertEquals(SchemaMigrator.getLatestVersion(), applied);
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(con));
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select stockLevel from StockTable where productNo = '0001'")) {
+            assertTrue(rs.next());
+            assertEquals(33, rs.getInt(1));
+        }
+    }
+
+    @Test
+    @DisplayName("Should apply nothing when already up to date")
+    void testAlreadyCurrent() throws SQLException {
+        SchemaMigrator.migrate(con);
+
+        assertEquals(0, SchemaMigrator.migrate(con));
+    }
+
+    @Test
+    @DisplayName("Should enforce the primary and foreign keys once migrated")
+    void testKeysEnforced() throws SQLException {
+        SchemaMigrator.migrate(con);
+
+        try (Statement stmt = con.createStatement()) {
+            assertThrows(SQLException.class,
+                    () -> stmt.execute("insert into ProductTable values ('0001', 'Copy', 'x.png', 1.00)"));
+            assertThrows(SQLException.class,
+                    () -> stmt.execute("insert into StockTable values ('9999', 1)"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should start product numbers after the products already stored")
+    void testProductSequenceSeeded() throws SQLException {
+        SchemaMigrator.migrate(con);
+
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select nextValue from Sequences where name = 'productNo'")) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+        }
+    }
+
+    @Test
+    @DisplayName("Should roll back a migration that fails and keep the earlier version")
+    void testFailedMigrationRolledBack() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("insert into ProductTable values ('0001', 'Duplicate', 'x.png', 1.00)");
+        }
+
+        assertThrows(SQLException.class, () -> SchemaMigrator.migrate(con));
+
+        assertEquals(2, SchemaMigrator.getVersion(con));
+        try (Statement stmt = con.createStatement()) {
+            // No primary key was added, so the duplicate can still be inserted again
+            stmt.execute("insert into ProductTable values ('0001', 'Another', 'y.png', 1.00)");
+        }
+    }
+
+    @Test
+    @DisplayName("Should add the key to a picture table made by an older Setup")
+    void testExistingVariantTable() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("create table ImageVariantTable (picture Varchar(80), variant Varchar(12), " +
+                    "version Char(64), image Blob(16M))");
+            stmt.execute("insert into ImageVariantTable (picture, variant) values ('pic0001.png', 'THUMBNAIL')");
+        }
+
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.migrate(con));
+
+        try (Statement stmt = con.createStatement()) {
+            assertThrows(SQLException.class, () -> stmt.execute(
+                    "insert into ImageVariantTable (picture, variant) values ('pic0001.png', 'THUMBNAIL')"));
+        }
+    }
+}
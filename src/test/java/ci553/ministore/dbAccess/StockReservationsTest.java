@@ -0,0 +1,150 @@
+package ci553.ministore.dbAccess;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.middle.StockException;
+import ci553.ministore.middle.StockReadWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Stock Reservations Tests")
+class StockReservationsTest {
+
+    private static final long TTL = 60_000;
+
+    private StockReadWriter stockMock;
+    private StockReservations reservations;
+
+    @BeforeEach
+    void setUp() throws StockException {
+        stockMock = mock(StockReadWriter.class);
+        when(stockMock.getDetails("001")).thenReturn(new Product("001", "Test Product", 10.0, 5));
+        // No background sweeper, the tests sweep by hand
+        reservations = new StockReservations(stockMock, TTL, 0);
+    }
+
+    /**
+     * @return A basket of the test products, leaving out any of quantity 0
+     */
+    private static Basket basket(int of001, int of002) {
+        Basket basket = new Basket();
+        if (of001 > 0) {
+            basket.add(new Product("001", "Test Product", 10.0, of001));
+        }
+        if (of002 > 0) {
+            basket.add(new Product("002", "Other Product", 5.0, of002));
+        }
+        return basket;
+    }
+
+    @Test
+    @DisplayName("Should not hold more than the stock level across clients")
+    void testReserveLimitedByStock() throws StockException {
+        // Act & Assert
+        assertTrue(reservations.reserve("till1", "001", 3));
+        assertFalse(reservations.reserve("till2", "001", 3));
+        assertTrue(reservations.reserve("till2", "001", 2));
+        assertEquals(5, reservations.getReserved("001"));
+        verify(stockMock, never()).buyStock(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should make released stock available again")
+    void testRelease() throws StockException {
+        // Arrange
+        reservations.reserve("till1", "001", 5);
+
+        // Act
+        reservations.release("till1", "001", 2);
+
+        // Assert
+        assertEquals(3, reservations.getReserved("001"));
+        assertTrue(reservations.reserve("till2", "001", 2));
+    }
+
+    @Test
+    @DisplayName("Should take all held lines in one checkout on commit")
+    void testCommit() throws StockException {
+        // Arrange
+        when(stockMock.getDetails("002")).thenReturn(new Product("002", "Other Product", 5.0, 9));
+        when(stockMock.checkout(any(Basket.class))).thenReturn(new boolean[] {true, true});
+        reservations.reserve("till1", "001", 2);
+        reservations.reserve("till1", "002", 4);
+        reservations.reserve("till1", "001", 1);
+
+        // Act
+        boolean committed = reservations.commit("till1", basket(3, 4));
+
+        // Assert
+        assertTrue(committed);
+        ArgumentCaptor<Basket> basket = ArgumentCaptor.forClass(Basket.class);
+        verify(stockMock, times(1)).checkout(basket.capture());
+        assertEquals(2, basket.getValue().size());
+        assertEquals(0, reservations.getReserved("001"));
+        assertEquals(0, reservations.getHoldCount());
+        assertFalse(reservations.commit("till1", basket(3, 4)));
+    }
+
+    @Test
+    @DisplayName("Should not commit a hold that does not cover the whole basket")
+    void testCommitPartialHold() throws StockException {
+        // Arrange
+        reservations.reserve("till1", "001", 3);
+
+        // Act & Assert
+        assertFalse(reservations.commit("till1", basket(3, 4)));
+        verify(stockMock, never()).checkout(any(Basket.class));
+        assertEquals(0, reservations.getReserved("001"));
+    }
+
+    @Test
+    @DisplayName("Should refuse to use a hold again once it has ended")
+    void testEndedHoldNotRestarted() throws StockException {
+        // Arrange
+        reservations.reserve("till1", "001", 2);
+        reservations.cancel("till1");
+        reservations.reserve("till2", "001", 2);
+        reservations.sweep(System.currentTimeMillis() + TTL + 1);
+
+        // Act & Assert
+        assertThrows(StockException.class, () -> reservations.reserve("till1", "001", 1));
+        assertThrows(StockException.class, () -> reservations.reserve("till2", "001", 1));
+        assertFalse(reservations.commit("till2", basket(2, 0)));
+        assertTrue(reservations.reserve("till3", "001", 1));
+        reservations.sweep(System.currentTimeMillis() + 10 * TTL);
+        assertTrue(reservations.reserve("till1", "001", 1), "Ended ids forgotten in time");
+    }
+
+    @Test
+    @DisplayName("Should give back everything held on cancel")
+    void testCancel() throws StockException {
+        // Arrange
+        reservations.reserve("till1", "001", 4);
+
+        // Act
+        reservations.cancel("till1");
+
+        // Assert
+        assertEquals(0, reservations.getReserved("001"));
+        assertTrue(reservations.reserve("till2", "001", 5));
+    }
+
+    @Test
+    @DisplayName("Should give back expired holds when swept")
+    void testSweepExpired() throws StockException {
+        // Arrange
+        reservations.reserve("till1", "001", 5);
+
+        // Act & Assert
+        assertEquals(0, reservations.sweep(System.currentTimeMillis()));
+        assertEquals(1, reservations.sweep(System.currentTimeMillis() + TTL + 1));
+        assertEquals(0, reservations.getReserved("001"));
+        assertFalse(reservations.commit("till1", basket(5, 0)));
+        verify(stockMock, never()).checkout(any(Basket.class));
+    }
+}
@@ -0,0 +1,128 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.ImageSize;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductImage;
+import ci553.ministore.catalogue.ProductView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Caching Stock Reader Tests")
+class CachingStockReaderTest {
+
+    private StockReader stockMock;
+    private CachingStockReader cache;
+
+    @BeforeEach
+    void setUp() throws StockException {
+        stockMock = mock(StockReader.class);
+        when(stockMock.getDetails(anyString())).thenAnswer(inv -> new Product("0", "", 0.00, 0));
+        when(stockMock.getDetails("001")).thenAnswer(inv -> new Product("001", "Test Product", 10.0, 5));
+        cache = new CachingStockReader(stockMock, 2, 60_000);
+    }
+
+    @Test
+    @DisplayName("Should answer repeated lookups from the cache")
+    void testHit() throws StockException {
+        // Act
+        assertTrue(cache.exists("001"));
+        Product first = cache.getDetails("001");
+        Product second = cache.getDetails("001");
+
+        // Assert
+        assertEquals(5, second.getQuantity());
+        verify(stockMock, times(1)).getDetails("001");
+        verify(stockMock, never()).exists(anyString());
+        assertEquals(2, cache.getCache().getHitCount());
+        assertEquals(1, cache.getCache().getMissCount());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    @DisplayName("Should not let a caller change the cached product")
+    void testCopies() throws StockException {
+        // Act
+        cache.getDetails("001").setQuantity(1);
+
+        // Assert
+        assertEquals(5, cache.getDetails("001").getQuantity());
+    }
+
+    @Test
+    @DisplayName("Should cache unknown products")
+    void testUnknown() throws StockException {
+        // Act
+        assertFalse(cache.exists("999"));
+        assertFalse(cache.exists("999"));
+
+        // Assert
+        verify(stockMock, times(1)).getDetails("999");
+        verify(stockMock, never()).exists(anyString());
+    }
+
+    @Test
+    @DisplayName("Should read a product again after it has changed")
+    void testInvalidation() throws StockException {
+        // Arrange
+        cache.getDetails("001");
+        when(stockMock.getDetails("001")).thenReturn(new Product("001", "Test Product", 10.0, 4));
+
+        // Act
+        cache.productChanged("001");
+
+        // Assert
+        assertEquals(4, cache.getDetails("001").getQuantity());
+        verify(stockMock, times(2)).getDetails("001");
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used product when full")
+    void testEviction() throws StockException {
+        // Arrange
+        when(stockMock.getDetails(anyString()))
+            .thenAnswer(inv -> new Product(inv.getArgument(0), "Product", 1.0, 1));
+
+        // Act
+        cache.getDetails("001");
+        cache.getDetails("002");
+        cache.getDetails("001");
+        cache.getDetails("003");  // Evicts 002
+        cache.getDetails("001");
+        cache.getDetails("002");
+
+        // Assert
+        verify(stockMock, times(1)).getDetails("001");
+        verify(stockMock, times(2)).getDetails("002");
+        assertEquals(2, cache.getCache().getEvictionCount());
+    }
+
+    @Test
+    @DisplayName("Should make a product view from cached details and read only the image")
+    void testProductView() throws StockException {
+        // Arrange
+        byte[] image = {1, 2, 3};
+        when(stockMock.getProductView("001", ImageSize.THUMBNAIL)).thenReturn(Optional.of(
+                new ProductView(new Product("001", "Test Product", 10.0, 5), "pic.png", image, "v1")));
+        when(stockMock.getImageIfChanged("001", ImageSize.THUMBNAIL, null))
+            .thenReturn(Optional.of(new ProductImage(image, "v1")));
+
+        // Act
+        cache.getProductView("001", ImageSize.THUMBNAIL);
+        ProductView view = cache.getProductView("001", ImageSize.THUMBNAIL).orElseThrow();
+
+        // Assert
+        verify(stockMock, times(1)).getProductView("001", ImageSize.THUMBNAIL);
+        verify(stockMock, never()).getDetails("001");
+        assertEquals(5, view.getProduct().getQuantity());
+        assertEquals("pic.png", view.getPicture());
+        assertArrayEquals(image, view.getImage());
+        assertTrue(cache.exists("001"));
+        verify(stockMock, never()).exists("001");
+    }
+}
@@ -0,0 +1,85 @@
+package ci553.ministore.middle;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order State Delta Tests")
+class OrderStateDeltaTest {
+
+    private static byte[] serialize(Object o) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    @DisplayName("Should bring a copy of the order state up to date")
+    void testApplyTo() {
+        Map<String, List<Integer>> before = Map.of(
+                "Waiting", List.of(1, 2), "BeingPacked", List.of(3), "ToBeCollected", List.of());
+        OrderStateDelta delta = new OrderStateDelta(5, 7, false,
+                new int[][] {{4}, {2}, {3}}, new int[][] {{2}, {3}, null});
+
+        Map<String, List<Integer>> after = delta.applyTo(before);
+
+        assertEquals(List.of(1, 4), after.get("Waiting"));
+        assertEquals(List.of(2), after.get("BeingPacked"));
+        assertEquals(List.of(3), after.get("ToBeCollected"));
+        assertEquals(after, OrderStateDelta.full(7, after).applyTo(before), "Full replaces");
+    }
+
+    @Test
+    @DisplayName("Should bring up to date a copy already showing some of the changes")
+    void testApplyToPartlyChanged() {
+        Map<String, List<Integer>> partly = Map.of(
+                "Waiting", List.of(1), "BeingPacked", List.of(2, 5), "ToBeCollected", List.of());
+        OrderStateDelta delta = new OrderStateDelta(5, 9, false,
+                new int[][] {{}, {}, {2}}, new int[][] {{2}, {}, {5}});
+
+        Map<String, List<Integer>> after = delta.applyTo(partly);
+
+        assertEquals(List.of(1), after.get("Waiting"));
+        assertEquals(List.of(), after.get("BeingPacked"), "5 came and went");
+        assertEquals(List.of(2), after.get("ToBeCollected"));
+        assertEquals(after, delta.applyTo(after), "Applying again changes nothing");
+    }
+
+    @Test
+    @DisplayName("Should send order numbers as small gaps and read them back")
+    void testCompactSerialization() throws Exception {
+        int[] many = IntStream.range(100_000, 110_000).toArray();
+        Map<String, List<Integer>> state = new HashMap<>();
+        state.put("Waiting", new ArrayList<>(IntStream.of(many).boxed().toList()));
+        OrderStateDelta full = OrderStateDelta.full(42, state);
+
+        byte[] bytes = serialize(full);
+        OrderStateDelta copy = (OrderStateDelta) deserialize(bytes);
+
+        assertTrue(copy.isFull());
+        assertEquals(42, copy.getVersion());
+        assertArrayEquals(many, copy.getAdded("Waiting"));
+        assertArrayEquals(new int[0], copy.getRemoved("Waiting"));
+        assertTrue(bytes.length < many.length * 2, "About a byte an order, was " + bytes.length);
+        assertTrue(bytes.length < serialize(state).length / 5, "Much smaller than the boxed map");
+    }
+}
@@ -0,0 +1,53 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.NumberBlock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Product Number Allocator Tests")
+class ProductNumberAllocatorTest {
+
+    private StockReadWriter stockMock;
+    private ProductNumberAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        stockMock = mock(StockReadWriter.class);
+        allocator = new ProductNumberAllocator(stockMock, 3);
+    }
+
+    @Test
+    @DisplayName("Should hand out a leased block before leasing another")
+    void testUsesWholeBlock() throws StockException {
+        when(stockMock.leaseProductNumbers(3)).thenReturn(new NumberBlock(8, 3), new NumberBlock(20, 3));
+
+        assertEquals("0008", allocator.next());
+        assertEquals("0009", allocator.next());
+        assertEquals("0010", allocator.next());
+        assertEquals("0020", allocator.next());
+
+        verify(stockMock, times(2)).leaseProductNumbers(3);
+    }
+
+    @Test
+    @DisplayName("Should lease again when given a short block")
+    void testShortBlock() throws StockException {
+        when(stockMock.leaseProductNumbers(3)).thenReturn(new NumberBlock(9998, 2), new NumberBlock(5, 3));
+
+        assertEquals("9998", allocator.next());
+        assertEquals("9999", allocator.next());
+        assertEquals("0005", allocator.next());
+    }
+
+    @Test
+    @DisplayName("Should pass on a failed lease")
+    void testLeaseFails() throws StockException {
+        when(stockMock.leaseProductNumbers(anyInt())).thenThrow(new StockException("No product numbers left"));
+
+        assertThrows(StockException.class, () -> allocator.next());
+    }
+}
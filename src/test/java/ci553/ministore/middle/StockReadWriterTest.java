@@ -0,0 +1,64 @@
+package ci553.ministore.middle;
+
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.catalogue.ProductPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Stock Read Writer Streaming Tests")
+class StockReadWriterTest {
+
+    private StockReadWriter stock;
+
+    @BeforeEach
+    void setUp() throws StockException {
+        // Only the paging call is stubbed, streamProducts is the real default method
+        stock = mock(StockReadWriter.class, CALLS_REAL_METHODS);
+        doReturn(page("2", "0001", "0002")).when(stock).getProductsPage(isNull(), eq(2));
+        doReturn(page("4", "0003", "0004")).when(stock).getProductsPage(eq("2"), eq(2));
+        doReturn(page(null, "0005")).when(stock).getProductsPage(eq("4"), eq(2));
+    }
+
+    @Test
+    @DisplayName("Should stream every product across pages in order")
+    void testStreamsAllPages() throws StockException {
+        List<String> numbers = stock.streamProducts(2)
+                .map(Product::getProductNum)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("0001", "0002", "0003", "0004", "0005"), numbers);
+        verify(stock, times(3)).getProductsPage(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should only fetch the pages that are read")
+    void testFetchesLazily() throws StockException {
+        assertEquals(2, stock.streamProducts(2).limit(2).count());
+
+        verify(stock, times(1)).getProductsPage(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should wrap a stock exception thrown while fetching a page")
+    void testPageFailure() throws StockException {
+        doThrow(new StockException("SQL getProductsPage: down")).when(stock).getProductsPage(eq("2"), eq(2));
+
+        UncheckedStockException e = assertThrows(UncheckedStockException.class,
+                () -> stock.streamProducts(2).count());
+        assertEquals("SQL getProductsPage: down", e.getCause().getMessage());
+    }
+
+    private static ProductPage page(String next, String... numbers) {
+        return new ProductPage(List.of(numbers).stream()
+                .map(n -> new Product(n, "Product " + n, 1.00, 1))
+                .collect(Collectors.toList()), next);
+    }
+}
@@ -0,0 +1,122 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.middle.OrderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Indexed Order Tests")
+class IndexedOrderTest {
+
+    @TempDir
+    Path dir;
+
+    private OrderIdService ids;
+    private IndexedOrder order;
+
+    @BeforeEach
+    void setUp() {
+        ids = OrderFixtures.ids(100);
+        order = new IndexedOrder(ids);
+    }
+
+    @Test
+    @DisplayName("Should pack orders of one priority first come, first served and move them through each stage")
+    void testStages() throws OrderException {
+        Basket first = OrderFixtures.basket(order);
+        Basket second = OrderFixtures.basket(order);
+        order.newOrder(first);
+        order.newOrder(second);
+
+        assertSame(first, order.getOrderToPack());
+        assertFalse(order.informOrderCollected(first.getOrderNum()), "Not packed yet");
+        assertTrue(order.informOrderPacked(first.getOrderNum()));
+        assertFalse(order.informOrderPacked(first.getOrderNum()), "Already packed");
+
+        Map<String, List<Integer>> state = order.getOrderState();
+        assertEquals(List.of(second.getOrderNum()), state.get("Waiting"));
+        assertEquals(List.of(), state.get("BeingPacked"));
+        assertEquals(List.of(first.getOrderNum()), state.get("ToBeCollected"));
+
+        assertTrue(order.informOrderCollected(first.getOrderNum()));
+        assertFalse(order.informOrderCollected(first.getOrderNum()), "Already collected");
+        assertSame(second, order.getOrderToPack());
+        assertNull(order.getOrderToPack());
+    }
+
+    @Test
+    @DisplayName("Should pack an express order before bulk orders taken earlier")
+    void testEarliestDeadlineFirst() throws OrderException {
+        Basket bulk = OrderFixtures.basket(order);
+        bulk.setPriority(Priority.BULK);
+        Basket standard = OrderFixtures.basket(order);
+        Basket express = OrderFixtures.basket(order);
+        express.setPriority(Priority.EXPRESS);
+        order.newOrder(bulk);
+        order.newOrder(standard);
+        order.newOrder(express);
+
+        assertEquals(List.of(bulk.getOrderNum(), standard.getOrderNum(), express.getOrderNum()),
+                order.getOrderState().get("Waiting"), "Listed in the order taken");
+        assertSame(express, order.getOrderToPack());
+        assertSame(standard, order.getOrderToPack());
+        assertSame(bulk, order.getOrderToPack());
+    }
+
+    @Test
+    @DisplayName("Should refuse an order number already held")
+    void testDuplicateRefused() throws OrderException {
+        Basket bought = OrderFixtures.basket(order);
+        order.newOrder(bought);
+
+        assertThrows(OrderException.class, () -> order.newOrder(bought));
+        assertEquals(List.of(bought.getOrderNum()), order.getOrderState().get("Waiting"));
+    }
+
+    @Test
+    @DisplayName("Should hand a new order to a packer waiting for one")
+    void testWaitingPackerWoken() throws Exception {
+        CompletableFuture<Basket> packer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return order.getOrderToPack(10_000);
+            } catch (OrderException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        Basket bought = OrderFixtures.basket(order);
+        order.newOrder(bought);
+
+        assertSame(bought, packer.get(5, TimeUnit.SECONDS));
+        assertNull(order.getOrderToPack(50), "Only one order to hand out");
+    }
+
+    @Test
+    @DisplayName("Should recover journaled orders in the stage they had reached")
+    void testRecoverFromJournal() throws OrderException {
+        order = new IndexedOrder(ids, new OrderJournal(dir, false, 1000));
+        Basket packed = OrderFixtures.basket(order);
+        Basket waiting = OrderFixtures.basket(order);
+        order.newOrder(packed);
+        order.newOrder(waiting);
+        order.informOrderPacked(order.getOrderToPack().getOrderNum());
+
+        IndexedOrder recovered = new IndexedOrder(ids, new OrderJournal(dir, false, 1000));
+
+        Map<String, List<Integer>> state = recovered.getOrderState();
+        assertEquals(List.of(waiting.getOrderNum()), state.get("Waiting"));
+        assertEquals(List.of(packed.getOrderNum()), state.get("ToBeCollected"));
+        assertEquals(waiting.getDetails(), recovered.getOrderToPack().getDetails());
+    }
+}
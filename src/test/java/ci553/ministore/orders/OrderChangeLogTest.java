@@ -0,0 +1,82 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.middle.OrderStateDelta;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Change Log Tests")
+class OrderChangeLogTest {
+
+    private static final Map<String, List<Integer>> NOW = Map.of(
+            "Waiting", List.of(9), "BeingPacked", List.of(), "ToBeCollected", List.of(7, 8));
+
+    private final OrderChangeLog log = new OrderChangeLog(8);
+
+    @Test
+    @DisplayName("Should give only where each order ended up since a version")
+    void testNetChanges() {
+        log.record(1, null, Order.State.Waiting);
+        log.record(2, null, Order.State.Waiting);
+        long seen = log.getVersion();
+        log.record(1, Order.State.Waiting, Order.State.BeingPacked);
+        log.record(1, Order.State.BeingPacked, Order.State.ToBeCollected);
+        log.record(3, null, Order.State.Waiting);
+        log.record(3, Order.State.Waiting, Order.State.BeingPacked);
+        log.record(3, Order.State.BeingPacked, Order.State.ToBeCollected);
+        log.record(3, Order.State.ToBeCollected, null);     // Came and went
+
+        OrderStateDelta delta = log.since(seen, () -> NOW);
+
+        assertFalse(delta.isFull());
+        assertEquals(seen, delta.getSince());
+        assertEquals(log.getVersion(), delta.getVersion());
+        assertArrayEquals(new int[] {1}, delta.getRemoved("Waiting"));
+        assertArrayEquals(new int[] {1}, delta.getAdded("ToBeCollected"));
+        assertArrayEquals(new int[0], delta.getAdded("Waiting"));
+        assertArrayEquals(new int[0], delta.getAdded("BeingPacked"));
+        assertArrayEquals(new int[0], delta.getRemoved("BeingPacked"));
+        assertTrue(log.since(log.getVersion(), () -> NOW).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should give changes only up to the first not yet published")
+    void testUpToUnpublished() {
+        long seen = log.getVersion();
+        long first = log.next();                            // Numbered, not yet published
+        log.record(2, null, Order.State.Waiting);
+
+        OrderStateDelta early = log.since(seen, () -> NOW);
+        assertTrue(early.isEmpty());
+        assertEquals(seen, early.getVersion());
+        assertEquals(seen, log.since(0, () -> NOW).getVersion(), "Full only up to what is published");
+
+        log.publish(first, 1, null, Order.State.Waiting);
+        OrderStateDelta delta = log.since(seen, () -> NOW);
+        assertEquals(log.getVersion(), delta.getVersion());
+        assertArrayEquals(new int[] {1, 2}, delta.getAdded("Waiting"));
+    }
+
+    @Test
+    @DisplayName("Should give every order when the version is too old or from before a restart")
+    void testFullWhenTooOld() {
+        long start = log.getVersion();
+        for (int i = 1; i <= 9; i++) {
+            log.record(i, null, Order.State.Waiting);
+        }
+
+        OrderStateDelta tooOld = log.since(start, () -> NOW);
+        assertTrue(tooOld.isFull());
+        assertEquals(log.getVersion(), tooOld.getVersion());
+        assertArrayEquals(new int[] {7, 8}, tooOld.getAdded("ToBeCollected"));
+
+        assertFalse(log.since(start + 1, () -> NOW).isFull(), "Last 8 changes remembered");
+        assertTrue(log.since(log.getVersion() + 1, () -> NOW).isFull(), "From a later run");
+        assertTrue(log.since(0, () -> NOW).isFull());
+        assertTrue(new OrderChangeLog(8).getVersion() > 0, "Versions carry on over a restart");
+    }
+}
@@ -0,0 +1,290 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.middle.OrderChange;
+import ci553.ministore.middle.OrderListener;
+import ci553.ministore.middle.OrderStateDelta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tills, packers and the collection desk all working on the same orders
+ * at once, checking no change to an order is lost or made twice.
+ */
+@DisplayName("Order Concurrency Tests")
+class OrderConcurrencyTest {
+
+    private static final int TILLS = 8;
+    private static final int PACKERS = 8;
+    private static final int ORDERS_PER_TILL = 1500;
+    private static final int TOTAL = TILLS * ORDERS_PER_TILL;
+
+    @TempDir
+    Path dir;
+
+    private OrderIdService ids;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        ids = OrderFixtures.ids(64);
+        pool = Executors.newFixedThreadPool(TILLS + PACKERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Runs tasks together, from a common start.
+     */
+    private void runAll(List<Task> tasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>();
+        for (Task task : tasks) {
+            running.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : running) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Tills take orders while packers pack and hand them to collection.
+     *
+     * @param order   The order processing system
+     * @param perTill Orders each till takes
+     * @param collect Whether packed orders are collected
+     * @return Number of times each order was handed to a packer
+     */
+    private Map<Integer, AtomicInteger> tillsAndPackers(Order order, int perTill, boolean collect)
+            throws Exception {
+        int total = TILLS * perTill;
+        Map<Integer, AtomicInteger> taken = new ConcurrentHashMap<>();
+        AtomicInteger handled = new AtomicInteger();
+        List<Task> tasks = new ArrayList<>();
+        for (int t = 0; t < TILLS; t++) {
+            tasks.add(() -> {
+                for (int i = 0; i < perTill; i++) {
+                    order.newOrder(OrderFixtures.basket(order));
+                }
+            });
+        }
+        for (int p = 0; p < PACKERS; p++) {
+            tasks.add(() -> {
+                while (handled.get() < total) {
+                    Basket toPack = order.getOrderToPack(20);
+                    if (toPack == null) {
+                        continue;
+                    }
+                    int orderNum = toPack.getOrderNum();
+                    taken.computeIfAbsent(orderNum, n -> new AtomicInteger()).incrementAndGet();
+                    assertTrue(order.informOrderPacked(orderNum), "Packed #" + orderNum);
+                    if (collect) {
+                        assertTrue(order.informOrderCollected(orderNum), "Collected #" + orderNum);
+                    }
+                    handled.incrementAndGet();
+                }
+            });
+        }
+        runAll(tasks);
+        return taken;
+    }
+
+    @Test
+    @DisplayName("Should hand every order to exactly one packer while tills keep taking orders")
+    void testNoLostOrDuplicatedOrders() throws Exception {
+        Order order = new Order(ids);
+
+        Map<Integer, AtomicInteger> taken = tillsAndPackers(order, ORDERS_PER_TILL, true);
+
+        assertEquals(TOTAL, taken.size(), "Every order packed");
+        taken.forEach((orderNum, times) -> assertEquals(1, times.get(), "#" + orderNum + " packed once"));
+        Map<String, List<Integer>> state = order.getOrderState();
+        assertEquals(List.of(), state.get("Waiting"));
+        assertEquals(List.of(), state.get("BeingPacked"));
+        assertEquals(List.of(), state.get("ToBeCollected"));
+        assertNull(order.getOrderToPack());
+    }
+
+    @Test
+    @DisplayName("Should let only one of many callers move the same order on")
+    void testRacingTransitions() throws Exception {
+        Order order = new Order(ids);
+        int orders = 500;
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            Basket bought = OrderFixtures.basket(order);
+            order.newOrder(bought);
+            numbers.add(bought.getOrderNum());
+        }
+        for (int i = 0; i < orders; i++) {
+            order.getOrderToPack();
+        }
+
+        AtomicInteger packed = new AtomicInteger();
+        AtomicInteger collected = new AtomicInteger();
+        List<Task> tasks = new ArrayList<>();
+        for (int t = 0; t < TILLS + PACKERS; t++) {
+            tasks.add(() -> {
+                for (int orderNum : numbers) {
+                    if (order.informOrderPacked(orderNum)) {
+                        packed.incrementAndGet();
+                    }
+                    if (order.informOrderCollected(orderNum)) {
+                        collected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        runAll(tasks);
+
+        assertEquals(orders, packed.get(), "Each order packed once");
+        assertEquals(orders, collected.get(), "Each order collected once");
+        assertTrue(order.getOrderState().values().stream().allMatch(List::isEmpty));
+    }
+
+    @Test
+    @DisplayName("Should tell a listener of each order's changes once and in order")
+    void testListenerSeesEveryChangeInOrder() throws Exception {
+        Order order = new Order(ids);
+        int perTill = 30;                      // Every change fits the listener's queue
+        Map<Integer, List<String>> seen = new ConcurrentHashMap<>();
+        CountDownLatch all = new CountDownLatch(TILLS * perTill * 4);
+        AtomicBoolean dropped = new AtomicBoolean();
+        order.addOrderListener(new OrderListener() {
+            @Override
+            public void ordersChanged(List<OrderChange> changes) {
+                for (OrderChange change : changes) {
+                    seen.computeIfAbsent(change.getOrderNum(), n -> new ArrayList<>())
+                            .add(change.getFrom() + ">" + change.getTo());
+                    all.countDown();
+                }
+            }
+
+            @Override
+            public void dropped() {
+                dropped.set(true);
+            }
+        });
+
+        tillsAndPackers(order, perTill, true);
+
+        assertTrue(all.await(30, TimeUnit.SECONDS), "Every change told");
+        assertFalse(dropped.get());
+        assertEquals(TILLS * perTill, seen.size());
+        List<String> lifeCycle = List.of("null>Waiting", "Waiting>BeingPacked",
+                "BeingPacked>ToBeCollected", "ToBeCollected>null");
+        seen.forEach((orderNum, changes) -> assertEquals(lifeCycle, changes, "#" + orderNum));
+    }
+
+    @Test
+    @DisplayName("Should let a display keep up from deltas alone while orders change")
+    void testDeltasFollowChanges() throws Exception {
+        Order order = new Order(ids);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger deltas = new AtomicInteger();
+        ExecutorService displayThread = Executors.newSingleThreadExecutor();
+        Future<Map<String, List<Integer>>> display = displayThread.submit(() -> {
+            OrderStateDelta delta = order.getOrderStateSince(0);
+            Map<String, List<Integer>> seen = delta.applyTo(Map.of());
+            while (!done.get()) {
+                delta = order.getOrderStateSince(delta.getVersion());
+                assertFalse(delta.isFull(), "Kept up");
+                seen = delta.applyTo(seen);
+                deltas.incrementAndGet();
+            }
+            return order.getOrderStateSince(delta.getVersion()).applyTo(seen);
+        });
+
+        try {
+            tillsAndPackers(order, 100, false);
+            done.set(true);
+
+            assertEquals(order.getOrderState(), display.get(30, TimeUnit.SECONDS));
+        } finally {
+            displayThread.shutdownNow();
+        }
+        assertTrue(deltas.get() > 0);
+    }
+
+    @Test
+    @DisplayName("Should let a display start again from every order while orders change")
+    void testFullDeltasWhileChanging() throws Exception {
+        Order order = new Order(ids);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger fulls = new AtomicInteger();
+        ExecutorService displayThread = Executors.newSingleThreadExecutor();
+        Future<Map<String, List<Integer>>> display = displayThread.submit(() -> {
+            OrderStateDelta delta = order.getOrderStateSince(0);
+            Map<String, List<Integer>> seen = delta.applyTo(Map.of());
+            while (!done.get()) {
+                // Start again every few deltas, each full delta taken while orders move
+                delta = order.getOrderStateSince(fulls.incrementAndGet() % 4 == 0 ? 0 : delta.getVersion());
+                seen = delta.applyTo(seen);
+            }
+            return order.getOrderStateSince(delta.getVersion()).applyTo(seen);
+        });
+
+        try {
+            tillsAndPackers(order, 100, false);
+            done.set(true);
+
+            assertEquals(order.getOrderState(), display.get(30, TimeUnit.SECONDS));
+        } finally {
+            displayThread.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should journal concurrent changes, with snapshots, so a restart finds the same orders")
+    void testJournalUnderLoad() throws Exception {
+        Order order = new Order(ids, new OrderJournal(dir, false, 500));
+
+        tillsAndPackers(order, ORDERS_PER_TILL, false);
+        List<Task> tills = new ArrayList<>();
+        for (int t = 0; t < TILLS; t++) {
+            tills.add(() -> {
+                for (int i = 0; i < 50; i++) {
+                    order.newOrder(OrderFixtures.basket(order));
+                }
+            });
+        }
+        runAll(tills);
+        Map<String, List<Integer>> before = order.getOrderState();
+        assertEquals(TOTAL, before.get("ToBeCollected").size());
+        assertEquals(TILLS * 50, before.get("Waiting").size());
+
+        Order recovered = new Order(ids, new OrderJournal(dir, false, 500));
+
+        assertEquals(before, recovered.getOrderState());
+    }
+}
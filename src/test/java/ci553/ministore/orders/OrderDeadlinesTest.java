@@ -0,0 +1,87 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.middle.DeadlineStats;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Deadlines Tests")
+class OrderDeadlinesTest {
+
+    private static final long NOW = 1_000_000_000L;
+    private static final long MAX_WAIT = TimeUnit.MINUTES.toMillis(60);
+
+    private final OrderDeadlines deadlines = new OrderDeadlines(MAX_WAIT);
+
+    private static Basket basket(Priority priority) {
+        Basket basket = new Basket();
+        basket.setPriority(priority);
+        return basket;
+    }
+
+    @Test
+    @DisplayName("Should promise an order by its priority unless it has a deadline")
+    void testPromise() {
+        Basket express = basket(Priority.EXPRESS);
+        Basket promised = basket(Priority.BULK);
+        promised.setDeadline(NOW + 5);
+
+        deadlines.promise(express, NOW);
+        deadlines.promise(promised, NOW);
+
+        assertEquals(NOW + Priority.EXPRESS.getPromiseMillis(), express.getDeadline());
+        assertEquals(NOW + 5, promised.getDeadline());
+        assertEquals(Priority.STANDARD, new Basket().getPriority());
+    }
+
+    @Test
+    @DisplayName("Should put an order due far ahead no further back than the longest wait")
+    void testLongestWait() {
+        Basket express = basket(Priority.EXPRESS);
+        Basket bulk = basket(Priority.BULK);
+        deadlines.promise(express, NOW);
+        deadlines.promise(bulk, NOW);
+
+        assertEquals(express.getDeadline(), deadlines.due(express, NOW));
+        assertEquals(NOW + MAX_WAIT, deadlines.due(bulk, NOW));
+
+        // An express order taken after the longest wait has passed goes behind the bulk order
+        long later = NOW + MAX_WAIT;
+        Basket lateExpress = basket(Priority.EXPRESS);
+        deadlines.promise(lateExpress, later);
+        assertTrue(deadlines.due(lateExpress, later) > deadlines.due(bulk, NOW));
+    }
+
+    @Test
+    @DisplayName("Should count orders of each priority packed by their deadline or late")
+    void testCounts() {
+        Basket onTime = basket(Priority.EXPRESS);
+        Basket late = basket(Priority.EXPRESS);
+        Basket bulk = basket(Priority.BULK);
+        for (Basket b : List.of(onTime, late, bulk)) {
+            deadlines.promise(b, NOW);
+        }
+
+        deadlines.packed(onTime, onTime.getDeadline());
+        deadlines.packed(late, late.getDeadline() + 2000);
+        deadlines.packed(bulk, NOW);
+
+        List<DeadlineStats> stats = deadlines.getStats();
+        assertEquals(Priority.values().length, stats.size());
+        DeadlineStats express = stats.get(Priority.EXPRESS.ordinal());
+        assertEquals(Priority.EXPRESS, express.getPriority());
+        assertEquals(2, express.getPacked());
+        assertEquals(1, express.getMet());
+        assertEquals(1, express.getLate());
+        assertEquals(0.5, express.getMetRate(), 1e-9);
+        assertEquals(2000, express.getMeanLateMillis(), 1e-9);
+        assertEquals(1.0, stats.get(Priority.BULK.ordinal()).getMetRate(), 1e-9);
+        assertEquals(0, stats.get(Priority.STANDARD.ordinal()).getPacked());
+    }
+}
@@ -0,0 +1,39 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.BetterBasket;
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.catalogue.Product;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderProcessing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Order numbers and baskets for the order processing tests.
+ */
+public final class OrderFixtures {
+
+    private OrderFixtures() {
+    }
+
+    /**
+     * @param blockSize Order numbers leased at a time
+     * @return An order number service leasing from its own counter instead of the database
+     */
+    public static OrderIdService ids(int blockSize) {
+        AtomicInteger highWater = new AtomicInteger(1);
+        return new OrderIdService(n -> new NumberBlock(highWater.getAndAdd(n), n), blockSize);
+    }
+
+    /**
+     * @param order The order processing system numbering the order
+     * @return A basket holding one toaster, with the next order number
+     */
+    public static Basket basket(OrderProcessing order) throws OrderException {
+        BetterBasket basket = new BetterBasket(() -> 0);
+        basket.setOrderNum(order.uniqueNumber());
+        basket.add(new Product("0001", "Toaster", 19.99, 1));
+        return basket;
+    }
+}
@@ -0,0 +1,85 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.NumberBlock;
+import ci553.ministore.middle.OrderException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Id Service Tests")
+class OrderIdServiceTest {
+
+    private final AtomicInteger highWater = new AtomicInteger(1);  // Stands in for the database
+    private final AtomicInteger leases = new AtomicInteger();
+
+    private NumberBlock lease(int count) {
+        leases.incrementAndGet();
+        return new NumberBlock(highWater.getAndAdd(count), count);
+    }
+
+    @Test
+    @DisplayName("Should hand out a whole block before leasing another")
+    void testUsesBlock() throws OrderException {
+        OrderIdService ids = new OrderIdService(this::lease, 10);
+
+        for (int expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, ids.next());
+        }
+        assertEquals(3, leases.get());
+    }
+
+    @Test
+    @DisplayName("Should never repeat a number after a restart")
+    void testUniqueAcrossRestarts() throws OrderException {
+        int before = new OrderIdService(this::lease, 10).next();
+
+        // A new service stands in for the restarted server, the old block is lost
+        int after = new OrderIdService(this::lease, 10).next();
+
+        assertEquals(1, before);
+        assertEquals(11, after);
+    }
+
+    @Test
+    @DisplayName("Should hand out unique numbers to many threads")
+    void testConcurrent() throws Exception {
+        OrderIdService ids = new OrderIdService(this::lease, 7);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            done.add(pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(seen.add(ids.next()));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+        pool.shutdown();
+
+        assertEquals(8000, seen.size());
+    }
+
+    @Test
+    @DisplayName("Should report a lease that fails")
+    void testLeaseFails() {
+        OrderIdService ids = new OrderIdService(n -> {
+            throw new OrderException("Order numbers: database down");
+        }, 10);
+
+        assertThrows(OrderException.class, ids::next);
+    }
+}
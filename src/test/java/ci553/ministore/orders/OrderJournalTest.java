@@ -0,0 +1,125 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.middle.OrderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Journal Tests")
+class OrderJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private OrderIdService ids;
+
+    @BeforeEach
+    void setUp() {
+        ids = OrderFixtures.ids(100);
+    }
+
+    /**
+     * @return An order processing system started from the journal, as after a restart
+     */
+    private Order restart(int snapshotRecords) throws OrderException {
+        return new Order(ids, new OrderJournal(dir, false, snapshotRecords));
+    }
+
+    @Test
+    @DisplayName("Should recover every order in the stage it had reached")
+    void testRecoverStages() throws OrderException {
+        Order order = restart(1000);
+        Basket waiting = OrderFixtures.basket(order);
+        Basket packing = OrderFixtures.basket(order);
+        Basket packed = OrderFixtures.basket(order);
+        Basket collected = OrderFixtures.basket(order);
+        order.newOrder(collected);
+        order.newOrder(packed);
+        order.newOrder(packing);
+        order.newOrder(waiting);
+        order.informOrderPacked(order.getOrderToPack().getOrderNum());
+        order.informOrderCollected(collected.getOrderNum());
+        order.informOrderPacked(order.getOrderToPack().getOrderNum());
+        order.getOrderToPack();
+
+        Order recovered = restart(1000);
+
+        Map<String, List<Integer>> state = recovered.getOrderState();
+        assertEquals(List.of(waiting.getOrderNum()), state.get("Waiting"));
+        assertEquals(List.of(packing.getOrderNum()), state.get("BeingPacked"));
+        assertEquals(List.of(packed.getOrderNum()), state.get("ToBeCollected"));
+        assertTrue(recovered.informOrderCollected(packed.getOrderNum()));
+        Basket next = recovered.getOrderToPack();
+        assertEquals(waiting.getDetails(), next.getDetails());
+    }
+
+    @Test
+    @DisplayName("Should recover from a snapshot and the changes after it")
+    void testRecoverAfterSnapshot() throws OrderException {
+        Order order = restart(5);
+        for (int i = 0; i < 12; i++) {
+            order.newOrder(OrderFixtures.basket(order));
+        }
+        Basket first = order.getOrderToPack();
+
+        Order recovered = restart(5);
+
+        Map<String, List<Integer>> state = recovered.getOrderState();
+        assertEquals(11, state.get("Waiting").size());
+        assertEquals(List.of(first.getOrderNum()), state.get("BeingPacked"));
+    }
+
+    @Test
+    @DisplayName("Should recover each order's priority and deadline")
+    void testRecoverPromise() throws OrderException {
+        Order order = restart(1000);
+        Basket standard = OrderFixtures.basket(order);
+        Basket express = OrderFixtures.basket(order);
+        express.setPriority(Priority.EXPRESS);
+        express.setDeadline(System.currentTimeMillis() + 60_000);
+        order.newOrder(standard);
+        order.newOrder(express);
+
+        Order recovered = restart(1000);
+
+        Basket first = recovered.getOrderToPack();
+        assertEquals(express.getOrderNum(), first.getOrderNum());
+        assertEquals(Priority.EXPRESS, first.getPriority());
+        assertEquals(express.getDeadline(), first.getDeadline());
+        Basket second = recovered.getOrderToPack();
+        assertEquals(Priority.STANDARD, second.getPriority());
+        assertEquals(standard.getDeadline(), second.getDeadline());
+    }
+
+    @Test
+    @DisplayName("Should drop a change only partly written")
+    void testTornTail() throws OrderException, IOException {
+        Order order = restart(1000);
+        Basket kept = OrderFixtures.basket(order);
+        order.newOrder(kept);
+        order.newOrder(OrderFixtures.basket(order));
+        try (FileChannel log = FileChannel.open(dir.resolve("orders.log"), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - 3);
+        }
+
+        Order recovered = restart(1000);
+        recovered.newOrder(OrderFixtures.basket(recovered));
+
+        assertEquals(kept.getOrderNum(), recovered.getOrderToPack().getOrderNum());
+        Map<String, List<Integer>> state = restart(1000).getOrderState();
+        assertEquals(List.of(kept.getOrderNum()), state.get("BeingPacked"));
+        assertEquals(1, state.get("Waiting").size());
+    }
+}
@@ -0,0 +1,114 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.BetterBasket;
+import ci553.ministore.middle.OrderChange;
+import ci553.ministore.middle.OrderException;
+import ci553.ministore.middle.OrderListener;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Notifier Tests")
+class OrderNotifierTest {
+
+    /**
+     * Records the changes it is told of.
+     */
+    private static class Recorder implements OrderListener {
+        final List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch dropped = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean blocks;
+        volatile CountDownLatch expected;
+
+        Recorder(boolean blocks, int expect) {
+            this.blocks = blocks;
+            expected = new CountDownLatch(expect);
+        }
+
+        @Override
+        public void ordersChanged(List<OrderChange> batch) {
+            if (blocks) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (OrderChange change : batch) {
+                changes.add(change.toString());
+                expected.countDown();
+            }
+        }
+
+        @Override
+        public void dropped() {
+            dropped.countDown();
+        }
+    }
+
+    private Basket basket(int orderNum) {
+        return new BetterBasket(() -> orderNum);
+    }
+
+    @Test
+    @DisplayName("Should tell a listener of every change in order, after the state it was given")
+    void testChangesInOrder() throws Exception {
+        IndexedOrder order = new IndexedOrder(OrderFixtures.ids(10));
+        order.newOrder(basket(1));
+
+        Recorder recorder = new Recorder(false, 5);
+        Map<String, List<Integer>> state = order.addOrderListener(recorder);
+        assertEquals(List.of(1), state.get("Waiting"));
+
+        order.newOrder(basket(2));
+        order.getOrderToPack();
+        order.informOrderPacked(1);
+        order.informOrderCollected(1);
+        order.informOrderCollected(2);     // Not packed, no change
+        order.getOrderToPack();
+
+        assertTrue(recorder.expected.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("#2 null -> Waiting", "#1 Waiting -> BeingPacked",
+                "#1 BeingPacked -> ToBeCollected", "#1 ToBeCollected -> null",
+                "#2 Waiting -> BeingPacked"), recorder.changes);
+
+        order.removeOrderListener(recorder);
+        order.newOrder(basket(3));
+        Thread.sleep(50);
+        assertEquals(5, recorder.changes.size(), "No changes once removed");
+        assertEquals(1, recorder.dropped.getCount(), "Removing is not dropping");
+    }
+
+    @Test
+    @DisplayName("Should drop a listener that falls behind without holding up the others")
+    void testSlowListenerDropped() throws Exception {
+        OrderNotifier notifier = new OrderNotifier(10);
+        Recorder slow = new Recorder(true, 0);
+        Recorder fast = new Recorder(false, 100);
+        notifier.add(slow);
+        notifier.add(fast);
+
+        for (int i = 1; i <= 100; i++) {
+            notifier.publish(i, null, "Waiting");
+            while (fast.changes.size() < i) {
+                Thread.sleep(1);          // Let the fast listener keep up
+            }
+        }
+
+        assertTrue(fast.expected.await(5, TimeUnit.SECONDS), "Fast listener told of every change");
+        slow.release.countDown();
+        assertTrue(slow.dropped.await(5, TimeUnit.SECONDS), "Slow listener told it was dropped");
+        assertTrue(slow.changes.size() < 100);
+        assertEquals(1, fast.dropped.getCount());
+    }
+}
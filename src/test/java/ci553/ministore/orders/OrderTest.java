@@ -0,0 +1,92 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.catalogue.Priority;
+import ci553.ministore.middle.DeadlineStats;
+import ci553.ministore.middle.OrderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Order Tests")
+class OrderTest {
+
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        order = new Order(OrderFixtures.ids(100));
+    }
+
+    @Test
+    @DisplayName("Should hand a new order straight to a packer already waiting")
+    void testWaitingPackerWoken() throws Exception {
+        CompletableFuture<Basket> packer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return order.getOrderToPack(10_000);
+            } catch (OrderException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(packer.isDone(), "Should wait while there are no orders");
+
+        Basket bought = OrderFixtures.basket(order);
+        long start = System.nanoTime();
+        order.newOrder(bought);
+
+        assertSame(bought, packer.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Woken, not timed out");
+        assertEquals(1, order.getOrderState().get("BeingPacked").size());
+    }
+
+    @Test
+    @DisplayName("Should pack an express order before bulk orders taken earlier")
+    void testEarliestDeadlineFirst() throws OrderException {
+        Basket bulk = OrderFixtures.basket(order);
+        bulk.setPriority(Priority.BULK);
+        Basket standard = OrderFixtures.basket(order);
+        Basket express = OrderFixtures.basket(order);
+        express.setPriority(Priority.EXPRESS);
+        order.newOrder(bulk);
+        order.newOrder(standard);
+        order.newOrder(express);
+
+        assertTrue(express.getDeadline() > 0, "Promised when taken");
+        assertSame(express, order.getOrderToPack());
+        assertSame(standard, order.getOrderToPack());
+        assertSame(bulk, order.getOrderToPack());
+
+        assertTrue(order.informOrderPacked(express.getOrderNum()));
+        DeadlineStats stats = order.getDeadlineStats().get(Priority.EXPRESS.ordinal());
+        assertEquals(1, stats.getPacked());
+        assertEquals(1, stats.getMet());
+    }
+
+    @Test
+    @DisplayName("Should give up with no order once the timeout passes")
+    void testTimeout() throws OrderException {
+        long start = System.nanoTime();
+        assertNull(order.getOrderToPack(100));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertNull(order.getOrderToPack(), "No wait without a timeout");
+    }
+
+    @Test
+    @DisplayName("Should stop waiting when interrupted and keep the interrupt")
+    void testInterrupted() throws OrderException {
+        Thread.currentThread().interrupt();
+        try {
+            assertNull(order.getOrderToPack(10_000));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package ci553.ministore.orders;
+
+import ci553.ministore.catalogue.Basket;
+import ci553.ministore.middle.StationStats;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dealing orders to packing stations, stealing between them and
+ * sharing the orders of stations that have gone.
+ */
+@DisplayName("PackingDispatcher Tests")
+class PackingDispatcherTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+    private static final long DUE = 0;        // All due together, so taken oldest first
+
+    /**
+     * @param stats Figures for every station
+     * @param name  The station wanted
+     * @return Figures for that station
+     */
+    private static StationStats statsOf(List<StationStats> stats, String name) {
+        return stats.stream().filter(s -> s.getStation().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Should share orders taken before any station has asked, oldest first")
+    void testSharedBeforeStations() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        dispatcher.offer(1, DUE);
+        dispatcher.offer(2, DUE);
+
+        assertFalse(dispatcher.isEmpty());
+        assertEquals(List.of(1, 2), dispatcher.waiting());
+        assertEquals(1, dispatcher.poll("A"));
+        assertEquals(2, dispatcher.poll(null));
+        assertNull(dispatcher.poll("A"));
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should deal new orders to the stations in turn")
+    void testDealtInTurn() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        assertNull(dispatcher.poll("B"));
+        for (int i = 1; i <= 4; i++) {
+            dispatcher.offer(i, DUE);
+        }
+
+        List<StationStats> stats = dispatcher.getStats();
+        assertEquals(2, statsOf(stats, "A").getQueued());
+        assertEquals(2, statsOf(stats, "B").getQueued());
+        assertEquals(List.of(1, 2, 3, 4), dispatcher.waiting());
+
+        int a = dispatcher.poll("A");
+        int b = dispatcher.poll("B");
+        assertNotEquals(a, b);
+        assertEquals(1, Math.abs(a - b), "Each took the first order dealt to it");
+        stats = dispatcher.getStats();
+        assertEquals(1, statsOf(stats, "A").getTaken());
+        assertEquals(0, statsOf(stats, "A").getStolen());
+    }
+
+    @Test
+    @DisplayName("Should let an idle station steal the oldest order from the busiest")
+    void testIdleStationSteals() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.offer(i, DUE);
+        }
+
+        assertEquals(1, dispatcher.poll("B"), "B joins after the orders were dealt");
+        assertEquals(2, dispatcher.poll("A"));
+        assertEquals(3, dispatcher.poll("B"));
+        assertNull(dispatcher.poll("A"));
+
+        List<StationStats> stats = dispatcher.getStats();
+        assertEquals(2, statsOf(stats, "B").getStolen());
+        assertEquals(0, statsOf(stats, "B").getTaken());
+        assertEquals(1, statsOf(stats, "A").getTaken());
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should give each station the order due soonest, and steal the most urgent")
+    void testDueSoonestFirst() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        dispatcher.offer(1, 300);
+        dispatcher.offer(2, 100);
+        dispatcher.offer(3, 200);
+        dispatcher.offer(4, 100);
+
+        assertEquals(List.of(1, 2, 3, 4), dispatcher.waiting(), "Still listed in arrival order");
+        assertEquals(2, dispatcher.poll("A"));
+        assertEquals(4, dispatcher.poll("B"), "Stolen, due as soon as 2 but came later");
+        assertEquals(3, dispatcher.poll("A"));
+        assertEquals(1, dispatcher.poll("A"));
+        assertNull(dispatcher.poll("B"));
+    }
+
+    @Test
+    @DisplayName("Should steal from another station an order due sooner than its own")
+    void testStealsMoreUrgent() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        assertNull(dispatcher.poll("B"));
+        dispatcher.offer(1, 300);       // Dealt to A
+        dispatcher.offer(2, 300);       // Dealt to B
+        dispatcher.offer(3, 50);        // Dealt to A
+        dispatcher.offer(4, 300);       // Dealt to B
+
+        assertEquals(3, dispatcher.poll("B"), "Due sooner than any of its own");
+        assertEquals(1, dispatcher.poll("A"));
+        assertEquals(2, dispatcher.poll("B"), "Due together, so keeps to its own queue");
+        assertEquals(4, dispatcher.poll("A"));
+
+        List<StationStats> stats = dispatcher.getStats();
+        assertEquals(1, statsOf(stats, "B").getStolen());
+        assertEquals(1, statsOf(stats, "B").getTaken());
+        assertEquals(1, statsOf(stats, "A").getStolen());
+        assertEquals(1, statsOf(stats, "A").getTaken());
+    }
+
+    @Test
+    @DisplayName("Should keep to its own queue while the order at its head is not yet due")
+    void testKeepsOwnUntilDue() {
+        long later = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        assertNull(dispatcher.poll("B"));
+        dispatcher.offer(1, later + 200);   // Dealt to A
+        dispatcher.offer(2, later + 100);   // Dealt to B
+
+        assertEquals(1, dispatcher.poll("A"), "Not yet due, so B's is left to B");
+        assertEquals(2, dispatcher.poll("A"), "Stolen once its own queue is empty");
+        assertEquals(1, statsOf(dispatcher.getStats(), "A").getStolen());
+    }
+
+    @Test
+    @DisplayName("Should steal only from stations it has to while stations take at the same time")
+    void testStealingUnderContention() throws Exception {
+        int stations = 4;
+        int orders = 4_000;
+        long later = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        for (int s = 0; s < stations; s++) {
+            assertNull(dispatcher.poll("S" + s));
+        }
+        for (int i = 0; i < orders; i++) {
+            dispatcher.offer(i, later + i);     // Dealt to S0, S1, S2, S3 in turn
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(stations);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> packed = new ArrayList<>();
+        for (int s = 0; s < stations; s++) {
+            String name = "S" + s;
+            packed.add(pool.submit(() -> {
+                start.await();
+                List<Integer> taken = new ArrayList<>();
+                Integer item;
+                while ((item = dispatcher.poll(name)) != null) {
+                    taken.add(item);
+                }
+                return taken;
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> all = new HashSet<>();
+        int total = 0;
+        long stolen = 0;
+        try {
+            for (int s = 0; s < stations; s++) {
+                List<Integer> taken = packed.get(s).get(30, TimeUnit.SECONDS);
+                int station = s;
+                int firstStolen = taken.size();
+                for (int i = 0; i < taken.size() && firstStolen == taken.size(); i++) {
+                    if (taken.get(i) % stations != station) {
+                        firstStolen = i;
+                    }
+                }
+                long foreign = taken.stream().filter(item -> item % stations != station).count();
+                assertEquals(taken.size() - firstStolen, foreign,
+                        "S" + s + " only steals once its own queue is empty");
+                StationStats stats = statsOf(dispatcher.getStats(), "S" + s);
+                assertEquals(foreign, stats.getStolen());
+                assertEquals(taken.size() - foreign, stats.getTaken());
+                stolen += foreign;
+                total += taken.size();
+                all.addAll(taken);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(orders, all.size(), "Every order taken");
+        assertEquals(orders, total, "None taken twice");
+        assertTrue(stolen < orders, "Stolen " + stolen + " of " + orders);
+        assertTrue(dispatcher.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should take a shared order before its own only if due sooner")
+    void testSharedDueSooner() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        dispatcher.offer(1, 200);       // Shared, no station yet
+        dispatcher.offer(5, 50);
+        assertEquals(5, dispatcher.poll("B"));
+        dispatcher.offer(2, 100);       // Dealt to B
+        dispatcher.offer(3, 300);
+
+        assertEquals(2, dispatcher.poll("B"));
+        assertEquals(1, dispatcher.poll("B"));
+        assertEquals(3, dispatcher.poll("B"));
+        assertEquals(4, statsOf(dispatcher.getStats(), "B").getTaken());
+    }
+
+    @Test
+    @DisplayName("Should share the orders of a station that has stopped asking")
+    void testGoneStationShared() throws InterruptedException {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(100);
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(timeout);
+        assertNull(dispatcher.poll("A"));
+        dispatcher.offer(1, DUE);
+        dispatcher.offer(2, DUE);
+        assertEquals(2, statsOf(dispatcher.getStats(), "A").getQueued());
+
+        TimeUnit.NANOSECONDS.sleep(2 * timeout);
+        assertEquals(1, dispatcher.poll("C"), "A's orders shared");
+        dispatcher.offer(3, DUE);
+
+        assertEquals(0, statsOf(dispatcher.getStats(), "A").getQueued());
+        assertEquals(1, statsOf(dispatcher.getStats(), "C").getQueued(), "Only C is dealt to");
+        assertEquals(2, dispatcher.poll("C"), "Older shared order first");
+        assertEquals(3, dispatcher.poll("C"));
+        assertEquals(3, statsOf(dispatcher.getStats(), "C").getTaken());
+    }
+
+    @Test
+    @DisplayName("Should record orders packed and the time taken by each station")
+    void testPackedStats() {
+        PackingDispatcher<Integer> dispatcher = new PackingDispatcher<>(HOUR);
+        assertNull(dispatcher.poll("A"));
+        dispatcher.offer(1, DUE);
+        dispatcher.offer(2, DUE);
+        dispatcher.poll("A");
+        dispatcher.poll("A");
+
+        dispatcher.packed("A", TimeUnit.MILLISECONDS.toNanos(10));
+        dispatcher.packed("A", TimeUnit.MILLISECONDS.toNanos(30));
+        dispatcher.packed(null, 1);
+        dispatcher.packed("Unknown", 1);
+
+        StationStats a = statsOf(dispatcher.getStats(), "A");
+        assertEquals(1, dispatcher.getStats().size());
+        assertEquals(2, a.getPacked());
+        assertEquals(20.0, a.getMeanPackMillis(), 0.001);
+        assertTrue(a.getPackedPerHour() > 0);
+    }
+
+    @Test
+    @DisplayName("Should count orders packed by a named station in the order stats")
+    void testOrderStationStats() throws Exception {
+        Order order = new Order(OrderFixtures.ids(10));
+        assertNull(order.getOrderToPack("Bench 1", 0));
+        Basket basket = OrderFixtures.basket(order);
+        order.newOrder(basket);
+
+        assertEquals(basket.getOrderNum(), order.getOrderToPack("Bench 1", 0).getOrderNum());
+        assertTrue(order.informOrderPacked(basket.getOrderNum()));
+
+        StationStats bench = statsOf(order.getStationStats(), "Bench 1");
+        assertEquals(1, bench.getTaken());
+        assertEquals(1, bench.getPacked());
+        assertEquals(0, bench.getQueued());
+    }
+}
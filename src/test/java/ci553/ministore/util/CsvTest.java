@@ -0,0 +1,33 @@
+package ci553.ministore.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CSV Tests")
+public class CsvTest {
+
+    @Test
+    @DisplayName("Should split plain and quoted fields")
+    void testParse() {
+        assertEquals(List.of("0001", "40 inch, LED \"HD\" TV", "", "269.00"),
+                Csv.parse("0001,\"40 inch, LED \"\"HD\"\" TV\",,269.00"));
+    }
+
+    @Test
+    @DisplayName("Should read back what it writes")
+    void testRoundTrip() {
+        String[] fields = {"0002", "Radio, \"DAB\"", "pic.png", "29.99"};
+
+        assertEquals(List.of(fields), Csv.parse(Csv.format(fields)));
+    }
+
+    @Test
+    @DisplayName("Should reject a quoted field that is not closed")
+    void testUnclosedQuote() {
+        assertThrows(IllegalArgumentException.class, () -> Csv.parse("0001,\"Radio"));
+    }
+}
@@ -0,0 +1,68 @@
+package ci553.ministore.util;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Decoded Image Cache Tests")
+public class DecodedImageCacheTest {
+
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    // Decodes and delivers on the calling thread so results can be checked straight away
+    private DecodedImageCache newCache() {
+        return new DecodedImageCache(1024, (data, width, height) -> {
+            decodes.incrementAndGet();
+            return mock(Image.class);
+        }, Runnable::run, Runnable::run);
+    }
+
+    @Test
+    @DisplayName("Should decode a picture once and return the same image after")
+    void testDecodedOnce() {
+        DecodedImageCache cache = newCache();
+        AtomicReference<Image> first = new AtomicReference<>();
+        AtomicReference<Image> second = new AtomicReference<>();
+
+        cache.load(new byte[] {1}, "v1", 103, 80, first::set);
+        cache.load(new byte[] {1}, "v1", 103, 80, second::set);
+
+        assertNotNull(first.get());
+        assertSame(first.get(), second.get());
+        assertEquals(1, decodes.get());
+    }
+
+    @Test
+    @DisplayName("Should decode again for a new version or display size")
+    void testKeyedByVersionAndSize() {
+        DecodedImageCache cache = newCache();
+        cache.load(new byte[] {1}, "v1", 103, 80, image -> { });
+        cache.load(new byte[] {1}, "v1", 150, 128, image -> { });
+        cache.load(new byte[] {2}, "v2", 103, 80, image -> { });
+
+        assertEquals(3, decodes.get());
+    }
+
+    @Test
+    @DisplayName("Should not cache a picture that can not be decoded")
+    void testDecodeFailure() {
+        DecodedImageCache cache = new DecodedImageCache(1024, (data, width, height) -> {
+            decodes.incrementAndGet();
+            return null;
+        }, Runnable::run, Runnable::run);
+        AtomicReference<Image> result = new AtomicReference<>(mock(Image.class));
+
+        cache.load(new byte[] {1}, null, 103, 80, result::set);
+        cache.load(new byte[] {1}, null, 103, 80, image -> { });
+
+        assertNull(result.get());
+        assertEquals(2, decodes.get());
+        assertEquals(0, cache.getCache().size());
+    }
+}
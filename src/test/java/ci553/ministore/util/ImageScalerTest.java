@@ -0,0 +1,46 @@
+package ci553.ministore.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Image Scaler Tests")
+public class ImageScalerTest {
+
+    @Test
+    @DisplayName("Should scale the longest side down and keep the aspect ratio")
+    void testScaleDown() throws IOException {
+        byte[] scaled = ImageScaler.scale(png(512, 256), 128);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(scaled));
+        assertEquals(128, image.getWidth());
+        assertEquals(64, image.getHeight());
+    }
+
+    @Test
+    @DisplayName("Should return an image that already fits unchanged")
+    void testAlreadyFits() throws IOException {
+        byte[] small = png(100, 80);
+
+        assertSame(small, ImageScaler.scale(small, 128));
+    }
+
+    @Test
+    @DisplayName("Should reject data that is not an image")
+    void testNotAnImage() {
+        assertThrows(IOException.class, () -> ImageScaler.scale(new byte[] {1, 2, 3}, 128));
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", bos);
+        return bos.toByteArray();
+    }
+}
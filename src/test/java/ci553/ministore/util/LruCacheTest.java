@@ -0,0 +1,64 @@
+package ci553.ministore.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LRU Cache Tests")
+public class LruCacheTest {
+
+    @Test
+    @DisplayName("Should evict least recently used values to stay within the byte limit")
+    void testWeightLimit() {
+        LruCache<String, byte[]> cache = new LruCache<>(100, 0, value -> value.length);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");                   // b is now least recently used
+        cache.put("c", new byte[40]);
+
+        assertNull(cache.get("b"), "Least recently used value should be evicted");
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    @DisplayName("Should not store a value heavier than the whole cache")
+    void testTooHeavy() {
+        LruCache<String, byte[]> cache = new LruCache<>(100, 0, value -> value.length);
+        cache.put("a", new byte[40]);
+        cache.put("big", new byte[101]);
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"), "Existing values should be kept");
+        assertEquals(40, cache.getWeight());
+    }
+
+    @Test
+    @DisplayName("Should return the same array to every caller")
+    void testSharedValue() {
+        LruCache<String, byte[]> cache = new LruCache<>(100, 0, value -> value.length);
+        byte[] image = new byte[10];
+        cache.put("a", image);
+
+        assertSame(image, cache.get("a"));
+        assertSame(image, cache.get("a"));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    @DisplayName("Should keep the weight right when values are replaced and removed")
+    void testReplaceAndRemove() {
+        LruCache<String, byte[]> cache = new LruCache<>(100, 0, value -> value.length);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[10]);
+        assertEquals(10, cache.getWeight());
+
+        assertNotNull(cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,74 @@
+package ci553.ministore.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Text Search Index Tests")
+public class TextSearchIndexTest {
+
+    private TextSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TextSearchIndex();
+        index.put("0001", "40 inch LED HD TV");
+        index.put("0002", "DAB Radio");
+        index.put("0003", "Toaster");
+        index.put("0004", "Watch");
+        index.put("0005", "Digital Camera");
+        index.put("0006", "MP3 player");
+        index.put("0007", "32Gb USB2 drive");
+    }
+
+    @Test
+    @DisplayName("Should find a product from the start of a word")
+    void testPrefix() {
+        assertEquals(List.of("0005"), index.search("cam", 10));
+        assertEquals(List.of("0002"), index.search("RAD", 10));
+    }
+
+    @Test
+    @DisplayName("Should find a product from a misspelt word")
+    void testTypo() {
+        assertEquals("0003", index.search("toastr", 10).get(0));
+        assertEquals("0005", index.search("camrea", 10).get(0));
+    }
+
+    @Test
+    @DisplayName("Should rank products matching more words first")
+    void testRanking() {
+        index.put("0008", "Digital Radio");
+
+        List<String> found = index.search("digital radio", 10);
+
+        assertEquals("0008", found.get(0));
+        assertTrue(found.containsAll(List.of("0002", "0005")));
+    }
+
+    @Test
+    @DisplayName("Should return no more than the results asked for")
+    void testMaxResults() {
+        index.put("0008", "Radio alarm");
+        index.put("0009", "Radio cassette");
+
+        assertEquals(2, index.search("radio", 2).size());
+        assertTrue(index.search("radio", 0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should stop finding a product once replaced or removed")
+    void testReplaceAndRemove() {
+        index.put("0004", "Smart watch");
+        assertEquals(List.of("0004"), index.search("smart", 10));
+
+        index.remove("0004");
+
+        assertTrue(index.search("watch", 10).isEmpty());
+        assertEquals(6, index.size());
+    }
+}